@@ -0,0 +1,559 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * @author mchyzer
+ * $Id$
+ */
+package edu.internet2.middleware.grouperClient.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import edu.internet2.middleware.grouperClient.GrouperClientWsException;
+import edu.internet2.middleware.grouperClient.collections.MultiKey;
+import edu.internet2.middleware.grouperClient.util.GrouperClientConfig;
+import edu.internet2.middleware.grouperClient.util.GrouperClientUtils;
+import edu.internet2.middleware.grouperClient.ws.GcWebServiceError;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAddMemberResult;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAddMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAssignAttributeBatchEntry;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAssignAttributeBatchResult;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAssignAttributesBatchResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsDeleteMemberResult;
+import edu.internet2.middleware.grouperClient.ws.beans.WsDeleteMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsHasMemberResult;
+import edu.internet2.middleware.grouperClient.ws.beans.WsHasMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsSubjectLookup;
+
+
+/**
+ * <pre>
+ * submit many operations without waiting for each one.  operations of the same type on the
+ * same group are sent together in one web service request (e.g. one addMember request with many
+ * subjects), and a few requests are sent at once over the pooled connections.  each operation
+ * returns a future of its own result.
+ *
+ * e.g.
+ * GcBatchExecutor gcBatchExecutor = new GcBatchExecutor();
+ * List&lt;Future&lt;WsAddMemberResult&gt;&gt; futures = ...
+ * for (String subjectId : subjectIds) {
+ *   futures.add(gcBatchExecutor.addMember("a:b:c", new WsSubjectLookup(subjectId, null, null)));
+ * }
+ * gcBatchExecutor.shutdown();
+ * for (Future&lt;WsAddMemberResult&gt; future : futures) {
+ *   WsAddMemberResult wsAddMemberResult = future.get();
+ *   ...
+ * }
+ *
+ * batches are sent when they are full, on flush() or shutdown(), or when get() is called on the
+ * future of an item of a batch which has not been sent.
+ *
+ * if a subject cannot be added (e.g. it is not found), then the result of that subject says so,
+ * the other subjects of the request are not affected.  if the request fails (e.g. the server is
+ * down or the group is not found), then get() of each future of the request throws an ExecutionException
+ * </pre>
+ */
+public class GcBatchExecutor {
+
+  /**
+   * type of operation which can be batched
+   */
+  private static enum GcBatchOperation {
+
+    /** add members to a group */
+    addMember {
+
+      /**
+       * @see GcBatchOperation#execute(GcBatchExecutor, String, List)
+       */
+      @Override
+      public Object[] execute(GcBatchExecutor gcBatchExecutor, String groupName, List<Object> items) {
+        WsAddMemberResults wsAddMemberResults = null;
+        try {
+          wsAddMemberResults = gcBatchExecutor.gcBatchWebService.addMember(groupName, 
+              subjectLookups(items), gcBatchExecutor.clientVersion, gcBatchExecutor.actAsSubject);
+        } catch (RuntimeException re) {
+          wsAddMemberResults = resultContainer(re, WsAddMemberResults.class);
+        }
+        return wsAddMemberResults.getResults();
+      }
+    },
+
+    /** delete members from a group */
+    deleteMember {
+
+      /**
+       * @see GcBatchOperation#execute(GcBatchExecutor, String, List)
+       */
+      @Override
+      public Object[] execute(GcBatchExecutor gcBatchExecutor, String groupName, List<Object> items) {
+        WsDeleteMemberResults wsDeleteMemberResults = null;
+        try {
+          wsDeleteMemberResults = gcBatchExecutor.gcBatchWebService.deleteMember(groupName, 
+              subjectLookups(items), gcBatchExecutor.clientVersion, gcBatchExecutor.actAsSubject);
+        } catch (RuntimeException re) {
+          wsDeleteMemberResults = resultContainer(re, WsDeleteMemberResults.class);
+        }
+        return wsDeleteMemberResults.getResults();
+      }
+    },
+
+    /** see if subjects are members of a group */
+    hasMember {
+
+      /**
+       * @see GcBatchOperation#execute(GcBatchExecutor, String, List)
+       */
+      @Override
+      public Object[] execute(GcBatchExecutor gcBatchExecutor, String groupName, List<Object> items) {
+        WsHasMemberResults wsHasMemberResults = null;
+        try {
+          wsHasMemberResults = gcBatchExecutor.gcBatchWebService.hasMember(groupName, 
+              subjectLookups(items), gcBatchExecutor.clientVersion, gcBatchExecutor.actAsSubject);
+        } catch (RuntimeException re) {
+          wsHasMemberResults = resultContainer(re, WsHasMemberResults.class);
+        }
+        return wsHasMemberResults.getResults();
+      }
+    },
+
+    /** assign attributes, the group name is not used */
+    assignAttributes {
+
+      /**
+       * @see GcBatchOperation#execute(GcBatchExecutor, String, List)
+       */
+      @Override
+      public Object[] execute(GcBatchExecutor gcBatchExecutor, String groupName, List<Object> items) {
+        List<WsAssignAttributeBatchEntry> wsAssignAttributeBatchEntries = new ArrayList<WsAssignAttributeBatchEntry>();
+        for (Object item : items) {
+          wsAssignAttributeBatchEntries.add((WsAssignAttributeBatchEntry)item);
+        }
+        WsAssignAttributesBatchResults wsAssignAttributesBatchResults = null;
+        try {
+          wsAssignAttributesBatchResults = gcBatchExecutor.gcBatchWebService.assignAttributes(
+              wsAssignAttributeBatchEntries, gcBatchExecutor.clientVersion, gcBatchExecutor.actAsSubject);
+        } catch (RuntimeException re) {
+          wsAssignAttributesBatchResults = resultContainer(re, WsAssignAttributesBatchResults.class);
+        }
+        return wsAssignAttributesBatchResults.getWsAssignAttributeBatchResultArray();
+      }
+    };
+
+    /**
+     * send one web service request for the items
+     * @param gcBatchExecutor
+     * @param groupName
+     * @param items
+     * @return the results, in the same order as the items
+     */
+    public abstract Object[] execute(GcBatchExecutor gcBatchExecutor, String groupName, List<Object> items);
+  }
+
+  /**
+   * @param items
+   * @return the items as subject lookups
+   */
+  private static List<WsSubjectLookup> subjectLookups(List<Object> items) {
+    List<WsSubjectLookup> wsSubjectLookups = new ArrayList<WsSubjectLookup>();
+    for (Object item : items) {
+      wsSubjectLookups.add((WsSubjectLookup)item);
+    }
+    return wsSubjectLookups;
+  }
+
+  /**
+   * if the request was not successful since some of the items were not successful, get the
+   * response so each item can get its own result.  if the request failed for another reason, rethrow
+   * @param <T>
+   * @param runtimeException
+   * @param resultContainerClass
+   * @return the response
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T resultContainer(RuntimeException runtimeException, Class<T> resultContainerClass) {
+    Object resultContainer = null;
+    if (runtimeException instanceof GcWebServiceError) {
+      resultContainer = ((GcWebServiceError)runtimeException).getContainerResponseObject();
+    } else if (runtimeException instanceof GrouperClientWsException) {
+      resultContainer = ((GrouperClientWsException)runtimeException).getResultObject();
+    }
+    if (resultContainerClass.isInstance(resultContainer)) {
+      return (T)resultContainer;
+    }
+    throw runtimeException;
+  }
+
+  /**
+   * items which are waiting to be sent
+   */
+  private static class GcPendingBatch {
+
+    /** subject lookups or attribute batch entries */
+    private List<Object> items = new ArrayList<Object>();
+
+    /** runs the request when the batch is sent */
+    private FutureTask<Object[]> futureTask;
+
+    /** operation and group name */
+    private MultiKey multiKey;
+
+    /** if the batch has been given to the executor service */
+    private boolean sent = false;
+
+  }
+
+  /**
+   * future of one item in a batch
+   * @param <T> type of result
+   */
+  private static class GcBatchItemFuture<T> implements Future<T> {
+
+    /** executor which sends the batch */
+    private GcBatchExecutor gcBatchExecutor;
+
+    /** batch of the item */
+    private GcPendingBatch gcPendingBatch;
+
+    /** future of the batch */
+    private Future<Object[]> batchFuture;
+
+    /** index of this item in the batch */
+    private int index;
+
+    /**
+     * @param theGcBatchExecutor
+     * @param theGcPendingBatch
+     * @param theIndex
+     */
+    public GcBatchItemFuture(GcBatchExecutor theGcBatchExecutor, GcPendingBatch theGcPendingBatch, int theIndex) {
+      this.gcBatchExecutor = theGcBatchExecutor;
+      this.gcPendingBatch = theGcPendingBatch;
+      this.batchFuture = theGcPendingBatch.futureTask;
+      this.index = theIndex;
+    }
+
+    /**
+     * items cannot be cancelled since the whole batch would be cancelled
+     * @see Future#cancel(boolean)
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    /**
+     * @see Future#isCancelled()
+     */
+    public boolean isCancelled() {
+      return this.batchFuture.isCancelled();
+    }
+
+    /**
+     * @see Future#isDone()
+     */
+    public boolean isDone() {
+      return this.batchFuture.isDone();
+    }
+
+    /**
+     * if the batch is not full it has not been sent, so send it now instead of waiting forever
+     * @see Future#get()
+     */
+    @SuppressWarnings("unchecked")
+    public T get() throws InterruptedException, ExecutionException {
+      this.gcBatchExecutor.sendIfPending(this.gcPendingBatch);
+      return (T)this.batchFuture.get()[this.index];
+    }
+
+    /**
+     * if the batch is not full it has not been sent, so send it now
+     * @see Future#get(long, TimeUnit)
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long timeout, TimeUnit unit) throws InterruptedException,
+        ExecutionException, TimeoutException {
+      this.gcBatchExecutor.sendIfPending(this.gcPendingBatch);
+      return (T)this.batchFuture.get(timeout, unit)[this.index];
+    }
+
+  }
+
+  /** client version */
+  private String clientVersion;
+
+  /**
+   * assign client version
+   * @param theClientVersion
+   * @return this for chaining
+   */
+  public GcBatchExecutor assignClientVersion(String theClientVersion) {
+    this.clientVersion = theClientVersion;
+    return this;
+  }
+
+  /** act as subject if any */
+  private WsSubjectLookup actAsSubject;
+
+  /**
+   * assign the act as subject if any
+   * @param theActAsSubject
+   * @return this for chaining
+   */
+  public GcBatchExecutor assignActAsSubject(WsSubjectLookup theActAsSubject) {
+    this.actAsSubject = theActAsSubject;
+    return this;
+  }
+
+  /** sends the web service requests */
+  private GcBatchWebService gcBatchWebService = new GcBatchWebServiceImpl();
+
+  /**
+   * assign what sends the web service requests, e.g. to not call the web services in tests
+   * @param theGcBatchWebService
+   * @return this for chaining
+   */
+  public GcBatchExecutor assignBatchWebService(GcBatchWebService theGcBatchWebService) {
+    this.gcBatchWebService = theGcBatchWebService;
+    return this;
+  }
+
+  /** max number of items in one web service request */
+  private int itemsPerRequest = GrouperClientConfig.retrieveConfig().propertyValueInt(
+      "grouperClient.batch.itemsPerRequest", 100);
+
+  /**
+   * assign the max number of items in one web service request
+   * @param theItemsPerRequest
+   * @return this for chaining
+   */
+  public GcBatchExecutor assignItemsPerRequest(int theItemsPerRequest) {
+    if (theItemsPerRequest < 1) {
+      throw new RuntimeException("Items per request must be at least 1: " + theItemsPerRequest);
+    }
+    this.itemsPerRequest = theItemsPerRequest;
+    return this;
+  }
+
+  /** max number of web service requests at once */
+  private int concurrentRequests = GrouperClientConfig.retrieveConfig().propertyValueInt(
+      "grouperClient.batch.concurrentRequests", 5);
+
+  /**
+   * assign the max number of web service requests at once.  this must be called before
+   * the first operation is submitted
+   * @param theConcurrentRequests
+   * @return this for chaining
+   */
+  public synchronized GcBatchExecutor assignConcurrentRequests(int theConcurrentRequests) {
+    if (this.executorService != null) {
+      throw new RuntimeException("Assign concurrent requests before submitting operations");
+    }
+    if (theConcurrentRequests < 1) {
+      throw new RuntimeException("Concurrent requests must be at least 1: " + theConcurrentRequests);
+    }
+    this.concurrentRequests = theConcurrentRequests;
+    return this;
+  }
+
+  /** runs the requests, lazy loaded */
+  private ExecutorService executorService;
+
+  /** batches which have not been sent, by operation and group name */
+  private Map<MultiKey, GcPendingBatch> pendingBatches = new LinkedHashMap<MultiKey, GcPendingBatch>();
+
+  /** if shutdown has been called */
+  private boolean shutdown = false;
+
+  /**
+   * add a member to a group
+   * @param groupName
+   * @param wsSubjectLookup
+   * @return the future of the result of the subject
+   */
+  public Future<WsAddMemberResult> addMember(String groupName, WsSubjectLookup wsSubjectLookup) {
+    return this.submit(GcBatchOperation.addMember, groupName, wsSubjectLookup);
+  }
+
+  /**
+   * delete a member from a group
+   * @param groupName
+   * @param wsSubjectLookup
+   * @return the future of the result of the subject
+   */
+  public Future<WsDeleteMemberResult> deleteMember(String groupName, WsSubjectLookup wsSubjectLookup) {
+    return this.submit(GcBatchOperation.deleteMember, groupName, wsSubjectLookup);
+  }
+
+  /**
+   * see if a subject is a member of a group
+   * @param groupName
+   * @param wsSubjectLookup
+   * @return the future of the result of the subject
+   */
+  public Future<WsHasMemberResult> hasMember(String groupName, WsSubjectLookup wsSubjectLookup) {
+    return this.submit(GcBatchOperation.hasMember, groupName, wsSubjectLookup);
+  }
+
+  /**
+   * assign an attribute
+   * @param wsAssignAttributeBatchEntry
+   * @return the future of the result of the entry
+   */
+  public Future<WsAssignAttributeBatchResult> assignAttributes(WsAssignAttributeBatchEntry wsAssignAttributeBatchEntry) {
+    return this.submit(GcBatchOperation.assignAttributes, null, wsAssignAttributeBatchEntry);
+  }
+
+  /**
+   * add an item to the pending batch of the operation and group, and send the batch if full
+   * @param <T>
+   * @param gcBatchOperation
+   * @param groupName
+   * @param item
+   * @return the future of the item
+   */
+  private synchronized <T> Future<T> submit(GcBatchOperation gcBatchOperation, String groupName, Object item) {
+
+    if (this.shutdown) {
+      throw new RuntimeException("Batch executor has been shut down");
+    }
+    if (gcBatchOperation != GcBatchOperation.assignAttributes && GrouperClientUtils.isBlank(groupName)) {
+      throw new RuntimeException("Group name is required for " + gcBatchOperation);
+    }
+    if (item == null) {
+      throw new RuntimeException("Item is required for " + gcBatchOperation);
+    }
+
+    MultiKey multiKey = new MultiKey(gcBatchOperation, groupName);
+    GcPendingBatch gcPendingBatch = this.pendingBatches.get(multiKey);
+
+    if (gcPendingBatch == null) {
+      gcPendingBatch = newPendingBatch(gcBatchOperation, groupName);
+      gcPendingBatch.multiKey = multiKey;
+      this.pendingBatches.put(multiKey, gcPendingBatch);
+    }
+
+    gcPendingBatch.items.add(item);
+    Future<T> future = new GcBatchItemFuture<T>(this, gcPendingBatch, gcPendingBatch.items.size()-1);
+
+    if (gcPendingBatch.items.size() >= this.itemsPerRequest) {
+      this.pendingBatches.remove(multiKey);
+      this.send(gcPendingBatch);
+    }
+
+    return future;
+  }
+
+  /**
+   * make a batch, the request reads the items when it runs (after the batch is full or flushed)
+   * @param gcBatchOperation
+   * @param groupName
+   * @return the batch
+   */
+  private GcPendingBatch newPendingBatch(final GcBatchOperation gcBatchOperation, final String groupName) {
+    final GcPendingBatch gcPendingBatch = new GcPendingBatch();
+    gcPendingBatch.futureTask = new FutureTask<Object[]>(new Callable<Object[]>() {
+
+      public Object[] call() throws Exception {
+        Object[] results = gcBatchOperation.execute(GcBatchExecutor.this, groupName, gcPendingBatch.items);
+        if (GrouperClientUtils.length(results) != gcPendingBatch.items.size()) {
+          throw new RuntimeException("Expecting " + gcPendingBatch.items.size() + " results from "
+              + gcBatchOperation + " " + GrouperClientUtils.defaultString(groupName)
+              + ", but received " + GrouperClientUtils.length(results));
+        }
+        return results;
+      }
+    });
+    return gcPendingBatch;
+  }
+
+  /**
+   * send a batch
+   * @param gcPendingBatch
+   */
+  private void send(GcPendingBatch gcPendingBatch) {
+    if (this.executorService == null) {
+      this.executorService = Executors.newFixedThreadPool(this.concurrentRequests, new ThreadFactory() {
+
+        /** make threads which dont keep the JVM up */
+        private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+        public Thread newThread(Runnable runnable) {
+          Thread thread = this.threadFactory.newThread(runnable);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    gcPendingBatch.sent = true;
+    this.executorService.execute(gcPendingBatch.futureTask);
+  }
+
+  /**
+   * send a batch which is not full if it has not been sent yet, e.g. when the result of an item is needed
+   * @param gcPendingBatch
+   */
+  private synchronized void sendIfPending(GcPendingBatch gcPendingBatch) {
+    if (!gcPendingBatch.sent) {
+      this.pendingBatches.remove(gcPendingBatch.multiKey);
+      this.send(gcPendingBatch);
+    }
+  }
+
+  /**
+   * send the batches which are not full, without waiting for them
+   */
+  public synchronized void flush() {
+    for (GcPendingBatch gcPendingBatch : this.pendingBatches.values()) {
+      this.send(gcPendingBatch);
+    }
+    this.pendingBatches.clear();
+  }
+
+  /**
+   * send the batches which are not full, and wait for all requests to finish.  no operations
+   * can be submitted after this
+   */
+  public void shutdown() {
+    ExecutorService theExecutorService = null;
+    synchronized (this) {
+      this.flush();
+      this.shutdown = true;
+      theExecutorService = this.executorService;
+    }
+    if (theExecutorService != null) {
+      theExecutorService.shutdown();
+      try {
+        while (!theExecutorService.awaitTermination(1, TimeUnit.MINUTES)) {
+          //keep waiting
+        }
+      } catch (InterruptedException ie) {
+        throw new RuntimeException(ie);
+      }
+    }
+  }
+
+}
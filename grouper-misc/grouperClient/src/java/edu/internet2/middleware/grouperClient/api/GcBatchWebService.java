@@ -0,0 +1,79 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouperClient.api;
+
+import java.util.List;
+
+import edu.internet2.middleware.grouperClient.ws.beans.WsAddMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAssignAttributeBatchEntry;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAssignAttributesBatchResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsDeleteMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsHasMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsSubjectLookup;
+
+
+/**
+ * sends the web service requests of a GcBatchExecutor.  the default implementation calls the
+ * grouper web services, another implementation can be assigned to the executor (e.g. in tests).
+ * if some of the items are not successful, throw a GcWebServiceError with the results
+ * as the container response object, like the Gc* classes do
+ */
+public interface GcBatchWebService {
+
+  /**
+   * add members to a group
+   * @param groupName
+   * @param wsSubjectLookups
+   * @param clientVersion or null for default
+   * @param actAsSubject or null
+   * @return the results, one per subject in the same order
+   */
+  public WsAddMemberResults addMember(String groupName, List<WsSubjectLookup> wsSubjectLookups,
+      String clientVersion, WsSubjectLookup actAsSubject);
+
+  /**
+   * delete members from a group
+   * @param groupName
+   * @param wsSubjectLookups
+   * @param clientVersion or null for default
+   * @param actAsSubject or null
+   * @return the results, one per subject in the same order
+   */
+  public WsDeleteMemberResults deleteMember(String groupName, List<WsSubjectLookup> wsSubjectLookups,
+      String clientVersion, WsSubjectLookup actAsSubject);
+
+  /**
+   * see if subjects are members of a group
+   * @param groupName
+   * @param wsSubjectLookups
+   * @param clientVersion or null for default
+   * @param actAsSubject or null
+   * @return the results, one per subject in the same order
+   */
+  public WsHasMemberResults hasMember(String groupName, List<WsSubjectLookup> wsSubjectLookups,
+      String clientVersion, WsSubjectLookup actAsSubject);
+
+  /**
+   * assign attributes
+   * @param wsAssignAttributeBatchEntries
+   * @param clientVersion or null for default
+   * @param actAsSubject or null
+   * @return the results, one per entry in the same order
+   */
+  public WsAssignAttributesBatchResults assignAttributes(List<WsAssignAttributeBatchEntry> wsAssignAttributeBatchEntries,
+      String clientVersion, WsSubjectLookup actAsSubject);
+
+}
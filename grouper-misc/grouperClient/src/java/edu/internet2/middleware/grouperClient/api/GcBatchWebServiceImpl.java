@@ -0,0 +1,85 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouperClient.api;
+
+import java.util.List;
+
+import edu.internet2.middleware.grouperClient.ws.beans.WsAddMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAssignAttributeBatchEntry;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAssignAttributesBatchResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsDeleteMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsHasMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsSubjectLookup;
+
+
+/**
+ * sends the web service requests of a GcBatchExecutor to the grouper web services
+ */
+public class GcBatchWebServiceImpl implements GcBatchWebService {
+
+  /**
+   * @see GcBatchWebService#addMember(String, List, String, WsSubjectLookup)
+   */
+  public WsAddMemberResults addMember(String groupName, List<WsSubjectLookup> wsSubjectLookups,
+      String clientVersion, WsSubjectLookup actAsSubject) {
+    GcAddMember gcAddMember = new GcAddMember().assignGroupName(groupName)
+      .assignClientVersion(clientVersion).assignActAsSubject(actAsSubject);
+    for (WsSubjectLookup wsSubjectLookup : wsSubjectLookups) {
+      gcAddMember.addSubjectLookup(wsSubjectLookup);
+    }
+    return gcAddMember.execute();
+  }
+
+  /**
+   * @see GcBatchWebService#deleteMember(String, List, String, WsSubjectLookup)
+   */
+  public WsDeleteMemberResults deleteMember(String groupName, List<WsSubjectLookup> wsSubjectLookups,
+      String clientVersion, WsSubjectLookup actAsSubject) {
+    GcDeleteMember gcDeleteMember = new GcDeleteMember().assignGroupName(groupName)
+      .assignClientVersion(clientVersion).assignActAsSubject(actAsSubject);
+    for (WsSubjectLookup wsSubjectLookup : wsSubjectLookups) {
+      gcDeleteMember.addSubjectLookup(wsSubjectLookup);
+    }
+    return gcDeleteMember.execute();
+  }
+
+  /**
+   * @see GcBatchWebService#hasMember(String, List, String, WsSubjectLookup)
+   */
+  public WsHasMemberResults hasMember(String groupName, List<WsSubjectLookup> wsSubjectLookups,
+      String clientVersion, WsSubjectLookup actAsSubject) {
+    GcHasMember gcHasMember = new GcHasMember().assignGroupName(groupName)
+      .assignClientVersion(clientVersion).assignActAsSubject(actAsSubject);
+    for (WsSubjectLookup wsSubjectLookup : wsSubjectLookups) {
+      gcHasMember.addSubjectLookup(wsSubjectLookup);
+    }
+    return gcHasMember.execute();
+  }
+
+  /**
+   * @see GcBatchWebService#assignAttributes(List, String, WsSubjectLookup)
+   */
+  public WsAssignAttributesBatchResults assignAttributes(List<WsAssignAttributeBatchEntry> wsAssignAttributeBatchEntries,
+      String clientVersion, WsSubjectLookup actAsSubject) {
+    GcAssignAttributesBatch gcAssignAttributesBatch = new GcAssignAttributesBatch()
+      .assignClientVersion(clientVersion).assignActAsSubject(actAsSubject);
+    for (WsAssignAttributeBatchEntry wsAssignAttributeBatchEntry : wsAssignAttributeBatchEntries) {
+      gcAssignAttributesBatch.addAssignAttributeBatchEntry(wsAssignAttributeBatchEntry);
+    }
+    return gcAssignAttributesBatch.execute();
+  }
+
+}
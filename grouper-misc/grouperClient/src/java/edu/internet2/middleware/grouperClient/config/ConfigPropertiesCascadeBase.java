@@ -21,13 +21,16 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import edu.internet2.middleware.grouperClient.util.GrouperClientUtils;
@@ -45,9 +48,11 @@ public abstract class ConfigPropertiesCascadeBase {
 
   /**
    * help subclasses manipulate properties.  note, this is only for subclasses...
+   * the snapshot of values is cleared since the caller might change the properties
    * @return properties
    */
   protected Properties internalProperties() {
+    this.clearPropertyValueSnapshot();
     return this.properties;
   }
   
@@ -232,6 +237,118 @@ public abstract class ConfigPropertiesCascadeBase {
   /** properties from the properties file(s) */
   private Properties properties = new Properties();
 
+  /**
+   * trimmed and substituted values of the properties file(s) by key, without EL properties.
+   * blank values are empty string.  this is built on first read, and since a reload of the config
+   * files makes a new config object, it is swapped with the config object
+   */
+  private volatile Map<String, String> propertyValueSnapshot = null;
+
+  /** keys (without the suffix) which have an EL property, these are not in the snapshot since they are evaluated each read */
+  private volatile Set<String> elConfigKeysSnapshot = null;
+
+  /** booleans parsed from the snapshot by key */
+  private Map<String, Boolean> propertyValueBooleanSnapshot = new ConcurrentHashMap<String, Boolean>();
+
+  /** integers parsed from the snapshot by key */
+  private Map<String, Integer> propertyValueIntSnapshot = new ConcurrentHashMap<String, Integer>();
+
+  /**
+   * clear the snapshot of values, it will be built again on the next read
+   */
+  private void clearPropertyValueSnapshot() {
+    this.propertyValueSnapshot = null;
+    this.elConfigKeysSnapshot = null;
+    this.propertyValueBooleanSnapshot.clear();
+    this.propertyValueIntSnapshot.clear();
+  }
+
+  /**
+   * get the snapshot of values, build it if not there
+   * @return the snapshot or null if this config object is not loaded from files
+   */
+  @SuppressWarnings("unchecked")
+  private Map<String, String> propertyValueSnapshot() {
+    Map<String, String> snapshot = this.propertyValueSnapshot;
+    if (snapshot != null) {
+      return snapshot;
+    }
+    
+    //the singleton which points to the real config object isnt loaded
+    if (this.configFiles == null) {
+      return null;
+    }
+    
+    snapshot = new HashMap<String, String>();
+    Set<String> elConfigKeys = new HashSet<String>();
+    
+    for (String key : (Set<String>)(Object)this.properties.keySet()) {
+      if (key.endsWith(EL_CONFIG_SUFFIX)) {
+        elConfigKeys.add(key.substring(0, key.length() - EL_CONFIG_SUFFIX.length()));
+        continue;
+      }
+      String value = ConfigPropertiesCascadeUtils.trim(this.properties.getProperty(key));
+      value = substituteCommonVars(value);
+      snapshot.put(key, ConfigPropertiesCascadeUtils.defaultString(value));
+    }
+    
+    this.elConfigKeysSnapshot = Collections.unmodifiableSet(elConfigKeys);
+    snapshot = Collections.unmodifiableMap(snapshot);
+    this.propertyValueSnapshot = snapshot;
+    return snapshot;
+  }
+
+  /**
+   * if the value of this key can be read from the snapshot, i.e. the key is not EL,
+   * and there are no overrides for this config (overrides are for testing or thread local)
+   * @param key
+   * @return true if the snapshot can be used
+   */
+  private boolean usePropertyValueSnapshot(String key) {
+    
+    if (this.propertyValueSnapshot() == null || key.endsWith(EL_CONFIG_SUFFIX)) {
+      return false;
+    }
+    
+    Set<String> elConfigKeys = this.elConfigKeysSnapshot;
+    if (elConfigKeys == null || elConfigKeys.contains(key)) {
+      return false;
+    }
+    
+    //dont create the override maps here, just see if there are any
+    if (propertiesOverrideMap != null) {
+      Map<String, String> overrideMap = propertiesOverrideMap.get(this.getClass());
+      if (overrideMap != null && !overrideMap.isEmpty()) {
+        return false;
+      }
+    }
+    
+    if (propertiesThreadLocalOverrideMap != null) {
+      Map<Class<? extends ConfigPropertiesCascadeBase>, Map<String, String>> threadLocalOverrideMap = propertiesThreadLocalOverrideMap.get();
+      if (threadLocalOverrideMap != null) {
+        Map<String, String> overrideMap = threadLocalOverrideMap.get(this.getClass());
+        if (overrideMap != null && !overrideMap.isEmpty()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * get the property value from the snapshot, call usePropertyValueSnapshot first
+   * @param key
+   * @param defaultValue
+   * @return the value, default value if not there, or null if blank
+   */
+  private String propertyValueStringFromSnapshot(String key, String defaultValue) {
+    String value = this.propertyValueSnapshot().get(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    return ConfigPropertiesCascadeUtils.isBlank(value) ? null : value;
+  }
+
   /**
    * get the property value as a string
    * @param key
@@ -248,6 +365,9 @@ public abstract class ConfigPropertiesCascadeBase {
    * @return the property value
    */
   public String propertyValueString(String key, String defaultValue) {
+    if (this.usePropertyValueSnapshot(key)) {
+      return this.propertyValueStringFromSnapshot(key, defaultValue);
+    }
     return propertyValueString(key, defaultValue, false).getTheValue();
   }
 
@@ -257,6 +377,9 @@ public abstract class ConfigPropertiesCascadeBase {
    * @return the property value
    */
   public String propertyValueString(String key) {
+    if (this.usePropertyValueSnapshot(key)) {
+      return this.propertyValueStringFromSnapshot(key, null);
+    }
     return propertyValueString(key, null, false).getTheValue();
   }
 
@@ -1028,13 +1151,34 @@ public abstract class ConfigPropertiesCascadeBase {
    * @return the string
    */
   protected Boolean propertyValueBoolean(String key, Boolean defaultValue, boolean required) {
-    String value = propertyValueString(key, null, false).getTheValue();
+    boolean useSnapshot = this.usePropertyValueSnapshot(key);
+    if (useSnapshot) {
+      Boolean result = this.propertyValueBooleanSnapshot.get(key);
+      if (result != null) {
+        return result;
+      }
+    }
+    String value = useSnapshot ? this.propertyValueSnapshot().get(key) : propertyValueString(key, null, false).getTheValue();
     if (ConfigPropertiesCascadeUtils.isBlank(value) && !required) {
       return defaultValue;
     }
     if (ConfigPropertiesCascadeUtils.isBlank(value) && required) {
       throw new RuntimeException("Cant find boolean property " + key + " in properties file: " + this.getMainConfigClasspath() + ", it is required, expecting true or false");
     }
+    Boolean result = booleanValue(key, value);
+    if (useSnapshot) {
+      this.propertyValueBooleanSnapshot.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * convert a non blank value to boolean
+   * @param key
+   * @param value
+   * @return the boolean
+   */
+  private Boolean booleanValue(String key, String value) {
     if ("true".equalsIgnoreCase(value)) {
       return true;
     }
@@ -1072,7 +1216,14 @@ public abstract class ConfigPropertiesCascadeBase {
    * @return the string
    */
   protected Integer propertyValueInt(String key, Integer defaultValue, boolean required) {
-    String value = propertyValueString(key, null, false).getTheValue();
+    boolean useSnapshot = this.usePropertyValueSnapshot(key);
+    if (useSnapshot) {
+      Integer result = this.propertyValueIntSnapshot.get(key);
+      if (result != null) {
+        return result;
+      }
+    }
+    String value = useSnapshot ? this.propertyValueSnapshot().get(key) : propertyValueString(key, null, false).getTheValue();
     if (ConfigPropertiesCascadeUtils.isBlank(value) && !required) {
       return defaultValue;
     }
@@ -1080,7 +1231,11 @@ public abstract class ConfigPropertiesCascadeBase {
       throw new RuntimeException("Cant find integer property " + key + " in config file: " + this.getMainConfigClasspath() + ", it is required");
     }
     try {
-      return ConfigPropertiesCascadeUtils.intValue(value);
+      Integer result = ConfigPropertiesCascadeUtils.intValue(value);
+      if (useSnapshot) {
+        this.propertyValueIntSnapshot.put(key, result);
+      }
+      return result;
     } catch (Exception e) {
       
     }
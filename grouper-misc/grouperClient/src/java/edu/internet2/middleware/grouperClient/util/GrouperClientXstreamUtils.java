@@ -19,9 +19,12 @@
  */
 package edu.internet2.middleware.grouperClient.util;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import edu.internet2.middleware.grouperClient.collections.MultiKey;
 import edu.internet2.middleware.grouperClient.ws.WsRestClassLookup;
 import edu.internet2.middleware.grouperClientExt.com.thoughtworks.xstream.XStream;
 import edu.internet2.middleware.grouperClientExt.com.thoughtworks.xstream.io.xml.DomDriver;
@@ -40,11 +43,38 @@ public class GrouperClientXstreamUtils {
   static Log log = GrouperClientUtils.retrieveLog(GrouperClientXstreamUtils.class);
 
   /**
-   * get xstream with all client aliases intact
+   * xstream instances are thread safe once they are configured (including their annotations), 
+   * and expensive to build, so keep one for each combination of the config settings they are 
+   * built from.  If the config changes or alias classes are added, a new one will be built
+   */
+  private static Map<MultiKey, XStream> xstreamCache = new ConcurrentHashMap<MultiKey, XStream>();
+
+  /**
+   * get xstream with all client aliases intact.  This is shared so dont change the configuration
+   * of the result
    * @return xstream
    */
   public static XStream retrieveXstream() {
-    return retrieveXstream(WsRestClassLookup.getAliasClassMap());
+    
+    boolean ignoreExtraneousFields = GrouperClientConfig.retrieveConfig().propertyValueBooleanRequired(
+        "grouperClient.webService.ignoreExtraneousXmlFields");
+    String fieldsToOmit = GrouperClientConfig.retrieveConfig().propertyValueString("grouper.webService.omitXmlProperties");
+
+    //alias classes are only added, so the number of them tells if there are new ones
+    MultiKey multiKey = new MultiKey(ignoreExtraneousFields, GrouperClientUtils.defaultString(fieldsToOmit), 
+        WsRestClassLookup.getAliasClassMap().size());
+    
+    XStream xStream = xstreamCache.get(multiKey);
+    
+    if (xStream == null) {
+      xStream = retrieveXstream(WsRestClassLookup.getAliasClassMap());
+      //there are only a few combinations of settings
+      if (xstreamCache.size() > 10) {
+        xstreamCache.clear();
+      }
+      xstreamCache.put(multiKey, xStream);
+    }
+    return xStream;
   }
   
   /**
@@ -94,11 +124,15 @@ public class GrouperClientXstreamUtils {
     //dont try to get fancy
     xStream.setMode(XStream.NO_REFERENCES);
 
+    List<Class<?>> aliasClasses = new ArrayList<Class<?>>();
     for (String key : GrouperClientUtils.nonNull(aliasClassMap).keySet()) {
       xStream.alias(key, aliasClassMap.get(key));
+      aliasClasses.add(aliasClassMap.get(key));
     }
 
-    xStream.autodetectAnnotations(true);
+    //process the annotations (and the annotations of the classes of their fields) now, since
+    //autodetecting them changes the xstream while marshaling, which isnt thread safe
+    xStream.processAnnotations(aliasClasses.toArray(new Class[aliasClasses.size()]));
 
     //see if omitting fields
     String fieldsToOmit = GrouperClientConfig.retrieveConfig().propertyValueString("grouper.webService.omitXmlProperties");
@@ -30,6 +30,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import edu.internet2.middleware.grouperClient.GrouperClientWsException;
 import edu.internet2.middleware.grouperClient.discovery.DiscoveryClient;
@@ -54,11 +58,13 @@ import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.H
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.HttpClient;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.HttpException;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.HttpStatus;
+import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.UsernamePasswordCredentials;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.auth.AuthScope;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.methods.PostMethod;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.methods.StringRequestEntity;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.params.DefaultHttpParams;
+import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.params.HttpMethodParams;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.protocol.Protocol;
 import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.protocol.SecureProtocolSocketFactory;
@@ -563,9 +569,18 @@ public class GrouperClientWs {
       @Override
       public GrouperClientWs logic(FailoverLogicBean failoverLogicBean) {
         
-        //if not last connection then throw exception if not success.  If last connection then return the object
-        return executeServiceHelper(failoverLogicBean.getConnectionName(), 
-            urlSuffix, toSend, labelForLog, clientVersion, !failoverLogicBean.isLastConnection());
+        try {
+          //if not last connection then throw exception if not success.  If last connection then return the object
+          return executeServiceHelper(failoverLogicBean.getConnectionName(), 
+              urlSuffix, toSend, labelForLog, clientVersion, !failoverLogicBean.isLastConnection());
+        } catch (GrouperClientWsException gcwe) {
+          //the server responded, the connection is fine
+          throw gcwe;
+        } catch (RuntimeException re) {
+          //the server might be down, dont let other requests (or the next try) get its pooled connections
+          closeIdleHttpConnections();
+          throw re;
+        }
       }
     });
     
@@ -624,25 +639,30 @@ public class GrouperClientWs {
     grouperClientWs.method = grouperClientWs.postMethod(url, grouperClientWs.xStream, urlSuffix, 
         toSend, requestFile, responseCode, clientVersion);
 
-    //make sure a request came back
-    Header successHeader = grouperClientWs.method.getResponseHeader("X-Grouper-success");
-    String successString = successHeader == null ? null : successHeader.getValue();
-    if (GrouperClientUtils.isBlank(successString)) {
-      if (LOG.isDebugEnabled()) {
-        String theResponse = null;
-        try {
-          theResponse = GrouperClientUtils.responseBodyAsString(grouperClientWs.method);
-        } catch (Exception e) {
-          //ignore
+    try {
+      //make sure a request came back
+      Header successHeader = grouperClientWs.method.getResponseHeader("X-Grouper-success");
+      String successString = successHeader == null ? null : successHeader.getValue();
+      if (GrouperClientUtils.isBlank(successString)) {
+        if (LOG.isDebugEnabled()) {
+          String theResponse = null;
+          try {
+            theResponse = GrouperClientUtils.responseBodyAsString(grouperClientWs.method);
+          } catch (Exception e) {
+            //ignore
+          }
+          LOG.debug("Response: " + theResponse);
         }
-        LOG.debug("Response: " + theResponse);
+        throw new RuntimeException("Web service did not even respond! " + url);
       }
-      throw new RuntimeException("Web service did not even respond! " + url);
+      grouperClientWs.success = "T".equals(successString);
+      grouperClientWs.resultCode = grouperClientWs.method.getResponseHeader("X-Grouper-resultCode").getValue();
+      
+      grouperClientWs.response = GrouperClientUtils.responseBodyAsString(grouperClientWs.method);
+    } finally {
+      //give the connection back to the pool (or close it if not pooling)
+      grouperClientWs.method.releaseConnection();
     }
-    grouperClientWs.success = "T".equals(successString);
-    grouperClientWs.resultCode = grouperClientWs.method.getResponseHeader("X-Grouper-resultCode").getValue();
-    
-    grouperClientWs.response = GrouperClientUtils.responseBodyAsString(grouperClientWs.method);
 
     mostRecentResponse = grouperClientWs.response;
 
@@ -739,6 +759,111 @@ public class GrouperClientWs {
   }
   
   
+  /**
+   * connection pool shared by all web service calls, created (and the pool settings read) 
+   * the first time it is used.  the JVM makes sure that only happens once without locking
+   */
+  private static class HttpConnectionManagerHolder {
+    
+    /** the connection manager or null if not pooling connections */
+    private static final MultiThreadedHttpConnectionManager httpConnectionManager = createHttpConnectionManager();
+    
+  }
+  
+  /**
+   * get the connection pool shared by all web service calls so connections are kept alive
+   * and reused.  note, the pool settings are only read once
+   * @return the connection manager or null if not pooling connections
+   */
+  private static MultiThreadedHttpConnectionManager httpConnectionManager() {
+    return HttpConnectionManagerHolder.httpConnectionManager;
+  }
+  
+  /**
+   * make the connection pool from the config, and schedule the closing of connections which are idle too long
+   * @return the connection manager or null if not pooling connections
+   */
+  static MultiThreadedHttpConnectionManager createHttpConnectionManager() {
+    
+    if (!GrouperClientConfig.retrieveConfig().propertyValueBoolean("grouperClient.webService.httpConnectionPool.enabled", true)) {
+      return null;
+    }
+    
+    MultiThreadedHttpConnectionManager theHttpConnectionManager = new MultiThreadedHttpConnectionManager();
+    HttpConnectionManagerParams params = theHttpConnectionManager.getParams();
+    
+    params.setDefaultMaxConnectionsPerHost(GrouperClientConfig.retrieveConfig().propertyValueInt(
+        "grouperClient.webService.httpConnectionPool.maxConnectionsPerHost", 20));
+    params.setMaxTotalConnections(GrouperClientConfig.retrieveConfig().propertyValueInt(
+        "grouperClient.webService.httpConnectionPool.maxTotalConnections", 100));
+    
+    //make sure a connection the server closed while idle is not used
+    params.setStaleCheckingEnabled(true);
+    
+    int idleTimeoutMillis = GrouperClientConfig.retrieveConfig().propertyValueInt(
+        "grouperClient.webService.httpConnectionPool.idleTimeoutMillis", 30000);
+    int idleCheckIntervalMillis = GrouperClientConfig.retrieveConfig().propertyValueInt(
+        "grouperClient.webService.httpConnectionPool.idleCheckIntervalMillis", 10000);
+    
+    scheduleCloseIdleConnections(theHttpConnectionManager, idleTimeoutMillis, idleCheckIntervalMillis);
+    
+    return theHttpConnectionManager;
+  }
+  
+  /**
+   * periodically close the pooled connections which have been idle too long, in a thread which
+   * doesnt keep the JVM up, so web service calls dont have to
+   * @param theHttpConnectionManager
+   * @param idleTimeoutMillis connections idle longer than this are closed, or -1 to not close them
+   * @param idleCheckIntervalMillis how often to check, or -1 to not check
+   * @return the executor running the check so it can be shut down, or null if not checking
+   */
+  static ScheduledExecutorService scheduleCloseIdleConnections(
+      final MultiThreadedHttpConnectionManager theHttpConnectionManager, 
+      final int idleTimeoutMillis, int idleCheckIntervalMillis) {
+    
+    if (idleTimeoutMillis < 0 || idleCheckIntervalMillis <= 0) {
+      return null;
+    }
+    
+    ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+      /** make threads which dont keep the JVM up */
+      private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+      public Thread newThread(Runnable runnable) {
+        Thread thread = this.threadFactory.newThread(runnable);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    
+    scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+
+      public void run() {
+        //dont let an exception cancel the next runs
+        try {
+          theHttpConnectionManager.closeIdleConnections(idleTimeoutMillis);
+        } catch (RuntimeException re) {
+          LOG.error("Error closing idle http connections", re);
+        }
+      }
+    }, idleCheckIntervalMillis, idleCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    
+    return scheduledExecutorService;
+  }
+  
+  /**
+   * close the pooled connections which are not in use, e.g. when a server is not responding
+   * and the failover client is going to try another one
+   */
+  public static void closeIdleHttpConnections() {
+    MultiThreadedHttpConnectionManager theHttpConnectionManager = httpConnectionManager();
+    if (theHttpConnectionManager != null) {
+      theHttpConnectionManager.closeIdleConnections(0);
+    }
+  }
+  
   /**
    * http client
    * @return the http client
@@ -758,7 +883,10 @@ public class GrouperClientWs {
       Protocol.registerProtocol("https", easyhttps);
     }
     
-    HttpClient httpClient = new HttpClient();
+    MultiThreadedHttpConnectionManager theHttpConnectionManager = httpConnectionManager();
+    
+    HttpClient httpClient = theHttpConnectionManager == null ? new HttpClient() 
+        : new HttpClient(theHttpConnectionManager);
 
     DefaultHttpParams.getDefaultParams().setParameter(
         HttpMethodParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler(0, false));
@@ -840,8 +968,10 @@ public class GrouperClientWs {
     //NOTE: aStem:aGroup urlencoded substitutes %3A for a colon
     PostMethod postMethod = new PostMethod(url);
 
-    //no keep alive so response is easier to indent for tests
-    postMethod.setRequestHeader("Connection", "close");
+    //no keep alive if not pooling connections
+    if (httpConnectionManager() == null) {
+      postMethod.setRequestHeader("Connection", "close");
+    }
     
     return postMethod;
   }
@@ -862,12 +992,13 @@ public class GrouperClientWs {
   private PostMethod postMethod(String url, XStream theXstream, 
       String urlSuffix, Object objectToMarshall, File logFile, int[] responseCode, String clientVersion)  {
     
+    PostMethod postMethod = null;
     try {
       String theContentType = GrouperClientUtils.defaultIfBlank(this.contentType, "text/xml");
       
       HttpClient httpClient = httpClient();
   
-      PostMethod postMethod = postMethod(url, urlSuffix, clientVersion);
+      postMethod = postMethod(url, urlSuffix, clientVersion);
   
       String requestDocument = objectToMarshall instanceof String ? (String)objectToMarshall : marshalObject(theXstream, objectToMarshall);
       
@@ -897,7 +1028,10 @@ public class GrouperClientWs {
   //      Content-Length: 226
   //      Content-Type: text/xml; charset=UTF-8
         headers.append("POST ").append(postMethod.getURI().getPathQuery()).append(" HTTP/1.1\n");
-        headers.append("Connection: close\n");
+        Header connectionHeader = postMethod.getRequestHeader("Connection");
+        if (connectionHeader != null) {
+          headers.append("Connection: ").append(connectionHeader.getValue()).append("\n");
+        }
         headers.append("Authorization: Basic xxxxxxxxxxxxxxxx\n");
         headers.append("User-Agent: Jakarta Commons-HttpClient/3.1\n");
         headers.append("Host: ").append(postMethod.getURI().getHost()).append(":")
@@ -934,6 +1068,11 @@ public class GrouperClientWs {
       return postMethod;
     } catch (Exception e) {
       
+      //dont leave the connection checked out of the pool
+      if (postMethod != null) {
+        postMethod.releaseConnection();
+      }
+      
       if (e instanceof RuntimeException) {
         throw (RuntimeException)e;
       }
@@ -0,0 +1,235 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouperClient.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+import edu.internet2.middleware.grouperClient.ws.GcWebServiceError;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAddMemberResult;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAddMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAssignAttributeBatchEntry;
+import edu.internet2.middleware.grouperClient.ws.beans.WsAssignAttributesBatchResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsDeleteMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsHasMemberResults;
+import edu.internet2.middleware.grouperClient.ws.beans.WsResultMeta;
+import edu.internet2.middleware.grouperClient.ws.beans.WsSubject;
+import edu.internet2.middleware.grouperClient.ws.beans.WsSubjectLookup;
+
+
+/**
+ *
+ */
+public class GcBatchExecutorTest extends TestCase {
+
+  /**
+   * 
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new GcBatchExecutorTest("testGetWithoutFlush"));
+  }
+  
+  /**
+   * 
+   */
+  public GcBatchExecutorTest() {
+    super();
+    
+  }
+
+  /**
+   * @param name
+   */
+  public GcBatchExecutorTest(String name) {
+    super(name);
+    
+  }
+
+  /**
+   * adds members without calling the web service, subjects with ids starting with "bad" are not found, 
+   * and group "missing" fails the whole request
+   */
+  private static class GcBatchWebServiceFake implements GcBatchWebService {
+
+    /** group name and number of subjects of each request */
+    private List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * @see GcBatchWebService#addMember(String, List, String, WsSubjectLookup)
+     */
+    public WsAddMemberResults addMember(String groupName, List<WsSubjectLookup> wsSubjectLookups,
+        String clientVersion, WsSubjectLookup actAsSubject) {
+      this.requests.add(groupName + ": " + wsSubjectLookups.size());
+      if ("missing".equals(groupName)) {
+        throw new RuntimeException("group not found: " + groupName);
+      }
+      boolean success = true;
+      WsAddMemberResult[] results = new WsAddMemberResult[wsSubjectLookups.size()];
+      for (int i=0;i<results.length;i++) {
+        String subjectId = wsSubjectLookups.get(i).getSubjectId();
+        results[i] = new WsAddMemberResult();
+        WsSubject wsSubject = new WsSubject();
+        wsSubject.setId(subjectId);
+        results[i].setWsSubject(wsSubject);
+        WsResultMeta wsResultMeta = new WsResultMeta();
+        if (subjectId.startsWith("bad")) {
+          wsResultMeta.setResultCode("SUBJECT_NOT_FOUND");
+          wsResultMeta.setSuccess("F");
+          success = false;
+        } else {
+          wsResultMeta.setResultCode("SUCCESS");
+          wsResultMeta.setSuccess("T");
+        }
+        results[i].setResultMetadata(wsResultMeta);
+      }
+      WsAddMemberResults wsAddMemberResults = new WsAddMemberResults();
+      wsAddMemberResults.setResults(results);
+      if (!success) {
+        //like the Gc* classes do if some subjects were not successful
+        throw new GcWebServiceError(wsAddMemberResults);
+      }
+      return wsAddMemberResults;
+    }
+
+    /**
+     * @see GcBatchWebService#deleteMember(String, List, String, WsSubjectLookup)
+     */
+    public WsDeleteMemberResults deleteMember(String groupName, List<WsSubjectLookup> wsSubjectLookups,
+        String clientVersion, WsSubjectLookup actAsSubject) {
+      throw new RuntimeException("Not expected");
+    }
+
+    /**
+     * @see GcBatchWebService#hasMember(String, List, String, WsSubjectLookup)
+     */
+    public WsHasMemberResults hasMember(String groupName, List<WsSubjectLookup> wsSubjectLookups,
+        String clientVersion, WsSubjectLookup actAsSubject) {
+      throw new RuntimeException("Not expected");
+    }
+
+    /**
+     * @see GcBatchWebService#assignAttributes(List, String, WsSubjectLookup)
+     */
+    public WsAssignAttributesBatchResults assignAttributes(
+        List<WsAssignAttributeBatchEntry> wsAssignAttributeBatchEntries, String clientVersion,
+        WsSubjectLookup actAsSubject) {
+      throw new RuntimeException("Not expected");
+    }
+    
+  }
+
+  /**
+   * items of the same group are sent together, a request per full batch
+   * @throws Exception 
+   */
+  public void testBatching() throws Exception {
+    GcBatchWebServiceFake gcBatchWebServiceFake = new GcBatchWebServiceFake();
+    GcBatchExecutor gcBatchExecutor = new GcBatchExecutor().assignBatchWebService(gcBatchWebServiceFake)
+      .assignItemsPerRequest(3).assignConcurrentRequests(2);
+    
+    List<Future<WsAddMemberResult>> futures = new ArrayList<Future<WsAddMemberResult>>();
+    for (int i=0;i<7;i++) {
+      futures.add(gcBatchExecutor.addMember("a:b", new WsSubjectLookup("subj" + i, null, null)));
+    }
+    Future<WsAddMemberResult> otherGroupFuture = gcBatchExecutor.addMember("a:c", new WsSubjectLookup("other", null, null));
+    
+    gcBatchExecutor.shutdown();
+    
+    List<String> requests = new ArrayList<String>(gcBatchWebServiceFake.requests);
+    Collections.sort(requests);
+    assertEquals("[a:b: 1, a:b: 3, a:b: 3, a:c: 1]", requests.toString());
+    
+    //each item gets its own result
+    for (int i=0;i<7;i++) {
+      assertTrue(futures.get(i).isDone());
+      assertEquals("subj" + i, futures.get(i).get().getWsSubject().getId());
+    }
+    assertEquals("other", otherGroupFuture.get().getWsSubject().getId());
+    
+    try {
+      gcBatchExecutor.addMember("a:b", new WsSubjectLookup("subj8", null, null));
+      fail("Shouldnt be able to submit after shutdown");
+    } catch (RuntimeException re) {
+      //good
+    }
+  }
+
+  /**
+   * if some subjects are not successful, the others still are.  if the request fails, all items fail
+   * @throws Exception 
+   */
+  public void testPartialFailure() throws Exception {
+    GcBatchWebServiceFake gcBatchWebServiceFake = new GcBatchWebServiceFake();
+    GcBatchExecutor gcBatchExecutor = new GcBatchExecutor().assignBatchWebService(gcBatchWebServiceFake)
+      .assignItemsPerRequest(10);
+
+    Future<WsAddMemberResult> goodFuture = gcBatchExecutor.addMember("a:b", new WsSubjectLookup("subj0", null, null));
+    Future<WsAddMemberResult> badFuture = gcBatchExecutor.addMember("a:b", new WsSubjectLookup("bad0", null, null));
+    List<Future<WsAddMemberResult>> missingFutures = new ArrayList<Future<WsAddMemberResult>>();
+    missingFutures.add(gcBatchExecutor.addMember("missing", new WsSubjectLookup("subj0", null, null)));
+    missingFutures.add(gcBatchExecutor.addMember("missing", new WsSubjectLookup("subj1", null, null)));
+
+    gcBatchExecutor.shutdown();
+
+    assertEquals("SUCCESS", goodFuture.get().getResultMetadata().getResultCode());
+    assertEquals("SUBJECT_NOT_FOUND", badFuture.get().getResultMetadata().getResultCode());
+    assertEquals("bad0", badFuture.get().getWsSubject().getId());
+
+    for (Future<WsAddMemberResult> future : missingFutures) {
+      try {
+        future.get();
+        fail("The request failed");
+      } catch (ExecutionException ee) {
+        assertTrue(ee.getCause().getMessage(), ee.getCause().getMessage().contains("group not found"));
+      }
+    }
+  }
+
+  /**
+   * getting the result of an item of a batch which is not full sends the batch, instead of waiting forever
+   * @throws Exception 
+   */
+  public void testGetWithoutFlush() throws Exception {
+    GcBatchWebServiceFake gcBatchWebServiceFake = new GcBatchWebServiceFake();
+    GcBatchExecutor gcBatchExecutor = new GcBatchExecutor().assignBatchWebService(gcBatchWebServiceFake)
+      .assignItemsPerRequest(100);
+
+    Future<WsAddMemberResult> future = gcBatchExecutor.addMember("a:b", new WsSubjectLookup("subj0", null, null));
+    Future<WsAddMemberResult> future1 = gcBatchExecutor.addMember("a:b", new WsSubjectLookup("subj1", null, null));
+    assertFalse(future.isDone());
+    assertEquals(0, gcBatchWebServiceFake.requests.size());
+
+    assertEquals("subj1", future1.get(10, TimeUnit.SECONDS).getWsSubject().getId());
+    assertEquals("subj0", future.get().getWsSubject().getId());
+    assertEquals("[a:b: 2]", gcBatchWebServiceFake.requests.toString());
+
+    //the next item is in a new batch
+    Future<WsAddMemberResult> future2 = gcBatchExecutor.addMember("a:b", new WsSubjectLookup("subj2", null, null));
+    assertEquals("subj2", future2.get().getWsSubject().getId());
+    assertEquals("[a:b: 2, a:b: 1]", gcBatchWebServiceFake.requests.toString());
+
+    gcBatchExecutor.shutdown();
+    assertEquals(2, gcBatchWebServiceFake.requests.size());
+  }
+
+}
@@ -200,6 +200,52 @@ public class ConfigPropertiesCascadeBaseTest extends TestCase {
     
   }
   
+  /**
+   * testCascadeConfig.properties, reads from the snapshot of values and with overrides
+   */
+  public void testPropertyValueSnapshot() {
+    
+    ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertiesOverrideMap().clear();
+    ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertiesThreadLocalOverrideMap().clear();
+    
+    try {
+      //read twice so the second read is from the snapshot
+      for (int i=0;i<2;i++) {
+        assertEquals("somethingElse2", ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueString("test2"));
+        assertEquals("abc", ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueString("test4", "abc"));
+        assertEquals(4, ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueInt("someInt", -1));
+        assertEquals(-1, ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueInt("someInt123", -1));
+        assertTrue(ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueBoolean("someBool", false));
+        assertNull(ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueBoolean("someBool123"));
+        
+        try {
+          ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueBoolean("someBool2", false);
+          fail("Should catch bad type");
+        } catch (Exception e) {
+          //good
+        }
+        
+        //EL properties are not in the snapshot
+        assertEquals("ab", ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueString("some.config.1"));
+      }
+      
+      //overrides are used instead of the snapshot
+      ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertiesOverrideMap().put("someInt", "5");
+      assertEquals(5, ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueInt("someInt", -1));
+      ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertiesOverrideMap().clear();
+      assertEquals(4, ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueInt("someInt", -1));
+      
+      ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertiesThreadLocalOverrideMap().put("someBool", "false");
+      assertFalse(ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueBoolean("someBool", true));
+      ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertiesThreadLocalOverrideMap().clear();
+      assertTrue(ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertyValueBoolean("someBool", false));
+      
+    } finally {
+      ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertiesOverrideMap().clear();
+      ConfigPropertiesOverrideHasHierarchy.retrieveConfig().propertiesThreadLocalOverrideMap().clear();
+    }
+  }
+  
   /**
    * testCascadeConfig2.properties
    */
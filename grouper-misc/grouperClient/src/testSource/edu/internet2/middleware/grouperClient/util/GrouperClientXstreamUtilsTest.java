@@ -0,0 +1,149 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouperClient.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+import edu.internet2.middleware.grouperClient.ws.WsRestClassLookup;
+import edu.internet2.middleware.grouperClientExt.com.thoughtworks.xstream.XStream;
+import edu.internet2.middleware.grouperClientExt.com.thoughtworks.xstream.annotations.XStreamAlias;
+import edu.internet2.middleware.grouperClientExt.com.thoughtworks.xstream.annotations.XStreamOmitField;
+
+
+/**
+ *
+ */
+public class GrouperClientXstreamUtilsTest extends TestCase {
+
+  /**
+   * 
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new GrouperClientXstreamUtilsTest("testAnnotationsConcurrent"));
+  }
+  
+  /**
+   * 
+   */
+  public GrouperClientXstreamUtilsTest() {
+    super();
+    
+  }
+
+  /**
+   * @param name
+   */
+  public GrouperClientXstreamUtilsTest(String name) {
+    super(name);
+    
+  }
+
+  /**
+   * bean with annotations
+   */
+  public static class BeanAnnotated {
+    
+    /** renamed in the xml */
+    @XStreamAlias("renamed")
+    private String field1 = "value1";
+    
+    /** not in the xml */
+    @XStreamOmitField
+    private String omitted = "omittedValue";
+    
+    /** annotations of field types are processed too */
+    private BeanAnnotatedChild child = new BeanAnnotatedChild();
+  }
+  
+  /**
+   * bean with annotations which is only a field of an alias class
+   */
+  public static class BeanAnnotatedChild {
+    
+    /** not in the xml */
+    @XStreamOmitField
+    private String childOmitted = "childOmittedValue";
+    
+    /** in the xml */
+    private String childField = "childValue";
+  }
+  
+  /**
+   * annotations are processed when the xstream is built, not while marshaling
+   */
+  public void testAnnotations() {
+    Map<String, Class<?>> aliasClassMap = new HashMap<String, Class<?>>();
+    aliasClassMap.put("BeanAnnotated", BeanAnnotated.class);
+    
+    String xml = GrouperClientXstreamUtils.retrieveXstream(aliasClassMap).toXML(new BeanAnnotated());
+    
+    assertTrue(xml, xml.contains("<renamed>value1</renamed>"));
+    assertTrue(xml, xml.contains("<childField>childValue</childField>"));
+    assertFalse(xml, xml.contains("omittedValue"));
+    assertFalse(xml, xml.contains("childOmittedValue"));
+  }
+  
+  /**
+   * the shared xstream is rebuilt when alias classes are added, and can marshal in many threads at once
+   * @throws Exception 
+   */
+  public void testAnnotationsConcurrent() throws Exception {
+    
+    WsRestClassLookup.addAliasClass(BeanAnnotated.class);
+    
+    final XStream xStream = GrouperClientXstreamUtils.retrieveXstream();
+    assertSame(xStream, GrouperClientXstreamUtils.retrieveXstream());
+    
+    final String expected = xStream.toXML(new BeanAnnotated());
+    assertTrue(expected, expected.startsWith("<BeanAnnotated>"));
+    assertFalse(expected, expected.contains("omittedValue"));
+    
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> futures = new ArrayList<Future<String>>();
+      for (int i=0;i<8;i++) {
+        futures.add(executorService.submit(new Callable<String>() {
+
+          public String call() {
+            for (int j=0;j<500;j++) {
+              String xml = xStream.toXML(new BeanAnnotated());
+              if (!expected.equals(xml)) {
+                return xml;
+              }
+            }
+            return expected;
+          }
+        }));
+      }
+      for (Future<String> future : futures) {
+        assertEquals(expected, future.get());
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+  
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouperClient.ws;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.HostConfiguration;
+import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.HttpConnection;
+import edu.internet2.middleware.grouperClientExt.org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+
+
+/**
+ *
+ */
+public class GrouperClientWsTest extends TestCase {
+
+  /**
+   * 
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new GrouperClientWsTest("testScheduleCloseIdleConnections"));
+  }
+  
+  /**
+   * 
+   */
+  public GrouperClientWsTest() {
+    super();
+    
+  }
+
+  /**
+   * @param name
+   */
+  public GrouperClientWsTest(String name) {
+    super(name);
+    
+  }
+
+  /** accepts connections so there is something to pool */
+  private ServerSocket serverSocket;
+  
+  /** pool to test */
+  private MultiThreadedHttpConnectionManager httpConnectionManager;
+  
+  /**
+   * @see junit.framework.TestCase#setUp()
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    this.serverSocket = new ServerSocket(0, 10, InetAddress.getByName("localhost"));
+    this.httpConnectionManager = new MultiThreadedHttpConnectionManager();
+  }
+
+  /**
+   * @see junit.framework.TestCase#tearDown()
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    this.httpConnectionManager.shutdown();
+    this.serverSocket.close();
+    super.tearDown();
+  }
+
+  /**
+   * open a connection and put it back in the pool
+   * @throws Exception 
+   */
+  private void poolConnection() throws Exception {
+    HostConfiguration hostConfiguration = new HostConfiguration();
+    hostConfiguration.setHost("localhost", this.serverSocket.getLocalPort());
+    HttpConnection httpConnection = this.httpConnectionManager.getConnectionWithTimeout(hostConfiguration, 1000);
+    httpConnection.open();
+    this.httpConnectionManager.releaseConnection(httpConnection);
+    assertEquals(1, this.httpConnectionManager.getConnectionsInPool());
+  }
+  
+  /**
+   * idle connections are closed in the background without a web service call
+   * @throws Exception 
+   */
+  public void testScheduleCloseIdleConnections() throws Exception {
+    
+    poolConnection();
+    
+    ScheduledExecutorService scheduledExecutorService = GrouperClientWs.scheduleCloseIdleConnections(
+        this.httpConnectionManager, 0, 50);
+    try {
+      assertNotNull(scheduledExecutorService);
+      
+      long startMillis = System.currentTimeMillis();
+      while (this.httpConnectionManager.getConnectionsInPool() > 0 
+          && System.currentTimeMillis() - startMillis < 5000) {
+        Thread.sleep(20);
+      }
+      assertEquals(0, this.httpConnectionManager.getConnectionsInPool());
+    } finally {
+      scheduledExecutorService.shutdownNow();
+    }
+  }
+  
+  /**
+   * connections which havent been idle for the timeout stay in the pool
+   * @throws Exception 
+   */
+  public void testScheduleCloseIdleConnectionsNotIdleLongEnough() throws Exception {
+    
+    poolConnection();
+    
+    ScheduledExecutorService scheduledExecutorService = GrouperClientWs.scheduleCloseIdleConnections(
+        this.httpConnectionManager, 60000, 50);
+    try {
+      Thread.sleep(300);
+      assertEquals(1, this.httpConnectionManager.getConnectionsInPool());
+    } finally {
+      scheduledExecutorService.shutdownNow();
+    }
+  }
+  
+  /**
+   * nothing is scheduled if idle connections arent closed
+   */
+  public void testScheduleCloseIdleConnectionsDisabled() {
+    assertNull(GrouperClientWs.scheduleCloseIdleConnections(this.httpConnectionManager, -1, 50));
+    assertNull(GrouperClientWs.scheduleCloseIdleConnections(this.httpConnectionManager, 30000, -1));
+  }
+  
+}
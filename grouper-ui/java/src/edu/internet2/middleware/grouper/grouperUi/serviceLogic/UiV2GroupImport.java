@@ -69,6 +69,7 @@ import edu.internet2.middleware.grouper.j2ee.GrouperRequestWrapper;
 import edu.internet2.middleware.grouper.j2ee.GrouperUiRestServlet;
 import edu.internet2.middleware.grouper.misc.GrouperSessionHandler;
 import edu.internet2.middleware.grouper.privs.AccessPrivilege;
+import edu.internet2.middleware.grouper.subj.LazySubject;
 import edu.internet2.middleware.grouper.ui.GrouperUiFilter;
 import edu.internet2.middleware.grouper.ui.exceptions.ControllerDone;
 import edu.internet2.middleware.grouper.ui.exceptions.NoSessionException;
@@ -681,32 +682,53 @@ public class UiV2GroupImport {
           }
         }
         
-        //first lets add some members
-        for (int i=0;i<subjectList.size();i++) {
-          
-          Subject subject = subjectList.get(i);
+        //subjects which cant be unwrapped are errors, the others are added
+        List<Subject> importSubjectList = new ArrayList<Subject>();
+        List<Subject> unwrappedSubjectList = new ArrayList<Subject>();
+        for (Subject subject : subjectList) {
           
+          Subject unwrappedSubject = subject;
           if (subject instanceof ImportSubjectWrapper) {
             try {
-              subject = ((ImportSubjectWrapper)subject).wrappedSubject();
+              unwrappedSubject = ((ImportSubjectWrapper)subject).wrappedSubject();
             } catch (Exception e) {
-              //ignore
+              String errorLine = errorLine(subject, GrouperUtil.xmlEscape(e.getMessage()));
+              errors.append(errorLine).append("\n");
+              errorsCount++;
+              LOG.warn(errorLine, e);
+              continue;
             }
           }
+          importSubjectList.add(subject);
+          unwrappedSubjectList.add(unwrappedSubject);
+        }
+
+        //first lets add some members, in bulk if that works
+        Integer bulkAddedCount = bulkChangeMembers(group, unwrappedSubjectList, true);
+        
+        if (bulkAddedCount != null) {
+          addedCount = bulkAddedCount;
+        } else {
           
-          try {
-              
-            group.addMember(subject, false);
+          //something failed, go one by one so the errors are reported by subject
+          for (int i=0;i<importSubjectList.size();i++) {
             
-            addedCount++;
-          } catch (Exception e) {
+            Subject subject = importSubjectList.get(i);
             
-            String errorLine = errorLine(subject, GrouperUtil.xmlEscape(e.getMessage()));
-            errors.append(errorLine).append("\n");
-            errorsCount++;
-            LOG.warn(errorLine, e);
+            try {
+                
+              group.addMember(unwrappedSubjectList.get(i), false);
+              
+              addedCount++;
+            } catch (Exception e) {
+              
+              String errorLine = errorLine(subject, GrouperUtil.xmlEscape(e.getMessage()));
+              errors.append(errorLine).append("\n");
+              errorsCount++;
+              LOG.warn(errorLine, e);
+            }
+      
           }
-    
         }
     
         boolean didntImportDueToSubjects = errorsCount > 0;
@@ -715,17 +737,29 @@ public class UiV2GroupImport {
         //remove the ones which are already there
         if (importReplaceMembers && !didntImportDueToSubjects) {
           
+          List<Subject> existingSubjects = new ArrayList<Subject>();
           for (Member existingMember : existingMembers) {
+            existingSubjects.add(new LazySubject(existingMember));
+          }
+          
+          Integer bulkDeletedCount = bulkChangeMembers(group, existingSubjects, false);
+          
+          if (bulkDeletedCount != null) {
+            deletedCount = bulkDeletedCount;
+          } else {
             
-            try {
-              group.deleteMember(existingMember, false);
-              deletedCount++;
-            } catch (Exception e) {
-              String errorLine = errorLine(existingMember.getSubject(), GrouperUtil.xmlEscape(e.getMessage()));
-              errors.append(errorLine).append("\n");
-              errorsCount++;
-              LOG.warn(errorLine, e);
-            
+            for (Member existingMember : existingMembers) {
+              
+              try {
+                group.deleteMember(existingMember, false);
+                deletedCount++;
+              } catch (Exception e) {
+                String errorLine = errorLine(existingMember.getSubject(), GrouperUtil.xmlEscape(e.getMessage()));
+                errors.append(errorLine).append("\n");
+                errorsCount++;
+                LOG.warn(errorLine, e);
+              
+              }
             }
           }
         }
@@ -817,6 +851,31 @@ public class UiV2GroupImport {
     }
   
   
+  /**
+   * add or delete the subjects with the bulk API in one transaction
+   * @param group
+   * @param subjects
+   * @param add true to add, false to delete
+   * @return the number of members added or deleted, or null if it failed and nothing was changed, 
+   * so the caller can go subject by subject to report the errors
+   */
+  private static Integer bulkChangeMembers(final Group group, final List<Subject> subjects, final boolean add) {
+    try {
+      return (Integer)HibernateSession.callbackHibernateSession(
+          GrouperTransactionType.READ_WRITE_NEW, AuditControl.WILL_NOT_AUDIT,
+          new HibernateHandler() {
+            public Object callback(HibernateHandlerBean hibernateHandlerBean)
+                throws GrouperDAOException {
+              return add ? group.addMembers(subjects) : group.deleteMembers(subjects);
+            }
+          });
+    } catch (Exception e) {
+      LOG.warn("Bulk " + (add ? "add" : "delete") + " of " + GrouperUtil.length(subjects) 
+          + " members failed in group: " + group.getName() + ", will go one by one", e);
+      return null;
+    }
+  }
+
   /**
    * get an error line
    * @param subject
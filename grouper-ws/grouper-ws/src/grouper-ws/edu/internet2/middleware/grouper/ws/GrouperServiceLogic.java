@@ -142,10 +142,13 @@ import edu.internet2.middleware.grouper.ws.coresoap.WsStemSaveResult.WsStemSaveR
 import edu.internet2.middleware.grouper.ws.coresoap.WsSubjectLookup.MemberFindResult;
 import edu.internet2.middleware.grouper.ws.exceptions.WebServiceDoneException;
 import edu.internet2.middleware.grouper.ws.exceptions.WsInvalidQueryException;
+import edu.internet2.middleware.grouper.ws.member.WsGetMembersStreamer;
+import edu.internet2.middleware.grouper.ws.member.WsGetMembershipsStreamer;
 import edu.internet2.middleware.grouper.ws.member.WsMemberFilter;
 import edu.internet2.middleware.grouper.ws.query.StemScope;
 import edu.internet2.middleware.grouper.ws.query.WsQueryFilterType;
 import edu.internet2.middleware.grouper.ws.query.WsStemQueryFilterType;
+import edu.internet2.middleware.grouper.ws.rest.GrouperRestServlet;
 import edu.internet2.middleware.grouper.ws.rest.attribute.WsAssignAttributeDefActionsStatus;
 import edu.internet2.middleware.grouper.ws.rest.attribute.WsAssignAttributeLogic;
 import edu.internet2.middleware.grouper.ws.rest.attribute.WsInheritanceSetRelation;
@@ -1470,6 +1473,14 @@ public class GrouperServiceLogic {
               continue;
             }
             
+            //for large groups, read the members and subjects a page at a time when the rest response is written
+            if (queryOptions == null && WsGetMembersStreamer.streamingEnabled() && GrouperRestServlet.isRestRequest()
+                && group.canReadField(fieldName == null ? Group.getDefaultList() : fieldName)) {
+              wsGetMembersResult.assignWsGetMembersStreamer(new WsGetMembersStreamer(group, fieldName, 
+                  memberFilter.getMembershipType(), sources, subjectAttributeNamesToRetrieve, includeSubjectDetail));
+              continue;
+            }
+            
             // lets get the members, cant be null
             Set<Member> members = memberFilter.getMembers(group, fieldName, sources, queryOptions);
             Member.resolveSubjects(members, true);
@@ -1768,19 +1779,26 @@ public class GrouperServiceLogic {
         membershipFinder.assignAttributeDefIds(attributeDefIds);
         Set<Object[]> membershipObjects = membershipFinder.findMembershipsMembers();
         
+        //for large results, resolve the subjects a page at a time when the rest response is written
+        boolean streaming = WsGetMembershipsStreamer.streamSubjectsEnabled() && GrouperRestServlet.isRestRequest();
         
-        
-        Membership.resolveSubjects(membershipObjects);
+        if (!streaming) {
+          Membership.resolveSubjects(membershipObjects);
+        }
         
         //calculate and return the results
-        wsGetMembershipsResults.assignResult(membershipObjects, includeGroupDetail, includeSubjectDetail, subjectAttributeNames);
+        wsGetMembershipsResults.assignResult(membershipObjects, includeGroupDetail, includeSubjectDetail, 
+            subjectAttributeNames, streaming);
       }
       wsGetMembershipsResults.assignResultCode(WsGetMembershipsResultsCode.SUCCESS);
       
+      WsGetMembershipsStreamer wsGetMembershipsStreamer = wsGetMembershipsResults.retrieveWsGetMembershipsStreamer();
+      
       wsGetMembershipsResults.getResultMetadata().setResultMessage(
           "Found " + GrouperUtil.length(wsGetMembershipsResults.getWsMemberships()) 
           + " results involving " + GrouperUtil.length(wsGetMembershipsResults.getWsGroups())
-          + " groups and " + GrouperUtil.length(wsGetMembershipsResults.getWsSubjects()) + " subjects");
+          + " groups and " + (wsGetMembershipsStreamer == null ? GrouperUtil.length(wsGetMembershipsResults.getWsSubjects()) 
+              : wsGetMembershipsStreamer.subjectCount()) + " subjects");
 
         
     } catch (Exception e) {
@@ -2016,6 +2034,9 @@ public class GrouperServiceLogic {
       wsGetMembersResults.setResults(lastResult);
     }
     
+    //the lite result copies the subjects, so they cant be streamed
+    wsGetMembersResults.assignStreamedSubjects();
+    
     return new WsGetMembersLiteResult(wsGetMembersResults);
   }
 
@@ -2485,6 +2506,14 @@ public class GrouperServiceLogic {
   
       int resultIndex = 0;
   
+      //resolve the subjects with a source in bulk
+      WsSubjectLookup.retrieveSubjectsIfNeeded(subjectLookups);
+      
+      //subjects which were found, and their results, in order of the request
+      List<Subject> subjectsToCheck = new ArrayList<Subject>();
+      List<WsHasMemberResult> wsHasMemberResultsToCheck = new ArrayList<WsHasMemberResult>();
+      List<WsSubjectLookup> wsSubjectLookupsToCheck = new ArrayList<WsSubjectLookup>();
+      
       for (WsSubjectLookup wsSubjectLookup : subjectLookups) {
         WsHasMemberResult wsHasMemberResult = null;
         try {
@@ -2504,25 +2533,58 @@ public class GrouperServiceLogic {
             wsHasMemberResult.assignResultCode(WsHasMemberResultCode.IS_NOT_MEMBER);
             wsHasMemberResult.getResultMetadata().setResultCode2(WsHasMemberResultCode.SUBJECT_NOT_FOUND.name());
 
-          } else {
-
-            boolean hasMember;
+          } else if (!usePIT && memberFilter == WsMemberFilter.Composite) {
 
-            if (!usePIT) {
-              hasMember = memberFilter.hasMember(group, wsSubjectLookup.retrieveSubject(), fieldName);
-            } else {
-              hasMember = pitGroup.hasMember(wsSubjectLookup.retrieveSubject(), fieldId, pointInTimeFrom, pointInTimeTo, null);
-            }
-            
+            //this will throw an exception that composite isnt supported
+            boolean hasMember = memberFilter.hasMember(group, wsSubjectLookup.retrieveSubject(), fieldName);
             wsHasMemberResult.assignResultCode(hasMember ? WsHasMemberResultCode.IS_MEMBER
                 : WsHasMemberResultCode.IS_NOT_MEMBER);
 
+          } else {
+
+            //check these all at once after the loop
+            subjectsToCheck.add(wsSubjectLookup.retrieveSubject());
+            wsHasMemberResultsToCheck.add(wsHasMemberResult);
+            wsSubjectLookupsToCheck.add(wsSubjectLookup);
           }
           
         } catch (Exception e) {
           wsHasMemberResult.assignResultCodeException(e, wsSubjectLookup);
         }
       }
+      
+      if (subjectsToCheck.size() > 0) {
+        
+        //multikey of sourceId and subjectId of the subjects which are members
+        Set<MultiKey> memberSubjectKeys = new HashSet<MultiKey>();
+        Exception exception = null;
+        try {
+          Set<Subject> memberSubjects = null;
+          if (!usePIT) {
+            memberSubjects = group.hasMembers(subjectsToCheck, fieldName, 
+                memberFilter == null ? null : memberFilter.getMembershipType());
+          } else {
+            memberSubjects = pitGroup.hasMembers(subjectsToCheck, fieldId, pointInTimeFrom, pointInTimeTo);
+          }
+          for (Subject memberSubject : memberSubjects) {
+            memberSubjectKeys.add(new MultiKey(memberSubject.getSourceId(), memberSubject.getId()));
+          }
+        } catch (Exception e) {
+          exception = e;
+        }
+        
+        for (int i=0;i<subjectsToCheck.size();i++) {
+          WsHasMemberResult wsHasMemberResult = wsHasMemberResultsToCheck.get(i);
+          if (exception != null) {
+            wsHasMemberResult.assignResultCodeException(exception, wsSubjectLookupsToCheck.get(i));
+            continue;
+          }
+          Subject subject = subjectsToCheck.get(i);
+          boolean hasMember = memberSubjectKeys.contains(new MultiKey(subject.getSourceId(), subject.getId()));
+          wsHasMemberResult.assignResultCode(hasMember ? WsHasMemberResultCode.IS_MEMBER
+              : WsHasMemberResultCode.IS_NOT_MEMBER);
+        }
+      }
   
       //see if all success
       wsHasMemberResults.tallyResults(theSummary);
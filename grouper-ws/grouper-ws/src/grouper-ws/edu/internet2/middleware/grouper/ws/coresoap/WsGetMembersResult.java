@@ -22,12 +22,15 @@ import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.thoughtworks.xstream.annotations.XStreamOmitField;
+
 import edu.internet2.middleware.grouper.Member;
 import edu.internet2.middleware.grouper.exception.GroupNotFoundException;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
 import edu.internet2.middleware.grouper.ws.ResultMetadataHolder;
 import edu.internet2.middleware.grouper.ws.coresoap.WsGetMembersLiteResult.WsGetMembersLiteResultCode;
 import edu.internet2.middleware.grouper.ws.exceptions.WsInvalidQueryException;
+import edu.internet2.middleware.grouper.ws.member.WsGetMembersStreamer;
 import edu.internet2.middleware.grouper.ws.util.GrouperServiceUtils;
 
 /**
@@ -229,6 +232,43 @@ public class WsGetMembersResult  implements ResultMetadataHolder {
     this.wsGroup = wsGroup1;
   }
 
+  /**
+   * if the subjects are streamed, this reads them when the response is written
+   */
+  @XStreamOmitField
+  private WsGetMembersStreamer wsGetMembersStreamer;
+
+  /**
+   * if the subjects are streamed, this reads them when the response is written
+   * @return the streamer or null if not streaming
+   */
+  public WsGetMembersStreamer retrieveWsGetMembersStreamer() {
+    return this.wsGetMembersStreamer;
+  }
+
+  /**
+   * read the subjects when the response is written instead of now.  The result code is
+   * assigned now, the same as if the subjects were not streamed
+   * @param wsGetMembersStreamer1 or null when the subjects have been read
+   */
+  public void assignWsGetMembersStreamer(WsGetMembersStreamer wsGetMembersStreamer1) {
+    this.wsGetMembersStreamer = wsGetMembersStreamer1;
+    if (wsGetMembersStreamer1 != null) {
+      wsGetMembersStreamer1.assignWsGetMembersResult(this);
+      int[] successesAndFailures = wsGetMembersStreamer1.retrieveSuccessesAndFailures();
+      this.assignSubjectResultCode(successesAndFailures[0], successesAndFailures[1]);
+    }
+  }
+
+  /**
+   * if the subjects were going to be streamed, read them all now, e.g. if the response cannot be streamed
+   */
+  public void assignStreamedSubjects() {
+    if (this.wsGetMembersStreamer != null) {
+      this.wsGetMembersStreamer.assignAllElements();
+    }
+  }
+
   /**
    * convert members to subject results
    * @param attributeNames1 to get from subjects
@@ -237,32 +277,41 @@ public class WsGetMembersResult  implements ResultMetadataHolder {
    */
   public void assignSubjectResult(Set<Member> memberSet, String[] attributeNames1, boolean includeSubjectDetails) {
     this.setWsSubjects(WsSubject.convertMembers(memberSet, attributeNames1, includeSubjectDetails));
-    
-    if (this.getWsSubjects() != null) {
-      // check all entries
-      int successes = 0;
-      int failures = 0;
-      for (WsSubject wsSubject : this.getWsSubjects()) {
-        boolean theSuccess = GrouperUtil.booleanValue(wsSubject.getSuccess(), false);
-        if (theSuccess) {
-          successes++;
-        } else {
-          failures++;
-        }
-      }
-
-      if (failures > 0) {
-        this.getResultMetadata().appendResultMessage(
-            "There were " + successes + " successes and " + failures
-                + " failures getting members/subjects from the group.   ");
-        this.assignResultCode(WsGetMembersResultCode.PROBLEM_GETTING_MEMBERS);
+    this.assignSubjectResultCode();
+  }
 
+  /**
+   * assign the result code based on the subject results
+   */
+  private void assignSubjectResultCode() {
+    // check all entries
+    int successes = 0;
+    int failures = 0;
+    for (WsSubject wsSubject : GrouperUtil.nonNull(this.getWsSubjects(), WsSubject.class)) {
+      boolean theSuccess = GrouperUtil.booleanValue(wsSubject.getSuccess(), false);
+      if (theSuccess) {
+        successes++;
       } else {
-        //ok if not failure
-        this.assignResultCode(WsGetMembersResultCode.SUCCESS);
+        failures++;
       }
+    }
+    this.assignSubjectResultCode(successes, failures);
+  }
+
+  /**
+   * assign the result code based on the number of subjects which could and could not be resolved
+   * @param successes
+   * @param failures
+   */
+  private void assignSubjectResultCode(int successes, int failures) {
+    if (failures > 0) {
+      this.getResultMetadata().appendResultMessage(
+          "There were " + successes + " successes and " + failures
+              + " failures getting members/subjects from the group.   ");
+      this.assignResultCode(WsGetMembersResultCode.PROBLEM_GETTING_MEMBERS);
+
     } else {
-      //ok if none
+      //ok if not failure, or if none
       this.assignResultCode(WsGetMembersResultCode.SUCCESS);
     }
   }
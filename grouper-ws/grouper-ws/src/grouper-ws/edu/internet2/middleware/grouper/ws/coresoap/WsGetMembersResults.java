@@ -15,6 +15,9 @@
  ******************************************************************************/
 package edu.internet2.middleware.grouper.ws.coresoap;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.logging.Log;
@@ -26,6 +29,8 @@ import edu.internet2.middleware.grouper.ws.ResultMetadataHolder;
 import edu.internet2.middleware.grouper.ws.WsResultCode;
 import edu.internet2.middleware.grouper.ws.exceptions.WsInvalidQueryException;
 import edu.internet2.middleware.grouper.ws.rest.WsResponseBean;
+import edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray;
+import edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedResponse;
 
 /**
  * <pre>
@@ -40,7 +45,7 @@ import edu.internet2.middleware.grouper.ws.rest.WsResponseBean;
  * </pre>
  * @author mchyzer
  */
-public class WsGetMembersResults implements WsResponseBean, ResultMetadataHolder {
+public class WsGetMembersResults implements WsResponseBean, ResultMetadataHolder, WsRestStreamedResponse {
 
   /**
    * logger 
@@ -274,4 +279,27 @@ public class WsGetMembersResults implements WsResponseBean, ResultMetadataHolder
     this.results = results1;
   }
 
+  /**
+   * if any results are streaming the subjects, read them all now, e.g. if the response cannot be streamed
+   */
+  public void assignStreamedSubjects() {
+    for (WsGetMembersResult wsGetMembersResult : GrouperUtil.nonNull(this.results, WsGetMembersResult.class)) {
+      wsGetMembersResult.assignStreamedSubjects();
+    }
+  }
+
+  /**
+   * the subjects of results which are read when the response is written
+   * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedResponse#retrieveStreamedArrays()
+   */
+  public List<WsRestStreamedArray> retrieveStreamedArrays() {
+    List<WsRestStreamedArray> streamedArrays = new ArrayList<WsRestStreamedArray>();
+    for (WsGetMembersResult wsGetMembersResult : GrouperUtil.nonNull(this.results, WsGetMembersResult.class)) {
+      if (wsGetMembersResult.retrieveWsGetMembersStreamer() != null) {
+        streamedArrays.add(wsGetMembersResult.retrieveWsGetMembersStreamer());
+      }
+    }
+    return streamedArrays;
+  }
+
 }
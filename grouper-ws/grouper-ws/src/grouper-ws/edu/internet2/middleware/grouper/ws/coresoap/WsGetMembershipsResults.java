@@ -15,8 +15,10 @@
  ******************************************************************************/
 package edu.internet2.middleware.grouper.ws.coresoap;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
@@ -24,6 +26,8 @@ import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.thoughtworks.xstream.annotations.XStreamOmitField;
+
 import edu.internet2.middleware.grouper.Group;
 import edu.internet2.middleware.grouper.Member;
 import edu.internet2.middleware.grouper.Stem;
@@ -34,7 +38,10 @@ import edu.internet2.middleware.grouper.util.GrouperUtil;
 import edu.internet2.middleware.grouper.ws.ResultMetadataHolder;
 import edu.internet2.middleware.grouper.ws.WsResultCode;
 import edu.internet2.middleware.grouper.ws.exceptions.WsInvalidQueryException;
+import edu.internet2.middleware.grouper.ws.member.WsGetMembershipsStreamer;
 import edu.internet2.middleware.grouper.ws.rest.WsResponseBean;
+import edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray;
+import edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedResponse;
 import edu.internet2.middleware.grouper.ws.util.GrouperWsVersionUtils;
 
 /**
@@ -50,7 +57,7 @@ import edu.internet2.middleware.grouper.ws.util.GrouperWsVersionUtils;
  * </pre>
  * @author mchyzer
  */
-public class WsGetMembershipsResults implements WsResponseBean, ResultMetadataHolder {
+public class WsGetMembershipsResults implements WsResponseBean, ResultMetadataHolder, WsRestStreamedResponse {
 
   /**
    * result metadata
@@ -266,6 +273,31 @@ public class WsGetMembershipsResults implements WsResponseBean, ResultMetadataHo
     this.wsGroups = wsGroup1;
   }
 
+  /**
+   * if the memberships and subjects are streamed, this writes them when the response is written
+   */
+  @XStreamOmitField
+  private WsGetMembershipsStreamer wsGetMembershipsStreamer;
+
+  /**
+   * if the memberships and subjects are streamed, this writes them when the response is written
+   * @return the streamer or null if not streaming
+   */
+  public WsGetMembershipsStreamer retrieveWsGetMembershipsStreamer() {
+    return this.wsGetMembershipsStreamer;
+  }
+
+  /**
+   * the memberships and subjects if they are written a page at a time
+   * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedResponse#retrieveStreamedArrays()
+   */
+  public List<WsRestStreamedArray> retrieveStreamedArrays() {
+    if (this.wsGetMembershipsStreamer == null) {
+      return new ArrayList<WsRestStreamedArray>();
+    }
+    return this.wsGetMembershipsStreamer.retrieveStreamedArrays();
+  }
+
   /**
    * convert members to subject results
    * @param membershipSet
@@ -277,6 +309,20 @@ public class WsGetMembershipsResults implements WsResponseBean, ResultMetadataHo
    */
   public void assignResult(Set<Object[]> membershipSet, boolean includeGroupDetail, 
       boolean includeSubjectDetail, String[] theSubjectAttributeNames) {
+    this.assignResult(membershipSet, includeGroupDetail, includeSubjectDetail, theSubjectAttributeNames, false);
+  }
+
+  /**
+   * convert members to subject results
+   * @param membershipSet
+   * @param includeGroupDetail 
+   * @param includeSubjectDetail 
+   * @param theSubjectAttributeNames 
+   * @param streaming true if the memberships and subjects should be written a page at a time when
+   * the rest response is written.  Then the subjects are resolved when they are written
+   */
+  public void assignResult(Set<Object[]> membershipSet, boolean includeGroupDetail, 
+      boolean includeSubjectDetail, String[] theSubjectAttributeNames, boolean streaming) {
     Set<Group> groupSet = new LinkedHashSet<Group>();
     Set<AttributeDef> attributeDefSet = new LinkedHashSet<AttributeDef>();
     Set<Stem> stemSet = new LinkedHashSet<Stem>();
@@ -325,6 +371,14 @@ public class WsGetMembershipsResults implements WsResponseBean, ResultMetadataHo
       }
     }
 
+    if (streaming) {
+      //sort the memberships first, the streamer sorts the members like the subjects
+      this.sortResults();
+      this.wsGetMembershipsStreamer = new WsGetMembershipsStreamer(this, this.wsMemberships, 
+          memberSet, theSubjectAttributeNames, includeSubjectDetail);
+      return;
+    }
+    
     if (memberSet.size() > 0) {
       this.wsSubjects = new WsSubject[memberSet.size()];
       int index = 0;
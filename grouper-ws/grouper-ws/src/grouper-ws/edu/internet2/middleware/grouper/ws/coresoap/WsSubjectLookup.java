@@ -18,9 +18,15 @@
  */
 package edu.internet2.middleware.grouper.ws.coresoap;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.collections.keyvalue.MultiKey;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.logging.Log;
@@ -595,6 +601,106 @@ public class WsSubjectLookup {
     this.clearSubject();
   }
 
+  /**
+   * resolve the subjects of the lookups which have a source in bulk, one query per source and
+   * kind of lookup (id, identifier, or id or identifier).  Lookups without a source, and subjects
+   * which arent found, are still resolved one by one when retrieveSubject() is called so the 
+   * errors are the same as before
+   * @param wsSubjectLookups
+   */
+  public static void retrieveSubjectsIfNeeded(WsSubjectLookup[] wsSubjectLookups) {
+    
+    if (GrouperServiceUtils.nullArray(wsSubjectLookups)) {
+      return;
+    }
+    
+    //multikey is the sourceId and the kind of lookup, to the lookups
+    Map<MultiKey, List<WsSubjectLookup>> lookupsBySourceAndKind = new HashMap<MultiKey, List<WsSubjectLookup>>();
+    
+    for (WsSubjectLookup wsSubjectLookup : wsSubjectLookups) {
+      
+      if (wsSubjectLookup == null || wsSubjectLookup.subjectFindResult != null 
+          || StringUtils.isBlank(wsSubjectLookup.subjectSourceId)) {
+        continue;
+      }
+
+      String kind = wsSubjectLookup.bulkLookupKind();
+      if (kind == null) {
+        continue;
+      }
+      MultiKey multiKey = new MultiKey(wsSubjectLookup.subjectSourceId, kind);
+      List<WsSubjectLookup> lookups = lookupsBySourceAndKind.get(multiKey);
+      if (lookups == null) {
+        lookups = new ArrayList<WsSubjectLookup>();
+        lookupsBySourceAndKind.put(multiKey, lookups);
+      }
+      lookups.add(wsSubjectLookup);
+    }
+    
+    for (MultiKey multiKey : lookupsBySourceAndKind.keySet()) {
+      
+      String sourceId = (String)multiKey.getKey(0);
+      String kind = (String)multiKey.getKey(1);
+      List<WsSubjectLookup> lookups = lookupsBySourceAndKind.get(multiKey);
+      
+      Set<String> idsOrIdentifiers = new LinkedHashSet<String>();
+      for (WsSubjectLookup wsSubjectLookup : lookups) {
+        idsOrIdentifiers.add(wsSubjectLookup.bulkLookupValue());
+      }
+      
+      Map<String, Subject> subjectMap = null;
+      try {
+        if (StringUtils.equals("id", kind)) {
+          subjectMap = SubjectFinder.findByIds(idsOrIdentifiers, sourceId);
+        } else if (StringUtils.equals("identifier", kind)) {
+          subjectMap = SubjectFinder.findByIdentifiers(idsOrIdentifiers, sourceId);
+        } else {
+          subjectMap = SubjectFinder.findByIdsOrIdentifiers(idsOrIdentifiers, sourceId);
+        }
+      } catch (RuntimeException re) {
+        //these will be resolved one by one with the right error
+        LOG.warn("Problem resolving " + idsOrIdentifiers.size() + " subjects in source: " + sourceId, re);
+        continue;
+      }
+      
+      if (subjectMap == null) {
+        continue;
+      }
+      
+      for (WsSubjectLookup wsSubjectLookup : lookups) {
+        Subject theSubject = subjectMap.get(wsSubjectLookup.bulkLookupValue());
+        if (theSubject != null) {
+          wsSubjectLookup.subject = theSubject;
+          wsSubjectLookup.subjectFindResult = SubjectFindResult.SUCCESS;
+        }
+      }
+    }
+  }
+  
+  /**
+   * kind of lookup for resolving in bulk, like in retrieveSubjectIfNeeded()
+   * @return id, identifier, idOrIdentifier, or null if the lookup is invalid
+   */
+  private String bulkLookupKind() {
+    boolean hasSubjectId = !StringUtils.isBlank(this.subjectId);
+    boolean hasSubjectIdentifier = !StringUtils.isBlank(this.subjectIdentifier);
+    if (!hasSubjectId && !hasSubjectIdentifier) {
+      return null;
+    }
+    if (StringUtils.equals(this.subjectId, this.subjectIdentifier)) {
+      return "idOrIdentifier";
+    }
+    return hasSubjectId ? "id" : "identifier";
+  }
+  
+  /**
+   * value of lookup for resolving in bulk
+   * @return the id or identifier
+   */
+  private String bulkLookupValue() {
+    return StringUtils.isBlank(this.subjectId) ? this.subjectIdentifier : this.subjectId;
+  }
+
   /**
    * convert subject lookups to member ids (create if not exist)
    * @param grouperSession
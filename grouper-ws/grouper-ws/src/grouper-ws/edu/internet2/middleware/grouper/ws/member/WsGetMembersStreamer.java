@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright 2012 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+/**
+ *
+ */
+package edu.internet2.middleware.grouper.ws.member;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import edu.internet2.middleware.grouper.Field;
+import edu.internet2.middleware.grouper.Group;
+import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.Member;
+import edu.internet2.middleware.grouper.membership.MembershipType;
+import edu.internet2.middleware.grouper.misc.GrouperDAOFactory;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+import edu.internet2.middleware.grouper.ws.GrouperWsConfig;
+import edu.internet2.middleware.grouper.ws.coresoap.WsGetMembersResult;
+import edu.internet2.middleware.grouper.ws.coresoap.WsSubject;
+import edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray;
+import edu.internet2.middleware.subject.Source;
+
+/**
+ * <pre>
+ * reads the members of a group a page at a time while the rest response is written,
+ * so the members and subjects of a large group are never all in memory at once.
+ * 
+ * if subject detail or attributes are requested, the subjects need to be resolved before 
+ * the response is written to count the failures.  Then each page is resolved once, and the
+ * converted subjects (not the members or subjects) are kept until they are written.
+ *
+ * the caller must check that the subject can read the members of the group before
+ * creating this, since the members are read later (after the grouper session is stopped)
+ * with a root session
+ * </pre>
+ * @author mchyzer
+ */
+public class WsGetMembersStreamer implements WsRestStreamedArray {
+
+  /**
+   * handles each page of subjects as it is read
+   */
+  public static interface WsSubjectPageHandler {
+
+    /**
+     * handle a page of subjects
+     * @param wsSubjects
+     */
+    public void handlePage(WsSubject[] wsSubjects);
+  }
+
+  /** id of group to get members from */
+  private String groupId;
+
+  /** field (list) of the group */
+  private Field field;
+
+  /** membership type, or null for all */
+  private MembershipType membershipType;
+
+  /** sources to get members from, or null for all */
+  private Set<Source> sources;
+
+  /** subject attribute names to send back */
+  private String[] subjectAttributeNames;
+
+  /** if subject detail should be sent back */
+  private boolean includeSubjectDetail;
+
+  /** result the subjects are streamed into */
+  private WsGetMembersResult wsGetMembersResult;
+
+  /** pages of subjects which were resolved to count the failures, and are written instead of resolving them again */
+  private List<WsSubject[]> wsSubjectPages;
+
+  /**
+   * result the subjects are streamed into
+   * @param wsGetMembersResult1
+   */
+  public void assignWsGetMembersResult(WsGetMembersResult wsGetMembersResult1) {
+    this.wsGetMembersResult = wsGetMembersResult1;
+  }
+
+  /**
+   *
+   * @param group
+   * @param field or null for the default list
+   * @param membershipType or null for all
+   * @param sources or null for all
+   * @param subjectAttributeNames
+   * @param includeSubjectDetail
+   */
+  public WsGetMembersStreamer(Group group, Field field, MembershipType membershipType,
+      Set<Source> sources, String[] subjectAttributeNames, boolean includeSubjectDetail) {
+    this.groupId = group.getUuid();
+    this.field = field == null ? Group.getDefaultList() : field;
+    this.membershipType = membershipType;
+    this.sources = sources;
+    this.subjectAttributeNames = subjectAttributeNames;
+    this.includeSubjectDetail = includeSubjectDetail;
+  }
+
+  /**
+   * if get members results should be streamed (if the response is written in a way that can be streamed).
+   * @return true if streaming is enabled
+   */
+  public static boolean streamingEnabled() {
+    return GrouperWsConfig.retrieveConfig().propertyValueBoolean("ws.getMembers.streaming", false);
+  }
+
+  /**
+   * number of members to read and resolve subjects for at once
+   * @return the page size
+   */
+  public static int pageSize() {
+    return GrouperWsConfig.retrieveConfig().propertyValueInt("ws.getMembers.streaming.pageSize", 1000);
+  }
+
+  /**
+   * read the members a page at a time, resolve the subjects of the page, and pass the subjects to the handler
+   * @param wsSubjectPageHandler
+   */
+  public void retrieveSubjects(WsSubjectPageHandler wsSubjectPageHandler) {
+
+    int pageSize = pageSize();
+    String type = this.membershipType == null ? null : this.membershipType.getTypeString();
+    String afterMemberId = null;
+
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+    try {
+      while (true) {
+        List<Member> members = GrouperDAOFactory.getFactory().getMembership()
+          .findAllMembersByOwnerAndFieldAndTypeAfterMemberId(this.groupId, this.field, type,
+              this.sources, true, afterMemberId, pageSize);
+
+        if (GrouperUtil.length(members) == 0) {
+          break;
+        }
+
+        Member.resolveSubjects(members, true);
+
+        WsSubject[] wsSubjects = new WsSubject[members.size()];
+        int index = 0;
+        for (Member member : members) {
+          wsSubjects[index++] = new WsSubject(member, this.subjectAttributeNames, null, this.includeSubjectDetail);
+        }
+
+        wsSubjectPageHandler.handlePage(wsSubjects);
+
+        if (members.size() < pageSize) {
+          break;
+        }
+        afterMemberId = members.get(members.size()-1).getUuid();
+      }
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#placeholder(java.lang.String)
+   */
+  public Object placeholder(String id) {
+    WsSubject wsSubject = new WsSubject();
+    wsSubject.setId(id);
+    return wsSubject;
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#assignPlaceholder(java.lang.Object)
+   */
+  public void assignPlaceholder(Object placeholder) {
+    this.wsGetMembersResult.setWsSubjects(placeholder == null ? null : new WsSubject[]{(WsSubject)placeholder});
+  }
+
+  /**
+   * count the subjects which can and cannot be resolved, so the result code of the group can be
+   * assigned before the response is written (the result code and http status are written before the subjects).
+   * Subjects only fail if the subject detail or attributes are needed, so then the subjects are read a page at 
+   * a time and the converted pages are kept to be written, and otherwise they arent read and there are no failures
+   * @return the number of successes and the number of failures
+   */
+  public int[] retrieveSuccessesAndFailures() {
+    final int[] successesAndFailures = new int[]{0, 0};
+    if (!this.includeSubjectDetail && GrouperUtil.length(this.subjectAttributeNames) == 0) {
+      return successesAndFailures;
+    }
+    final List<WsSubject[]> theWsSubjectPages = new ArrayList<WsSubject[]>();
+    this.retrieveSubjects(new WsSubjectPageHandler() {
+      
+      public void handlePage(WsSubject[] wsSubjects) {
+        theWsSubjectPages.add(wsSubjects);
+        for (WsSubject wsSubject : wsSubjects) {
+          successesAndFailures[GrouperUtil.booleanValue(wsSubject.getSuccess(), false) ? 0 : 1]++;
+        }
+      }
+    });
+    this.wsSubjectPages = theWsSubjectPages;
+    return successesAndFailures;
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#retrieveElements(WsRestStreamedArrayPageHandler)
+   */
+  public void retrieveElements(final WsRestStreamedArrayPageHandler wsRestStreamedArrayPageHandler) {
+    //only read once
+    this.wsGetMembersResult.assignWsGetMembersStreamer(null);
+    
+    //already resolved to count the failures
+    if (this.wsSubjectPages != null) {
+      List<WsSubject[]> theWsSubjectPages = this.wsSubjectPages;
+      this.wsSubjectPages = null;
+      for (WsSubject[] wsSubjects : theWsSubjectPages) {
+        wsRestStreamedArrayPageHandler.handlePage(wsSubjects);
+      }
+      return;
+    }
+    
+    this.retrieveSubjects(new WsSubjectPageHandler() {
+      
+      public void handlePage(WsSubject[] wsSubjects) {
+        wsRestStreamedArrayPageHandler.handlePage(wsSubjects);
+      }
+    });
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#assignAllElements()
+   */
+  public void assignAllElements() {
+    final List<WsSubject> wsSubjectList = new ArrayList<WsSubject>();
+    this.retrieveElements(new WsRestStreamedArrayPageHandler() {
+      
+      public void handlePage(Object[] elements) {
+        wsSubjectList.addAll(Arrays.asList((WsSubject[])elements));
+      }
+    });
+    this.wsGetMembersResult.setWsSubjects(wsSubjectList.size() == 0 ? null : wsSubjectList.toArray(new WsSubject[0]));
+  }
+}
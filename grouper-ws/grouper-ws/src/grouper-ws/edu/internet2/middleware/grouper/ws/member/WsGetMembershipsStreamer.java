@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright 2012 Internet2
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package edu.internet2.middleware.grouper.ws.member;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.Member;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+import edu.internet2.middleware.grouper.ws.GrouperWsConfig;
+import edu.internet2.middleware.grouper.ws.coresoap.WsGetMembershipsResults;
+import edu.internet2.middleware.grouper.ws.coresoap.WsMembership;
+import edu.internet2.middleware.grouper.ws.coresoap.WsSubject;
+import edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray;
+
+/**
+ * <pre>
+ * streams the subjects of get memberships: they are resolved, converted, and written a page at 
+ * a time while the rest response is written.  This does not stream the memberships.
+ * 
+ * the memberships are still read in one query and are all in memory before the response is written, 
+ * since they are sorted across the whole result (by owner name, then subject, then list), and the 
+ * membership finder cannot page in that order.  So they are converted and sorted as before, and only 
+ * marshaled a page at a time.  The subjects are resolved (e.g. from ldap), converted, and written a page 
+ * at a time after the groups, stems, and attribute definitions, so they are never all in memory at once.
+ * 
+ * the subjects are resolved later (after the grouper session is stopped) with a root session,
+ * which is ok since the memberships were already read as the caller
+ * </pre>
+ */
+public class WsGetMembershipsStreamer {
+
+  /** results the memberships and subjects are streamed into */
+  private WsGetMembershipsResults wsGetMembershipsResults;
+
+  /** sorted memberships, or null when written */
+  private WsMembership[] wsMemberships;
+
+  /** members sorted the same as the subjects, or null when written */
+  private List<Member> members;
+
+  /** subject attribute names to send back */
+  private String[] subjectAttributeNames;
+
+  /** if subject detail should be sent back */
+  private boolean includeSubjectDetail;
+
+  /**
+   * if the subjects of get memberships results should be streamed (if the response is written in a way that 
+   * can be streamed).  The memberships are not streamed
+   * @return true if streaming subjects is enabled
+   */
+  public static boolean streamSubjectsEnabled() {
+    return GrouperWsConfig.retrieveConfig().propertyValueBoolean("ws.getMemberships.streamSubjects", false);
+  }
+
+  /**
+   * number of memberships to write, or subjects to resolve and write, at once
+   * @return the page size
+   */
+  public static int pageSize() {
+    return GrouperWsConfig.retrieveConfig().propertyValueInt("ws.getMemberships.streamSubjects.pageSize", 1000);
+  }
+
+  /**
+   * 
+   * @param wsGetMembershipsResults1 results to stream into
+   * @param wsMemberships1 sorted memberships
+   * @param members1 members of the memberships
+   * @param subjectAttributeNames1
+   * @param includeSubjectDetail1
+   */
+  public WsGetMembershipsStreamer(WsGetMembershipsResults wsGetMembershipsResults1, WsMembership[] wsMemberships1, 
+      Collection<Member> members1, String[] subjectAttributeNames1, boolean includeSubjectDetail1) {
+    this.wsGetMembershipsResults = wsGetMembershipsResults1;
+    this.wsMemberships = wsMemberships1;
+    this.members = new ArrayList<Member>(GrouperUtil.nonNull(members1));
+    this.subjectAttributeNames = subjectAttributeNames1;
+    this.includeSubjectDetail = includeSubjectDetail1;
+
+    //same order as the subjects are sorted when not streaming
+    Collections.sort(this.members, new Comparator<Member>() {
+
+      public int compare(Member member1, Member member2) {
+        int compare = GrouperUtil.compare(member1.getSubjectSourceId(), member2.getSubjectSourceId());
+        if (compare != 0) {
+          return compare;
+        }
+        return GrouperUtil.compare(member1.getSubjectId(), member2.getSubjectId());
+      }
+    });
+  }
+
+  /**
+   * number of subjects which will be written
+   * @return the number of subjects
+   */
+  public int subjectCount() {
+    return GrouperUtil.length(this.members);
+  }
+
+  /**
+   * arrays which have not been written yet, memberships then subjects
+   * @return the arrays
+   */
+  public List<WsRestStreamedArray> retrieveStreamedArrays() {
+    List<WsRestStreamedArray> streamedArrays = new ArrayList<WsRestStreamedArray>();
+    if (this.wsMemberships != null) {
+      streamedArrays.add(new WsMembershipsStreamedArray());
+    }
+    if (this.members != null) {
+      streamedArrays.add(new WsSubjectsStreamedArray());
+    }
+    return streamedArrays;
+  }
+
+  /**
+   * memberships of the results, which are already read and sorted
+   */
+  private class WsMembershipsStreamedArray implements WsRestStreamedArray {
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#placeholder(java.lang.String)
+     */
+    public Object placeholder(String id) {
+      WsMembership wsMembership = new WsMembership();
+      wsMembership.setMembershipId(id);
+      return wsMembership;
+    }
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#assignPlaceholder(java.lang.Object)
+     */
+    public void assignPlaceholder(Object placeholder) {
+      WsGetMembershipsStreamer.this.wsGetMembershipsResults.setWsMemberships(
+          placeholder == null ? null : new WsMembership[]{(WsMembership)placeholder});
+    }
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#retrieveElements(WsRestStreamedArrayPageHandler)
+     */
+    public void retrieveElements(WsRestStreamedArrayPageHandler wsRestStreamedArrayPageHandler) {
+      WsMembership[] theWsMemberships = WsGetMembershipsStreamer.this.wsMemberships;
+      //only write once
+      WsGetMembershipsStreamer.this.wsMemberships = null;
+      int pageSize = pageSize();
+      for (int i=0;i<GrouperUtil.length(theWsMemberships);i+=pageSize) {
+        wsRestStreamedArrayPageHandler.handlePage(Arrays.copyOfRange(theWsMemberships, i, 
+            Math.min(i + pageSize, theWsMemberships.length)));
+      }
+    }
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#assignAllElements()
+     */
+    public void assignAllElements() {
+      WsGetMembershipsStreamer.this.wsGetMembershipsResults.setWsMemberships(WsGetMembershipsStreamer.this.wsMemberships);
+      WsGetMembershipsStreamer.this.wsMemberships = null;
+    }
+  }
+
+  /**
+   * subjects of the results, which are resolved a page at a time
+   */
+  private class WsSubjectsStreamedArray implements WsRestStreamedArray {
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#placeholder(java.lang.String)
+     */
+    public Object placeholder(String id) {
+      WsSubject wsSubject = new WsSubject();
+      wsSubject.setId(id);
+      return wsSubject;
+    }
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#assignPlaceholder(java.lang.Object)
+     */
+    public void assignPlaceholder(Object placeholder) {
+      WsGetMembershipsStreamer.this.wsGetMembershipsResults.setWsSubjects(
+          placeholder == null ? null : new WsSubject[]{(WsSubject)placeholder});
+    }
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#retrieveElements(WsRestStreamedArrayPageHandler)
+     */
+    public void retrieveElements(WsRestStreamedArrayPageHandler wsRestStreamedArrayPageHandler) {
+      List<Member> theMembers = WsGetMembershipsStreamer.this.members;
+      //only write once
+      WsGetMembershipsStreamer.this.members = null;
+      int pageSize = pageSize();
+
+      GrouperSession grouperSession = GrouperSession.startRootSession();
+      try {
+        for (int i=0;i<theMembers.size();i+=pageSize) {
+          List<Member> membersPage = theMembers.subList(i, Math.min(i + pageSize, theMembers.size()));
+          Member.resolveSubjects(membersPage, true);
+          
+          WsSubject[] wsSubjects = new WsSubject[membersPage.size()];
+          int index = 0;
+          for (Member member : membersPage) {
+            wsSubjects[index++] = new WsSubject(member, WsGetMembershipsStreamer.this.subjectAttributeNames, 
+                null, WsGetMembershipsStreamer.this.includeSubjectDetail);
+          }
+          
+          wsRestStreamedArrayPageHandler.handlePage(wsSubjects);
+        }
+      } finally {
+        GrouperSession.stopQuietly(grouperSession);
+      }
+    }
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#assignAllElements()
+     */
+    public void assignAllElements() {
+      final List<WsSubject> wsSubjectList = new ArrayList<WsSubject>();
+      this.retrieveElements(new WsRestStreamedArrayPageHandler() {
+        
+        public void handlePage(Object[] elements) {
+          wsSubjectList.addAll(Arrays.asList((WsSubject[])elements));
+        }
+      });
+      WsGetMembershipsStreamer.this.wsGetMembershipsResults.setWsSubjects(
+          wsSubjectList.size() == 0 ? null : wsSubjectList.toArray(new WsSubject[0]));
+    }
+  }
+}
@@ -269,7 +269,7 @@ public class GrouperRestServlet extends HttpServlet {
         
       }
       
-      wsRestResponseContentType.writeString(wsResponseBean, response.getWriter());
+      wsRestResponseContentType.writeResponse(wsResponseBean, response.getWriter());
       
       if (wrapJsonResponse) {
         response.getWriter().print(")");
@@ -18,9 +18,15 @@
  */
 package edu.internet2.middleware.grouper.ws.rest.contentType;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -36,6 +42,8 @@ import edu.internet2.middleware.grouper.ws.GrouperWsConfig;
 import edu.internet2.middleware.grouper.ws.coresoap.WsSubject;
 import edu.internet2.middleware.grouper.ws.rest.GrouperRestInvalidRequest;
 import edu.internet2.middleware.grouper.ws.rest.WsRestClassLookup;
+import edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray.WsRestStreamedArrayPageHandler;
+import edu.internet2.middleware.grouper.ws.rest.json.DefaultJsonConverter;
 import edu.internet2.middleware.grouper.ws.rest.json.JsonConverter;
 import edu.internet2.middleware.grouper.ws.util.GrouperServiceUtils;
 import edu.internet2.middleware.grouper.ws.util.GrouperWsVersionUtils;
@@ -105,6 +113,27 @@ public enum WsRestResponseContentType {
       xstream.marshal(object, new CompactWriter(writer));
     }
 
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestResponseContentType#arrayElementWriter()
+     */
+    @Override
+    public WsRestArrayElementWriter arrayElementWriter() {
+      final XStream xstream = xstream(false);
+      return new WsRestArrayElementWriter() {
+
+        public String elementString(Object object) {
+          //xstream names array elements by class, the same as the root element
+          StringWriter stringWriter = new StringWriter();
+          xstream.marshal(object, new CompactWriter(stringWriter));
+          return stringWriter.toString();
+        }
+
+        public String separator() {
+          return "";
+        }
+      };
+    }
+
     /**
      * parse a string to an object
      * @param input
@@ -147,6 +176,27 @@ public enum WsRestResponseContentType {
       }
     }
 
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestResponseContentType#arrayElementWriter()
+     */
+    @Override
+    public WsRestArrayElementWriter arrayElementWriter() {
+      //only know how the default converter writes array elements
+      if (!(WsRestRequestContentType.jsonConverter() instanceof DefaultJsonConverter)) {
+        return null;
+      }
+      return new WsRestArrayElementWriter() {
+
+        public String elementString(Object object) {
+          return GrouperUtil.jsonConvertToNoWrap(object);
+        }
+
+        public String separator() {
+          return ",";
+        }
+      };
+    }
+
     /**
      * parse a string to an object
      * @param input
@@ -167,6 +217,183 @@ public enum WsRestResponseContentType {
    */
   public abstract void writeString(Object object, Writer writer);
 
+  /**
+   * writes the elements of an array one at a time, the same way they are written when
+   * the whole array is marshaled
+   */
+  public static interface WsRestArrayElementWriter {
+
+    /**
+     * string for an element of an array
+     * @param object
+     * @return the string
+     */
+    public String elementString(Object object);
+
+    /**
+     * @return the separator between elements of an array
+     */
+    public String separator();
+  }
+
+  /**
+   * if this content type can write array elements one at a time, this is the writer
+   * @return the writer, or null if this content type cannot stream arrays
+   */
+  public WsRestArrayElementWriter arrayElementWriter() {
+    return null;
+  }
+
+  /**
+   * write a response to an outputstream.  If the response has arrays which are read while
+   * the response is written (e.g. the subjects of a large group), each array is found in the
+   * response by marshaling the response with and without a placeholder in the array.  The text 
+   * before the array is written, then the elements a page at a time, or the text without the array
+   * if there are no elements.  So the response is the same as if it werent streamed.  If this 
+   * content type cant stream, the elements are read and the response is written normally
+   * @param object to write to output
+   * @param writer to write to (e.g. back to http client)
+   */
+  public void writeResponse(Object object, Writer writer) {
+    
+    List<WsRestStreamedArray> streamedArrays = object instanceof WsRestStreamedResponse 
+        ? ((WsRestStreamedResponse)object).retrieveStreamedArrays() : null;
+    
+    WsRestArrayElementWriter wsRestArrayElementWriter = GrouperUtil.length(streamedArrays) == 0 ? null : this.arrayElementWriter();
+    
+    if (wsRestArrayElementWriter == null) {
+      for (WsRestStreamedArray wsRestStreamedArray : GrouperUtil.nonNull(streamedArrays)) {
+        wsRestStreamedArray.assignAllElements();
+      }
+      this.writeString(object, writer);
+      return;
+    }
+    
+    try {
+      this.writeStreamedResponse(object, streamedArrays, wsRestArrayElementWriter, writer);
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
+
+  /**
+   * write a response with arrays which are read while the response is written
+   * @param object
+   * @param streamedArrays in the order they are marshaled
+   * @param wsRestArrayElementWriter
+   * @param writer
+   * @throws IOException 
+   */
+  private void writeStreamedResponse(Object object, List<WsRestStreamedArray> streamedArrays, 
+      WsRestArrayElementWriter wsRestArrayElementWriter, Writer writer) throws IOException {
+
+    String uniqueId = GrouperUtil.uniqueId();
+    Object[] placeholders = new Object[streamedArrays.size()];
+    String[] placeholderStrings = new String[streamedArrays.size()];
+    for (int i=0;i<streamedArrays.size();i++) {
+      placeholders[i] = streamedArrays.get(i).placeholder("grouperStreamed_" + uniqueId + "_" + i);
+      placeholderStrings[i] = wsRestArrayElementWriter.elementString(placeholders[i]);
+      streamedArrays.get(i).assignPlaceholder(placeholders[i]);
+    }
+    
+    //index in the marshaled response of how much has been written.  The text before it doesnt
+    //change since the arrays before it keep the placeholder, or are null if they had no elements
+    int written = 0;
+    
+    for (int i=0;i<streamedArrays.size();i++) {
+      
+      WsRestStreamedArray wsRestStreamedArray = streamedArrays.get(i);
+      
+      //the difference between the response with and without the array is the array field
+      String withArray = this.writeToString(object);
+      wsRestStreamedArray.assignPlaceholder(null);
+      String withoutArray = this.writeToString(object);
+      
+      int prefixLength = 0;
+      int maxLength = Math.min(withArray.length(), withoutArray.length());
+      while (prefixLength < maxLength && withArray.charAt(prefixLength) == withoutArray.charAt(prefixLength)) {
+        prefixLength++;
+      }
+      int suffixLength = 0;
+      while (prefixLength + suffixLength < maxLength && withArray.charAt(withArray.length() - suffixLength - 1) 
+          == withoutArray.charAt(withoutArray.length() - suffixLength - 1)) {
+        suffixLength++;
+      }
+      String withArrayField = withArray.substring(prefixLength, withArray.length() - suffixLength);
+      String withoutArrayField = withoutArray.substring(prefixLength, withoutArray.length() - suffixLength);
+      int placeholderIndex = withArrayField.indexOf(placeholderStrings[i]);
+      
+      if (placeholderIndex == -1 || prefixLength < written) {
+        LOG.warn("Cant find placeholder in response, not streaming: " + placeholderStrings[i]);
+        for (int j=i;j<streamedArrays.size();j++) {
+          streamedArrays.get(j).assignAllElements();
+        }
+        break;
+      }
+      
+      writer.write(withArray, written, prefixLength - written);
+      
+      int elementCount = writeStreamedElements(wsRestStreamedArray, 
+          withArrayField.substring(0, placeholderIndex), wsRestArrayElementWriter, writer);
+      
+      if (elementCount == 0) {
+        //same as if the array were null, which is what it is now
+        writer.write(withoutArrayField);
+        written = prefixLength + withoutArrayField.length();
+      } else {
+        writer.write(withArrayField.substring(placeholderIndex + placeholderStrings[i].length()));
+        wsRestStreamedArray.assignPlaceholder(placeholders[i]);
+        written = prefixLength + withArrayField.length();
+      }
+    }
+    
+    String response = this.writeToString(object);
+    writer.write(response, written, response.length() - written);
+  }
+
+  /**
+   * marshal an object to a string
+   * @param object
+   * @return the string
+   */
+  private String writeToString(Object object) {
+    StringWriter stringWriter = new StringWriter();
+    this.writeString(object, stringWriter);
+    return stringWriter.toString();
+  }
+  
+  /**
+   * write the elements of an array a page at a time
+   * @param wsRestStreamedArray
+   * @param arrayStart is written before the first element
+   * @param wsRestArrayElementWriter
+   * @param writer
+   * @return the number of elements written
+   */
+  private static int writeStreamedElements(WsRestStreamedArray wsRestStreamedArray, final String arrayStart,
+      final WsRestArrayElementWriter wsRestArrayElementWriter, final Writer writer) {
+    
+    final int[] elementCount = new int[]{0};
+    
+    wsRestStreamedArray.retrieveElements(new WsRestStreamedArrayPageHandler() {
+      
+      public void handlePage(Object[] elements) {
+        try {
+          for (Object element : elements) {
+            writer.write(elementCount[0] == 0 ? arrayStart : wsRestArrayElementWriter.separator());
+            elementCount[0]++;
+            writer.write(wsRestArrayElementWriter.elementString(element));
+          }
+          //send this page to the client
+          writer.flush();
+        } catch (IOException ioe) {
+          throw new RuntimeException(ioe);
+        }
+      }
+    });
+    return elementCount[0];
+  }
+
   /** logger */
   private static final Log LOG = LogFactory.getLog(WsRestResponseContentType.class);
 
@@ -184,15 +411,61 @@ public enum WsRestResponseContentType {
   public abstract String getContentType();
 
   /**
-   * setup an xstream object for input/output
+   * xstream instances are thread safe once they are configured (including their annotations), 
+   * and expensive to build, so keep one for each combination of the settings they are built from.  
+   * If the config changes or alias classes are added, the settings will be different, and a new 
+   * one will be built
+   */
+  private static Map<MultiKey, XStream> xstreamCache = new ConcurrentHashMap<MultiKey, XStream>();
+  
+  /**
+   * max number of xstreams to cache, there shouldnt be many combinations of settings
+   */
+  private static final int XSTREAM_CACHE_MAX_SIZE = 50;
+  
+  /**
+   * get an xstream object for input/output.  These are shared so dont change the configuration
+   * of the result
    * @param isJson driver for json 
    * @return the xstream object
    */
   public static XStream xstream(boolean isJson) {
-    //note new JsonHierarchicalStreamDriver() doesnt work
-    XStream xstream = null;
     
     boolean ignoreExtraneousFields = GrouperWsConfig.retrieveConfig().propertyValueBoolean("ws.ignoreExtraneousXmlFieldsRest", false);
+    String fieldsToOmit = GrouperWsConfig.retrieveConfig().propertyValueString("ws.omitXmlPropertiesRest");
+    GrouperVersion clientVersion = GrouperWsVersionUtils.retrieveCurrentClientVersion();
+    boolean omitIdentifierLookup = clientVersion != null 
+      && clientVersion.lessThanArg(GrouperVersion.valueOfIgnoreCase("v1_4_000"));
+    
+    //alias classes are only added, so the number of them tells if there are new ones
+    MultiKey multiKey = new MultiKey(isJson, ignoreExtraneousFields, 
+        GrouperUtil.defaultString(fieldsToOmit), omitIdentifierLookup, 
+        WsRestClassLookup.getAliasClassMap().size());
+    
+    XStream xstream = xstreamCache.get(multiKey);
+    
+    if (xstream == null) {
+      xstream = xstreamNew(isJson, ignoreExtraneousFields, fieldsToOmit, omitIdentifierLookup);
+      if (xstreamCache.size() >= XSTREAM_CACHE_MAX_SIZE) {
+        xstreamCache.clear();
+      }
+      xstreamCache.put(multiKey, xstream);
+    }
+    return xstream;
+  }
+
+  /**
+   * setup an xstream object for input/output
+   * @param isJson driver for json 
+   * @param ignoreExtraneousFields if fields in the xml which arent in the classes should be ignored
+   * @param fieldsToOmit comma separated fully qualified class name and property name to omit
+   * @param omitIdentifierLookup true if old clients which dont know about the WsSubject identifierLookup
+   * @return the xstream object
+   */
+  static XStream xstreamNew(boolean isJson, boolean ignoreExtraneousFields, 
+      String fieldsToOmit, boolean omitIdentifierLookup) {
+    //note new JsonHierarchicalStreamDriver() doesnt work
+    XStream xstream = null;
     
     if (ignoreExtraneousFields) {
       xstream = new XStream(isJson ? new JettisonMappedXmlDriver() : new XppDriver()) {
@@ -230,7 +503,6 @@ public enum WsRestResponseContentType {
     }
 
     //see if omitting fields
-    String fieldsToOmit = GrouperWsConfig.retrieveConfig().propertyValueString("ws.omitXmlPropertiesRest");
     if (!GrouperUtil.isBlank(fieldsToOmit)) {
       String[] fieldsToOmitList = GrouperUtil.splitTrim(fieldsToOmit, ",");
       for (String fieldToOmit: fieldsToOmitList) {
@@ -247,17 +519,22 @@ public enum WsRestResponseContentType {
         }
       }
     }
-    GrouperVersion clientVersion = GrouperWsVersionUtils.retrieveCurrentClientVersion();
-    if (clientVersion != null && clientVersion.lessThanArg(GrouperVersion.valueOfIgnoreCase("v1_4_000"))) {
+    if (omitIdentifierLookup) {
       xstream.omitField(WsSubject.class, "identifierLookup");
     }
     //dont try to get fancy
     xstream.setMode(XStream.NO_REFERENCES);
-    xstream.autodetectAnnotations(true);
     Map<String, Class<?>> aliasClassMap = WsRestClassLookup.getAliasClassMap();
-    for (String key : aliasClassMap.keySet()) {
-      xstream.alias(key, aliasClassMap.get(key));
+    List<Class<?>> aliasClasses = new ArrayList<Class<?>>();
+    synchronized (aliasClassMap) {
+      for (String key : aliasClassMap.keySet()) {
+        xstream.alias(key, aliasClassMap.get(key));
+        aliasClasses.add(aliasClassMap.get(key));
+      }
     }
+    //process the annotations (and the annotations of the classes of their fields) now, since
+    //autodetecting them changes the xstream while marshaling, which isnt thread safe
+    xstream.processAnnotations(aliasClasses.toArray(new Class[aliasClasses.size()]));
     return xstream;
   }
 
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2012 Internet2
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package edu.internet2.middleware.grouper.ws.rest.contentType;
+
+/**
+ * <pre>
+ * an array field of a response which is read a page at a time while the rest response 
+ * is written, instead of all at once before the response is written.
+ * 
+ * when the response is written, the array holds one placeholder element so it can be found
+ * in the marshaled response, and the placeholder is replaced with the elements as they are read.
+ * reading the elements must not change any other field of the response (e.g. the result code
+ * must be known before), since the text around the array is marshaled separately.
+ * </pre>
+ */
+public interface WsRestStreamedArray {
+
+  /**
+   * handles each page of elements as it is read
+   */
+  public static interface WsRestStreamedArrayPageHandler {
+
+    /**
+     * handle a page of elements
+     * @param elements
+     */
+    public void handlePage(Object[] elements);
+  }
+
+  /**
+   * make an element to put in the array as a placeholder
+   * @param id unique id to put in the placeholder so it can be found in the response
+   * @return the placeholder
+   */
+  public Object placeholder(String id);
+
+  /**
+   * set the array field of the response to an array of just the placeholder
+   * @param placeholder or null to set the array field to null
+   */
+  public void assignPlaceholder(Object placeholder);
+
+  /**
+   * read the elements a page at a time and pass each page to the handler
+   * @param wsRestStreamedArrayPageHandler
+   */
+  public void retrieveElements(WsRestStreamedArrayPageHandler wsRestStreamedArrayPageHandler);
+
+  /**
+   * read all the elements into the array field of the response, e.g. if the response
+   * cannot be streamed
+   */
+  public void assignAllElements();
+}
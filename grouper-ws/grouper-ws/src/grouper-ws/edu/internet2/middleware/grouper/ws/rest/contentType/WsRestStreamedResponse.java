@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright 2012 Internet2
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package edu.internet2.middleware.grouper.ws.rest.contentType;
+
+import java.util.List;
+
+/**
+ * a response which might have arrays which are read while the rest response is written
+ */
+public interface WsRestStreamedResponse {
+
+  /**
+   * arrays which are read while the response is written, in the order they are marshaled
+   * @return the arrays, or empty if none
+   */
+  public List<WsRestStreamedArray> retrieveStreamedArrays();
+}
@@ -19,6 +19,7 @@
  */
 package edu.internet2.middleware.grouper.ws;
 
+import java.io.StringWriter;
 import java.sql.Timestamp;
 import java.util.Date;
 import java.util.Iterator;
@@ -123,6 +124,7 @@ import edu.internet2.middleware.grouper.ws.coresoap.WsGetAttributeAssignmentsRes
 import edu.internet2.middleware.grouper.ws.coresoap.WsGetGrouperPrivilegesLiteResult;
 import edu.internet2.middleware.grouper.ws.coresoap.WsGetGroupsResults;
 import edu.internet2.middleware.grouper.ws.coresoap.WsGetGroupsResults.WsGetGroupsResultsCode;
+import edu.internet2.middleware.grouper.ws.coresoap.WsGetMembersResult;
 import edu.internet2.middleware.grouper.ws.coresoap.WsGetMembersResults;
 import edu.internet2.middleware.grouper.ws.coresoap.WsGetMembersResults.WsGetMembersResultsCode;
 import edu.internet2.middleware.grouper.ws.coresoap.WsGetMembershipsResults;
@@ -148,10 +150,12 @@ import edu.internet2.middleware.grouper.ws.coresoap.WsStem;
 import edu.internet2.middleware.grouper.ws.coresoap.WsStemLookup;
 import edu.internet2.middleware.grouper.ws.coresoap.WsSubject;
 import edu.internet2.middleware.grouper.ws.coresoap.WsSubjectLookup;
+import edu.internet2.middleware.grouper.ws.member.WsGetMembersStreamer;
 import edu.internet2.middleware.grouper.ws.member.WsMemberFilter;
 import edu.internet2.middleware.grouper.ws.query.StemScope;
 import edu.internet2.middleware.grouper.ws.query.WsQueryFilterType;
 import edu.internet2.middleware.grouper.ws.rest.attribute.WsInheritanceSetRelation;
+import edu.internet2.middleware.grouper.ws.rest.contentType.WsRestResponseContentType;
 import edu.internet2.middleware.grouper.ws.util.GrouperServiceUtils;
 import edu.internet2.middleware.grouper.ws.util.GrouperWsVersionUtils;
 import edu.internet2.middleware.grouper.ws.util.RestClientSettings;
@@ -1161,6 +1165,72 @@ public class GrouperServiceLogicTest extends GrouperTest {
   
   }
 
+  /**
+   * streamed get members and get memberships are written the same as if they were not streamed
+   */
+  public void testGetMembersAndMembershipsStreamed() {
+    
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+    
+    Group group1 = new GroupSave(grouperSession).assignSaveMode(SaveMode.INSERT_OR_UPDATE)
+      .assignName("test:group1").assignCreateParentStemsIfNotExist(true).save();
+    group1.addMember(SubjectTestHelper.SUBJ0);
+    group1.addMember(SubjectTestHelper.SUBJ1);
+
+    //no members
+    Group group2 = new GroupSave(grouperSession).assignSaveMode(SaveMode.INSERT_OR_UPDATE)
+      .assignName("test:group2").assignCreateParentStemsIfNotExist(true).save();
+
+    for (WsRestResponseContentType wsRestResponseContentType : 
+        new WsRestResponseContentType[]{WsRestResponseContentType.xml, WsRestResponseContentType.json}) {
+
+      String[] getMembersOutput = new String[2];
+      String[] getMembershipsOutput = new String[2];
+      
+      for (int i=0;i<2;i++) {
+        
+        boolean streaming = i == 0;
+        
+        WsGetMembersResults wsGetMembersResults = new WsGetMembersResults();
+        WsGetMembersResult[] wsGetMembersResultArray = new WsGetMembersResult[2];
+        int index = 0;
+        for (Group group : new Group[]{group1, group2}) {
+          wsGetMembersResultArray[index] = new WsGetMembersResult();
+          wsGetMembersResultArray[index].setWsGroup(new WsGroup(group, null, false));
+          wsGetMembersResultArray[index].assignWsGetMembersStreamer(
+              new WsGetMembersStreamer(group, null, null, null, null, true));
+          index++;
+        }
+        wsGetMembersResults.setResults(wsGetMembersResultArray);
+        wsGetMembersResults.tallyResults("test");
+        if (!streaming) {
+          wsGetMembersResults.assignStreamedSubjects();
+        }
+        StringWriter stringWriter = new StringWriter();
+        wsRestResponseContentType.writeResponse(wsGetMembersResults, stringWriter);
+        getMembersOutput[i] = stringWriter.toString();
+        
+        Set<Object[]> membershipObjects = new MembershipFinder().addGroupId(group1.getId()).addGroupId(group2.getId())
+          .assignField(Group.getDefaultList()).findMembershipsMembers();
+        if (!streaming) {
+          Membership.resolveSubjects(membershipObjects);
+        }
+        WsGetMembershipsResults wsGetMembershipsResults = new WsGetMembershipsResults();
+        wsGetMembershipsResults.assignResult(membershipObjects, false, true, null, streaming);
+        stringWriter = new StringWriter();
+        wsRestResponseContentType.writeResponse(wsGetMembershipsResults, stringWriter);
+        getMembershipsOutput[i] = stringWriter.toString();
+      }
+      
+      assertEquals(wsRestResponseContentType.name(), getMembersOutput[1], getMembersOutput[0]);
+      assertTrue(getMembersOutput[0], getMembersOutput[0].contains(SubjectTestHelper.SUBJ1.getId()));
+      assertTrue(getMembersOutput[0], getMembersOutput[0].contains(group2.getName()));
+
+      assertEquals(wsRestResponseContentType.name(), getMembershipsOutput[1], getMembershipsOutput[0]);
+      assertTrue(getMembershipsOutput[0], getMembershipsOutput[0].contains(SubjectTestHelper.SUBJ1.getId()));
+    }
+  }
+
   /**
    * test get members using point in time
    */
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright 2012 Internet2
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package edu.internet2.middleware.grouper.ws.rest.contentType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.thoughtworks.xstream.annotations.XStreamOmitField;
+
+
+/**
+ * parent bean with arrays of children which are read while the response is written
+ */
+public class BeanStreamedParent implements WsRestStreamedResponse {
+
+  /** field */
+  private String parentField1 = "value1";
+  
+  /** streamed children */
+  private BeanChild[] beanChildren1;
+  
+  /** field */
+  private String parentField2 = "value2";
+  
+  /** streamed children */
+  private BeanChild[] beanChildren2;
+  
+  /** field */
+  private String parentField3 = "value3";
+
+  /** arrays which are streamed */
+  @XStreamOmitField
+  private List<WsRestStreamedArray> streamedArrays = new ArrayList<WsRestStreamedArray>();
+  
+  /**
+   * stream children into the arrays
+   * @param count1 number of children in the first array
+   * @param count2 number of children in the second array
+   * @param pageSize number of children in each page
+   */
+  public void assignStreamedChildren(int count1, int count2, int pageSize) {
+    this.streamedArrays.add(new BeanChildrenStreamedArray(true, count1, pageSize));
+    this.streamedArrays.add(new BeanChildrenStreamedArray(false, count2, pageSize));
+  }
+  
+  /**
+   * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedResponse#retrieveStreamedArrays()
+   */
+  public List<WsRestStreamedArray> retrieveStreamedArrays() {
+    return this.streamedArrays;
+  }
+
+  /**
+   * children which are made a page at a time
+   */
+  private class BeanChildrenStreamedArray implements WsRestStreamedArray {
+    
+    /** if the first or second array */
+    private boolean first;
+    
+    /** number of children */
+    private int count;
+    
+    /** children in each page */
+    private int pageSize;
+    
+    /**
+     * @param first1
+     * @param count1
+     * @param pageSize1
+     */
+    public BeanChildrenStreamedArray(boolean first1, int count1, int pageSize1) {
+      this.first = first1;
+      this.count = count1;
+      this.pageSize = pageSize1;
+    }
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#placeholder(java.lang.String)
+     */
+    public Object placeholder(String id) {
+      return new BeanChild(id, null, null, null);
+    }
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#assignPlaceholder(java.lang.Object)
+     */
+    public void assignPlaceholder(Object placeholder) {
+      this.assignChildren(placeholder == null ? null : new BeanChild[]{(BeanChild)placeholder});
+    }
+
+    /**
+     * @param beanChildren
+     */
+    private void assignChildren(BeanChild[] beanChildren) {
+      if (this.first) {
+        BeanStreamedParent.this.beanChildren1 = beanChildren;
+      } else {
+        BeanStreamedParent.this.beanChildren2 = beanChildren;
+      }
+    }
+    
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#retrieveElements(WsRestStreamedArrayPageHandler)
+     */
+    public void retrieveElements(WsRestStreamedArrayPageHandler wsRestStreamedArrayPageHandler) {
+      for (int i=0;i<this.count;i+=this.pageSize) {
+        BeanChild[] beanChildren = new BeanChild[Math.min(this.pageSize, this.count - i)];
+        for (int j=0;j<beanChildren.length;j++) {
+          String name = (this.first ? "first" : "second") + (i + j);
+          beanChildren[j] = new BeanChild(name, "field2_" + name, new String[]{"a", name}, new int[]{i + j});
+        }
+        wsRestStreamedArrayPageHandler.handlePage(beanChildren);
+      }
+    }
+
+    /**
+     * @see edu.internet2.middleware.grouper.ws.rest.contentType.WsRestStreamedArray#assignAllElements()
+     */
+    public void assignAllElements() {
+      final List<BeanChild> beanChildren = new ArrayList<BeanChild>();
+      this.retrieveElements(new WsRestStreamedArrayPageHandler() {
+        
+        public void handlePage(Object[] elements) {
+          beanChildren.addAll(Arrays.asList((BeanChild[])elements));
+        }
+      });
+      this.assignChildren(beanChildren.size() == 0 ? null : beanChildren.toArray(new BeanChild[0]));
+    }
+  }
+  
+  /**
+   * field
+   * @return the parentField1
+   */
+  public String getParentField1() {
+    return this.parentField1;
+  }
+
+  /**
+   * field
+   * @param parentField1a the parentField1 to set
+   */
+  public void setParentField1(String parentField1a) {
+    this.parentField1 = parentField1a;
+  }
+
+  /**
+   * streamed children
+   * @return the beanChildren1
+   */
+  public BeanChild[] getBeanChildren1() {
+    return this.beanChildren1;
+  }
+
+  /**
+   * streamed children
+   * @param beanChildren1a the beanChildren1 to set
+   */
+  public void setBeanChildren1(BeanChild[] beanChildren1a) {
+    this.beanChildren1 = beanChildren1a;
+  }
+
+  /**
+   * field
+   * @return the parentField2
+   */
+  public String getParentField2() {
+    return this.parentField2;
+  }
+
+  /**
+   * field
+   * @param parentField2a the parentField2 to set
+   */
+  public void setParentField2(String parentField2a) {
+    this.parentField2 = parentField2a;
+  }
+
+  /**
+   * streamed children
+   * @return the beanChildren2
+   */
+  public BeanChild[] getBeanChildren2() {
+    return this.beanChildren2;
+  }
+
+  /**
+   * streamed children
+   * @param beanChildren2a the beanChildren2 to set
+   */
+  public void setBeanChildren2(BeanChild[] beanChildren2a) {
+    this.beanChildren2 = beanChildren2a;
+  }
+
+  /**
+   * field
+   * @return the parentField3
+   */
+  public String getParentField3() {
+    return this.parentField3;
+  }
+
+  /**
+   * field
+   * @param parentField3a the parentField3 to set
+   */
+  public void setParentField3(String parentField3a) {
+    this.parentField3 = parentField3a;
+  }
+}
@@ -27,6 +27,7 @@ import junit.textui.TestRunner;
 
 import org.apache.commons.lang.StringUtils;
 
+import edu.internet2.middleware.grouper.util.GrouperUtil;
 import edu.internet2.middleware.grouper.ws.coresoap.WsGetMembershipsResults;
 import edu.internet2.middleware.grouper.ws.coresoap.WsMembership;
 import edu.internet2.middleware.grouper.ws.rest.WsRestClassLookup;
@@ -52,6 +53,69 @@ public class RestConverterTest extends TestCase {
     TestRunner.run(new RestConverterTest("testMarshal2"));
   }
   
+  /**
+   * xstreams are shared between calls
+   */
+  public void testXstreamCached() {
+    
+    assertSame(WsRestResponseContentType.xstream(false), WsRestResponseContentType.xstream(false));
+    assertSame(WsRestResponseContentType.xstream(true), WsRestResponseContentType.xstream(true));
+    assertNotSame(WsRestResponseContentType.xstream(false), WsRestResponseContentType.xstream(true));
+
+    WsGetMembershipsResults wsGetMembershipsResults = new WsGetMembershipsResults();
+    wsGetMembershipsResults.setWsMemberships(new WsMembership[]{new WsMembership()});
+    
+    //a shared xstream still works each time
+    for (int i=0;i<2;i++) {
+      String string = WsRestRequestContentType.xml.writeString(wsGetMembershipsResults);
+      Object object = WsRestRequestContentType.xml.parseString(string, new StringBuilder());
+      assertTrue(object instanceof WsGetMembershipsResults);
+      assertEquals(1, ((WsGetMembershipsResults)object).getWsMemberships().length);
+    }
+  }
+  
+  /**
+   * streamed arrays are written the same as if they were not streamed, including arrays with no elements
+   */
+  public void testWriteResponseStreamed() {
+    
+    WsRestClassLookup.addAliasClass(BeanStreamedParent.class);
+    WsRestClassLookup.addAliasClass(BeanChild.class);
+
+    int[][] counts = new int[][]{{5, 7}, {0, 4}, {4, 0}, {0, 0}, {1, 1}, {3, 3}};
+    
+    for (WsRestResponseContentType wsRestResponseContentType : WsRestResponseContentType.values()) {
+      
+      boolean canStream = wsRestResponseContentType.arrayElementWriter() != null;
+      
+      for (int[] count : counts) {
+        
+        String label = wsRestResponseContentType + ", " + count[0] + ", " + count[1];
+        
+        BeanStreamedParent beanStreamedParent = new BeanStreamedParent();
+        beanStreamedParent.assignStreamedChildren(count[0], count[1], 3);
+        StringWriter stringWriter = new StringWriter();
+        wsRestResponseContentType.writeResponse(beanStreamedParent, stringWriter);
+        String streamed = stringWriter.toString();
+        
+        BeanStreamedParent beanNotStreamedParent = new BeanStreamedParent();
+        beanNotStreamedParent.assignStreamedChildren(count[0], count[1], 3);
+        for (WsRestStreamedArray wsRestStreamedArray : beanNotStreamedParent.retrieveStreamedArrays()) {
+          wsRestStreamedArray.assignAllElements();
+        }
+        stringWriter = new StringWriter();
+        wsRestResponseContentType.writeString(beanNotStreamedParent, stringWriter);
+        String notStreamed = stringWriter.toString();
+        
+        assertEquals(label, notStreamed, streamed);
+        
+        //if streamed, the array only has the placeholder
+        assertEquals(label, canStream ? Math.min(1, count[0]) : count[0], GrouperUtil.length(beanStreamedParent.getBeanChildren1()));
+        assertEquals(label, canStream ? Math.min(1, count[1]) : count[1], GrouperUtil.length(beanStreamedParent.getBeanChildren2()));
+      }
+    }
+  }
+  
   /**
    * unmarshal a problem string
    */
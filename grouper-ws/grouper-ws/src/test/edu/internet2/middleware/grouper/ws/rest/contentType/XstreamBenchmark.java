@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2012 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+/**
+ * @author mchyzer
+ * $Id$
+ */
+package edu.internet2.middleware.grouper.ws.rest.contentType;
+
+import java.io.StringWriter;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.CompactWriter;
+
+import edu.internet2.middleware.grouper.ws.coresoap.WsGroup;
+import edu.internet2.middleware.grouper.ws.coresoap.WsHasMemberLiteResult;
+import edu.internet2.middleware.grouper.ws.coresoap.WsSubject;
+
+
+/**
+ * run this to compare marshaling a small response (like hasMemberLite) with a new xstream
+ * each time vs the shared xstream.  note, this should NOT extend TestCase
+ */
+public class XstreamBenchmark {
+
+  /**
+   * @param args
+   */
+  public static void main(String[] args) {
+
+    WsHasMemberLiteResult wsHasMemberLiteResult = new WsHasMemberLiteResult();
+    WsGroup wsGroup = new WsGroup();
+    wsGroup.setName("a:b:c");
+    wsHasMemberLiteResult.setWsGroup(wsGroup);
+    WsSubject wsSubject = new WsSubject();
+    wsSubject.setId("12345");
+    wsSubject.setSourceId("jdbc");
+    wsHasMemberLiteResult.setWsSubject(wsSubject);
+
+    //warm up both
+    runTest(wsHasMemberLiteResult, 1000, false);
+    runTest(wsHasMemberLiteResult, 1000, true);
+
+    for (int i=0;i<3;i++) {
+      runTest(wsHasMemberLiteResult, 10000, false);
+      runTest(wsHasMemberLiteResult, 10000, true);
+    }
+  }
+
+  /**
+   * marshal the object a number of times
+   * @param object
+   * @param times
+   * @param shared true to use the shared xstream, false for a new one each time
+   */
+  private static void runTest(Object object, int times, boolean shared) {
+
+    long startNanos = System.nanoTime();
+    int length = 0;
+
+    for (int i=0;i<times;i++) {
+      XStream xstream = shared ? WsRestResponseContentType.xstream(false)
+          : WsRestResponseContentType.xstreamNew(false, false, null, false);
+      StringWriter stringWriter = new StringWriter();
+      xstream.marshal(object, new CompactWriter(stringWriter));
+      length += stringWriter.getBuffer().length();
+    }
+
+    long micros = (System.nanoTime() - startNanos) / 1000;
+    System.out.println(times + " marshals with " + (shared ? "shared" : "new") + " xstream took "
+        + (micros/1000) + "ms, " + (micros / times) + "micros each (" + length + " chars)");
+  }
+
+}
@@ -22,12 +22,15 @@ package edu.internet2.middleware.grouper.changeLog.esb.consumer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 
+import edu.internet2.middleware.grouper.SubjectFinder;
 import edu.internet2.middleware.grouper.app.loader.GrouperLoaderConfig;
 import edu.internet2.middleware.grouper.changeLog.ChangeLogConsumerBase;
 import edu.internet2.middleware.grouper.changeLog.ChangeLogEntry;
@@ -64,10 +67,24 @@ public class EsbConsumer extends ChangeLogConsumerBase {
     String consumerName = changeLogProcessorMetadata.getConsumerName();
     long currentId = -1;
 
+    //everything up to and including this was sent or skipped, this is returned if there is a problem
+    long lastProcessedId = changeLogEntryList.size() == 0 ? -1 : (changeLogEntryList.get(0).getSequenceNumber() - 1);
+
     Map<String, Object> debugMap = LOG.isDebugEnabled() ? new LinkedHashMap<String, Object>() : null;
 
+    //send this many events in one EsbEvents message
+    int eventsPerMessage = GrouperLoaderConfig.retrieveConfig().propertyValueInt("changeLog.consumer." 
+        + consumerName + ".publisher.eventsPerMessage", 1);
+    
+    //events which passed the filter and are not sent yet
+    List<EsbEvent> pendingEvents = new ArrayList<EsbEvent>();
+    
     //try catch so we can track that we made some progress
     try {
+      
+      //convert all the entries first so the subjects can be looked up in bulk
+      List<EsbEvent> esbEvents = new ArrayList<EsbEvent>();
+      
       for (ChangeLogEntry changeLogEntry : changeLogEntryList) {
 
         currentId = changeLogEntry.getSequenceNumber();
@@ -395,23 +412,31 @@ public class EsbConsumer extends ChangeLogConsumerBase {
               ChangeLogLabels.STEM_UPDATE.propertyNewValue));
 
         }
+        esbEvents.add(event);
+      }
+      
+      String addSubjectAttributes = GrouperLoaderConfig.retrieveConfig().propertyValueString(
+          "changeLog.consumer." + consumerName + ".publisher.addSubjectAttributes", "");
+      
+      if (!StringUtils.isBlank(addSubjectAttributes)) {
+        this.retrieveSubjects(esbEvents);
+      }
+      
+      for (EsbEvent event : esbEvents) {
+        
+        currentId = GrouperUtil.longValue(event.getSequenceNumber());
         if (LOG.isDebugEnabled()) {
+          debugMap.put("eventNumber", currentId);
           debugMap.put("eventType", event.getEventType());
         }
 
         if (event.getEventType() != null) {
           // convert to JSON and process
 
-          if (!GrouperLoaderConfig.retrieveConfig().propertyValueString(
-              "changeLog.consumer." + consumerName + ".publisher.addSubjectAttributes",
-              "").equals("")) {
+          if (!StringUtils.isBlank(addSubjectAttributes)) {
             // add subject attributes if configured
-            event = this.addSubjectAttributes(event, GrouperLoaderConfig.retrieveConfig().propertyValueString("changeLog.consumer." + consumerName
-                + ".publisher.addSubjectAttributes"));
+            event = this.addSubjectAttributes(event, addSubjectAttributes);
           }
-          // add event to array, only one event supported for now
-          EsbEvents events = new EsbEvents();
-          events.addEsbEvent(event);
 
           //System.out.println(eventJsonString);
           if (this.esbPublisherBase == null) {
@@ -440,95 +465,18 @@ public class EsbConsumer extends ChangeLogConsumerBase {
             }
           }
           if (processEvent) {
-
-            String eventJsonString = null;
-
-            // changeLog.consumer.awsJira.noSensitiveData
-            boolean noSensitiveData = GrouperLoaderConfig.retrieveConfig().propertyValueBoolean("changeLog.consumer." + consumerName
-                + ".noSensitiveData", false);
-
-            //if no sensitive data, then just send over that a change occurred and the event type and the id
-            if (noSensitiveData) {
-              if (LOG.isDebugEnabled()) {
-                debugMap.put("noSensitiveData", true);
-              }
-              EsbEvents tempEsbEvents = new EsbEvents();
-              List<EsbEvent> tempEsbEventList = new ArrayList<EsbEvent>();
-              for (EsbEvent esbEvent : GrouperUtil.nonNull(events.getEsbEvent(), EsbEvent.class)) {
-                EsbEvent tempEvent = new EsbEvent();
-                //copy over non sensitive data
-                tempEvent.setSequenceNumber(esbEvent.getSequenceNumber());
-                tempEvent.setEventType(esbEvent.getEventType());
-                tempEvent.setChangeOccurred(true);
-                tempEsbEventList.add(tempEvent);
-              }
-              tempEsbEvents.setEsbEvent(GrouperUtil.toArray(tempEsbEventList, EsbEvent.class));
-              events = tempEsbEvents;
-            }
-            eventJsonString = GrouperUtil.jsonConvertToNoWrap(events);
-            //String eventJsonString = gson.toJson(event);
-            // add indenting for debugging
-            // add subject attributes if configured
-
-            if (GrouperLoaderConfig.retrieveConfig().propertyValueBoolean("changeLog.consumer." + consumerName
-                + ".publisher.debug", false)) {
-              eventJsonString = GrouperUtil.indent(eventJsonString, false);
-            }
-
-
-
-            //lets see if we are encrypting
-            //    # if you want to encrypt messages, set this to an implementation of edu.internet2.middleware.grouperClient.encryption.GcEncryptionInterface
-            //changeLog.consumer.awsJira.encryptionImplementation = edu.internet2.middleware.grouperClient.encryption.GcSymmetricEncryptAesCbcPkcs5Padding
-            //    # this is a key or could be encrypted in a file as well like other passwords
-            //    changeLog.consumer.awsJira.encryptionKey = Mdxabc123zouRykg==
-            String encryptionImplName = GrouperLoaderConfig.getPropertyString("changeLog.consumer." + consumerName
-                + ".encryptionImplementation", false);
-            if (!StringUtils.isBlank(encryptionImplName)) {
-              
-              String encryptionKey = GrouperLoaderConfig.getPropertyString("changeLog.consumer." + consumerName
-                  + ".encryptionKey", true);
-              encryptionKey = GrouperClientUtils.decryptFromFileIfFileExists(encryptionKey, null);
-              
-              Class<GcEncryptionInterface> encryptionImplClass = GrouperUtil.forName(encryptionImplName);
-              GcEncryptionInterface gcEncryptionInterface = GrouperUtil.newInstance(encryptionImplClass);
-              String encryptedPayload = gcEncryptionInterface.encrypt(encryptionKey, eventJsonString);
-              
-              events = new EsbEvents();
-              events.setEncrypted(true);
-              events.setEncryptedPayload(encryptedPayload);
-              
-              boolean dontSendFirst4 = GrouperLoaderConfig.getPropertyBoolean("changeLog.consumer." + consumerName
-                  + ".dontSendShaBase64secretFirst4", false);
-              
-              if (!dontSendFirst4) {
-                String secretFirst4 = GrouperClientUtils.encryptSha(encryptionKey).substring(0,4);
-                events.setEncryptionKeySha1First4(secretFirst4);
-              }
-
-              eventJsonString = GrouperUtil.jsonConvertToNoWrap(events);
-
-              if (GrouperLoaderConfig.getPropertyBoolean("changeLog.consumer." + consumerName
-                  + ".publisher.debug", false)) {
-                eventJsonString = GrouperUtil.indent(eventJsonString, false);
-              }
-
-            }
             
-            if (esbPublisherBase.dispatchEvent(eventJsonString, consumerName)) {
-              //OK;
-              if (LOG.isDebugEnabled()) {
-                debugMap.put("processed", true);
-              }
-            } else {
-              if (LOG.isDebugEnabled()) {
-                debugMap.put("processed", false);
+            pendingEvents.add(event);
+            
+            if (pendingEvents.size() >= eventsPerMessage) {
+              if (!this.dispatchEvents(pendingEvents, consumerName, debugMap)) {
+                // error, need to retry from the first event which wasnt sent
+                changeLogProcessorMetadata.registerProblem(null,
+                    "Error processing record " + pendingEvents.get(0).getSequenceNumber(), 
+                    GrouperUtil.longValue(pendingEvents.get(0).getSequenceNumber()));
+                return lastProcessedId;
               }
-              // error, need to retry
-              changeLogProcessorMetadata.registerProblem(null,
-                  "Error processing record " + event.getSequenceNumber(), currentId);
-              //we made it to this -1
-              return currentId - 1;
+              pendingEvents.clear();
             }
           }
         } else {
@@ -536,15 +484,30 @@ public class EsbConsumer extends ChangeLogConsumerBase {
             debugMap.put("unsupportedEvent", event.getType());
           }
         }
-
+        
+        //if nothing is waiting to be sent, then everything up to here is done
+        if (pendingEvents.size() == 0) {
+          lastProcessedId = currentId;
+        }
+      }
+      
+      //send the rest
+      if (pendingEvents.size() > 0) {
+        if (!this.dispatchEvents(pendingEvents, consumerName, debugMap)) {
+          changeLogProcessorMetadata.registerProblem(null,
+              "Error processing record " + pendingEvents.get(0).getSequenceNumber(), 
+              GrouperUtil.longValue(pendingEvents.get(0).getSequenceNumber()));
+          return lastProcessedId;
+        }
+        pendingEvents.clear();
       }
       //we successfully processed this record
 
     } catch (Exception e) {
       LOG.error("problem", e);
       changeLogProcessorMetadata.registerProblem(e, "Error processing record " + currentId, currentId);
-      //we made it to this -1
-      return currentId - 1;
+      //we made it to the last one which was sent
+      return lastProcessedId;
     } finally {
       if (LOG.isDebugEnabled()) {
         LOG.debug(GrouperUtil.mapToString(debugMap));
@@ -560,6 +523,143 @@ public class EsbConsumer extends ChangeLogConsumerBase {
     return currentId;
   }
 
+  /**
+   * convert events to json (encrypted if configured) and send them in one message
+   * @param esbEventList
+   * @param consumerName
+   * @param debugMap
+   * @return true if sent, false if not
+   */
+  private boolean dispatchEvents(List<EsbEvent> esbEventList, String consumerName, Map<String, Object> debugMap) {
+    
+    EsbEvents events = new EsbEvents();
+    events.setEsbEvent(GrouperUtil.toArray(esbEventList, EsbEvent.class));
+    
+    String eventJsonString = null;
+
+    // changeLog.consumer.awsJira.noSensitiveData
+    boolean noSensitiveData = GrouperLoaderConfig.retrieveConfig().propertyValueBoolean("changeLog.consumer." + consumerName
+        + ".noSensitiveData", false);
+
+    //if no sensitive data, then just send over that a change occurred and the event type and the id
+    if (noSensitiveData) {
+      if (LOG.isDebugEnabled()) {
+        debugMap.put("noSensitiveData", true);
+      }
+      EsbEvents tempEsbEvents = new EsbEvents();
+      List<EsbEvent> tempEsbEventList = new ArrayList<EsbEvent>();
+      for (EsbEvent esbEvent : GrouperUtil.nonNull(events.getEsbEvent(), EsbEvent.class)) {
+        EsbEvent tempEvent = new EsbEvent();
+        //copy over non sensitive data
+        tempEvent.setSequenceNumber(esbEvent.getSequenceNumber());
+        tempEvent.setEventType(esbEvent.getEventType());
+        tempEvent.setChangeOccurred(true);
+        tempEsbEventList.add(tempEvent);
+      }
+      tempEsbEvents.setEsbEvent(GrouperUtil.toArray(tempEsbEventList, EsbEvent.class));
+      events = tempEsbEvents;
+    }
+    eventJsonString = GrouperUtil.jsonConvertToNoWrap(events);
+    //String eventJsonString = gson.toJson(event);
+    // add indenting for debugging
+    // add subject attributes if configured
+
+    if (GrouperLoaderConfig.retrieveConfig().propertyValueBoolean("changeLog.consumer." + consumerName
+        + ".publisher.debug", false)) {
+      eventJsonString = GrouperUtil.indent(eventJsonString, false);
+    }
+
+
+
+    //lets see if we are encrypting
+    //    # if you want to encrypt messages, set this to an implementation of edu.internet2.middleware.grouperClient.encryption.GcEncryptionInterface
+    //changeLog.consumer.awsJira.encryptionImplementation = edu.internet2.middleware.grouperClient.encryption.GcSymmetricEncryptAesCbcPkcs5Padding
+    //    # this is a key or could be encrypted in a file as well like other passwords
+    //    changeLog.consumer.awsJira.encryptionKey = Mdxabc123zouRykg==
+    String encryptionImplName = GrouperLoaderConfig.getPropertyString("changeLog.consumer." + consumerName
+        + ".encryptionImplementation", false);
+    if (!StringUtils.isBlank(encryptionImplName)) {
+      
+      String encryptionKey = GrouperLoaderConfig.getPropertyString("changeLog.consumer." + consumerName
+          + ".encryptionKey", true);
+      encryptionKey = GrouperClientUtils.decryptFromFileIfFileExists(encryptionKey, null);
+      
+      Class<GcEncryptionInterface> encryptionImplClass = GrouperUtil.forName(encryptionImplName);
+      GcEncryptionInterface gcEncryptionInterface = GrouperUtil.newInstance(encryptionImplClass);
+      String encryptedPayload = gcEncryptionInterface.encrypt(encryptionKey, eventJsonString);
+      
+      events = new EsbEvents();
+      events.setEncrypted(true);
+      events.setEncryptedPayload(encryptedPayload);
+      
+      boolean dontSendFirst4 = GrouperLoaderConfig.getPropertyBoolean("changeLog.consumer." + consumerName
+          + ".dontSendShaBase64secretFirst4", false);
+      
+      if (!dontSendFirst4) {
+        String secretFirst4 = GrouperClientUtils.encryptSha(encryptionKey).substring(0,4);
+        events.setEncryptionKeySha1First4(secretFirst4);
+      }
+
+      eventJsonString = GrouperUtil.jsonConvertToNoWrap(events);
+
+      if (GrouperLoaderConfig.getPropertyBoolean("changeLog.consumer." + consumerName
+          + ".publisher.debug", false)) {
+        eventJsonString = GrouperUtil.indent(eventJsonString, false);
+      }
+
+    }
+    
+    boolean processed = this.esbPublisherBase.dispatchEvent(eventJsonString, consumerName);
+    if (LOG.isDebugEnabled()) {
+      debugMap.put("processed", processed);
+      debugMap.put("eventsInMessage", esbEventList.size());
+    }
+    return processed;
+  }
+  
+  /**
+   * look up the subjects of the events in bulk, one query per source, and assign them to the events
+   * so addSubjectAttributes doesnt look them up one by one
+   * @param esbEvents
+   */
+  private void retrieveSubjects(List<EsbEvent> esbEvents) {
+    
+    Map<String, Set<String>> sourceIdToSubjectIds = new HashMap<String, Set<String>>();
+    
+    for (EsbEvent esbEvent : esbEvents) {
+      if (esbEvent.getEventType() == null || StringUtils.isBlank(esbEvent.getSubjectId()) 
+          || StringUtils.isBlank(esbEvent.getSourceId())) {
+        continue;
+      }
+      Set<String> subjectIds = sourceIdToSubjectIds.get(esbEvent.getSourceId());
+      if (subjectIds == null) {
+        subjectIds = new LinkedHashSet<String>();
+        sourceIdToSubjectIds.put(esbEvent.getSourceId(), subjectIds);
+      }
+      subjectIds.add(esbEvent.getSubjectId());
+    }
+    
+    for (String sourceId : sourceIdToSubjectIds.keySet()) {
+      
+      Map<String, Subject> subjectIdToSubject = null;
+      try {
+        subjectIdToSubject = SubjectFinder.findByIds(sourceIdToSubjectIds.get(sourceId), sourceId);
+      } catch (Exception e) {
+        //the events will look up the subjects one by one
+        LOG.warn("Cant find subjects in bulk in source: " + sourceId, e);
+        continue;
+      }
+      
+      for (EsbEvent esbEvent : esbEvents) {
+        if (esbEvent.getEventType() != null && StringUtils.equals(sourceId, esbEvent.getSourceId()) 
+            && !StringUtils.isBlank(esbEvent.getSubjectId())) {
+          //if not found, it is null, which is the same as looking it up
+          esbEvent.assignSubject(subjectIdToSubject.get(esbEvent.getSubjectId()));
+        }
+      }
+    }
+  }
+
   /**
    * 
    * @param changeLogEntry
@@ -275,6 +275,15 @@ public class EsbEvent {
     return this._subject;
   }
   
+  /**
+   * assign the subject if it was looked up already (e.g. in bulk), so retrieveSubject doesnt look it up
+   * @param subject or null if not found
+   */
+  public void assignSubject(Subject subject) {
+    this._subject = subject;
+    this._lookedForSubject = true;
+  }
+  
   /**
    * 
    * @return eventType
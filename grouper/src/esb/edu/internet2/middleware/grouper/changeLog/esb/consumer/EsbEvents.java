@@ -122,7 +122,7 @@ public class EsbEvents {
 			EsbEvent[] newArray = new EsbEvent[this.esbEvent.length + 1];
 		      System.arraycopy(this.esbEvent, 0, newArray, 0,
 		          this.esbEvent.length);
-		      newArray[this.esbEvent.length + 1] = esbEvent;
+		      newArray[this.esbEvent.length] = esbEvent;
 		      this.esbEvent= newArray;
 		}
 	}
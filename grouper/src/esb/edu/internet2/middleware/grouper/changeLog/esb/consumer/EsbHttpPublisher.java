@@ -22,8 +22,10 @@ package edu.internet2.middleware.grouper.changeLog.esb.consumer;
 import edu.internet2.middleware.grouper.app.loader.GrouperLoaderConfig;
 import edu.internet2.middleware.grouper.esb.listener.EsbListenerBase;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
+import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.PostMethod;
@@ -37,6 +39,8 @@ import org.mortbay.jetty.HttpException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -47,6 +51,57 @@ public class EsbHttpPublisher extends EsbListenerBase {
 
     private static final Log LOG = GrouperUtil.getLog(EsbHttpPublisher.class);
 
+    /** pooled keep alive connections shared by the http clients */
+    private static MultiThreadedHttpConnectionManager connectionManager = null;
+
+    /** http clients by consumer name, url, username, and password, so connections are reused across events */
+    private static Map<MultiKey, HttpClient> httpClients = new ConcurrentHashMap<MultiKey, HttpClient>();
+
+    /**
+     * get the pooled connection manager
+     * @return the connection manager
+     */
+    private static synchronized MultiThreadedHttpConnectionManager connectionManager() {
+        if (connectionManager == null) {
+            connectionManager = new MultiThreadedHttpConnectionManager();
+            connectionManager.getParams().setStaleCheckingEnabled(true);
+            connectionManager.getParams().setDefaultMaxConnectionsPerHost(
+                    GrouperLoaderConfig.retrieveConfig().propertyValueInt("changeLog.esb.http.maxConnectionsPerHost", 5));
+            connectionManager.getParams().setMaxTotalConnections(
+                    GrouperLoaderConfig.retrieveConfig().propertyValueInt("changeLog.esb.http.maxConnectionsTotal", 20));
+        }
+        return connectionManager;
+    }
+
+    /**
+     * get an http client which shares the pooled connections
+     * @param consumerName
+     * @param urlString
+     * @param username
+     * @param password
+     * @return the http client
+     * @throws IOException if the url is invalid
+     */
+    private static HttpClient httpClient(String consumerName, String urlString, String username, String password)
+            throws IOException {
+        MultiKey multiKey = new MultiKey(consumerName, urlString, username, password);
+        HttpClient httpClient = httpClients.get(multiKey);
+        if (httpClient == null) {
+            httpClient = new HttpClient(connectionManager());
+            if (!(username.equals(""))) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Authenticating using basic auth");
+                }
+                URL url = new URL(urlString);
+                httpClient.getState().setCredentials(new AuthScope(null, url.getPort(), null),
+                        new UsernamePasswordCredentials(username, password));
+                httpClient.getParams().setAuthenticationPreemptive(true);
+            }
+            httpClients.put(multiKey, httpClient);
+        }
+        return httpClient;
+    }
+
     @Override
     public boolean dispatchEvent(String eventJsonString, String consumerName) {
         // TODO Auto-generated method stub
@@ -92,15 +147,8 @@ public class EsbHttpPublisher extends EsbListenerBase {
                             + consumerName + ".publisher.stringRequestEntityContentType", "application/json"), "utf-8");
 
             post.setRequestEntity(requestEntity);
-            HttpClient httpClient = new HttpClient();
+            HttpClient httpClient = httpClient(consumerName, urlString, username, password);
             if (!(username.equals(""))) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Authenticating using basic auth");
-                }
-                URL url = new URL(urlString);
-                httpClient.getState().setCredentials(new AuthScope(null, url.getPort(), null),
-                        new UsernamePasswordCredentials(username, password));
-                httpClient.getParams().setAuthenticationPreemptive(true);
                 post.setDoAuthentication(true);
             }
             int statusCode = httpClient.executeMethod(post);
@@ -124,13 +172,16 @@ public class EsbHttpPublisher extends EsbListenerBase {
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
+        } finally {
+            //give the connection back to the pool
+            post.releaseConnection();
         }
         return false;
     }
 
     @Override
     public void disconnect() {
-        // Unused, client does not maintain a persistent connection in this version
+        // Unused, connections are pooled and kept alive across runs of the consumer
 
     }
 
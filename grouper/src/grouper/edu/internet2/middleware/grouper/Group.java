@@ -35,6 +35,7 @@ package edu.internet2.middleware.grouper;
 import static edu.internet2.middleware.grouper.hooks.examples.GroupTypeTupleIncludeExcludeHook.*;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -43,6 +44,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -162,6 +164,7 @@ import edu.internet2.middleware.grouper.rules.RuleThenEnum;
 import edu.internet2.middleware.grouper.rules.RuleUtils;
 import edu.internet2.middleware.grouper.rules.beans.RulesMembershipBean;
 import edu.internet2.middleware.grouper.rules.beans.RulesPrivilegeBean;
+import edu.internet2.middleware.grouper.subj.CachingResolver;
 import edu.internet2.middleware.grouper.subj.GrouperSubject;
 import edu.internet2.middleware.grouper.subj.LazySubject;
 import edu.internet2.middleware.grouper.subj.SubjectHelper;
@@ -938,6 +941,249 @@ public class Group extends GrouperAPI implements Role, GrouperHasContext, Owner,
     return this.internal_addMember(subj, f, exceptionIfAlreadyMember, null, null, null);
   }
 
+  /**
+   * Add subjects to the members list of this group as immediate members.
+   * @see #addMembers(Collection, Field)
+   * @param subjects to add
+   * @return the number of memberships added
+   * @throws  InsufficientPrivilegeException
+   * @throws  MemberAddException
+   * @throws  SchemaException
+   */
+  public int addMembers(Collection<Subject> subjects) 
+      throws InsufficientPrivilegeException, MemberAddException, SchemaException {
+    return this.addMembers(subjects, Group.getDefaultList());
+  }
+
+  /**
+   * Add subjects to this group as immediate members.  This is a lot faster than calling
+   * addMember() for each subject when there are many subjects: the subjects are converted
+   * to members with a few queries, the memberships are inserted in batches of
+   * groups.bulkMembership.batchSize, each batch in one transaction, and the audit entries 
+   * of a batch are inserted together.  The membership hooks still run for each membership, 
+   * the pre hooks for the whole batch before the insert and the post hooks after it.
+   * The existing memberships are checked with one query per batch, and the group sets, 
+   * composites, and last membership change times are done once per batch.
+   * Subjects which are already immediate members are skipped, also if someone else
+   * added them while this runs.
+   * 
+   * Like addMember() the caller needs to be able to write the field, or be able to opt in
+   * each subject (i.e. only the caller).
+   * Note this is not done in one tx so it can make progress batch by batch,
+   * put a tx outside of the call if you need it
+   * 
+   * @param subjects to add
+   * @param f add subjects to this {@link Field}
+   * @return the number of memberships added
+   * @throws  InsufficientPrivilegeException
+   * @throws  MemberAddException
+   * @throws  SchemaException
+   */
+  public int addMembers(final Collection<Subject> subjects, final Field f) 
+      throws InsufficientPrivilegeException, MemberAddException, SchemaException {
+
+    if (GrouperUtil.length(subjects) == 0) {
+      return 0;
+    }
+    
+    if ( !FieldType.LIST.equals( f.getType() ) ) {
+      throw new SchemaException( E.FIELD_INVALID_TYPE + f.getType() );
+    }
+    if ( !this.canWriteField(f) ) { 
+      //check all of them before adding any
+      for (Subject subject : subjects) {
+        GrouperValidator v = CanOptinValidator.validate(this, subject, f);
+        if (v.isInvalid()) {
+          throw new InsufficientPrivilegeException("Cannot write field: " + f.getName() + ", group: " 
+              + this.getName() + ", subject: " + GrouperUtil.subjectToString(subject));
+        }
+      }
+    }
+    if ( ( Group.getDefaultList().equals(f) ) && ( this.hasComposite() ) ) {
+      throw new MemberAddException(E.GROUP_AMTC + ", " + this.getName());
+    }
+    if (this.getTypeOfGroup() != null && !this.getTypeOfGroup().supportsField(f)) {
+      throw new MemberAddException("Cannot assign membership for field: " + f.getName() + " for typeOfGroup: " 
+          + this.getTypeOfGroup() + ", group: " + this.getName() + ", " + this.getUuid());
+    }
+
+    List<Subject> subjectList = GrouperUtil.listFromCollection(subjects);
+    int batchSize = GrouperConfig.retrieveConfig().propertyValueInt("groups.bulkMembership.batchSize", 200);
+    int numberOfBatches = GrouperUtil.batchNumberOfBatches(subjectList, batchSize);
+
+    int addedCount = 0;
+    for (int i=0;i<numberOfBatches;i++) {
+      List<Subject> subjectBatch = GrouperUtil.batchList(subjectList, batchSize, i);
+      addedCount += this.internal_addMembersBatch(subjectBatch, f);
+    }
+    
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Added " + addedCount + " members to " + this.getName() + ", field: " + f.getName() 
+          + " in " + numberOfBatches + " batches");
+    }
+    return addedCount;
+  }
+
+  /**
+   * add one batch of immediate memberships in one transaction
+   * @param subjectBatch subjects to add
+   * @param f field
+   * @return the number of memberships added
+   */
+  private int internal_addMembersBatch(final List<Subject> subjectBatch, final Field f) {
+
+    final StopWatch sw = new StopWatch();
+    sw.start();
+
+    final String errorMessageSuffix = ", group name: " + this.name 
+      + ", batch of " + GrouperUtil.length(subjectBatch) + " subjects, field: " + f.getName();
+
+    return (Integer)HibernateSession.callbackHibernateSession(
+        GrouperTransactionType.READ_WRITE_OR_USE_EXISTING, AuditControl.WILL_AUDIT,
+        new HibernateHandler() {
+  
+          public Object callback(HibernateHandlerBean hibernateHandlerBean)
+              throws GrouperDAOException {
+
+            try {
+
+              hibernateHandlerBean.getHibernateSession().setCachingEnabled(false);
+              
+              GrouperSession grouperSession = GrouperSession.staticGrouperSession();
+              String fieldId = FieldFinder.findFieldId(f.getName(), f.getType().toString(), true);
+
+              //multikey is the sourceId to the subjectId
+              Map<MultiKey, Subject> subjectMap = new LinkedHashMap<MultiKey, Subject>();
+              for (Subject subject : subjectBatch) {
+                subjectMap.put(new MultiKey(subject.getSourceId(), subject.getId()), subject);
+              }
+              
+              Map<String, Member> memberByMemberId = new LinkedHashMap<String, Member>();
+              for (Member member : MemberFinder.findBySubjects(subjectMap.values(), true)) {
+                memberByMemberId.put(member.getUuid(), member);
+              }
+
+              //check the existing immediate memberships of the batch once instead of in the pre save of each 
+              //membership.  Enabled ones are skipped, also if someone else just added them, disabled ones are 
+              //replaced like in addMember()
+              Set<String> existingMemberIds = new HashSet<String>();
+              for (Membership existingMembership : GrouperUtil.nonNull(GrouperDAOFactory.getFactory().getMembership()
+                  .findAllByGroupOwnerAndFieldAndMemberIdsAndType(Group.this.getUuid(), f, memberByMemberId.keySet(), 
+                      MembershipType.IMMEDIATE.getTypeString(), false))) {
+                if (existingMembership.isEnabled()) {
+                  existingMemberIds.add(existingMembership.getMemberUuid());
+                } else {
+                  existingMembership.delete();
+                }
+              }
+              
+              List<Membership> memberships = new ArrayList<Membership>();
+              Map<String, Subject> subjectByMemberId = new HashMap<String, Subject>();
+              
+              for (Member member : memberByMemberId.values()) {
+                
+                if (existingMemberIds.contains(member.getUuid())) {
+                  continue;
+                }
+                
+                Subject subject = subjectMap.get(new MultiKey(member.getSubjectSourceId(), member.getSubjectId()));
+                
+                //group members need to be readable like in addMember()
+                if (SubjectFinder.internal_getGSA().getId().equals(member.getSubjectSourceId())) {
+                  try {
+                    MemberFinder.internal_findReadableMemberBySubject(grouperSession, subject, true);
+                  } catch (InsufficientPrivilegeException eIP) {
+                    throw new MemberAddException(eIP.getMessage() + ", subject: " + GrouperUtil.subjectToString(subject), eIP);
+                  } catch (MemberNotFoundException eMNF) {
+                    throw new MemberAddException(eMNF.getMessage() + ", subject: " + GrouperUtil.subjectToString(subject), eMNF);
+                  }
+                }
+                
+                Membership ms = new Membership();
+                ms.setCreatorUuid(grouperSession.getMemberUuid());
+                ms.setFieldId(fieldId);
+                ms.setMemberUuid(member.getUuid());
+                ms.setOwnerGroupId(Group.this.getUuid());
+                ms.setMember(member);
+                memberships.add(ms);
+                subjectByMemberId.put(member.getUuid(), subject);
+              }
+
+              if (memberships.size() == 0) {
+                return 0;
+              }
+
+              //the group sets and composites are done once for the batch in the post save
+              for (Membership membership : memberships) {
+                membership.internal_setBatchMemberships(memberships);
+              }
+              try {
+                GrouperDAOFactory.getFactory().getMembership().saveBatch(memberships);
+              } finally {
+                for (Membership membership : memberships) {
+                  membership.internal_setBatchMemberships(null);
+                }
+              }
+              
+              //some of these might be a wheel or a member of wheel...
+              PrivilegeHelper.flushCache();
+              
+              List<AuditEntry> auditEntries = new ArrayList<AuditEntry>();
+              
+              for (Membership membership : memberships) {
+
+                Subject subj = subjectByMemberId.get(membership.getMemberUuid());
+
+                EVENT_LOG.groupAddMember(grouperSession, Group.this.getName(), subj, f, sw);
+                
+                RulesMembershipBean rulesMembershipBean = new RulesMembershipBean(membership, Group.this, subj);
+
+                //if we are in the default list, then fire a rule
+                if (StringUtils.equals(f.getUuid(), Group.getDefaultList().getUuid())) {
+                  
+                  //fire rules directly connected to this membership add
+                  RuleEngine.fireRule(RuleCheckType.membershipAdd, rulesMembershipBean);
+                  //fire rules related to add in stem
+                  RuleEngine.fireRule(RuleCheckType.membershipAddInFolder, rulesMembershipBean);
+
+                }
+
+                //fire rules related to subject assign in folder
+                RuleEngine.fireRule(RuleCheckType.subjectAssignInStem, rulesMembershipBean);
+
+                if (!hibernateHandlerBean.isCallerWillCreateAudit()) {
+                  
+                  AuditEntry auditEntry = new AuditEntry(AuditTypeBuiltin.MEMBERSHIP_GROUP_ADD, "id", 
+                      membership.getUuid(), "fieldId", f.getUuid(),
+                          "fieldName", f.getName(), "memberId",  membership.getMemberUuid(),
+                          "membershipType", membership.getType(), 
+                          "groupId", Group.this.getUuid(), "groupName", Group.this.getName());
+                          
+                  auditEntry.setDescription("Added membership: group: " + Group.this.getName()
+                      + ", subject: " + subj.getSourceId() + "." + subj.getId() + ", field: "
+                      + f.getName());
+                  auditEntries.add(auditEntry);
+                }
+              }
+              
+              AuditEntry.saveBatch(auditEntries, true);
+
+              // just make sure again that the owner group isn't a composite,
+              // it could have been made into one while adding these memberships
+              if ((Group.getDefaultList().equals(f)) && (Group.this.hasComposite())) {
+                throw new IllegalStateException("Group (name=" + Group.this.getName() + ") turned into a composite while adding immediate memberships.");
+              }
+              
+              sw.stop();
+              return memberships.size();
+            } catch (RuntimeException re) {
+              GrouperUtil.injectInException(re, errorMessageSuffix);
+              throw re;
+            }
+          }
+        });
+  }
+
   /**
    * replace the member list with new list.  Note this is not done in a tx so it can make as much progress as possible
    * though feel free to put a tx outside of the call if you need it
@@ -1010,43 +1256,20 @@ public class Group extends GrouperAPI implements Role, GrouperHasContext, Owner,
         }
       }
   
-      int addedMemberCount = 0;
-      
       //now the new list is the adds, and the existing list is the removes...
       //lets do that adds
-      for (MultiKey newMemberMultiKey : newMemberMap.keySet()) {
-        
-        Subject newSubject = newMemberMap.get(newMemberMultiKey);
-        
-        this.addMember(newSubject, field, true);
-        
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Replace members on " + this.getName() + ": Subject " 
-              + newMemberMultiKey.getKey(0) + " - " + newMemberMultiKey.getKey(1) + " is added");
-        }
-  
-        changedRecords++;
-        addedMemberCount++;
-      }
+      int addedMemberCount = this.addMembers(newMemberMap.values(), field);
+      changedRecords += addedMemberCount;
 
       infoMap.put("addedMemberCount", addedMemberCount);
       
-      int deletedMemberCount = 0;
-      //now lets do the removes
-      for (MultiKey removeMultiKey : existingMemberMap.keySet()) {
-        
-        Member removeMember = existingMemberMap.get(removeMultiKey);
-        
-        this.deleteMember(removeMember, field, true);
-
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Replace members on " + this.getName() + ": Subject " 
-              + removeMultiKey.getKey(0) + " - " + removeMultiKey.getKey(1) + " already is removed");
-        }
-
-        changedRecords++;
-        deletedMemberCount++;
+      //now lets do the removes, dont resolve the subjects
+      List<Subject> removeSubjects = new ArrayList<Subject>();
+      for (Member removeMember : existingMemberMap.values()) {
+        removeSubjects.add(new LazySubject(removeMember));
       }
+      int deletedMemberCount = this.deleteMembers(removeSubjects, field);
+      changedRecords += deletedMemberCount;
       
       infoMap.put("deletedMemberCount", deletedMemberCount);
       infoMap.put("changedRecords", changedRecords);
@@ -2436,6 +2659,188 @@ public class Group extends GrouperAPI implements Role, GrouperHasContext, Owner,
         });
   } // public void deleteMember(subj, f)
 
+  /**
+   * Delete subjects from the members list of this group.
+   * @see #deleteMembers(Collection, Field)
+   * @param subjects to delete
+   * @return the number of memberships deleted
+   * @throws  InsufficientPrivilegeException
+   * @throws  MemberDeleteException
+   * @throws  SchemaException
+   */
+  public int deleteMembers(Collection<Subject> subjects)
+      throws InsufficientPrivilegeException, MemberDeleteException, SchemaException {
+    return this.deleteMembers(subjects, Group.getDefaultList());
+  }
+
+  /**
+   * Delete immediate memberships of subjects from this group.  This is a lot faster than 
+   * calling deleteMember() for each subject when there are many subjects: the immediate
+   * memberships are read with one query and deleted in batches of groups.bulkMembership.batchSize,
+   * each batch in one transaction, and the audit entries of a batch are inserted together.
+   * The membership hooks still run for each membership.  Subjects which are not immediate
+   * members are skipped.  Pass a {@link LazySubject} to delete {@link Member}s without
+   * resolving the subjects.
+   * 
+   * Like deleteMember() the caller needs to be able to write the field, or be able to opt out
+   * each subject (i.e. only the caller).  For members which are groups, the group set work 
+   * is still done membership by membership, that is not batched.
+   * Note this is not done in one tx so it can make progress batch by batch,
+   * put a tx outside of the call if you need it
+   * 
+   * @param subjects to delete
+   * @param f delete subjects from this {@link Field}
+   * @return the number of memberships deleted
+   * @throws  InsufficientPrivilegeException
+   * @throws  MemberDeleteException
+   * @throws  SchemaException
+   */
+  public int deleteMembers(final Collection<Subject> subjects, final Field f)
+      throws InsufficientPrivilegeException, MemberDeleteException, SchemaException {
+    
+    if (GrouperUtil.length(subjects) == 0) {
+      return 0;
+    }
+
+    if ( !FieldType.LIST.equals( f.getType() ) ) {
+      throw new SchemaException( E.FIELD_INVALID_TYPE + f.getType() );
+    }
+    if ( !this.canWriteField(f) ) {
+      //check all of them before deleting any
+      for (Subject subject : subjects) {
+        GrouperValidator v = CanOptoutValidator.validate(this, subject, f);
+        if (v.isInvalid()) {
+          throw new InsufficientPrivilegeException("Cannot write field: " + f.getName() + ", group: " 
+              + this.getName() + ", subject: " + GrouperUtil.subjectToString(subject));
+        }
+      }
+    }
+    if ( (f.equals( Group.getDefaultList() ) ) && ( this.hasComposite() ) ) {
+      throw new MemberDeleteException(E.GROUP_DMFC);
+    }
+
+    //multikey is the sourceId to the subjectId
+    Map<MultiKey, Subject> subjectMap = new HashMap<MultiKey, Subject>();
+    for (Subject subject : subjects) {
+      subjectMap.put(new MultiKey(subject.getSourceId(), subject.getId()), subject);
+    }
+
+    //like deleteMember() this deletes disabled immediate memberships too
+    Map<String, Membership> membershipByMemberId = new HashMap<String, Membership>();
+    for (Membership membership : GrouperUtil.nonNull(GrouperDAOFactory.getFactory().getMembership()
+        .findAllByGroupOwnerAndFieldAndType(this.getUuid(), f, MembershipType.IMMEDIATE.getTypeString(), false))) {
+      membershipByMemberId.put(membership.getMemberUuid(), membership);
+    }
+    
+    List<Membership> membershipsToDelete = new ArrayList<Membership>();
+    Map<String, Subject> subjectByMemberId = new HashMap<String, Subject>();
+
+    for (Member member : MemberFinder.findBySubjects(subjectMap.values(), false)) {
+      Membership membership = membershipByMemberId.get(member.getUuid());
+      if (membership != null && !subjectByMemberId.containsKey(member.getUuid())) {
+        membershipsToDelete.add(membership);
+        subjectByMemberId.put(member.getUuid(), 
+            subjectMap.get(new MultiKey(member.getSubjectSourceId(), member.getSubjectId())));
+      }
+    }
+    
+    int batchSize = GrouperConfig.retrieveConfig().propertyValueInt("groups.bulkMembership.batchSize", 200);
+    int numberOfBatches = GrouperUtil.batchNumberOfBatches(membershipsToDelete, batchSize);
+    
+    int deletedCount = 0;
+    for (int i=0;i<numberOfBatches;i++) {
+      List<Membership> membershipBatch = GrouperUtil.batchList(membershipsToDelete, batchSize, i);
+      deletedCount += this.internal_deleteMembersBatch(membershipBatch, f, subjectByMemberId);
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Deleted " + deletedCount + " members from " + this.getName() + ", field: " + f.getName() 
+          + " in " + numberOfBatches + " batches");
+    }
+    return deletedCount;
+  }
+
+  /**
+   * delete one batch of immediate memberships in one transaction
+   * @param membershipBatch memberships to delete
+   * @param f field
+   * @param subjectByMemberId subjects of the memberships
+   * @return the number of memberships deleted
+   */
+  private int internal_deleteMembersBatch(final List<Membership> membershipBatch, final Field f,
+      final Map<String, Subject> subjectByMemberId) {
+
+    final StopWatch sw = new StopWatch();
+    sw.start();
+
+    final String errorMessageSuffix = ", group name: " + this.name 
+      + ", batch of " + GrouperUtil.length(membershipBatch) + " memberships, field: " + f.getName();
+
+    return (Integer)HibernateSession.callbackHibernateSession(
+        GrouperTransactionType.READ_WRITE_OR_USE_EXISTING, AuditControl.WILL_AUDIT,
+      new HibernateHandler() {
+
+        public Object callback(HibernateHandlerBean hibernateHandlerBean)
+            throws GrouperDAOException {
+
+          try {
+
+            hibernateHandlerBean.getHibernateSession().setCachingEnabled(false);
+            
+            GrouperSession grouperSession = GrouperSession.staticGrouperSession();
+            
+            Membership.internal_delImmediateMemberships(membershipBatch);
+
+            sw.stop();
+              
+            //some of these might be a wheel or a member of wheel...
+            PrivilegeHelper.flushCache();
+
+            List<AuditEntry> auditEntries = new ArrayList<AuditEntry>();
+
+            for (Membership membership : membershipBatch) {
+              
+              Subject subj = subjectByMemberId.get(membership.getMemberUuid());
+
+              EVENT_LOG.groupDelMember(grouperSession, Group.this.getName(), subj, f, sw);
+
+              //if we are in the default list, then fire a rule
+              if (StringUtils.equals(f.getUuid(), Group.getDefaultList().getUuid())) {
+                RulesMembershipBean rulesMembershipBean = new RulesMembershipBean(membership, Group.this, subj);
+                //fire rules directly connected to this membership remove
+                RuleEngine.fireRule(RuleCheckType.membershipRemove, rulesMembershipBean);
+                //fire rules related to remove in stem
+                RuleEngine.fireRule(RuleCheckType.membershipRemoveInFolder, rulesMembershipBean);
+              }
+              
+              if (!hibernateHandlerBean.isCallerWillCreateAudit()) {
+
+                AuditEntry auditEntry = new AuditEntry(AuditTypeBuiltin.MEMBERSHIP_GROUP_DELETE, "id", 
+                    membership.getUuid(), "fieldId", f.getUuid(),
+                        "fieldName", f.getName(), "memberId",  membership.getMemberUuid(),
+                        "membershipType", membership.getType(), 
+                        "groupId", Group.this.getUuid(), "groupName", Group.this.getName());
+                        
+                auditEntry.setDescription("Deleted membership: group: " + Group.this.getName()
+                    + ", subject: " + subj.getSourceId() + "." + subj.getId() + ", field: "
+                    + f.getName());
+                auditEntries.add(auditEntry);
+              }
+            }
+            
+            AuditEntry.saveBatch(auditEntries, true);
+
+            return membershipBatch.size();
+          } catch (GrouperDAOException eDAO) {
+            throw new MemberDeleteException( eDAO.getMessage() + ", " + errorMessageSuffix, eDAO );
+          } catch (RuntimeException re) {
+            GrouperUtil.injectInException(re, errorMessageSuffix);
+            throw re;
+          }
+        }
+      });
+  }
+
   /**
    * Delete a group type.
    * <pre class="eg">
@@ -4450,6 +4855,54 @@ public class Group extends GrouperAPI implements Role, GrouperHasContext, Owner,
     return rv;
   } // public boolean hasMember(subj, f)
 
+  /**
+   * Check which of the subjects are members of this list on this group.  This is like
+   * calling hasMember(), hasImmediateMember(), hasEffectiveMember() or hasNonImmediateMember()
+   * for each subject, but checks the subjects with one query per batch of subjects.
+   * If GrouperAll is a member (except for non immediate) all subjects are members.
+   * 
+   * <pre class="eg">
+   * Set<Subject> members = g.hasMembers(subjects, Group.getDefaultList(), null);
+   * </pre>
+   * @param subjects to check
+   * @param f is subject a member of this list {@link Field}, or null for the members list
+   * @param membershipType type of membership, or null for any
+   * @return the subjects which are members, this is a subset of the subjects passed in
+   */
+  public Set<Subject> hasMembers(Collection<Subject> subjects, Field f, MembershipType membershipType) {
+    
+    Set<Subject> result = new LinkedHashSet<Subject>();
+    
+    if (GrouperUtil.length(subjects) == 0) {
+      return result;
+    }
+    
+    List<Subject> subjectsToCheck = new ArrayList<Subject>(subjects);
+    
+    boolean checkAll = membershipType != MembershipType.NONIMMEDIATE;
+    Subject allSubject = SubjectFinder.findAllSubject();
+    if (checkAll) {
+      subjectsToCheck.add(allSubject);
+    }
+    
+    //multikey is the sourceId to the subjectId
+    Set<MultiKey> memberSubjects = new HashSet<MultiKey>();
+    for (Member member : GrouperDAOFactory.getFactory().getMember().findBySubjectsInGroup(
+        subjectsToCheck, this, f, membershipType)) {
+      memberSubjects.add(new MultiKey(member.getSubjectSourceId(), member.getSubjectId()));
+    }
+
+    boolean allIsMember = checkAll && memberSubjects.contains(
+        new MultiKey(allSubject.getSourceId(), allSubject.getId()));
+
+    for (Subject subject : subjects) {
+      if (allIsMember || memberSubjects.contains(new MultiKey(subject.getSourceId(), subject.getId()))) {
+        result.add(subject);
+      }
+    }
+    return result;
+  }
+
   /**
    * Check whether the subject has OPTIN on this group.
    * <pre class="eg">
@@ -5870,6 +6323,9 @@ public class Group extends GrouperAPI implements Role, GrouperHasContext, Owner,
   public void onPostSave(HibernateSession hibernateSession) {
     super.onPostSave(hibernateSession);
     
+    //this group might have just been looked up as a subject and not found
+    CachingResolver.evictFromNotFoundCache(GrouperUtil.toSet(this.getUuid(), this.getName()));
+    
     GrouperHooksUtils.callHooksIfRegistered(this, GrouperHookType.GROUP, 
         GroupHooks.METHOD_GROUP_POST_INSERT, HooksGroupBean.class, 
         this, Group.class, VetoTypeGrouper.GROUP_POST_INSERT, true, false);
@@ -5942,6 +6398,10 @@ public class Group extends GrouperAPI implements Role, GrouperHasContext, Owner,
     
     super.onPostUpdate(hibernateSession);
     
+    if (this.dbVersionDifferentFields().contains(FIELD_NAME)) {
+      CachingResolver.evictFromNotFoundCache(GrouperUtil.toSet(this.getName()));
+    }
+    
     GrouperHooksUtils.schedulePostCommitHooksIfRegistered(GrouperHookType.GROUP, 
         GroupHooks.METHOD_GROUP_POST_COMMIT_UPDATE, HooksGroupBean.class, 
         this, Group.class);
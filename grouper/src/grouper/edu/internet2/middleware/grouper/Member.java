@@ -109,6 +109,7 @@ import edu.internet2.middleware.grouper.privs.AttributeDefPrivilege;
 import edu.internet2.middleware.grouper.privs.NamingPrivilege;
 import edu.internet2.middleware.grouper.privs.Privilege;
 import edu.internet2.middleware.grouper.privs.PrivilegeHelper;
+import edu.internet2.middleware.grouper.subj.CachingResolver;
 import edu.internet2.middleware.grouper.subj.LazySubject;
 import edu.internet2.middleware.grouper.subj.SubjectBean;
 import edu.internet2.middleware.grouper.subj.SubjectHelper;
@@ -2773,6 +2774,9 @@ public class Member extends GrouperAPI implements GrouperHasContext, Hib3Grouper
 
     super.onPostSave(hibernateSession);
     
+    //this subject might have just been looked up and not found
+    CachingResolver.evictFromNotFoundCache(GrouperUtil.toSet(this.getSubjectIdDb(), this.getSubjectIdentifier0()));
+    
     GrouperHooksUtils.callHooksIfRegistered(this, GrouperHookType.MEMBER, 
         MemberHooks.METHOD_MEMBER_POST_INSERT, HooksMemberBean.class, 
         this, Member.class, VetoTypeGrouper.MEMBER_POST_INSERT, true, false);
@@ -2792,6 +2796,8 @@ public class Member extends GrouperAPI implements GrouperHasContext, Hib3Grouper
 
     super.onPostUpdate(hibernateSession);
     
+    CachingResolver.evictFromNotFoundCache(GrouperUtil.toSet(this.getSubjectIdDb(), this.getSubjectIdentifier0()));
+    
     GrouperHooksUtils.schedulePostCommitHooksIfRegistered(GrouperHookType.MEMBER, 
         MemberHooks.METHOD_MEMBER_POST_COMMIT_UPDATE, HooksMemberBean.class, 
         this, Member.class);
@@ -38,6 +38,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import net.sf.ehcache.Element;
@@ -442,6 +443,24 @@ public class Membership extends GrouperAPI implements
    */
   private Long disabledTimeDb;
 
+  /** 
+   * if this membership is saved in a batch by Group.addMembers(), these are the immediate 
+   * memberships of the batch, all with the same owner group and field
+   */
+  @GrouperIgnoreClone @GrouperIgnoreDbVersion @GrouperIgnoreFieldConstant
+  private List<Membership> batchMemberships;
+
+  /**
+   * mark this immediate membership as part of a batch saved by Group.addMembers().  The caller
+   * has checked for existing memberships of the batch, and the group sets, composites, and 
+   * last membership change times are handled once for the batch by the first membership 
+   * of the batch in the post save.  Set this to null after the batch is saved.
+   * @param batchMemberships1 memberships of the batch, all with the same owner group and field
+   */
+  public void internal_setBatchMemberships(List<Membership> batchMemberships1) {
+    this.batchMemberships = batchMemberships1;
+  }
+
   /** */
   @GrouperIgnoreClone @GrouperIgnoreDbVersion @GrouperIgnoreFieldConstant
   private AttributeAssignMembershipDelegate attributeAssignMembershipDelegate;
@@ -1342,6 +1361,29 @@ public class Membership extends GrouperAPI implements
     }
   }
 
+  /**
+   * delete a batch of immediate memberships in one go.  Like {@link #delete()}, the attribute
+   * assignments on memberships in the members list are deleted first
+   * @param memberships
+   */
+  public static void internal_delImmediateMemberships(final Collection<Membership> memberships) {
+    
+    String membersFieldId = FieldFinder.find("members", true).getUuid();
+    
+    for (Membership membership : memberships) {
+      if (StringUtils.equals(membership.getType(), "immediate") && StringUtils.equals(membersFieldId, membership.getFieldId())) {
+        Set<AttributeAssign> attributeAssigns = GrouperDAOFactory.getFactory().getAttributeAssign()
+          .findByOwnerMembershipId(membership.getImmediateMembershipId());
+        
+        for (AttributeAssign attributeAssign : attributeAssigns) {
+          attributeAssign.delete();
+        }
+      }
+    }
+    
+    GrouperDAOFactory.getFactory().getMembership().deleteBatch(memberships);
+  }
+
   /**
    * 
    * @param s
@@ -1740,32 +1782,34 @@ public class Membership extends GrouperAPI implements
         throw new IllegalStateException(v.getErrorMessage());
       }
       
-      // see if the immediate membership already exists
-      Membership ms;
-      if (this.getOwnerGroupId() != null) {
-        ms = GrouperDAOFactory.getFactory().getMembership()
-            .findByGroupOwnerAndMemberAndFieldAndType(this.getOwnerGroupId(),
-                this.getMemberUuid(), this.getField(), MembershipType.IMMEDIATE.getTypeString(), false, false);
-      } else if (this.getOwnerStemId() != null) {
-        ms = GrouperDAOFactory.getFactory().getMembership()
-            .findByStemOwnerAndMemberAndFieldAndType(this.getOwnerStemId(),
-                this.getMemberUuid(), this.getField(), MembershipType.IMMEDIATE.getTypeString(), false, false);
-      } else if (this.getOwnerAttrDefId() != null) {
-        ms = GrouperDAOFactory.getFactory().getMembership()
-            .findByAttrDefOwnerAndMemberAndFieldAndType(this.getOwnerAttrDefId(),
-                this.getMemberUuid(), this.getField(), MembershipType.IMMEDIATE.getTypeString(), false, false);
-      } else {
-        throw new NullPointerException("Cant find owner: " + this);
-      }
-      
-      // if the immediate membership already exists and it's active, throw MembershipAlreadyExistsException.
-      if (ms != null && ms.isEnabled() == true) {
-        throw new MembershipAlreadyExistsException(ImmediateMembershipValidator.INVALID_EXISTS);
-      }
-      
-      // if the immediate membership already exists and it's not active, delete it.
-      if (ms != null && ms.isEnabled() == false) {
-        ms.delete();
+      // see if the immediate membership already exists, Group.addMembers() checks this for the whole batch
+      if (this.batchMemberships == null) {
+        Membership ms;
+        if (this.getOwnerGroupId() != null) {
+          ms = GrouperDAOFactory.getFactory().getMembership()
+              .findByGroupOwnerAndMemberAndFieldAndType(this.getOwnerGroupId(),
+                  this.getMemberUuid(), this.getField(), MembershipType.IMMEDIATE.getTypeString(), false, false);
+        } else if (this.getOwnerStemId() != null) {
+          ms = GrouperDAOFactory.getFactory().getMembership()
+              .findByStemOwnerAndMemberAndFieldAndType(this.getOwnerStemId(),
+                  this.getMemberUuid(), this.getField(), MembershipType.IMMEDIATE.getTypeString(), false, false);
+        } else if (this.getOwnerAttrDefId() != null) {
+          ms = GrouperDAOFactory.getFactory().getMembership()
+              .findByAttrDefOwnerAndMemberAndFieldAndType(this.getOwnerAttrDefId(),
+                  this.getMemberUuid(), this.getField(), MembershipType.IMMEDIATE.getTypeString(), false, false);
+        } else {
+          throw new NullPointerException("Cant find owner: " + this);
+        }
+        
+        // if the immediate membership already exists and it's active, throw MembershipAlreadyExistsException.
+        if (ms != null && ms.isEnabled() == true) {
+          throw new MembershipAlreadyExistsException(ImmediateMembershipValidator.INVALID_EXISTS);
+        }
+        
+        // if the immediate membership already exists and it's not active, delete it.
+        if (ms != null && ms.isEnabled() == false) {
+          ms.delete();
+        }
       }
       
       if (this.enabled) {
@@ -2111,6 +2155,14 @@ public class Membership extends GrouperAPI implements
    */
   private void processPostMembershipSaveOrUpdate() {
     
+    // the first membership of a Group.addMembers() batch does this for the whole batch
+    if (this.batchMemberships != null) {
+      if (this == this.batchMemberships.get(0)) {
+        processPostMembershipSaveBatch(this.batchMemberships);
+      }
+      return;
+    }
+    
     // don't need to do anything if the membership is disabled..
     if (!this.enabled) {
       return;
@@ -2186,6 +2238,103 @@ public class Membership extends GrouperAPI implements
     updateLastImmediateMembershipChange();
   }
   
+  /**
+   * Add groupSets and composites for a batch of immediate memberships with the same owner group
+   * and field, like processPostMembershipSaveOrUpdate() does for one membership, but the self 
+   * group set, where the owner is a member, and the composites are looked up once for the batch, 
+   * the composites are fixed once for all the members, and the last membership change times 
+   * are updated once
+   * @param memberships
+   */
+  private static void processPostMembershipSaveBatch(List<Membership> memberships) {
+    
+    Membership firstMembership = memberships.get(0);
+    String ownerGroupId = firstMembership.getOwnerGroupId();
+    boolean defaultList = firstMembership.getField().equals(Group.getDefaultList());
+    
+    Set<GroupSet> immediateGroupSets = new LinkedHashSet<GroupSet>();
+    Set<String> memberGroupIds = new LinkedHashSet<String>();
+    Set<String> membersList = new LinkedHashSet<String>();
+    GroupSet parent = null;
+    
+    for (Membership membership : memberships) {
+      
+      // don't need to do anything if the membership is disabled..
+      if (!membership.enabled) {
+        continue;
+      }
+
+      // if the member is a group, add the immediate group set.  Group.addMembers() already found the group
+      if (membership.getMember().getSubjectTypeId().equals("group")) {
+        String memberGroupId = membership.getMember().getSubjectId();
+
+        if (parent == null) {
+          parent = GrouperDAOFactory.getFactory().getGroupSet().findSelfGroup(ownerGroupId, firstMembership.getFieldId());
+        }
+        
+        GroupSet immediateGroupSet = new GroupSet();
+        immediateGroupSet.setId(GrouperUuid.getUuid());
+        immediateGroupSet.setCreatorId(GrouperSession.staticGrouperSession().getMemberUuid());
+        immediateGroupSet.setDepth(1);
+        immediateGroupSet.setFieldId(membership.getFieldId());
+        immediateGroupSet.setMemberGroupId(memberGroupId);
+        immediateGroupSet.setType(MembershipType.EFFECTIVE.getTypeString());
+        immediateGroupSet.setOwnerGroupId(ownerGroupId);
+        immediateGroupSet.setParentId(parent.getId());
+        immediateGroupSets.add(immediateGroupSet);
+        
+        memberGroupIds.add(memberGroupId);
+      } else {
+        membersList.add(membership.getMember().getUuid());
+      }
+    }
+
+    if (immediateGroupSets.size() > 0) {
+      
+      // where the owner is a member doesnt change by adding members to the owner, so look it up once
+      if (defaultList) {
+        Set<GroupSet> ownerGroupIsMemberGroupSets = GrouperDAOFactory.getFactory().getGroupSet().findAllByMemberGroup(ownerGroupId);
+        for (GroupSet immediateGroupSet : immediateGroupSets) {
+          immediateGroupSet.internal_setOwnerGroupIsMemberGroupSets(ownerGroupIsMemberGroupSets);
+        }
+      }
+      GrouperDAOFactory.getFactory().getGroupSet().save(immediateGroupSets);
+    }
+    
+    // if the field is the default list, then we need to check for composite membership updates
+    // and then update last_membership_change
+    if (defaultList) {
+      Set<Composite> composites = GrouperDAOFactory.getFactory().getComposite().findAsFactorOrHasMemberOfFactor(ownerGroupId);
+      Set<String> groupIds = new LinkedHashSet<String>();
+
+      if (composites.size() > 0) {
+        for (String memberGroupId : memberGroupIds) {
+          Iterator<Member> memberIter = GrouperDAOFactory.getFactory().getMembership().findAllMembersByGroupOwnerAndField( 
+              memberGroupId, Group.getDefaultList(), null, true).iterator();
+          while (memberIter.hasNext()) {
+            Member currMember = memberIter.next();
+            if (!currMember.getSubjectTypeId().equals("group")) {
+              membersList.add(currMember.getUuid());
+            }
+          }
+        }
+      
+        groupIds = fixComposites(composites, ownerGroupId, membersList);
+      }
+
+      groupIds.add(ownerGroupId);
+
+      // update last_membership_change
+      updateLastMembershipChangeDuringMembersListUpdate(groupIds);
+    } else {
+      // if this is not the default list, then we may just have to update last_membership_change
+      firstMembership.updateLastMembershipChangeDuringNonMembersListUpdate();
+    }
+    
+    // update last_imm_membership_change
+    firstMembership.updateLastImmediateMembershipChange();
+  }
+
   /**
    * Update the last_imm_membership_change for the group that's getting a change to an immediate privilege or membership
    */
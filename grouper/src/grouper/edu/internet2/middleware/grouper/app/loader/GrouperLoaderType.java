@@ -164,7 +164,7 @@ public enum GrouperLoaderType {
       syncOneGroupMembership(loaderJobBean.getGroupNameOverall(), null, null, 
           loaderJobBean.getHib3GrouploaderLogOverall(), loaderJobBean.getStartTime(),
           grouperLoaderResultset, false, loaderJobBean.getGrouperSession(), 
-          loaderJobBean.getAndGroups(), loaderJobBean.getGroupTypes(), null, null);
+          loaderJobBean.getAndGroups(), loaderJobBean.getGroupTypes(), null, null, null);
       
     }
   }, 
@@ -267,7 +267,7 @@ public enum GrouperLoaderType {
           RuntimeException re = null;
           try {
             report = new GrouperReport().findBadMemberships(isRunBadMember).findUnresolvables(isRunUsdu)
-              .runReport();
+              .hib3GrouperLoaderLog(hib3GrouploaderLog).runReport();
           } catch (RuntimeException e) {
             report = e.toString() + "\n\n" + GrouperUtil.getFullStackTrace(e) + "\n\n";
             if (e instanceof GrouperReportException) {
@@ -763,7 +763,7 @@ public enum GrouperLoaderType {
         
         syncOneGroupMembership(loaderJobBean.getGroupNameOverall(), null, null, 
             loaderJobBean.getHib3GrouploaderLogOverall(), loaderJobBean.getStartTime(), 
-            grouperLoaderResultset, false, loaderJobBean.getGrouperSession(), loaderJobBean.getAndGroups(), null, null, null);
+            grouperLoaderResultset, false, loaderJobBean.getGrouperSession(), loaderJobBean.getAndGroups(), null, null, null, null);
         
       }
     }, 
@@ -1366,6 +1366,9 @@ public enum GrouperLoaderType {
         groupNamesToSync.addAll(groupNames);
       }
       
+      //the and groups are the same for each group in the list, so get their members once
+      final Set<MultiKey> andGroupsMembers = andGroupsMembers(andGroups);
+
       final boolean useThreads = GrouperLoaderConfig.retrieveConfig().propertyValueBoolean("loader.use.groupThreads", true);
 
       //see when threads are done processing
@@ -1389,7 +1392,7 @@ public enum GrouperLoaderType {
             syncGroupLogicForOneGroup(grouperLoaderResultsetOverall,
                 GrouperSession.staticGrouperSession(), andGroups, groupTypes, hib3GrouploaderLogOverall,
                 statusOverall, groupNameToDisplayName, groupNameToDescription, privsToAdd,
-                groupStartedMillis, membershipsInRegistry, groupName);
+                groupStartedMillis, membershipsInRegistry, groupName, andGroupsMembers);
             return null;
           }
         };
@@ -1435,6 +1438,7 @@ public enum GrouperLoaderType {
    * @param groupStartedMillis
    * @param membershipsInRegistry
    * @param groupName
+   * @param andGroupsMembers subjectId and sourceId of subjects in all and groups, or null to look them up
    */
   private static void syncGroupLogicForOneGroup(
       GrouperLoaderResultset grouperLoaderResultsetOverall,
@@ -1443,7 +1447,7 @@ public enum GrouperLoaderType {
       GrouperLoaderStatus[] statusOverall, Map<String, String> groupNameToDisplayName,
       Map<String, String> groupNameToDescription,
       Map<String, Map<Privilege, List<Subject>>> privsToAdd, long groupStartedMillis,
-      Map<String, Set<MultiKey>> membershipsInRegistry, String groupName) {
+      Map<String, Set<MultiKey>> membershipsInRegistry, String groupName, Set<MultiKey> andGroupsMembers) {
     Hib3GrouperLoaderLog hib3GrouploaderLog = new Hib3GrouperLoaderLog();
     try {
       GrouperLoaderResultset grouperLoaderResultset = new GrouperLoaderResultset(
@@ -1468,7 +1472,8 @@ public enum GrouperLoaderType {
       //based on type, run query from the db and sync members
       syncOneGroupMembership(groupName, groupNameToDisplayName.get(groupName), 
           groupNameToDescription.get(groupName), hib3GrouploaderLog, groupStartedMillis,
-          grouperLoaderResultset, true, grouperSession, andGroups, groupTypes, privsToAdd.get(groupName), membershipsInRegistry.get(groupName));
+          grouperLoaderResultset, true, grouperSession, andGroups, groupTypes, privsToAdd.get(groupName), membershipsInRegistry.get(groupName),
+          andGroupsMembers);
       
       long endTime = System.currentTimeMillis();
       hib3GrouploaderLog.setEndedTime(new Timestamp(endTime));
@@ -2023,6 +2028,8 @@ public enum GrouperLoaderType {
    * @param groupPrivsToAdd priv
    * @param groupMembers if a grouplist, this is a pre-fetched list of group members, else this is null, 
    * meaning get all members here
+   * @param andGroupsMembers if a grouplist, this is a pre-fetched set of subjectId and sourceId in all the and groups,
+   * else this is null, meaning get them here if there are and groups
    */
   @SuppressWarnings("unchecked")
   protected static void syncOneGroupMembership(final String groupName,
@@ -2030,7 +2037,7 @@ public enum GrouperLoaderType {
       Hib3GrouperLoaderLog hib3GrouploaderLog, long startTime,
       final GrouperLoaderResultset grouperLoaderResultset, boolean groupList,
       final GrouperSession grouperSession, List<Group> andGroups, List<GroupType> groupTypes,
-      Map<Privilege,List<Subject>> groupPrivsToAdd, Set<MultiKey> groupMembers) {
+      Map<Privilege,List<Subject>> groupPrivsToAdd, Set<MultiKey> groupMembers, Set<MultiKey> andGroupsMembers) {
     
     //keep this separate so we can prepend stuff inside...
     final StringBuilder jobMessage = new StringBuilder(StringUtils.defaultString(hib3GrouploaderLog.getJobMessage()));
@@ -2208,6 +2215,8 @@ public enum GrouperLoaderType {
       }
       hib3GrouploaderLog.setGroupUuid(group[0].getUuid());
 
+      long startTimePhase = System.currentTimeMillis();
+
       Set<LoaderMemberWrapper> currentMembers = new LinkedHashSet<LoaderMemberWrapper>();
       
       if (groupMembers != null) {
@@ -2247,6 +2256,15 @@ public enum GrouperLoaderType {
 
       int originalGroupSize = currentMembers.size();
       
+      hib3GrouploaderLog.addMillisPhase("retrieveCurrentMembers", System.currentTimeMillis() - startTimePhase);
+      startTimePhase = System.currentTimeMillis();
+
+      if (andGroupsMembers == null && GrouperUtil.length(andGroups) > 0) {
+        andGroupsMembers = andGroupsMembers(andGroups);
+        hib3GrouploaderLog.addMillisPhase("retrieveAndGroupsMembers", System.currentTimeMillis() - startTimePhase);
+        startTimePhase = System.currentTimeMillis();
+      }
+
       //now lets remove data from each since the member is there and is supposed to be there
       Iterator<LoaderMemberWrapper> iterator = currentMembers.iterator();
       
@@ -2272,15 +2290,12 @@ public enum GrouperLoaderType {
               jobMessage.append(row.getSubjectError());
               hib3GrouploaderLog.setJobMessage(jobStatus[0] + ", " + jobMessage);
             } else {
-              for (Group andGroup : andGroups) {
-                if (!andGroup.hasMember(subject)) {
-                  if (LOG.isDebugEnabled()) {
-                    LOG.debug(groupName + " subject not in andGroup: " + subject.getSource().getName() + "/" + subject.getId() + ", " + count + " of " + numberOfRows + " subjects");
-                  }
-                  andGroupsDoesntHaveSubject = true;
-                  hib3GrouploaderLog.addTotalCount(-1);
-                  break;
+              if (!andGroupsHaveSubject(andGroups, andGroupsMembers, subject)) {
+                if (LOG.isDebugEnabled()) {
+                  LOG.debug(groupName + " subject not in andGroup: " + subject.getSource().getName() + "/" + subject.getId() + ", " + count + " of " + numberOfRows + " subjects");
                 }
+                andGroupsDoesntHaveSubject = true;
+                hib3GrouploaderLog.addTotalCount(-1);
               }
             }
           }
@@ -2302,6 +2317,9 @@ public enum GrouperLoaderType {
         }
       }
       
+      hib3GrouploaderLog.addMillisPhase("compareToCurrentMembers", System.currentTimeMillis() - startTimePhase);
+      startTimePhase = System.currentTimeMillis();
+
       //lets lookup the subjects first
       final Set<Subject> subjectsToAdd = new HashSet<Subject>();
       
@@ -2318,12 +2336,9 @@ public enum GrouperLoaderType {
         if (subject != null) {
           //make sure it is not in the restricted list
           boolean andGroupsDoesntHaveSubject = false;
-          for (Group andGroup : GrouperUtil.nonNull(andGroups)) {
-            if (!andGroup.hasMember(subject)) {
-              andGroupsDoesntHaveSubject = true;
-              hib3GrouploaderLog.addTotalCount(-1);
-              break;
-            }
+          if (!andGroupsHaveSubject(andGroups, andGroupsMembers, subject)) {
+            andGroupsDoesntHaveSubject = true;
+            hib3GrouploaderLog.addTotalCount(-1);
           }
           if (!andGroupsDoesntHaveSubject) {
             if (LOG.isDebugEnabled()) {
@@ -2353,6 +2368,9 @@ public enum GrouperLoaderType {
       }
       
       
+      hib3GrouploaderLog.addMillisPhase("resolveSubjectsToAdd", System.currentTimeMillis() - startTimePhase);
+      startTimePhase = System.currentTimeMillis();
+
       //here are members to remove
       final List<LoaderMemberWrapper> membersToRemove = new ArrayList<LoaderMemberWrapper>(currentMembers);
    
@@ -2485,16 +2503,22 @@ public enum GrouperLoaderType {
         }
         
       });
+      hib3GrouploaderLog.addMillisPhase("updateMemberships", System.currentTimeMillis() - startTimePhase);
+
       hib3GrouploaderLog.setInsertCount(subjectsToAdd.size());
       hib3GrouploaderLog.setDeleteCount(membersToRemove.size());
       hib3GrouploaderLog.setStatus(status.name());
+      
       //take out the job status
+      if (GrouperLoaderConfig.retrieveConfig().propertyValueBoolean("loader.jobMessage.includePhaseTimings", true)) {
+        jobMessage.append(jobMessage.length() == 0 ? "" : ", ").append(hib3GrouploaderLog.millisPhasesToString());
+      }
       hib3GrouploaderLog.setJobMessage(jobMessage.toString());
 
       if (LOG.isInfoEnabled()) {
         LOG.info(groupName + " done syncing membership, processed " + totalCount + " records.  Total members: " 
             + hib3GrouploaderLog.getTotalCount() + ", inserts: " + hib3GrouploaderLog.getInsertCount()
-            + ", deletes: " + hib3GrouploaderLog.getDeleteCount());
+            + ", deletes: " + hib3GrouploaderLog.getDeleteCount() + ", " + hib3GrouploaderLog.millisPhasesToString());
       }
     } catch (Exception e) {
       hib3GrouploaderLog.setStatus(GrouperLoaderStatus.ERROR.name());
@@ -2511,6 +2535,76 @@ public enum GrouperLoaderType {
     }
   }
   
+  /**
+   * get the subjectId and sourceId of the subjects which are effective members of all the and groups.
+   * this is one query per and group instead of a hasMember call per subject per and group.
+   * an and group which has GrouperAll as a member has every subject, so it does not filter anything
+   * @param andGroups
+   * @return the set of multikeys of subjectId and sourceId, or null if no and groups, if configured to call hasMember,
+   * or if every and group has GrouperAll (then hasMember is called, which is true for everyone)
+   */
+  static Set<MultiKey> andGroupsMembers(List<Group> andGroups) {
+    
+    if (GrouperUtil.length(andGroups) == 0 
+        || !GrouperLoaderConfig.retrieveConfig().propertyValueBoolean("loader.andGroups.retrieveAllMembersAtOnce", true)) {
+      return null;
+    }
+    
+    Set<MultiKey> result = null;
+    
+    Subject allSubject = SubjectFinder.findAllSubject();
+    MultiKey allSubjectKey = new MultiKey(allSubject.getId(), allSubject.getSourceId());
+    
+    for (Group andGroup : andGroups) {
+
+      Set<Object[]> rows = GrouperDAOFactory.getFactory().getMembership()
+          .findSubjectIdsAndSourceIdsByGroupOwnerAndField(andGroup.getId(), Group.getDefaultList());
+
+      Set<MultiKey> andGroupMembers = new HashSet<MultiKey>();
+      for (Object[] row : GrouperUtil.nonNull(rows)) {
+        andGroupMembers.add(new MultiKey(row[0], row[1]));
+      }
+
+      if (andGroupMembers.contains(allSubjectKey)) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("andGroup " + andGroup.getName() + " has GrouperAll as a member so it does not filter subjects");
+        }
+        continue;
+      }
+      
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("andGroup " + andGroup.getName() + " has " + andGroupMembers.size() + " members");
+      }
+
+      if (result == null) {
+        result = andGroupMembers;
+      } else {
+        //keep the ones in all and groups
+        result.retainAll(andGroupMembers);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * see if a subject is in all the and groups
+   * @param andGroups
+   * @param andGroupsMembers members of all the and groups from andGroupsMembers(), or null to call hasMember
+   * @param subject
+   * @return true if no and groups or the subject is in all of them
+   */
+  private static boolean andGroupsHaveSubject(List<Group> andGroups, Set<MultiKey> andGroupsMembers, Subject subject) {
+    if (andGroupsMembers != null) {
+      return andGroupsMembers.contains(new MultiKey(subject.getId(), subject.getSourceId()));
+    }
+    for (Group andGroup : GrouperUtil.nonNull(andGroups)) {
+      if (!andGroup.hasMember(subject)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private static boolean isChangeAllowed(String[] changeAllowedUnder, String stemNameToBeChanged) {
     for(String stemUnderWhichChangeAllowed: changeAllowedUnder) {
       String stemUnderWhichChangeAllowedNoSpace = stemUnderWhichChangeAllowed.trim();
@@ -26,8 +26,10 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -40,6 +42,7 @@ import javax.naming.directory.Attribute;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
 
+import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 
@@ -84,6 +87,8 @@ public class GrouperLoaderResultset {
     
     this.hasBulkLookupedSubjects = true;
     
+    this.compactRemovedRows();
+
     //lets assume all rows are the same
     if (GrouperUtil.length(this.data) == 0) {
       return;
@@ -365,6 +370,7 @@ public class GrouperLoaderResultset {
         : new ArrayList<String>(parentResultSet.columnNames);
     this.columnTypes = parentResultSet.columnTypes == null ? null
         : new ArrayList<Integer>(parentResultSet.columnTypes);
+    parentResultSet.compactRemovedRows();
     for (int i = 0; i < parentResultSet.data.size(); i++) {
 
       if (StringUtils.equals(groupName, (String) parentResultSet.getCell(i,
@@ -381,6 +387,7 @@ public class GrouperLoaderResultset {
    * @return the set of names, never null
    */
   public Set<String> groupNames() {
+    this.compactRemovedRows();
     Set<String> groupNames = new LinkedHashSet<String>();
     for (int i = 0; i < this.data.size(); i++) {
       groupNames.add((String) this.getCell(i, GROUP_NAME_COL, true));
@@ -1257,6 +1264,8 @@ public class GrouperLoaderResultset {
     //i assume it is varchar already, if not, it should be
     this.columnTypes.set(subjectIdColIndex, Types.VARCHAR);
 
+    //ids changed, the index will need to be rebuilt
+    this.subjectIndex = null;
   }
 
   /** column names (toUpper) */
@@ -1275,6 +1284,18 @@ public class GrouperLoaderResultset {
    * if has bulk lookuped subjects already
    */
   private boolean hasBulkLookupedSubjects = false;
+
+  /**
+   * index of rows by multikey of subjectId and sourceId (sourceId is null if there is no source col).
+   * built the first time a row is found, and kept in sync when rows are removed
+   */
+  private Map<MultiKey, List<Row>> subjectIndex = null;
+
+  /**
+   * rows which have been removed from the index but not yet from the data list.  removing from the
+   * middle of an ArrayList is linear, so rows are taken out in one pass the next time data is accessed by index
+   */
+  private Set<Row> removedRows = null;
   
   /**
    * logger 
@@ -1476,6 +1497,7 @@ public class GrouperLoaderResultset {
    * @return the row
    */
   public Row retrieveRow(int i) {
+    this.compactRemovedRows();
     return this.data.get(i);
   }
 
@@ -1484,6 +1506,7 @@ public class GrouperLoaderResultset {
    * @return the number of rows
    */
   public int numberOfRows() {
+    this.compactRemovedRows();
     return this.data == null ? 0 : this.data.size();
   }
 
@@ -1503,6 +1526,7 @@ public class GrouperLoaderResultset {
    * @return the cell or null if col not found and not throwing exception if col not found
    */
   public Object getCell(int rowIndex, String columnName, boolean exceptionOnColNotFound) {
+    this.compactRemovedRows();
     return this.data.get(rowIndex).getCell(columnName, exceptionOnColNotFound);
   }
 
@@ -1540,11 +1564,21 @@ public class GrouperLoaderResultset {
   }
 
   /**
-   * remove by row
+   * remove by row.  the row is taken out of the index right away, and out of the
+   * data list the next time the data is accessed by index
    * @param row
    */
   public void remove(Row row) {
-    this.data.remove(row);
+    if (this.subjectIndex == null) {
+      this.data.remove(row);
+      return;
+    }
+    if (this.removedRows == null) {
+      this.removedRows = Collections.newSetFromMap(new IdentityHashMap<Row, Boolean>());
+    }
+    if (this.removedRows.add(row)) {
+      this.removeFromIndex(row);
+    }
   }
 
   /**
@@ -1552,7 +1586,11 @@ public class GrouperLoaderResultset {
    * @param i
    */
   public void remove(int i) {
-    this.data.remove(i);
+    this.compactRemovedRows();
+    Row row = this.data.remove(i);
+    if (this.subjectIndex != null) {
+      this.removeFromIndex(row);
+    }
   }
 
   /**
@@ -1562,30 +1600,94 @@ public class GrouperLoaderResultset {
    * @return row if found, else null
    */
   public Row find(String subjectId, String subjectSourceId) {
-    int subjectIndex = this.columnIndex(SUBJECT_ID_COL);
+
+    if (this.subjectIndex == null) {
+      this.subjectIndex = this.buildSubjectIndex();
+    }
 
     //might not have subject source id
     boolean hasSubjectSourceIdCol = this.hasColumnName(SUBJECT_SOURCE_ID_COL);
-    int subjectSourceIdIndex = hasSubjectSourceIdCol ? this
-        .columnIndex(SUBJECT_SOURCE_ID_COL) : -1;
-
-    Iterator<Row> iterator = this.data.iterator();
-    while (iterator.hasNext()) {
-      Row row = iterator.next();
-      Object[] rowData = row.getRowData();
-      if (StringUtils.equals((String) rowData[subjectIndex], subjectId)) {
-        if (hasSubjectSourceIdCol) {
-          if (!StringUtils
-              .equals((String) rowData[subjectSourceIdIndex], subjectSourceId)) {
-            continue;
-          }
-        }
-        //at this point, they are the same
-        return row;
-        //dont break, since could have multiple
+
+    List<Row> rows = this.subjectIndex.get(new MultiKey(subjectId, 
+        hasSubjectSourceIdCol ? subjectSourceId : null));
+
+    //could have multiple, return the first one like a scan would
+    return GrouperUtil.length(rows) == 0 ? null : rows.get(0);
+  }
+
+  /**
+   * index the rows by subjectId and sourceId so finding a row is not a scan of the data
+   * @return the index
+   */
+  private Map<MultiKey, List<Row>> buildSubjectIndex() {
+    
+    this.compactRemovedRows();
+    
+    int subjectIndex = this.columnIndex(SUBJECT_ID_COL);
+
+    //might not have subject source id
+    int subjectSourceIdIndex = this.columnIndex(SUBJECT_SOURCE_ID_COL, false);
+
+    Map<MultiKey, List<Row>> result = new HashMap<MultiKey, List<Row>>();
+    
+    for (Row row : this.data) {
+      MultiKey multiKey = this.subjectIndexKey(row, subjectIndex, subjectSourceIdIndex);
+      List<Row> rows = result.get(multiKey);
+      if (rows == null) {
+        //usually there is only one
+        rows = new ArrayList<Row>(1);
+        result.put(multiKey, rows);
+      }
+      rows.add(row);
+    }
+    return result;
+  }
+
+  /**
+   * get the key of a row in the subject index
+   * @param row
+   * @param subjectIdIndex
+   * @param subjectSourceIdIndex -1 if there is no source col
+   * @return the key
+   */
+  private MultiKey subjectIndexKey(Row row, int subjectIdIndex, int subjectSourceIdIndex) {
+    Object[] rowData = row.getRowData();
+    return new MultiKey(rowData[subjectIdIndex], 
+        subjectSourceIdIndex == -1 ? null : rowData[subjectSourceIdIndex]);
+  }
+
+  /**
+   * take a row out of the subject index
+   * @param row
+   */
+  private void removeFromIndex(Row row) {
+    MultiKey multiKey = this.subjectIndexKey(row, this.columnIndex(SUBJECT_ID_COL), 
+        this.columnIndex(SUBJECT_SOURCE_ID_COL, false));
+    List<Row> rows = this.subjectIndex.get(multiKey);
+    if (rows != null) {
+      //rows dont implement equals, so this is by reference
+      rows.remove(row);
+      if (rows.size() == 0) {
+        this.subjectIndex.remove(multiKey);
+      }
+    }
+  }
+
+  /**
+   * take the removed rows out of the data list in one pass
+   */
+  private void compactRemovedRows() {
+    if (GrouperUtil.length(this.removedRows) == 0) {
+      return;
+    }
+    List<Row> newData = new ArrayList<Row>(Math.max(this.data.size() - this.removedRows.size(), 10));
+    for (Row row : this.data) {
+      if (!this.removedRows.contains(row)) {
+        newData.add(row);
       }
     }
-    return null;
+    this.data = newData;
+    this.removedRows = null;
   }
 
   /**
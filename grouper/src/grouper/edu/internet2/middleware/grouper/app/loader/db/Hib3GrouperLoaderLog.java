@@ -20,6 +20,8 @@
 package edu.internet2.middleware.grouper.app.loader.db;
 
 import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -156,6 +158,48 @@ public class Hib3GrouperLoaderLog implements HibGrouperLifecycle {
     this.andGroupNames = andGroupNames1;
   }
 
+  /** millis spent in each phase of the job in the order they ran, this is not its own column, it is appended to the job message */
+  private Map<String, Integer> millisPhases = null;
+
+  /**
+   * millis spent in each phase of the job in the order they ran
+   * @return the map of phase name to millis, never null
+   */
+  public Map<String, Integer> getMillisPhases() {
+    if (this.millisPhases == null) {
+      this.millisPhases = new LinkedHashMap<String, Integer>();
+    }
+    return this.millisPhases;
+  }
+
+  /**
+   * add millis to a phase of the job, e.g. retrieveCurrentMembers
+   * @param phase
+   * @param millis
+   */
+  public void addMillisPhase(String phase, long millis) {
+    Integer existing = this.getMillisPhases().get(phase);
+    this.getMillisPhases().put(phase, GrouperUtil.defaultIfNull(existing, 0) + (int)millis);
+  }
+
+  /**
+   * e.g. retrieveCurrentMembers: 12ms, compareMembers: 4ms
+   * @return the phases for the job message or log, or null if none
+   */
+  public String millisPhasesToString() {
+    if (GrouperUtil.length(this.millisPhases) == 0) {
+      return null;
+    }
+    StringBuilder result = new StringBuilder();
+    for (String phase : this.millisPhases.keySet()) {
+      if (result.length() > 0) {
+        result.append(", ");
+      }
+      result.append(phase).append(": ").append(this.millisPhases.get(phase)).append("ms");
+    }
+    return result.toString();
+  }
+
   /**
    * add to totalCount
    * @param add
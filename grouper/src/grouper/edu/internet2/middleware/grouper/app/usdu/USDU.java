@@ -15,11 +15,20 @@
  */
 package edu.internet2.middleware.grouper.app.usdu;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -42,6 +51,7 @@ import edu.internet2.middleware.grouper.MemberFinder;
 import edu.internet2.middleware.grouper.Membership;
 import edu.internet2.middleware.grouper.Stem;
 import edu.internet2.middleware.grouper.SubjectFinder;
+import edu.internet2.middleware.grouper.app.loader.db.Hib3GrouperLoaderLog;
 import edu.internet2.middleware.grouper.audit.GrouperEngineBuiltin;
 import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.exception.GroupNotFoundException;
@@ -52,9 +62,11 @@ import edu.internet2.middleware.grouper.exception.RevokePrivilegeException;
 import edu.internet2.middleware.grouper.exception.SchemaException;
 import edu.internet2.middleware.grouper.exception.StemNotFoundException;
 import edu.internet2.middleware.grouper.hibernate.GrouperContext;
+import edu.internet2.middleware.grouper.misc.GrouperDAOFactory;
 import edu.internet2.middleware.grouper.privs.AccessPrivilege;
 import edu.internet2.middleware.grouper.privs.NamingPrivilege;
 import edu.internet2.middleware.grouper.privs.Privilege;
+import edu.internet2.middleware.grouper.privs.PrivilegeHelper;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
 import edu.internet2.middleware.subject.Source;
 import edu.internet2.middleware.subject.SourceUnavailableException;
@@ -75,7 +87,6 @@ import edu.internet2.middleware.subject.provider.SubjectImpl;
 public class USDU {
 
   /** logger */
-  @SuppressWarnings("unused")
   private static final Log LOG = GrouperUtil.getLog(USDU.class);
 
   /** store the identifier for the GrouperSourceAdapter, probably "g:gsa" */
@@ -312,8 +323,16 @@ public class USDU {
     
     Set<Field> fields = getMemberFields();
 
+    //find the memberships of a batch of members at once
+    List<Member> unresolvablesList = new ArrayList<Member>(unresolvables);
+    int numberOfBatches = GrouperUtil.batchNumberOfBatches(unresolvablesList, batchSize());
+    Map<String, Set<Membership>> membershipsByMemberId = new HashMap<String, Set<Membership>>();
+    for (int i=0;i<numberOfBatches;i++) {
+      membershipsByMemberId.putAll(getAllImmediateMemberships(GrouperUtil.batchList(unresolvablesList, batchSize(), i), fields));
+    }
+
     for (Member member : unresolvables) {
-      Set<Membership> memberships = getAllImmediateMemberships(member, fields);
+      Set<Membership> memberships = GrouperUtil.nonNull(membershipsByMemberId.get(member.getUuid()));
       if (memberships.isEmpty()) {
         System.out.println("member_uuid='" + member.getUuid() + "' subject=" + member + " no_memberships");
       } else {
@@ -369,6 +388,37 @@ public class USDU {
     return memberships;
   }
 
+  /**
+   * Get immediate memberships for a batch of members for the given fields, with one query
+   * (per 50 members) instead of one per member and field.
+   * 
+   * @param members
+   * @param fields
+   *          a set of 'list' fields
+   * @return the memberships by member uuid, members without memberships are not in the map
+   */
+  protected static Map<String, Set<Membership>> getAllImmediateMemberships(Collection<Member> members, Set<Field> fields) {
+
+    Set<String> memberIds = new LinkedHashSet<String>();
+    for (Member member : members) {
+      memberIds.add(member.getUuid());
+    }
+    Set<Membership> memberships = GrouperDAOFactory.getFactory().getMembership()
+      .findAllImmediateByMemberIdsAndFields(memberIds, fields, true);
+    memberships = PrivilegeHelper.canViewMemberships(GrouperSession.staticGrouperSession(), memberships);
+
+    Map<String, Set<Membership>> result = new HashMap<String, Set<Membership>>();
+    for (Membership membership : GrouperUtil.nonNull(memberships)) {
+      Set<Membership> memberMemberships = result.get(membership.getMemberUuid());
+      if (memberMemberships == null) {
+        memberMemberships = new LinkedHashSet<Membership>();
+        result.put(membership.getMemberUuid(), memberMemberships);
+      }
+      memberMemberships.add(membership);
+    }
+    return result;
+  }
+
   /**
    * Delete unresolvable member from group and field.
    * 
@@ -496,16 +546,165 @@ public class USDU {
    */
   public static Set<Member> getUnresolvableMembers(GrouperSession s, Source source) {
 
-    Set<Member> members = new LinkedHashSet<Member>();
+    return getUnresolvableMembers(s, source, null);
+  }
+
+  /**
+   * number of members to check at once (with one lookup per source), and to find memberships of at once
+   * @return the batch size
+   */
+  private static int batchSize() {
+    return Math.max(1, GrouperConfig.retrieveConfig().propertyValueInt("usdu.batchSize", 1000));
+  }
+
+  /**
+   * Find members whose subjects can not be found by their source.  The members are checked in
+   * batches of usdu.batchSize, with one lookup per source per batch, and the batches are spread
+   * over usdu.numberOfThreads threads.
+   * 
+   * @param s
+   *          GrouperSession
+   * @param source
+   *          if null will find members from all sources
+   * @param hib3GrouperLoaderLog
+   *          if not null, the progress is set in the job message and stored after each batch
+   * @return unresolvable members
+   */
+  public static Set<Member> getUnresolvableMembers(final GrouperSession s, Source source, 
+      Hib3GrouperLoaderLog hib3GrouperLoaderLog) {
+
+    List<Member> members = new ArrayList<Member>(GrouperUtil.nonNull(MemberFinder.findAllUsed(s, source)));
+
+    int batchSize = batchSize();
+    int numberOfBatches = GrouperUtil.batchNumberOfBatches(members, batchSize);
+    int numberOfThreads = Math.min(numberOfBatches, 
+        GrouperConfig.retrieveConfig().propertyValueInt("usdu.numberOfThreads", 5));
+
+    Set<Member> unresolvables = new LinkedHashSet<Member>();
+
+    List<Callable<Set<Member>>> callables = new ArrayList<Callable<Set<Member>>>();
+    for (int i=0;i<numberOfBatches;i++) {
+      final List<Member> batch = GrouperUtil.batchList(members, batchSize, i);
+      callables.add(new Callable<Set<Member>>() {
+
+        public Set<Member> call() throws Exception {
+          return getUnresolvableMembersInBatch(s, batch);
+        }
+      });
+    }
 
-    for (Object m : MemberFinder.findAllUsed(s, source)) {
-      Member member = (Member) m;
-      if (!isMemberResolvable(s, member)) {
-        members.add(member);
+    ExecutorService executorService = numberOfThreads > 1 ? Executors.newFixedThreadPool(numberOfThreads) : null;
+    try {
+      List<Future<Set<Member>>> futures = new ArrayList<Future<Set<Member>>>();
+      if (executorService != null) {
+        for (final Callable<Set<Member>> callable : callables) {
+          futures.add(executorService.submit(new Callable<Set<Member>>() {
+  
+            public Set<Member> call() throws Exception {
+              //each thread needs its own grouper session
+              GrouperSession grouperSession = GrouperSession.start(s.getSubject());
+              try {
+                return callable.call();
+              } finally {
+                GrouperSession.stopQuietly(grouperSession);
+              }
+            }
+          }));
+        }
+      }
+
+      //collect the results in order
+      for (int i=0;i<numberOfBatches;i++) {
+        try {
+          unresolvables.addAll(executorService == null ? callables.get(i).call() : futures.get(i).get());
+        } catch (ExecutionException ee) {
+          Throwable throwable = ee.getCause();
+          if (throwable instanceof RuntimeException) {
+            throw (RuntimeException)throwable;
+          }
+          throw new RuntimeException("Problem checking batch " + i + " of members", throwable);
+        } catch (RuntimeException re) {
+          throw re;
+        } catch (Exception e) {
+          throw new RuntimeException("Problem checking batch " + i + " of members", e);
+        }
+
+        if (hib3GrouperLoaderLog != null) {
+          hib3GrouperLoaderLog.setJobMessage("USDU checked " + Math.min((i+1) * batchSize, members.size()) 
+              + " of " + members.size() + " members, found " + unresolvables.size() + " unresolvable");
+          hib3GrouperLoaderLog.store();
+        }
+      }
+    } finally {
+      if (executorService != null) {
+        executorService.shutdownNow();
+      }
+    }
+
+    return unresolvables;
+  }
+
+  /**
+   * Find which members of a batch can not be found by their source.  Members of the GrouperSourceAdapter
+   * are checked one at a time, the others with one lookup per source.
+   * 
+   * @param s
+   * @param members
+   * @return the unresolvable members
+   */
+  protected static Set<Member> getUnresolvableMembersInBatch(GrouperSession s, List<Member> members) {
+
+    Set<Member> unresolvables = new LinkedHashSet<Member>();
+
+    Map<String, List<Member>> membersBySourceId = new LinkedHashMap<String, List<Member>>();
+    for (Member member : members) {
+      if (member.getSubjectSourceId().equals(getGrouperSourceAdapterId())) {
+        if (!isMemberResolvable(s, member)) {
+          unresolvables.add(member);
+        }
+        continue;
+      }
+      List<Member> sourceMembers = membersBySourceId.get(member.getSubjectSourceId());
+      if (sourceMembers == null) {
+        sourceMembers = new ArrayList<Member>();
+        membersBySourceId.put(member.getSubjectSourceId(), sourceMembers);
+      }
+      sourceMembers.add(member);
+    }
+
+    for (String sourceId : membersBySourceId.keySet()) {
+      List<Member> sourceMembers = membersBySourceId.get(sourceId);
+      Set<String> subjectIds = new LinkedHashSet<String>();
+      for (Member member : sourceMembers) {
+        subjectIds.add(member.getSubjectId());
+      }
+
+      Map<String, Subject> subjects = null;
+      try {
+        subjects = SubjectFinder.findByIds(subjectIds, sourceId);
+      } catch (SourceUnavailableException sue) {
+        //same as one at a time, if the source is not available, the members are resolvable
+        LOG.warn("Source unavailable: " + sourceId, sue);
+        continue;
+      } catch (RuntimeException re) {
+        //check these one at a time
+        LOG.warn("Cant find subjects in a batch from source: " + sourceId + ", checking one at a time", re);
+        for (Member member : sourceMembers) {
+          if (!isMemberResolvable(s, member)) {
+            unresolvables.add(member);
+          }
+        }
+        continue;
+      }
+      subjects = GrouperUtil.nonNull(subjects);
+      for (Member member : sourceMembers) {
+        if (!subjects.containsKey(member.getSubjectId())) {
+          unresolvables.add(member);
+        }
       }
     }
 
-    return members;
+    return unresolvables;
   }
 
   /**
@@ -22,6 +22,7 @@ package edu.internet2.middleware.grouper.audit;
 import java.io.StringWriter;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
@@ -338,6 +339,25 @@ public class AuditEntry extends GrouperAPI implements Hib3GrouperVersioned, XmlI
     }
   }
   
+  /**
+   * insert a batch of new audit entries with one flush
+   * @param auditEntries
+   * @param copyContextData 
+   */
+  public static void saveBatch(Collection<AuditEntry> auditEntries, boolean copyContextData) {
+    if (GrouperUtil.length(auditEntries) == 0) {
+      return;
+    }
+    if (copyContextData) {
+      for (AuditEntry auditEntry : auditEntries) {
+        GrouperContext.assignAuditEntryFields(auditEntry);
+      }
+    }
+    if (!GrouperLoader.isDryRun()) {
+      GrouperDAOFactory.getFactory().getAuditEntry().saveBatch(auditEntries);
+    }
+  }
+  
   /**
    * construct, assign an id
    * @param auditTypeIdentifier points to audit type
@@ -185,7 +185,7 @@ public class EhcacheController implements CacheController {
     throws  IllegalStateException { 
     this.initialize();
     if (this.mgr.cacheExists(name) ) {
-      return this.mgr.getCache(name);
+      return keyIndexIfInvalidationEnabled(this.mgr.getCache(name));
     }
     if (useDefaultIfNotInConfigFile) {
       if (LOG != null) {
@@ -199,13 +199,35 @@ public class EhcacheController implements CacheController {
           defaultEternal, defaultTimeToLiveSeconds, defaultTimeToIdleSeconds);
       //TODO CH 20081118, see if cache by name there already...
       this.mgr.addCache(cache);
-      return cache;
+      return keyIndexIfInvalidationEnabled(cache);
     }
     
     throw new IllegalStateException("cache not found: " + name + " make sure the cache" +
         " config is correct, the resource: /ehcache.xml");
   }
 
+  /**
+   * if cluster wide cache invalidation is enabled, index the keys of the cache so the invalidation 
+   * can find the keys of an object without scanning the cache
+   * @param cache
+   * @return the cache
+   */
+  private static Cache keyIndexIfInvalidationEnabled(Cache cache) {
+    if (GrouperCacheInvalidation.enabled()) {
+      GrouperCacheKeyIndex.keyIndex(cache, true);
+    }
+    return cache;
+  }
+
+  /**
+   * names of all caches
+   * @return the names
+   */
+  public String[] getCacheNames() {
+    this.initialize();
+    return this.mgr.getCacheNames();
+  }
+
   /** logger */
   private static final Log LOG = GrouperUtil.getLog(EhcacheController.class);
 
@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.internet2.middleware.grouper.util.GrouperUtil;
 
@@ -33,23 +34,38 @@ import net.sf.ehcache.Statistics;
 
 
 /**
- * wrapper around ehcache which makes it genericized
+ * wrapper around ehcache which makes it genericized.  Ehcache is thread safe, so this
+ * does not synchronize, and keeps its own hit, miss, and removal counts, and counts the elements
+ * ehcache evicts or expires
  * @param <K> 
  * @param <V> 
  */
 public class GrouperCache<K,V> {
 
+  /** number of gets which found a value */
+  private final AtomicLong hitCount = new AtomicLong();
+
+  /** number of gets which did not find a value */
+  private final AtomicLong missCount = new AtomicLong();
+
+  /** number of elements removed or cleared through this wrapper (not evicted or expired by ehcache) */
+  private final AtomicLong removalCount = new AtomicLong();
+
+  /** counts the elements ehcache evicts or expires, shared by the GrouperCaches of the ehcache */
+  private GrouperCacheEvictionListener evictionListener = null;
+
   /**
    * values
    * @return the collection of values
    */
   public Collection<V> values() {
     Collection<V> result = new ArrayList<V>();
-    for (K key : this.keySet()) {
+    for (Object key : GrouperUtil.nonNull(this.cache.getKeysNoDuplicateCheck())) {
       
-      V value = this.get(key);
-      if (value != null) {
-        result.add(value);
+      //quiet so reading all values doesnt count as hits, and doesnt go through get()
+      Element element = this.cache.getQuiet(key);
+      if (element != null && element.getObjectValue() != null) {
+        result.add((V)element.getObjectValue());
       }
       
     }
@@ -60,6 +76,7 @@ public class GrouperCache<K,V> {
    * remove all in cache
    */
   public void clear() {
+    this.removalCount.addAndGet(this.cache.getSize());
     this.cache.removeAll();
   }
   
@@ -81,6 +98,7 @@ public class GrouperCache<K,V> {
    */
   public GrouperCache(Cache theCache) {
     this.cache = theCache;
+    this.evictionListener = GrouperCacheEvictionListener.evictionListener(theCache);
   }
 
   /**
@@ -123,10 +141,15 @@ public class GrouperCache<K,V> {
    * @param key
    * @return the value or null if not there or evicted
    */
-  public synchronized V get(K key) {
+  public V get(K key) {
     Element element = this.cache.get(key);
+    if (element == null) {
+      this.missCount.incrementAndGet();
+      return null;
+    }
+    this.hitCount.incrementAndGet();
     //note dont use getValue since the vlaue might not be serializable
-    return element == null ? null : (V)element.getObjectValue();
+    return (V)element.getObjectValue();
   }
 
   /**
@@ -134,16 +157,21 @@ public class GrouperCache<K,V> {
    * @param key
    * @return true if contains key (though value still could be null)
    */
-  public synchronized boolean containsKey(K key) {
+  public boolean containsKey(K key) {
     Element element = this.cache.get(key);
-    return element != null;
+    if (element == null) {
+      this.missCount.incrementAndGet();
+      return false;
+    }
+    this.hitCount.incrementAndGet();
+    return true;
   }
   
   /**
    * get a set of the keys in the cache
    * @return the set of the keys, never returns null
    */
-  public synchronized Set<K> keySet() {
+  public Set<K> keySet() {
     List keyList = GrouperUtil.nonNull(this.cache.getKeys());
     Set<K> result = new LinkedHashSet<K>(keyList);
     return result;
@@ -154,10 +182,13 @@ public class GrouperCache<K,V> {
    * @param key
    * @return the previous value associated or null (to match Map interface)
    */
-  public synchronized V remove(K key) {
-    V result = this.get(key);
-    this.cache.remove(key);
-    return result;
+  public V remove(K key) {
+    //quiet so removing doesnt count as a hit or miss
+    Element element = this.cache.getQuiet(key);
+    if (this.cache.remove(key)) {
+      this.removalCount.incrementAndGet();
+    }
+    return element == null ? null : (V)element.getObjectValue();
   }
   
   /**
@@ -165,7 +196,7 @@ public class GrouperCache<K,V> {
    * @param key
    * @param value
    */
-  public synchronized void put(K key, V value) {
+  public void put(K key, V value) {
     this.cache.put(new Element(key, value));
   }
   
@@ -177,4 +208,15 @@ public class GrouperCache<K,V> {
     return this.cache.getStatistics();
   }
 
+  /**
+   * hit, miss, and removal counts of this wrapper, the number of elements ehcache evicted or 
+   * expired, and the current size of the cache.  Unlike getStats() these dont need statistics 
+   * enabled in ehcache
+   * @return the stats
+   */
+  public GrouperCacheStats getCacheStats() {
+    return new GrouperCacheStats(this.hitCount.get(), this.missCount.get(), 
+        this.removalCount.get(), this.evictionListener.getEvictionCount(), this.cache.getSize());
+  }
+
 }
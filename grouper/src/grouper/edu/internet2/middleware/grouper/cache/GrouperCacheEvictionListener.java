@@ -0,0 +1,114 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+
+/**
+ * counts the elements ehcache evicts (e.g. when the cache is full) or expires.  One of these is 
+ * registered on each ehcache which a GrouperCache wraps.  Note, ehcache notices expired elements 
+ * when they are accessed or evicted, not when they expire
+ */
+class GrouperCacheEvictionListener implements CacheEventListener {
+
+  /** number of elements evicted or expired */
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * get the listener registered on this cache, register one if not there
+   * @param ehcache
+   * @return the listener
+   */
+  static GrouperCacheEvictionListener evictionListener(Ehcache ehcache) {
+    synchronized (GrouperCacheEvictionListener.class) {
+      for (Object cacheEventListener : ehcache.getCacheEventNotificationService().getCacheEventListeners()) {
+        if (cacheEventListener instanceof GrouperCacheEvictionListener) {
+          return (GrouperCacheEvictionListener)cacheEventListener;
+        }
+      }
+      GrouperCacheEvictionListener grouperCacheEvictionListener = new GrouperCacheEvictionListener();
+      ehcache.getCacheEventNotificationService().registerListener(grouperCacheEvictionListener);
+      return grouperCacheEvictionListener;
+    }
+  }
+
+  /**
+   * @return the number of elements evicted or expired
+   */
+  long getEvictionCount() {
+    return this.evictionCount.get();
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementEvicted(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementEvicted(Ehcache cache, Element element) {
+    this.evictionCount.incrementAndGet();
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementExpired(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementExpired(Ehcache cache, Element element) {
+    this.evictionCount.incrementAndGet();
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementRemoved(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementPut(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementUpdated(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyRemoveAll(net.sf.ehcache.Ehcache)
+   */
+  public void notifyRemoveAll(Ehcache cache) {
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#dispose()
+   */
+  public void dispose() {
+  }
+
+  /**
+   * the count is for one cache, so dont copy it to another
+   * @see java.lang.Object#clone()
+   */
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    throw new CloneNotSupportedException();
+  }
+
+}
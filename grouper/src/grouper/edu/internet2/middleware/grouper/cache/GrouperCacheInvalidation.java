@@ -0,0 +1,311 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.ehcache.Cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+
+import edu.internet2.middleware.grouper.Group;
+import edu.internet2.middleware.grouper.Member;
+import edu.internet2.middleware.grouper.Stem;
+import edu.internet2.middleware.grouper.attr.AttributeDef;
+import edu.internet2.middleware.grouper.attr.AttributeDefName;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
+import edu.internet2.middleware.grouper.changeLog.ChangeLogEntry;
+import edu.internet2.middleware.grouper.hibernate.HibUtils;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3AttributeAssignDAO;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3AttributeAssignValueDAO;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3AttributeDefDAO;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3AttributeDefNameDAO;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3CompositeDAO;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3DAO;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3GroupDAO;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3MemberDAO;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3MembershipDAO;
+import edu.internet2.middleware.grouper.internal.dao.hib3.Hib3StemDAO;
+import edu.internet2.middleware.grouper.privs.CachingAccessResolver;
+import edu.internet2.middleware.grouper.privs.CachingAttrDefResolver;
+import edu.internet2.middleware.grouper.privs.CachingNamingResolver;
+import edu.internet2.middleware.grouper.privs.PrivilegeCacheEviction;
+import edu.internet2.middleware.grouper.rules.RuleEngine;
+import edu.internet2.middleware.grouper.rules.RuleUtils;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+
+
+/**
+ * <pre>
+ * cluster wide cache invalidation.  Changes are published as events when the change log temp entries
+ * are converted, and every JVM polls the transport and evicts what it has cached about the objects which changed:
+ * keys of GrouperCache / ehcache caches which contain the id or name of the object, the hasPrivilege caches of the
+ * caching privilege resolvers, the hibernate second level cache and query regions of the DAO of the object, and
+ * the RuleEngine cache if a rule attribute changed.
+ * 
+ * the keys are found with an index of the keys of each cache by the strings in the key (GrouperCacheKeyIndex),
+ * which EhcacheController registers on the caches when this is enabled, and the query regions are the ones
+ * queries used so far in this JVM (HibUtils.queryCacheRegions()), so a poll does not scan the caches
+ *
+ * configure in grouper.properties with cache.invalidation.enabled, cache.invalidation.transportClass,
+ * and cache.invalidation.pollSeconds
+ * </pre>
+ */
+public class GrouperCacheInvalidation {
+
+  /** logger */
+  private static final Log LOG = GrouperUtil.getLog(GrouperCacheInvalidation.class);
+
+  /** transport for this JVM */
+  private static GrouperCacheInvalidationTransport transport = null;
+
+  /** thread which polls the transport, null if not started */
+  private static Thread pollingThread = null;
+
+  /** hasPrivilege caches of the caching privilege resolvers */
+  private static final String[] PRIVILEGE_CACHE_NAMES = new String[]{CachingAccessResolver.CACHE_HASPRIV,
+    CachingNamingResolver.CACHE_HASPRIV, CachingAttrDefResolver.CACHE_HASPRIV};
+
+  /** DAOs whose query cache regions hold data of each change log category */
+  private static final Map<String, String[]> CATEGORY_TO_DAO_CLASS_NAMES = new HashMap<String, String[]>();
+
+  /** persistent class in the second level cache for each change log category */
+  private static final Map<String, Class<?>> CATEGORY_TO_PERSISTENT_CLASS = new HashMap<String, Class<?>>();
+
+  static {
+    CATEGORY_TO_DAO_CLASS_NAMES.put("group", new String[]{Hib3GroupDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("entity", new String[]{Hib3GroupDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("stem", new String[]{Hib3StemDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("member", new String[]{Hib3MemberDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("attributeDef", new String[]{Hib3AttributeDefDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("attributeDefName", new String[]{Hib3AttributeDefNameDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("membership", new String[]{Hib3MembershipDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("privilege", new String[]{Hib3MembershipDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("groupComposite", new String[]{Hib3CompositeDAO.class.getName(), Hib3MembershipDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("attributeAssign", new String[]{Hib3AttributeAssignDAO.class.getName()});
+    CATEGORY_TO_DAO_CLASS_NAMES.put("attributeAssignValue", new String[]{Hib3AttributeAssignValueDAO.class.getName()});
+
+    CATEGORY_TO_PERSISTENT_CLASS.put("group", Group.class);
+    CATEGORY_TO_PERSISTENT_CLASS.put("entity", Group.class);
+    CATEGORY_TO_PERSISTENT_CLASS.put("stem", Stem.class);
+    CATEGORY_TO_PERSISTENT_CLASS.put("member", Member.class);
+    CATEGORY_TO_PERSISTENT_CLASS.put("attributeDef", AttributeDef.class);
+    CATEGORY_TO_PERSISTENT_CLASS.put("attributeDefName", AttributeDefName.class);
+  }
+
+  /**
+   * if cluster wide cache invalidation is enabled
+   * @return true if enabled
+   */
+  public static boolean enabled() {
+    return GrouperConfig.retrieveConfig().propertyValueBoolean("cache.invalidation.enabled", false);
+  }
+
+  /**
+   * transport for this JVM
+   * @return the transport
+   */
+  public static synchronized GrouperCacheInvalidationTransport transport() {
+    if (transport == null) {
+      String transportClassName = GrouperConfig.retrieveConfig().propertyValueString("cache.invalidation.transportClass",
+          GrouperCacheInvalidationDatabaseTransport.class.getName());
+      Class<GrouperCacheInvalidationTransport> transportClass = GrouperUtil.forName(transportClassName);
+      transport = GrouperUtil.newInstance(transportClass);
+    }
+    return transport;
+  }
+
+  /**
+   * publish the change log entries which were just converted from temp entries to the other JVMs
+   * @param changeLogEntries
+   */
+  public static void publish(Collection<ChangeLogEntry> changeLogEntries) {
+    if (!enabled() || changeLogEntries.size() == 0) {
+      return;
+    }
+    List<GrouperCacheInvalidationEvent> events = new ArrayList<GrouperCacheInvalidationEvent>();
+    for (ChangeLogEntry changeLogEntry : changeLogEntries) {
+      GrouperCacheInvalidationEvent event = GrouperCacheInvalidationEvent.fromChangeLogEntry(changeLogEntry);
+      if (event != null) {
+        events.add(event);
+      }
+    }
+    if (events.size() > 0) {
+      transport().publish(events);
+    }
+  }
+
+  /**
+   * receive events from the transport and evict from the caches in this JVM
+   * @return the number of events
+   */
+  public static int receiveAndApply() {
+    List<GrouperCacheInvalidationEvent> events = transport().receive();
+    apply(events);
+    return events.size();
+  }
+
+  /**
+   * evict from the caches in this JVM based on events
+   * @param events
+   */
+  public static void apply(List<GrouperCacheInvalidationEvent> events) {
+
+    if (GrouperUtil.length(events) == 0) {
+      return;
+    }
+
+    Set<String> identifiers = new LinkedHashSet<String>();
+    Set<String> daoClassNames = new LinkedHashSet<String>();
+    Set<String> ruleChangedIds = new LinkedHashSet<String>();
+    String ruleStemPrefix = RuleUtils.attributeRuleStemName() + ":";
+
+    for (GrouperCacheInvalidationEvent event : events) {
+
+      String category = event.getCategory();
+
+      String[] theDaoClassNames = CATEGORY_TO_DAO_CLASS_NAMES.get(category);
+      if (theDaoClassNames != null) {
+        for (String daoClassName : theDaoClassNames) {
+          daoClassNames.add(daoClassName);
+        }
+      }
+
+      Class<?> persistentClass = CATEGORY_TO_PERSISTENT_CLASS.get(category);
+      if (persistentClass != null) {
+        //the object itself changed, evict anything cached about it
+        identifiers.addAll(event.identifiers());
+        if (StringUtils.equals("member", category) && !StringUtils.isBlank(event.getSubjectId())) {
+          identifiers.add(event.getSubjectId());
+        }
+        try {
+          Hib3DAO.evictEntity(persistentClass, event.getOwnerId());
+        } catch (RuntimeException re) {
+          LOG.debug("Cant evict " + persistentClass.getSimpleName() + ": " + event.getOwnerId(), re);
+        }
+      }
+
+      if (StringUtils.equals("privilege", category)) {
+        for (String cacheName : PRIVILEGE_CACHE_NAMES) {
+          if (!PrivilegeCacheEviction.evictOwnerSubject(cacheName, event.getOwnerId(),
+              event.getSubjectSourceId(), event.getSubjectId())) {
+            PrivilegeCacheEviction.flush(cacheName);
+          }
+        }
+      }
+
+      if (StringUtils.equals("membership", category)) {
+        //the subject gets or loses the privileges which the group has on other objects.  
+        //the hasMember answers are in the query cache regions of the membership DAO which are evicted below
+        for (String cacheName : PRIVILEGE_CACHE_NAMES) {
+          if (!PrivilegeCacheEviction.evictSubject(cacheName, event.getSubjectSourceId(), event.getSubjectId())) {
+            PrivilegeCacheEviction.flush(cacheName);
+          }
+        }
+      }
+
+      if ((StringUtils.equals("attributeAssign", category) || StringUtils.equals("attributeAssignValue", category))
+          && (StringUtils.isBlank(event.getAttributeDefNameName()) || event.getAttributeDefNameName().startsWith(ruleStemPrefix))) {
+        //the rule engine reloads just the rules which changed
+        ruleChangedIds.add(event.getOwnerId());
+      }
+    }
+
+    if (identifiers.size() > 0) {
+      for (String cacheName : EhcacheController.ehcacheController().getCacheNames()) {
+        evictKeys(EhcacheController.ehcacheController().getCache(cacheName), identifiers);
+      }
+    }
+
+    if (daoClassNames.size() > 0) {
+      for (String regionName : HibUtils.queryCacheRegions()) {
+        for (String daoClassName : daoClassNames) {
+          if (StringUtils.equals(regionName, daoClassName) || regionName.startsWith(daoClassName + ".")) {
+            Hib3DAO.evictQueries(regionName);
+            break;
+          }
+        }
+      }
+    }
+
+    for (String ruleChangedId : ruleChangedIds) {
+      RuleEngine.ruleChanged(ruleChangedId);
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Applied " + events.size() + " cache invalidation events, identifiers: " + identifiers.size()
+          + ", daos: " + daoClassNames + ", rules changed: " + ruleChangedIds.size());
+    }
+  }
+
+  /**
+   * remove the keys of a cache which are or contain one of the identifiers, found in the key index of the cache
+   * @param cache
+   * @param identifiers
+   */
+  private static void evictKeys(Cache cache, Set<String> identifiers) {
+    GrouperCacheKeyIndex grouperCacheKeyIndex = GrouperCacheKeyIndex.keyIndex(cache, false);
+    if (grouperCacheKeyIndex == null) {
+      //not retrieved from EhcacheController since this was enabled, so nothing was indexed
+      return;
+    }
+    for (Object key : grouperCacheKeyIndex.keys(identifiers)) {
+      cache.remove(key);
+    }
+  }
+
+  /**
+   * start the thread which polls the transport if enabled and not already started
+   */
+  public static synchronized void startPollingThreadIfEnabled() {
+    if (!enabled() || pollingThread != null) {
+      return;
+    }
+    pollingThread = new Thread(new Runnable() {
+
+      public void run() {
+        try {
+          //initialize where to start
+          transport().receive();
+        } catch (Throwable t) {
+          LOG.error("Error initializing cache invalidation transport", t);
+        }
+        while (true) {
+          int pollSeconds = GrouperConfig.retrieveConfig().propertyValueInt("cache.invalidation.pollSeconds", 10);
+          try {
+            Thread.sleep(Math.max(1, pollSeconds) * 1000L);
+          } catch (InterruptedException ie) {
+            return;
+          }
+          try {
+            receiveAndApply();
+          } catch (Throwable t) {
+            LOG.error("Error applying cache invalidation events", t);
+          }
+        }
+      }
+    }, "grouperCacheInvalidation");
+    pollingThread.setDaemon(true);
+    pollingThread.start();
+  }
+}
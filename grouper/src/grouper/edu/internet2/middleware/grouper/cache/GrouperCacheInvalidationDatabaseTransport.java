@@ -0,0 +1,88 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
+import edu.internet2.middleware.grouper.changeLog.ChangeLogEntry;
+import edu.internet2.middleware.grouper.misc.GrouperDAOFactory;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+
+
+/**
+ * <pre>
+ * cache invalidation transport which polls the change log table, so no outside broker is needed.
+ * Publishing does nothing since the change log entries are already in the database, and each JVM
+ * reads the entries after the last sequence number it saw.  When a JVM starts it begins at the current
+ * end of the change log since its caches are empty.
+ *
+ * Note: the change log temp to change log job in the loader needs to be running
+ * </pre>
+ */
+public class GrouperCacheInvalidationDatabaseTransport implements GrouperCacheInvalidationTransport {
+
+  /** last change log sequence number converted to events, null if not initialized */
+  private Long lastSequenceNumber = null;
+
+  /**
+   * last change log sequence number converted to events, null if not initialized
+   * @return the lastSequenceNumber
+   */
+  public synchronized Long getLastSequenceNumber() {
+    return this.lastSequenceNumber;
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.cache.GrouperCacheInvalidationTransport#publish(java.util.List)
+   */
+  public void publish(List<GrouperCacheInvalidationEvent> events) {
+    //the change log entries are the events
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.cache.GrouperCacheInvalidationTransport#receive()
+   */
+  public synchronized List<GrouperCacheInvalidationEvent> receive() {
+
+    List<GrouperCacheInvalidationEvent> result = new ArrayList<GrouperCacheInvalidationEvent>();
+
+    if (this.lastSequenceNumber == null) {
+      this.lastSequenceNumber = GrouperUtil.defaultIfNull(ChangeLogEntry.maxSequenceNumber(false), 0l);
+      return result;
+    }
+
+    int batchSize = GrouperConfig.retrieveConfig().propertyValueInt("cache.invalidation.database.batchSize", 1000);
+
+    while (true) {
+      List<ChangeLogEntry> changeLogEntryList = GrouperDAOFactory.getFactory().getChangeLogEntry()
+        .retrieveBatch(this.lastSequenceNumber, batchSize);
+      for (ChangeLogEntry changeLogEntry : changeLogEntryList) {
+        GrouperCacheInvalidationEvent event = GrouperCacheInvalidationEvent.fromChangeLogEntry(changeLogEntry);
+        if (event != null) {
+          result.add(event);
+        }
+        this.lastSequenceNumber = changeLogEntry.getSequenceNumber();
+      }
+      if (changeLogEntryList.size() < batchSize) {
+        break;
+      }
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.cache;
+
+import java.io.Serializable;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import edu.internet2.middleware.grouper.changeLog.ChangeLogEntry;
+import edu.internet2.middleware.grouper.changeLog.ChangeLogType;
+
+
+/**
+ * an owner (group, stem, member, attributeDef, etc) changed on some JVM, so other JVMs
+ * should evict what they have cached about it
+ */
+public class GrouperCacheInvalidationEvent implements Serializable {
+
+  /**
+   * change log category of the change, e.g. group, stem, membership, privilege
+   */
+  private String category;
+
+  /**
+   * id of the object which changed, e.g. group id, or the group of a membership, or the owner of a privilege
+   */
+  private String ownerId;
+
+  /**
+   * name of the object which changed if known
+   */
+  private String ownerName;
+
+  /**
+   * old name of the object if it was renamed
+   */
+  private String ownerOldName;
+
+  /**
+   * source id of the subject of a membership, privilege, or member
+   */
+  private String subjectSourceId;
+
+  /**
+   * subject id of the subject of a membership, privilege, or member
+   */
+  private String subjectId;
+
+  /**
+   * name of the attribute def name of an attribute assignment or value
+   */
+  private String attributeDefNameName;
+
+  /**
+   * change log category of the change, e.g. group, stem, membership, privilege
+   * @return the category
+   */
+  public String getCategory() {
+    return this.category;
+  }
+
+  /**
+   * change log category of the change, e.g. group, stem, membership, privilege
+   * @param category1 the category to set
+   */
+  public void setCategory(String category1) {
+    this.category = category1;
+  }
+
+  /**
+   * id of the object which changed, e.g. group id, or the group of a membership, or the owner of a privilege
+   * @return the ownerId
+   */
+  public String getOwnerId() {
+    return this.ownerId;
+  }
+
+  /**
+   * id of the object which changed, e.g. group id, or the group of a membership, or the owner of a privilege
+   * @param ownerId1 the ownerId to set
+   */
+  public void setOwnerId(String ownerId1) {
+    this.ownerId = ownerId1;
+  }
+
+  /**
+   * name of the object which changed if known
+   * @return the ownerName
+   */
+  public String getOwnerName() {
+    return this.ownerName;
+  }
+
+  /**
+   * name of the object which changed if known
+   * @param ownerName1 the ownerName to set
+   */
+  public void setOwnerName(String ownerName1) {
+    this.ownerName = ownerName1;
+  }
+
+  /**
+   * old name of the object if it was renamed
+   * @return the ownerOldName
+   */
+  public String getOwnerOldName() {
+    return this.ownerOldName;
+  }
+
+  /**
+   * old name of the object if it was renamed
+   * @param ownerOldName1 the ownerOldName to set
+   */
+  public void setOwnerOldName(String ownerOldName1) {
+    this.ownerOldName = ownerOldName1;
+  }
+
+  /**
+   * source id of the subject of a membership, privilege, or member
+   * @return the subjectSourceId
+   */
+  public String getSubjectSourceId() {
+    return this.subjectSourceId;
+  }
+
+  /**
+   * source id of the subject of a membership, privilege, or member
+   * @param subjectSourceId1 the subjectSourceId to set
+   */
+  public void setSubjectSourceId(String subjectSourceId1) {
+    this.subjectSourceId = subjectSourceId1;
+  }
+
+  /**
+   * subject id of the subject of a membership, privilege, or member
+   * @return the subjectId
+   */
+  public String getSubjectId() {
+    return this.subjectId;
+  }
+
+  /**
+   * subject id of the subject of a membership, privilege, or member
+   * @param subjectId1 the subjectId to set
+   */
+  public void setSubjectId(String subjectId1) {
+    this.subjectId = subjectId1;
+  }
+
+  /**
+   * name of the attribute def name of an attribute assignment or value
+   * @return the attributeDefNameName
+   */
+  public String getAttributeDefNameName() {
+    return this.attributeDefNameName;
+  }
+
+  /**
+   * name of the attribute def name of an attribute assignment or value
+   * @param attributeDefNameName1 the attributeDefNameName to set
+   */
+  public void setAttributeDefNameName(String attributeDefNameName1) {
+    this.attributeDefNameName = attributeDefNameName1;
+  }
+
+  /**
+   * ids and names of the object which changed, cache keys which contain one of these are evicted
+   * @return the ids and names, never null
+   */
+  public Set<String> identifiers() {
+    Set<String> result = new LinkedHashSet<String>();
+    for (String identifier : new String[]{this.ownerId, this.ownerName, this.ownerOldName}) {
+      if (!StringUtils.isBlank(identifier)) {
+        result.add(identifier);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return new ToStringBuilder(this).append("category", this.category).append("ownerId", this.ownerId)
+      .append("ownerName", this.ownerName).append("ownerOldName", this.ownerOldName)
+      .append("subjectSourceId", this.subjectSourceId).append("subjectId", this.subjectId)
+      .append("attributeDefNameName", this.attributeDefNameName).toString();
+  }
+
+  /**
+   * get a label value if the change log type has that label
+   * @param changeLogEntry
+   * @param labels
+   * @param label
+   * @return the value or null
+   */
+  private static String labelValue(ChangeLogEntry changeLogEntry, Set<String> labels, String label) {
+    if (!labels.contains(label)) {
+      return null;
+    }
+    return changeLogEntry.retrieveValueForLabel(label);
+  }
+
+  /**
+   * convert a change log entry to an invalidation event
+   * @param changeLogEntry
+   * @return the event or null if the entry doesnt have an owner
+   */
+  public static GrouperCacheInvalidationEvent fromChangeLogEntry(ChangeLogEntry changeLogEntry) {
+    ChangeLogType changeLogType = changeLogEntry.getChangeLogType();
+    if (changeLogType == null) {
+      return null;
+    }
+    Set<String> labels = changeLogType.labels();
+    GrouperCacheInvalidationEvent event = new GrouperCacheInvalidationEvent();
+    String category = changeLogType.getChangeLogCategory();
+    event.setCategory(category);
+
+    if (StringUtils.equals("membership", category)) {
+      event.setOwnerId(labelValue(changeLogEntry, labels, "groupId"));
+      event.setOwnerName(labelValue(changeLogEntry, labels, "groupName"));
+    } else if (StringUtils.equals("privilege", category)) {
+      event.setOwnerId(labelValue(changeLogEntry, labels, "ownerId"));
+      event.setOwnerName(labelValue(changeLogEntry, labels, "ownerName"));
+    } else if (StringUtils.equals("member", category) && labels.contains("oldMemberId")) {
+      //change subject
+      event.setOwnerId(labelValue(changeLogEntry, labels, "oldMemberId"));
+      event.setSubjectSourceId(labelValue(changeLogEntry, labels, "oldSourceId"));
+      event.setSubjectId(labelValue(changeLogEntry, labels, "oldSubjectId"));
+    } else if (StringUtils.equals("member", category)) {
+      event.setOwnerId(labelValue(changeLogEntry, labels, "id"));
+      event.setSubjectSourceId(labelValue(changeLogEntry, labels, "subjectSourceId"));
+      event.setSubjectId(labelValue(changeLogEntry, labels, "subjectId"));
+    } else if (StringUtils.equals("attributeAssign", category) || StringUtils.equals("attributeAssignValue", category)) {
+      event.setOwnerId(labelValue(changeLogEntry, labels, "id"));
+      event.setAttributeDefNameName(labelValue(changeLogEntry, labels, "attributeDefNameName"));
+    } else {
+      //group, stem, entity, attributeDef, attributeDefName, etc
+      event.setOwnerId(labelValue(changeLogEntry, labels, "id"));
+      event.setOwnerName(labelValue(changeLogEntry, labels, "name"));
+      if (StringUtils.equals("name", labelValue(changeLogEntry, labels, "propertyChanged"))) {
+        event.setOwnerOldName(labelValue(changeLogEntry, labels, "propertyOldValue"));
+      }
+    }
+
+    if (event.getSubjectId() == null) {
+      event.setSubjectSourceId(labelValue(changeLogEntry, labels, "sourceId"));
+      event.setSubjectId(labelValue(changeLogEntry, labels, "subjectId"));
+    }
+
+    if (StringUtils.isBlank(event.getOwnerId())) {
+      return null;
+    }
+    return event;
+  }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.cache;
+
+import java.util.List;
+
+
+/**
+ * <pre>
+ * transport of cache invalidation events between the JVMs of a grouper deployment (WS, UI, loader, etc).
+ * Implementations are configured in grouper.properties with cache.invalidation.transportClass, and
+ * need a public no-arg constructor.  One instance is used per JVM.
+ * </pre>
+ */
+public interface GrouperCacheInvalidationTransport {
+
+  /**
+   * send events to the other JVMs, this is called after the change log temp entries are converted
+   * @param events
+   */
+  public void publish(List<GrouperCacheInvalidationEvent> events);
+
+  /**
+   * get the events which were published since the last time this was called
+   * @return the events, never null
+   */
+  public List<GrouperCacheInvalidationEvent> receive();
+
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+
+
+/**
+ * indexes the keys of an ehcache by the strings in the key (the key itself, or the string parts of a 
+ * MultiKey), so cache invalidation can evict the keys which contain the id or name of an object which 
+ * changed without scanning all the keys of the cache.  The index is kept up to date as elements are 
+ * put, removed, evicted, and expired.  One of these is registered on each ehcache from EhcacheController 
+ * if cluster wide cache invalidation is enabled
+ */
+class GrouperCacheKeyIndex implements CacheEventListener {
+
+  /** keys of the cache by the strings in the key */
+  private final Map<String, Set<Object>> keysByIdentifier = new HashMap<String, Set<Object>>();
+
+  /**
+   * get the index registered on this cache
+   * @param ehcache
+   * @param registerIfNotThere true to register one if there isnt one
+   * @return the index or null if not registered and not registering
+   */
+  static GrouperCacheKeyIndex keyIndex(Ehcache ehcache, boolean registerIfNotThere) {
+    synchronized (GrouperCacheKeyIndex.class) {
+      for (Object cacheEventListener : ehcache.getCacheEventNotificationService().getCacheEventListeners()) {
+        if (cacheEventListener instanceof GrouperCacheKeyIndex) {
+          return (GrouperCacheKeyIndex)cacheEventListener;
+        }
+      }
+      if (!registerIfNotThere) {
+        return null;
+      }
+      GrouperCacheKeyIndex grouperCacheKeyIndex = new GrouperCacheKeyIndex();
+      ehcache.getCacheEventNotificationService().registerListener(grouperCacheKeyIndex);
+      return grouperCacheKeyIndex;
+    }
+  }
+
+  /**
+   * strings in a key which it is indexed by
+   * @param key
+   * @return the strings
+   */
+  private static List<String> identifiers(Object key) {
+    List<String> identifiers = new ArrayList<String>();
+    if (key instanceof MultiKey) {
+      for (Object keyPart : ((MultiKey)key).getKeys()) {
+        if (keyPart instanceof String) {
+          identifiers.add((String)keyPart);
+        }
+      }
+    } else if (key instanceof String) {
+      identifiers.add((String)key);
+    }
+    return identifiers;
+  }
+
+  /**
+   * keys of the cache which are or contain one of the identifiers
+   * @param identifiers
+   * @return the keys
+   */
+  synchronized Set<Object> keys(Collection<String> identifiers) {
+    Set<Object> keys = new LinkedHashSet<Object>();
+    for (String identifier : identifiers) {
+      Set<Object> identifierKeys = this.keysByIdentifier.get(identifier);
+      if (identifierKeys != null) {
+        keys.addAll(identifierKeys);
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * index a key
+   * @param element
+   */
+  private synchronized void index(Element element) {
+    if (element == null) {
+      return;
+    }
+    Object key = element.getObjectKey();
+    for (String identifier : identifiers(key)) {
+      Set<Object> identifierKeys = this.keysByIdentifier.get(identifier);
+      if (identifierKeys == null) {
+        identifierKeys = new LinkedHashSet<Object>();
+        this.keysByIdentifier.put(identifier, identifierKeys);
+      }
+      identifierKeys.add(key);
+    }
+  }
+
+  /**
+   * remove a key from the index
+   * @param element
+   */
+  private synchronized void unindex(Element element) {
+    if (element == null) {
+      return;
+    }
+    Object key = element.getObjectKey();
+    for (String identifier : identifiers(key)) {
+      Set<Object> identifierKeys = this.keysByIdentifier.get(identifier);
+      if (identifierKeys != null) {
+        identifierKeys.remove(key);
+        if (identifierKeys.size() == 0) {
+          this.keysByIdentifier.remove(identifier);
+        }
+      }
+    }
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementPut(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+    this.index(element);
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementUpdated(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+    this.index(element);
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementRemoved(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+    this.unindex(element);
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementEvicted(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementEvicted(Ehcache cache, Element element) {
+    this.unindex(element);
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyElementExpired(net.sf.ehcache.Ehcache, net.sf.ehcache.Element)
+   */
+  public void notifyElementExpired(Ehcache cache, Element element) {
+    this.unindex(element);
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#notifyRemoveAll(net.sf.ehcache.Ehcache)
+   */
+  public synchronized void notifyRemoveAll(Ehcache cache) {
+    this.keysByIdentifier.clear();
+  }
+
+  /**
+   * @see net.sf.ehcache.event.CacheEventListener#dispose()
+   */
+  public synchronized void dispose() {
+    this.keysByIdentifier.clear();
+  }
+
+  /**
+   * the index is for one cache, so dont copy it to another
+   * @see java.lang.Object#clone()
+   */
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    throw new CloneNotSupportedException();
+  }
+
+}
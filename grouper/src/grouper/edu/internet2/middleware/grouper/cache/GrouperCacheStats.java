@@ -0,0 +1,93 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.cache;
+
+
+/**
+ * snapshot of the counts kept by a GrouperCache
+ */
+public class GrouperCacheStats implements CacheStats {
+
+  /** number of cache hits */
+  private long hits;
+
+  /** number of cache misses */
+  private long misses;
+
+  /** number of objects removed or cleared through the GrouperCache */
+  private long removals;
+
+  /** number of objects ehcache evicted or expired */
+  private long evictions;
+
+  /** number of objects in cache */
+  private long size;
+
+  /**
+   * @param hits1
+   * @param misses1
+   * @param removals1
+   * @param evictions1
+   * @param size1
+   */
+  public GrouperCacheStats(long hits1, long misses1, long removals1, long evictions1, long size1) {
+    this.hits = hits1;
+    this.misses = misses1;
+    this.removals = removals1;
+    this.evictions = evictions1;
+    this.size = size1;
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.cache.CacheStats#getHits()
+   */
+  public long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.cache.CacheStats#getMisses()
+   */
+  public long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.cache.CacheStats#getSize()
+   */
+  public long getSize() {
+    return this.size;
+  }
+
+  /**
+   * number of objects removed or cleared through the GrouperCache.  Note, objects which
+   * ehcache evicted or expired on its own are not counted
+   * @return the number of removals
+   */
+  public long getRemovals() {
+    return this.removals;
+  }
+
+  /**
+   * number of objects ehcache evicted (e.g. since the cache was full) or expired.  Note, ehcache
+   * notices expired objects when they are accessed, not when they expire
+   * @return the number of evictions
+   */
+  public long getEvictions() {
+    return this.evictions;
+  }
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.changeLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+
+import edu.internet2.middleware.grouper.util.GrouperCallable;
+import edu.internet2.middleware.grouper.util.GrouperFuture;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+
+
+/**
+ * <pre>
+ * process a batch of change log entries for a consumer in parallel lanes.  Each entry is hashed by its
+ * group, stem, or member id into a lane, so entries for the same object are processed in order
+ * by the same thread.  The lanes are processed in parallel, and the sequence number returned
+ * is the highest one where all entries up to and including it were processed by every lane.
+ *
+ * This is opt-in per consumer with changeLog.consumer.&lt;consumerName&gt;.parallelLanes, and the
+ * consumer must be thread safe since processChangeLogEntries is called from several threads at once
+ * </pre>
+ */
+public class ChangeLogConsumerLanes {
+
+  /** logger */
+  private static final Log LOG = GrouperUtil.getLog(ChangeLogConsumerLanes.class);
+
+  /**
+   * labels which identify the object an entry is about, in order of preference
+   */
+  private static final String[] LANE_KEY_LABELS = new String[]{"groupId", "ownerGroupId", "ownerId", "stemId", "ownerStemId", "memberId"};
+
+  /**
+   * categories where the id label is the group, stem, or member id
+   */
+  private static final String[] ID_LABEL_CATEGORIES = new String[]{"group", "entity", "stem", "member"};
+
+  /**
+   * get the key of an entry which decides the lane, i.e. the group, stem, or member id
+   * @param changeLogEntry
+   * @param labelsByTypeId cache of labels by change log type id
+   * @return the key or null if not known
+   */
+  static String laneKey(ChangeLogEntry changeLogEntry, Map<String, Set<String>> labelsByTypeId) {
+    ChangeLogType changeLogType = changeLogEntry.getChangeLogType();
+    if (changeLogType == null) {
+      return null;
+    }
+    Set<String> labels = labelsByTypeId.get(changeLogType.getId());
+    if (labels == null) {
+      labels = changeLogType.labels();
+      labelsByTypeId.put(changeLogType.getId(), labels);
+    }
+    for (String label : LANE_KEY_LABELS) {
+      if (labels.contains(label)) {
+        String value = changeLogEntry.retrieveValueForLabel(label);
+        if (!StringUtils.isBlank(value)) {
+          return value;
+        }
+      }
+    }
+    if (labels.contains("id")) {
+      for (String category : ID_LABEL_CATEGORIES) {
+        if (StringUtils.equals(category, changeLogType.getChangeLogCategory())) {
+          return changeLogEntry.retrieveValueForLabel("id");
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * split a batch into lanes by key, keeping the order in each lane
+   * @param changeLogEntryList
+   * @param numberOfLanes
+   * @return the lanes, some might be empty
+   */
+  static List<List<ChangeLogEntry>> lanes(List<ChangeLogEntry> changeLogEntryList, int numberOfLanes) {
+    List<List<ChangeLogEntry>> lanes = new ArrayList<List<ChangeLogEntry>>();
+    for (int i=0;i<numberOfLanes;i++) {
+      lanes.add(new ArrayList<ChangeLogEntry>());
+    }
+    Map<String, Set<String>> labelsByTypeId = new HashMap<String, Set<String>>();
+    for (ChangeLogEntry changeLogEntry : changeLogEntryList) {
+      String key = laneKey(changeLogEntry, labelsByTypeId);
+      //entries without a key go in the first lane
+      int lane = key == null ? 0 : ((key.hashCode() & 0x7fffffff) % numberOfLanes);
+      lanes.get(lane).add(changeLogEntry);
+    }
+    return lanes;
+  }
+
+  /**
+   * process a batch in parallel lanes
+   * @param changeLogConsumerBase must be thread safe
+   * @param changeLogEntryList
+   * @param changeLogProcessorMetadata problems from the lanes are registered here
+   * @param numberOfLanes
+   * @return the highest sequence number where it and all before it in the batch were processed
+   */
+  public static long processChangeLogEntries(final ChangeLogConsumerBase changeLogConsumerBase,
+      List<ChangeLogEntry> changeLogEntryList, ChangeLogProcessorMetadata changeLogProcessorMetadata,
+      int numberOfLanes) {
+
+    if (numberOfLanes <= 1 || changeLogEntryList.size() <= 1) {
+      return changeLogConsumerBase.processChangeLogEntries(changeLogEntryList, changeLogProcessorMetadata);
+    }
+
+    List<List<ChangeLogEntry>> lanes = lanes(changeLogEntryList, numberOfLanes);
+
+    List<ChangeLogProcessorMetadata> laneMetadatas = new ArrayList<ChangeLogProcessorMetadata>();
+    List<GrouperFuture<Long>> futures = new ArrayList<GrouperFuture<Long>>();
+
+    for (int i=0;i<lanes.size();i++) {
+      final List<ChangeLogEntry> lane = lanes.get(i);
+      if (lane.size() == 0) {
+        laneMetadatas.add(null);
+        futures.add(null);
+        continue;
+      }
+      final ChangeLogProcessorMetadata laneMetadata = new ChangeLogProcessorMetadata();
+      laneMetadata.setConsumerName(changeLogProcessorMetadata.getConsumerName());
+      laneMetadata.setHib3GrouperLoaderLog(changeLogProcessorMetadata.getHib3GrouperLoaderLog());
+      laneMetadatas.add(laneMetadata);
+
+      GrouperCallable<Long> grouperCallable = new GrouperCallable<Long>("change log consumer: "
+          + changeLogProcessorMetadata.getConsumerName() + ", lane: " + i) {
+
+        @Override
+        public Long callLogic() {
+          return changeLogConsumerBase.processChangeLogEntries(lane, laneMetadata);
+        }
+      };
+
+      @SuppressWarnings("unchecked")
+      GrouperFuture<Long> future = GrouperUtil.executorServiceSubmit(GrouperUtil.retrieveExecutorService(), grouperCallable);
+      futures.add(future);
+    }
+
+    //the lowest sequence number of an entry which was not processed by its lane
+    long firstUnprocessedSequence = Long.MAX_VALUE;
+
+    for (int i=0;i<lanes.size();i++) {
+      if (futures.get(i) == null) {
+        continue;
+      }
+      List<ChangeLogEntry> lane = lanes.get(i);
+      ChangeLogProcessorMetadata laneMetadata = laneMetadatas.get(i);
+      long laneLastProcessed = -1;
+      try {
+        laneLastProcessed = futures.get(i).get();
+      } catch (RuntimeException re) {
+        LOG.error("Error in change log consumer: " + changeLogProcessorMetadata.getConsumerName() + ", lane: " + i, re);
+        if (!laneMetadata.isHadProblem()) {
+          laneMetadata.registerProblem(re, "Error in lane " + i, lane.get(0).getSequenceNumber());
+        }
+      }
+      for (ChangeLogEntry changeLogEntry : lane) {
+        if (changeLogEntry.getSequenceNumber() > laneLastProcessed) {
+          firstUnprocessedSequence = Math.min(firstUnprocessedSequence, changeLogEntry.getSequenceNumber());
+          break;
+        }
+      }
+
+      //keep the problem with the lowest sequence number
+      if (laneMetadata.isHadProblem() && (!changeLogProcessorMetadata.isHadProblem()
+          || laneMetadata.getRecordExceptionSequence() < changeLogProcessorMetadata.getRecordExceptionSequence())) {
+        changeLogProcessorMetadata.registerProblem(laneMetadata.getRecordException(),
+            laneMetadata.getRecordProblemText(), laneMetadata.getRecordExceptionSequence());
+      }
+    }
+
+    //go up to the entry before the first one not processed
+    long lastProcessed = changeLogEntryList.get(0).getSequenceNumber() - 1;
+    for (ChangeLogEntry changeLogEntry : changeLogEntryList) {
+      if (changeLogEntry.getSequenceNumber() >= firstUnprocessedSequence) {
+        break;
+      }
+      lastProcessed = changeLogEntry.getSequenceNumber();
+    }
+    return lastProcessed;
+  }
+}
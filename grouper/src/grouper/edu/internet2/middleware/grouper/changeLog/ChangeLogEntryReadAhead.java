@@ -0,0 +1,279 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.changeLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+
+import edu.internet2.middleware.grouper.app.loader.GrouperLoaderConfig;
+import edu.internet2.middleware.grouper.misc.GrouperDAOFactory;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+
+
+/**
+ * <pre>
+ * shared read ahead buffer of change log entries for all change log consumers in this JVM.
+ * The entries are read from grouper_change_log_entry in ranges once into a bounded ring buffer,
+ * and each consumer is served from the buffer based on its last sequence processed.  Consumers
+ * which have fallen behind the start of the buffer read from the database directly.
+ *
+ * Note: the change log entries returned are shared between consumers, so they should not be edited
+ *
+ * configure with changeLog.readAhead.bufferSize (0 to disable) and changeLog.readAhead.fetchSize
+ * </pre>
+ */
+public class ChangeLogEntryReadAhead {
+
+  /** logger */
+  private static final Log LOG = GrouperUtil.getLog(ChangeLogEntryReadAhead.class);
+
+  /** instance shared by all consumers */
+  private static final ChangeLogEntryReadAhead instance = new ChangeLogEntryReadAhead();
+
+  /**
+   * instance shared by all consumers
+   * @return the instance
+   */
+  public static ChangeLogEntryReadAhead instance() {
+    return instance;
+  }
+
+  /**
+   * retrieve a batch of change log entries after a sequence number from the shared read ahead buffer,
+   * or from the database if the buffer is disabled or the consumer is behind the buffer
+   * @param afterSequenceNumber last sequence number processed by the consumer
+   * @param batchSize max number of entries to return
+   * @return the entries in sequence order, never null
+   */
+  public static List<ChangeLogEntry> retrieveBatch(long afterSequenceNumber, int batchSize) {
+
+    int bufferSize = GrouperLoaderConfig.retrieveConfig().propertyValueInt("changeLog.readAhead.bufferSize", 10000);
+
+    if (bufferSize <= 0 || batchSize > bufferSize) {
+      return GrouperDAOFactory.getFactory().getChangeLogEntry().retrieveBatch(afterSequenceNumber, batchSize);
+    }
+
+    int fetchSize = GrouperLoaderConfig.retrieveConfig().propertyValueInt("changeLog.readAhead.fetchSize", 1000);
+
+    return instance.retrieveBatch(afterSequenceNumber, batchSize, bufferSize, Math.max(fetchSize, batchSize));
+  }
+
+  /** ring of entries in sequence order, oldest at ringStart */
+  private ChangeLogEntry[] ring = null;
+
+  /** index in the ring of the oldest entry */
+  private int ringStart = 0;
+
+  /** number of entries in the ring */
+  private int ringCount = 0;
+
+  /** the buffer has all entries with sequence number greater than this (and less than or equal to lastSequenceRead) */
+  private long bufferStartAfter = -1;
+
+  /** the highest sequence number read from the database into the buffer */
+  private long lastSequenceRead = -1;
+
+  /** number of batches served from the buffer */
+  private long bufferHitCount = 0;
+
+  /** number of batches for consumers behind the buffer, served from the database */
+  private long bufferBehindCount = 0;
+
+  /** number of queries to fill the buffer */
+  private long fetchCount = 0;
+
+  /**
+   * number of batches served from the buffer
+   * @return the count
+   */
+  public synchronized long getBufferHitCount() {
+    return this.bufferHitCount;
+  }
+
+  /**
+   * number of batches for consumers behind the buffer, served from the database
+   * @return the count
+   */
+  public synchronized long getBufferBehindCount() {
+    return this.bufferBehindCount;
+  }
+
+  /**
+   * number of queries to fill the buffer
+   * @return the count
+   */
+  public synchronized long getFetchCount() {
+    return this.fetchCount;
+  }
+
+  /**
+   * empty the buffer, e.g. for testing
+   */
+  public synchronized void clear() {
+    this.ring = null;
+    this.ringStart = 0;
+    this.ringCount = 0;
+  }
+
+  /**
+   * start the buffer over, empty, after a sequence number
+   * @param bufferSize
+   * @param afterSequenceNumber
+   */
+  private void reset(int bufferSize, long afterSequenceNumber) {
+    this.ring = new ChangeLogEntry[bufferSize];
+    this.ringStart = 0;
+    this.ringCount = 0;
+    this.bufferStartAfter = afterSequenceNumber;
+    this.lastSequenceRead = afterSequenceNumber;
+  }
+
+  /**
+   * get an entry by position from the oldest entry
+   * @param index 0 is the oldest
+   * @return the entry
+   */
+  private ChangeLogEntry entry(int index) {
+    return this.ring[(this.ringStart + index) % this.ring.length];
+  }
+
+  /**
+   * add an entry to the end of the ring, dropping the oldest if full
+   * @param changeLogEntry
+   */
+  private void append(ChangeLogEntry changeLogEntry) {
+    if (this.ringCount == this.ring.length) {
+      this.bufferStartAfter = this.ring[this.ringStart].getSequenceNumber();
+      this.ring[this.ringStart] = null;
+      this.ringStart = (this.ringStart + 1) % this.ring.length;
+      this.ringCount--;
+    }
+    this.ring[(this.ringStart + this.ringCount) % this.ring.length] = changeLogEntry;
+    this.ringCount++;
+    this.lastSequenceRead = changeLogEntry.getSequenceNumber();
+  }
+
+  /**
+   * position of the first entry with sequence number greater than the param
+   * @param afterSequenceNumber
+   * @return the index, or ringCount if none
+   */
+  private int indexAfter(long afterSequenceNumber) {
+    int low = 0;
+    int high = this.ringCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (entry(mid).getSequenceNumber() <= afterSequenceNumber) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * retrieve a batch from the buffer, or from the database if the consumer is behind the buffer
+   * @param afterSequenceNumber
+   * @param batchSize
+   * @param bufferSize
+   * @param fetchSize
+   * @return the entries
+   */
+  private List<ChangeLogEntry> retrieveBatch(long afterSequenceNumber, int batchSize,
+      int bufferSize, int fetchSize) {
+
+    synchronized (this) {
+      if (this.ring == null || this.ring.length != bufferSize) {
+        reset(bufferSize, afterSequenceNumber);
+      }
+  
+      if (afterSequenceNumber >= this.bufferStartAfter) {
+        return retrieveBatchFromBuffer(afterSequenceNumber, batchSize, bufferSize, fetchSize);
+      }
+
+      this.bufferBehindCount++;
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Consumer after sequence " + afterSequenceNumber + " is behind the read ahead buffer which starts after "
+            + this.bufferStartAfter + ", reading from the database");
+      }
+    }
+
+    //this consumer is behind the buffer, dont disturb the buffer for the others, and dont hold the lock
+    //during the query so the consumers which are caught up are not blocked
+    return GrouperDAOFactory.getFactory().getChangeLogEntry().retrieveBatch(afterSequenceNumber, batchSize);
+  }
+
+  /**
+   * retrieve a batch from the buffer, filling it from the database as needed.  the caller holds the lock
+   * @param afterSequenceNumber
+   * @param batchSize
+   * @param bufferSize
+   * @param fetchSize
+   * @return the entries
+   */
+  private List<ChangeLogEntry> retrieveBatchFromBuffer(long afterSequenceNumber, int batchSize,
+      int bufferSize, int fetchSize) {
+
+    //this consumer is far ahead of the buffer, start the buffer over from here
+    if (afterSequenceNumber - this.lastSequenceRead > bufferSize) {
+      reset(bufferSize, afterSequenceNumber);
+    }
+
+    boolean fetched = false;
+
+    while (true) {
+
+      int startIndex = indexAfter(afterSequenceNumber);
+      int available = this.ringCount - startIndex;
+
+      if (available >= batchSize) {
+        break;
+      }
+
+      //dont read so much that entries this consumer needs are dropped
+      int thisFetchSize = Math.min(fetchSize, bufferSize - available);
+
+      List<ChangeLogEntry> changeLogEntryList = GrouperDAOFactory.getFactory().getChangeLogEntry()
+        .retrieveBatch(this.lastSequenceRead, thisFetchSize);
+      this.fetchCount++;
+      fetched = true;
+
+      for (ChangeLogEntry changeLogEntry : changeLogEntryList) {
+        append(changeLogEntry);
+      }
+
+      //no more in the database
+      if (changeLogEntryList.size() < thisFetchSize) {
+        break;
+      }
+    }
+
+    if (!fetched) {
+      this.bufferHitCount++;
+    }
+
+    int startIndex = indexAfter(afterSequenceNumber);
+    int endIndex = Math.min(this.ringCount, startIndex + batchSize);
+    List<ChangeLogEntry> result = new ArrayList<ChangeLogEntry>(endIndex - startIndex);
+    for (int i=startIndex;i<endIndex;i++) {
+      result.add(entry(i));
+    }
+    return result;
+  }
+}
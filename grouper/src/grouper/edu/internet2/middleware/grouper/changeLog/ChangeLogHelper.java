@@ -31,11 +31,14 @@ import edu.internet2.middleware.grouper.GroupSave;
 import edu.internet2.middleware.grouper.GrouperSession;
 import edu.internet2.middleware.grouper.SubjectFinder;
 import edu.internet2.middleware.grouper.app.loader.GrouperLoader;
+import edu.internet2.middleware.grouper.app.loader.GrouperLoaderConfig;
 import edu.internet2.middleware.grouper.app.loader.GrouperLoaderStatus;
 import edu.internet2.middleware.grouper.app.loader.GrouperLoaderType;
 import edu.internet2.middleware.grouper.app.loader.db.Hib3GrouperLoaderLog;
 import edu.internet2.middleware.grouper.misc.GrouperDAOFactory;
 import edu.internet2.middleware.grouper.misc.GrouperStartup;
+import edu.internet2.middleware.grouper.util.GrouperCallable;
+import edu.internet2.middleware.grouper.util.GrouperFuture;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
 
 
@@ -163,6 +166,55 @@ public class ChangeLogHelper {
     hib3GrouploaderLog.store();
   }
   
+  /**
+   * get an int config for a consumer, changeLog.consumer.&lt;consumerName&gt;.&lt;suffix&gt;, 
+   * or changeLog.helper.&lt;suffix&gt; if not configured for the consumer
+   * @param consumerName
+   * @param suffix e.g. batchSize
+   * @param defaultValue
+   * @return the value
+   */
+  static int consumerConfigInt(String consumerName, String suffix, int defaultValue) {
+    GrouperLoaderConfig grouperLoaderConfig = GrouperLoaderConfig.retrieveConfig();
+    int value = grouperLoaderConfig.propertyValueInt("changeLog.helper." + suffix, defaultValue);
+    return grouperLoaderConfig.propertyValueInt("changeLog.consumer." + consumerName + "." + suffix, value);
+  }
+
+  /**
+   * get a boolean config for a consumer, changeLog.consumer.&lt;consumerName&gt;.&lt;suffix&gt;, 
+   * or changeLog.helper.&lt;suffix&gt; if not configured for the consumer
+   * @param consumerName
+   * @param suffix e.g. prefetch
+   * @param defaultValue
+   * @return the value
+   */
+  static boolean consumerConfigBoolean(String consumerName, String suffix, boolean defaultValue) {
+    GrouperLoaderConfig grouperLoaderConfig = GrouperLoaderConfig.retrieveConfig();
+    boolean value = grouperLoaderConfig.propertyValueBoolean("changeLog.helper." + suffix, defaultValue);
+    return grouperLoaderConfig.propertyValueBoolean("changeLog.consumer." + consumerName + "." + suffix, value);
+  }
+
+  /**
+   * retrieve the next batch of records in another thread
+   * @param consumerName
+   * @param afterSequenceNumber
+   * @param batchSize
+   * @return the future
+   */
+  @SuppressWarnings("unchecked")
+  private static GrouperFuture<List<ChangeLogEntry>> prefetchBatch(String consumerName, 
+      final long afterSequenceNumber, final int batchSize) {
+    GrouperCallable<List<ChangeLogEntry>> grouperCallable = new GrouperCallable<List<ChangeLogEntry>>(
+        "prefetch change log for consumer: " + consumerName + ", after sequence: " + afterSequenceNumber) {
+
+      @Override
+      public List<ChangeLogEntry> callLogic() {
+        return ChangeLogEntryReadAhead.retrieveBatch(afterSequenceNumber, batchSize);
+      }
+    };
+    return GrouperUtil.executorServiceSubmit(GrouperUtil.retrieveExecutorService(), grouperCallable);
+  }
+  
   /**
    * <pre>
    * call this method to process a batch of 100k (max) records of the change log... 
@@ -170,6 +222,15 @@ public class ChangeLogHelper {
    * to keep track of the last processed record, the loader log which will log process in the grouper loader
    * log table, and the processor which is the change log consumer base...
    * 
+   * the batch size is changeLog.consumer.&lt;consumerName&gt;.batchSize (default changeLog.helper.batchSize, 100).
+   * While a batch is processed the next one is retrieved in another thread (changeLog.helper.prefetch).
+   * The last sequence processed is saved every changeLog.helper.checkpointEveryBatches batches or 
+   * changeLog.helper.checkpointEverySeconds seconds, on error, and at the end, so if the JVM dies, 
+   * up to that many batches will be processed again.  These can also be configured per consumer.
+   * 
+   * if changeLog.consumer.&lt;consumerName&gt;.parallelLanes is more than 1, each batch is split into that
+   * many lanes by group, stem, or member id, which are processed in parallel (see ChangeLogConsumerLanes)
+   * 
    * to test this, do your changes, e.g. add a member, delete a member, then call this:
    * 
    * GrouperLoader.runOnceByJobName(grouperSession, GrouperLoaderType.GROUPER_CHANGE_LOG_TEMP_TO_CHANGE_LOG);
@@ -190,9 +251,16 @@ public class ChangeLogHelper {
       debugMap.put("consumerName", consumerName);
     }
     
+    ChangeLogConsumer changeLogConsumer = null;
+    
+    //if the last sequence processed has changed since it was saved
+    boolean needsCheckpoint = false;
+    
+    GrouperFuture<List<ChangeLogEntry>> nextBatchFuture = null;
+    
     try {
 
-      ChangeLogConsumer changeLogConsumer = GrouperDAOFactory.getFactory().getChangeLogConsumer().findByName(consumerName, false);
+      changeLogConsumer = GrouperDAOFactory.getFactory().getChangeLogConsumer().findByName(consumerName, false);
       boolean error = false;
       
       //if this is a new job
@@ -213,20 +281,41 @@ public class ChangeLogHelper {
         GrouperDAOFactory.getFactory().getChangeLogConsumer().saveOrUpdate(changeLogConsumer);
       }
       
+      int batchSize = Math.max(1, consumerConfigInt(consumerName, "batchSize", 100));
+      boolean prefetch = consumerConfigBoolean(consumerName, "prefetch", true);
+      int checkpointEveryBatches = consumerConfigInt(consumerName, "checkpointEveryBatches", 10);
+      int checkpointEverySeconds = consumerConfigInt(consumerName, "checkpointEverySeconds", 30);
+      
+      //opt-in, the consumer must be thread safe
+      int parallelLanes = GrouperLoaderConfig.retrieveConfig().propertyValueInt(
+          "changeLog.consumer." + consumerName + ".parallelLanes", 1);
+      
+      //lets only do 100k records at a time
+      int maxBatches = Math.max(1, 100000 / batchSize);
+      
       if (LOG.isDebugEnabled()) {
         debugMap.put("last sequence processed", changeLogConsumer.getLastSequenceProcessed());
+        debugMap.put("batchSize", batchSize);
       }
       
-      //lets only do 100k records at a time
-      for (int i=0;i<1000;i++) {
+      int batchesSinceCheckpoint = 0;
+      long lastCheckpointMillis = System.currentTimeMillis();
+      
+      for (int i=0;i<maxBatches;i++) {
         
         ChangeLogProcessorMetadata changeLogProcessorMetadata = new ChangeLogProcessorMetadata();
         changeLogProcessorMetadata.setHib3GrouperLoaderLog(hib3GrouploaderLog);
         changeLogProcessorMetadata.setConsumerName(consumerName);
         
-        //lets get 100 records
-        List<ChangeLogEntry> changeLogEntryList = GrouperDAOFactory.getFactory().getChangeLogEntry()
-          .retrieveBatch(changeLogConsumer.getLastSequenceProcessed(), 100);
+        //get a batch of records, either the one prefetched, or from the read ahead buffer shared by the consumers
+        List<ChangeLogEntry> changeLogEntryList = null;
+        if (nextBatchFuture != null) {
+          changeLogEntryList = nextBatchFuture.get();
+          nextBatchFuture = null;
+        } else {
+          changeLogEntryList = ChangeLogEntryReadAhead.retrieveBatch(
+            changeLogConsumer.getLastSequenceProcessed(), batchSize);
+        }
 
         if (LOG.isDebugEnabled()) {
           debugMap.put(i + ": number of records found to process", changeLogEntryList.size());
@@ -236,10 +325,18 @@ public class ChangeLogHelper {
           break;
         }
         
+        long lastSequenceInBatch = changeLogEntryList.get(changeLogEntryList.size()-1).getSequenceNumber();
+        
+        //get the next batch while this one is processed
+        if (prefetch && changeLogEntryList.size() == batchSize && i < maxBatches-1) {
+          nextBatchFuture = prefetchBatch(consumerName, lastSequenceInBatch, batchSize);
+        }
+        
         //pass this to the consumer
         long lastProcessed = -1;
         try {
-          lastProcessed = changeLogConsumerBase.processChangeLogEntries(changeLogEntryList, changeLogProcessorMetadata);
+          lastProcessed = ChangeLogConsumerLanes.processChangeLogEntries(changeLogConsumerBase, 
+              changeLogEntryList, changeLogProcessorMetadata, parallelLanes);
           
           if (LOG.isDebugEnabled()) {
             debugMap.put(i + ": processed to record number", lastProcessed);
@@ -255,10 +352,8 @@ public class ChangeLogHelper {
           error = true;
         }
         changeLogConsumer.setLastSequenceProcessed(lastProcessed);
-        GrouperDAOFactory.getFactory().getChangeLogConsumer().saveOrUpdate(changeLogConsumer);
-        
-        long lastSequenceInBatch = changeLogEntryList.get(changeLogEntryList.size()-1).getSequenceNumber();
-  
+        needsCheckpoint = true;
+        batchesSinceCheckpoint++;
         
         if (changeLogProcessorMetadata.isHadProblem()) {
           if (LOG.isDebugEnabled()) {
@@ -291,10 +386,19 @@ public class ChangeLogHelper {
         
         hib3GrouploaderLog.addTotalCount(changeLogEntryList.size());
   
-        if (changeLogEntryList.size() < 100) {
+        if (changeLogEntryList.size() < batchSize) {
           break;
         }
-        hib3GrouploaderLog.store();
+        
+        //save where we are every so often
+        if (batchesSinceCheckpoint >= checkpointEveryBatches 
+            || System.currentTimeMillis() - lastCheckpointMillis >= checkpointEverySeconds * 1000L) {
+          GrouperDAOFactory.getFactory().getChangeLogConsumer().saveOrUpdate(changeLogConsumer);
+          needsCheckpoint = false;
+          batchesSinceCheckpoint = 0;
+          lastCheckpointMillis = System.currentTimeMillis();
+          hib3GrouploaderLog.store();
+        }
       }
       if (LOG.isDebugEnabled()) {
         debugMap.put("totalRecordsProcessed", hib3GrouploaderLog.getTotalCount());
@@ -305,6 +409,20 @@ public class ChangeLogHelper {
         hib3GrouploaderLog.setStatus(GrouperLoaderStatus.SUCCESS.name());
       }
     } finally {
+      
+      //make sure the prefetch is done before returning
+      if (nextBatchFuture != null) {
+        try {
+          nextBatchFuture.get();
+        } catch (RuntimeException re) {
+          LOG.debug("error in unused prefetch", re);
+        }
+      }
+      
+      if (needsCheckpoint) {
+        GrouperDAOFactory.getFactory().getChangeLogConsumer().saveOrUpdate(changeLogConsumer);
+      }
+      
       if (LOG.isDebugEnabled()) {
         LOG.debug(GrouperUtil.mapToString(debugMap));
       }
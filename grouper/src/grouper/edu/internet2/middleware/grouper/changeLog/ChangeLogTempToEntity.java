@@ -15,6 +15,7 @@
  */
 package edu.internet2.middleware.grouper.changeLog;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -29,8 +30,11 @@ import edu.internet2.middleware.grouper.app.loader.GrouperLoaderConfig;
 import edu.internet2.middleware.grouper.app.loader.db.Hib3GrouperLoaderLog;
 import edu.internet2.middleware.grouper.attr.AttributeDefValueType;
 import edu.internet2.middleware.grouper.attr.assign.AttributeAssignType;
+import edu.internet2.middleware.grouper.cache.GrouperCacheInvalidation;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.hibernate.AuditControl;
 import edu.internet2.middleware.grouper.hibernate.GrouperTransactionType;
+import edu.internet2.middleware.grouper.hibernate.HibUtils;
 import edu.internet2.middleware.grouper.hibernate.HibernateHandler;
 import edu.internet2.middleware.grouper.hibernate.HibernateHandlerBean;
 import edu.internet2.middleware.grouper.hibernate.HibernateSession;
@@ -51,6 +55,7 @@ import edu.internet2.middleware.grouper.pit.PITMember;
 import edu.internet2.middleware.grouper.pit.PITMembership;
 import edu.internet2.middleware.grouper.pit.PITRoleSet;
 import edu.internet2.middleware.grouper.pit.PITStem;
+import edu.internet2.middleware.grouper.subj.CachingResolver;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
 
 /**
@@ -82,152 +87,261 @@ public class ChangeLogTempToEntity {
     final boolean includeNonFlattenedMemberships = GrouperLoaderConfig.retrieveConfig().propertyValueBoolean("changeLog.includeNonFlattenedMemberships", false);
     final boolean includeNonFlattenedPrivileges = GrouperLoaderConfig.retrieveConfig().propertyValueBoolean("changeLog.includeNonFlattenedPrivileges", false);
     
-    int count = 0;
+    //how many temp records to process in one transaction, 1 means one transaction per record
+    int entriesPerTransaction = GrouperLoaderConfig.retrieveConfig().propertyValueInt("changeLog.changeLogTempToChangeLog.entriesPerTransaction", 100);
+    if (entriesPerTransaction < 1) {
+      entriesPerTransaction = 1;
+    }
     
-    //first select the temp records
-    List<ChangeLogEntry> changeLogEntryList = HibernateSession.byHqlStatic().createQuery("from ChangeLogEntryTemp order by createdOnDb")
-      .options(new QueryOptions().paging(1000, 1, false)).list(ChangeLogEntry.class);
+    int count = 0;
     
-    //note: this is not in a transaction, though the inner one is
-    for (ChangeLogEntry changeLogEntry : changeLogEntryList) {
+    while (true) {
       
-      final ChangeLogEntry CHANGE_LOG_ENTRY = changeLogEntry;
+      //first select the temp records
+      List<ChangeLogEntry> changeLogEntryList = HibernateSession.byHqlStatic().createQuery("from ChangeLogEntryTemp order by createdOnDb")
+        .options(new QueryOptions().paging(1000, 1, false)).list(ChangeLogEntry.class);
       
-      HibernateSession.callbackHibernateSession(GrouperTransactionType.READ_WRITE_OR_USE_EXISTING, 
-          AuditControl.WILL_NOT_AUDIT, new HibernateHandler() {
+      if (entriesPerTransaction == 1) {
+        
+        for (ChangeLogEntry changeLogEntry : changeLogEntryList) {
+          convertRecord(changeLogEntry, includeNonFlattenedMemberships, includeNonFlattenedPrivileges);
+        }
+        
+      } else {
+        
+        int numberOfBatches = GrouperUtil.batchNumberOfBatches(changeLogEntryList, entriesPerTransaction);
+        for (int i=0;i<numberOfBatches;i++) {
+          List<ChangeLogEntry> changeLogEntryBatch = GrouperUtil.batchList(changeLogEntryList, entriesPerTransaction, i);
+          convertRecordsBatch(changeLogEntryBatch, includeNonFlattenedMemberships, includeNonFlattenedPrivileges);
+        }
+      }
+      
+      count += changeLogEntryList.size();
+      
+      //let other JVMs know what changed so they can evict from their caches
+      GrouperCacheInvalidation.publish(changeLogEntryList);
+  
+      if (changeLogEntryList.size() > 0 && hib3GrouperLoaderLog != null) {
+        hib3GrouperLoaderLog.addTotalCount(changeLogEntryList.size());
+        hib3GrouperLoaderLog.store();
+      }
+      
+      if (changeLogEntryList.size() < 1000) {
+        break;
+      }
+    }
+    
+    return count;
+  }
 
+  /**
+   * convert one temp record to a regular one in its own transaction
+   * @param changeLogEntry
+   * @param includeNonFlattenedMemberships
+   * @param includeNonFlattenedPrivileges
+   */
+  private static void convertRecord(final ChangeLogEntry changeLogEntry, 
+      final boolean includeNonFlattenedMemberships, final boolean includeNonFlattenedPrivileges) {
+    
+    HibernateSession.callbackHibernateSession(GrouperTransactionType.READ_WRITE_OR_USE_EXISTING, 
+        AuditControl.WILL_NOT_AUDIT, new HibernateHandler() {
+
+          public Object callback(HibernateHandlerBean hibernateHandlerBean)
+              throws GrouperDAOException {
+            
+            processRecord(changeLogEntry, includeNonFlattenedMemberships, includeNonFlattenedPrivileges, null);
+            
+            //delete from the temp
+            //using sql since hibernate would try to otherwise batch this delete (since the table is not versioned I think),
+            //in which case some database (like Oracle) do not return the number of affected rows.
+            int count = HibernateSession.bySqlStatic().executeSql("delete from grouper_change_log_entry_temp where id = ?", 
+                GrouperUtil.toList((Object)changeLogEntry.getId()));
+            if (count != 1) {
+              throw new RuntimeException("Bad count of " + count + " when deleting temp change log entry: " + changeLogEntry.toStringDeep());
+            }
+            
+            return null;
+          }
+      
+    });
+  }
+  
+  /**
+   * convert a batch of temp records to regular ones in one transaction.  The change log entries are
+   * inserted in a jdbc batch, and the temp records are deleted with one statement.  If the batch fails, 
+   * each record is converted in its own transaction
+   * @param changeLogEntryBatch
+   * @param includeNonFlattenedMemberships
+   * @param includeNonFlattenedPrivileges
+   */
+  private static void convertRecordsBatch(final List<ChangeLogEntry> changeLogEntryBatch, 
+      final boolean includeNonFlattenedMemberships, final boolean includeNonFlattenedPrivileges) {
+    
+    try {
+      HibernateSession.callbackHibernateSession(GrouperTransactionType.READ_WRITE_NEW, 
+          AuditControl.WILL_NOT_AUDIT, new HibernateHandler() {
+  
             public Object callback(HibernateHandlerBean hibernateHandlerBean)
                 throws GrouperDAOException {
               
-              if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_ADD)
-                  || CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ENTITY_ADD)) {
-                ChangeLogTempToEntity.processGroupAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_UPDATE)
-                  || CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ENTITY_UPDATE)) {
-                ChangeLogTempToEntity.processGroupUpdate(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_DELETE)
-                  || CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ENTITY_DELETE)) {
-                ChangeLogTempToEntity.processGroupDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.STEM_ADD)) {
-                ChangeLogTempToEntity.processStemAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.STEM_UPDATE)) {
-                ChangeLogTempToEntity.processStemUpdate(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.STEM_DELETE)) {
-                ChangeLogTempToEntity.processStemDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_ADD)) {
-                ChangeLogTempToEntity.processAttributeDefAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_UPDATE)) {
-                ChangeLogTempToEntity.processAttributeDefUpdate(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_DELETE)) {
-                ChangeLogTempToEntity.processAttributeDefDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_FIELD_ADD)) {
-                ChangeLogTempToEntity.processFieldAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_FIELD_UPDATE)) {
-                ChangeLogTempToEntity.processFieldUpdate(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_FIELD_DELETE)) {
-                ChangeLogTempToEntity.processFieldDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_TYPE_ASSIGN)) {
-                ChangeLogTempToEntity.processGroupTypeAssign(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_TYPE_UNASSIGN)) {
-                ChangeLogTempToEntity.processGroupTypeUnassign(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBER_ADD)) {
-                ChangeLogTempToEntity.processMemberAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBER_UPDATE)) {
-                ChangeLogTempToEntity.processMemberUpdate(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBER_DELETE)) {
-                ChangeLogTempToEntity.processMemberDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBERSHIP_ADD)) {
-                ChangeLogTempToEntity.processMembershipAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBERSHIP_DELETE)) {
-                ChangeLogTempToEntity.processMembershipDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.PRIVILEGE_ADD)) {
-                ChangeLogTempToEntity.processPrivilegeAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.PRIVILEGE_DELETE)) {
-                ChangeLogTempToEntity.processPrivilegeDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ADD)) {
-                ChangeLogTempToEntity.processAttributeAssignAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_DELETE)) {
-                ChangeLogTempToEntity.processAttributeAssignDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_ADD)) {
-                ChangeLogTempToEntity.processAttributeDefNameAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_UPDATE)) {
-                ChangeLogTempToEntity.processAttributeDefNameUpdate(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_DELETE)) {
-                ChangeLogTempToEntity.processAttributeDefNameDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_ADD)) {
-                ChangeLogTempToEntity.processAttributeAssignActionAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_UPDATE)) {
-                ChangeLogTempToEntity.processAttributeAssignActionUpdate(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_DELETE)) {
-                ChangeLogTempToEntity.processAttributeAssignActionDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_SET_ADD)) {
-                ChangeLogTempToEntity.processAttributeAssignActionSetAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_SET_DELETE)) {
-                ChangeLogTempToEntity.processAttributeAssignActionSetDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_SET_ADD)) {
-                ChangeLogTempToEntity.processAttributeDefNameSetAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_SET_DELETE)) {
-                ChangeLogTempToEntity.processAttributeDefNameSetDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ROLE_SET_ADD)) {
-                ChangeLogTempToEntity.processRoleSetAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ROLE_SET_DELETE)) {
-                ChangeLogTempToEntity.processRoleSetDelete(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_VALUE_ADD)) {
-                ChangeLogTempToEntity.processAttributeAssignValueAdd(CHANGE_LOG_ENTRY);
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_VALUE_DELETE)) {
-                ChangeLogTempToEntity.processAttributeAssignValueDelete(CHANGE_LOG_ENTRY);
+              List<ChangeLogEntry> changeLogEntriesToSave = new ArrayList<ChangeLogEntry>();
+              List<String> ids = new ArrayList<String>();
+              
+              for (ChangeLogEntry changeLogEntry : changeLogEntryBatch) {
+                processRecord(changeLogEntry, includeNonFlattenedMemberships, includeNonFlattenedPrivileges, changeLogEntriesToSave);
+                ids.add(changeLogEntry.getId());
               }
               
-              if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBERSHIP_ADD) ||
-                  CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBERSHIP_DELETE)) {
-                
-                if (includeNonFlattenedMemberships) {
-                  //insert into the non temp table
-                  CHANGE_LOG_ENTRY.setTempObject(false);
-                  CHANGE_LOG_ENTRY.save();
-                }
-              } else if (CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.PRIVILEGE_ADD) ||
-                  CHANGE_LOG_ENTRY.equalsCategoryAndAction(ChangeLogTypeBuiltin.PRIVILEGE_DELETE)) {
-                
-                if (includeNonFlattenedPrivileges) {
-                  //insert into the non temp table
-                  CHANGE_LOG_ENTRY.setTempObject(false);
-                  CHANGE_LOG_ENTRY.save();
-                }
-              } else {
-                
-                //insert into the non temp table
-                CHANGE_LOG_ENTRY.setTempObject(false);
-                CHANGE_LOG_ENTRY.save();
+              if (changeLogEntriesToSave.size() > 0 
+                  && GrouperConfig.retrieveConfig().propertyValueBoolean("changeLog.enabled", true)) {
+                GrouperDAOFactory.getFactory().getChangeLogEntry().saveBatch(changeLogEntriesToSave, false);
               }
               
-              //delete from the temp
-              //using sql since hibernate would try to otherwise batch this delete (since the table is not versioned I think),
-              //in which case some database (like Oracle) do not return the number of affected rows.
-              int count = HibernateSession.bySqlStatic().executeSql("delete from grouper_change_log_entry_temp where id = ?", 
-                  GrouperUtil.toList((Object)CHANGE_LOG_ENTRY.getId()));
-              if (count != 1) {
-                throw new RuntimeException("Bad count of " + count + " when deleting temp change log entry: " + CHANGE_LOG_ENTRY.toStringDeep());
+              //delete from the temp, see note in convertRecord() about why this is sql
+              int count = HibernateSession.bySqlStatic().executeSql("delete from grouper_change_log_entry_temp where id in (" 
+                  + HibUtils.convertToInClauseForSqlStatic(ids) + ")", GrouperUtil.toListObject(ids.toArray()));
+              if (count != ids.size()) {
+                throw new RuntimeException("Bad count of " + count + " when deleting " + ids.size() + " temp change log entries");
               }
               
               return null;
             }
         
       });
+    } catch (RuntimeException re) {
+      
+      LOG.error("Error converting batch of " + changeLogEntryBatch.size() 
+          + " temp change log entries, will convert them one by one", re);
+      
+      for (ChangeLogEntry changeLogEntry : changeLogEntryBatch) {
+        convertRecord(changeLogEntry, includeNonFlattenedMemberships, includeNonFlattenedPrivileges);
+      }
     }
-    
-    count += changeLogEntryList.size();
+  }
 
-    if (count > 0 && hib3GrouperLoaderLog != null) {
-      hib3GrouperLoaderLog.addTotalCount(count);
-      hib3GrouperLoaderLog.store();
+  /**
+   * process the PIT changes of a temp record and insert it into the change log
+   * @param changeLogEntry
+   * @param includeNonFlattenedMemberships
+   * @param includeNonFlattenedPrivileges
+   * @param changeLogEntriesToSave if not null, add entries to save here instead of saving them
+   */
+  private static void processRecord(ChangeLogEntry changeLogEntry, 
+      boolean includeNonFlattenedMemberships, boolean includeNonFlattenedPrivileges, 
+      List<ChangeLogEntry> changeLogEntriesToSave) {
+    
+    if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_ADD)
+        || changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ENTITY_ADD)) {
+      ChangeLogTempToEntity.processGroupAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_UPDATE)
+        || changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ENTITY_UPDATE)) {
+      ChangeLogTempToEntity.processGroupUpdate(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_DELETE)
+        || changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ENTITY_DELETE)) {
+      ChangeLogTempToEntity.processGroupDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.STEM_ADD)) {
+      ChangeLogTempToEntity.processStemAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.STEM_UPDATE)) {
+      ChangeLogTempToEntity.processStemUpdate(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.STEM_DELETE)) {
+      ChangeLogTempToEntity.processStemDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_ADD)) {
+      ChangeLogTempToEntity.processAttributeDefAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_UPDATE)) {
+      ChangeLogTempToEntity.processAttributeDefUpdate(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_DELETE)) {
+      ChangeLogTempToEntity.processAttributeDefDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_FIELD_ADD)) {
+      ChangeLogTempToEntity.processFieldAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_FIELD_UPDATE)) {
+      ChangeLogTempToEntity.processFieldUpdate(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_FIELD_DELETE)) {
+      ChangeLogTempToEntity.processFieldDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_TYPE_ASSIGN)) {
+      ChangeLogTempToEntity.processGroupTypeAssign(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.GROUP_TYPE_UNASSIGN)) {
+      ChangeLogTempToEntity.processGroupTypeUnassign(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBER_ADD)) {
+      ChangeLogTempToEntity.processMemberAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBER_UPDATE)) {
+      ChangeLogTempToEntity.processMemberUpdate(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBER_DELETE)) {
+      ChangeLogTempToEntity.processMemberDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBERSHIP_ADD)) {
+      ChangeLogTempToEntity.processMembershipAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBERSHIP_DELETE)) {
+      ChangeLogTempToEntity.processMembershipDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.PRIVILEGE_ADD)) {
+      ChangeLogTempToEntity.processPrivilegeAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.PRIVILEGE_DELETE)) {
+      ChangeLogTempToEntity.processPrivilegeDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ADD)) {
+      ChangeLogTempToEntity.processAttributeAssignAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_DELETE)) {
+      ChangeLogTempToEntity.processAttributeAssignDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_ADD)) {
+      ChangeLogTempToEntity.processAttributeDefNameAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_UPDATE)) {
+      ChangeLogTempToEntity.processAttributeDefNameUpdate(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_DELETE)) {
+      ChangeLogTempToEntity.processAttributeDefNameDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_ADD)) {
+      ChangeLogTempToEntity.processAttributeAssignActionAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_UPDATE)) {
+      ChangeLogTempToEntity.processAttributeAssignActionUpdate(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_DELETE)) {
+      ChangeLogTempToEntity.processAttributeAssignActionDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_SET_ADD)) {
+      ChangeLogTempToEntity.processAttributeAssignActionSetAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_ACTION_SET_DELETE)) {
+      ChangeLogTempToEntity.processAttributeAssignActionSetDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_SET_ADD)) {
+      ChangeLogTempToEntity.processAttributeDefNameSetAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_DEF_NAME_SET_DELETE)) {
+      ChangeLogTempToEntity.processAttributeDefNameSetDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ROLE_SET_ADD)) {
+      ChangeLogTempToEntity.processRoleSetAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ROLE_SET_DELETE)) {
+      ChangeLogTempToEntity.processRoleSetDelete(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_VALUE_ADD)) {
+      ChangeLogTempToEntity.processAttributeAssignValueAdd(changeLogEntry);
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.ATTRIBUTE_ASSIGN_VALUE_DELETE)) {
+      ChangeLogTempToEntity.processAttributeAssignValueDelete(changeLogEntry);
     }
     
-    if (changeLogEntryList.size() == 1000) {
-      count += convertRecords(hib3GrouperLoaderLog);
+    if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBERSHIP_ADD) ||
+        changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.MEMBERSHIP_DELETE)) {
+      
+      if (includeNonFlattenedMemberships) {
+        //insert into the non temp table
+        saveChangeLogEntry(changeLogEntry, changeLogEntriesToSave);
+      }
+    } else if (changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.PRIVILEGE_ADD) ||
+        changeLogEntry.equalsCategoryAndAction(ChangeLogTypeBuiltin.PRIVILEGE_DELETE)) {
+      
+      if (includeNonFlattenedPrivileges) {
+        //insert into the non temp table
+        saveChangeLogEntry(changeLogEntry, changeLogEntriesToSave);
+      }
+    } else {
+      
+      //insert into the non temp table
+      saveChangeLogEntry(changeLogEntry, changeLogEntriesToSave);
+    }
+  }
+  
+  /**
+   * insert the entry into the non temp table, or queue it up to be inserted in a batch
+   * @param changeLogEntry
+   * @param changeLogEntriesToSave if not null, add the entry here instead of saving it
+   */
+  private static void saveChangeLogEntry(ChangeLogEntry changeLogEntry, List<ChangeLogEntry> changeLogEntriesToSave) {
+    changeLogEntry.setTempObject(false);
+    if (changeLogEntriesToSave == null) {
+      changeLogEntry.save();
+    } else {
+      changeLogEntriesToSave.add(changeLogEntry);
     }
-    
-    return count;
   }
   
   /**
@@ -705,6 +819,9 @@ public class ChangeLogTempToEntity {
       subjectIdentifier0 = null;
     }
     
+    //the subject exists now, dont remember that it was not found
+    CachingResolver.evictFromNotFoundCache(GrouperUtil.toSet(subjectId, subjectIdentifier0));
+    
     Long time = changeLogEntry.getCreatedOnDb();
 
     PITMember existing = GrouperDAOFactory.getFactory().getPITMember().findBySourceIdActive(id, false);
@@ -739,6 +856,12 @@ public class ChangeLogTempToEntity {
     
     String contextId = GrouperUtil.isEmpty(changeLogEntry.getContextId()) ? null : changeLogEntry.getContextId();
 
+    //the subject might be found now, dont remember that it was not found
+    CachingResolver.evictFromNotFoundCache(GrouperUtil.toSet(
+        changeLogEntry.retrieveValueForLabel(ChangeLogLabels.MEMBER_UPDATE.subjectId),
+        changeLogEntry.retrieveValueForLabel(ChangeLogLabels.MEMBER_UPDATE.subjectIdentifier0),
+        changeLogEntry.retrieveValueForLabel(ChangeLogLabels.MEMBER_UPDATE.propertyNewValue)));
+
     if (changeLogEntry.retrieveValueForLabel(ChangeLogLabels.MEMBER_UPDATE.propertyChanged).equals("subjectId") ||
         changeLogEntry.retrieveValueForLabel(ChangeLogLabels.MEMBER_UPDATE.propertyChanged).equals("subjectSourceId") ||
         changeLogEntry.retrieveValueForLabel(ChangeLogLabels.MEMBER_UPDATE.propertyChanged).equals("subjectTypeId") ||
@@ -10698,6 +10698,11 @@ public enum GrouperDdl implements DdlVersionable {
       GrouperDdlUtils.ddlutilsFindOrCreateIndex(database, messageTable.getName(), 
           "grpmessage_from_mem_id_idx", false, GrouperMessageHibernate.COLUMN_FROM_MEMBER_ID);
       
+      //receiving messages selects by queue and state in order of sent time
+      GrouperDdlUtils.ddlutilsFindOrCreateIndex(database, messageTable.getName(), 
+          "grpmessage_queue_st_sent_idx", false, GrouperMessageHibernate.COLUMN_QUEUE_NAME, 
+          GrouperMessageHibernate.COLUMN_STATE, GrouperMessageHibernate.COLUMN_SENT_TIME_MICROS);
+      
       GrouperDdlUtils.ddlutilsFindOrCreateIndex(database, messageTable.getName(), 
           "grpmessage_attempt_exp_idx", false, GrouperMessageHibernate.COLUMN_ATTEMPT_TIME_EXPIRES_MILLIS);
       
@@ -59,6 +59,7 @@ import edu.internet2.middleware.grouper.internal.util.GrouperUuid;
 import edu.internet2.middleware.grouper.misc.GrouperHasContext;
 import edu.internet2.middleware.grouper.misc.GrouperSessionHandler;
 import edu.internet2.middleware.grouper.privs.PrivilegeHelper;
+import edu.internet2.middleware.grouper.subj.CachingResolver;
 import edu.internet2.middleware.grouper.util.GrouperEmail;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
 import edu.internet2.middleware.subject.Subject;
@@ -681,6 +682,27 @@ public class ExternalSubject extends GrouperAPI implements GrouperHasContext,
   }
 
 
+  /**
+   * @see GrouperAPI#onPostSave(HibernateSession)
+   */
+  @Override
+  public void onPostSave(HibernateSession hibernateSession) {
+    super.onPostSave(hibernateSession);
+    
+    //this subject might have just been looked up and not found, e.g. by the web service before adding it
+    CachingResolver.evictFromNotFoundCache(GrouperUtil.toSet(this.getUuid(), this.getIdentifier()));
+  }
+
+  /**
+   * @see GrouperAPI#onPostUpdate(HibernateSession)
+   */
+  @Override
+  public void onPostUpdate(HibernateSession hibernateSession) {
+    super.onPostUpdate(hibernateSession);
+    
+    CachingResolver.evictFromNotFoundCache(GrouperUtil.toSet(this.getUuid(), this.getIdentifier()));
+  }
+
   /**
    * @see GrouperAPI#onPreUpdate(HibernateSession)
    */
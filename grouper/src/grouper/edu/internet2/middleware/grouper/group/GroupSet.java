@@ -356,6 +356,21 @@ public class GroupSet extends GrouperAPI implements GrouperHasContext, Hib3Group
   /** ownerAttrDefId except nulls are replaced with a string so we can use this in a unique constraint */
   private String ownerAttrDefIdNull = GroupSet.nullColumnValue;
 
+  /** 
+   * group sets where the owner group is a member, if the caller already looked them up, 
+   * so a batch of immediate group sets with the same owner only queries them once
+   */
+  private Set<GroupSet> ownerGroupIsMemberGroupSets = null;
+
+  /**
+   * group sets where the owner group is a member, looked up by the caller for a batch
+   * of immediate group sets with the same owner.  Not persisted.
+   * @param ownerGroupIsMemberGroupSets1
+   */
+  public void internal_setOwnerGroupIsMemberGroupSets(Set<GroupSet> ownerGroupIsMemberGroupSets1) {
+    this.ownerGroupIsMemberGroupSets = ownerGroupIsMemberGroupSets1;
+  }
+
   /**
    * 
    * @see edu.internet2.middleware.grouper.GrouperAPI#onPreSave(edu.internet2.middleware.grouper.hibernate.HibernateSession)
@@ -397,7 +412,10 @@ public class GroupSet extends GrouperAPI implements GrouperHasContext, Hib3Group
   
       // If we are working on a group, where is it a member and field is the default list
       if (this.getOwnerGroupId() != null && this.getFieldId().equals(Group.getDefaultList().getUuid())) {
-        Set<GroupSet> groupSetIsMember = GrouperDAOFactory.getFactory().getGroupSet().findAllByMemberGroup(this.getOwnerGroupId());
+        Set<GroupSet> groupSetIsMember = this.ownerGroupIsMemberGroupSets;
+        if (groupSetIsMember == null) {
+          groupSetIsMember = GrouperDAOFactory.getFactory().getGroupSet().findAllByMemberGroup(this.getOwnerGroupId());
+        }
   
         // Add member and members of member to where owner is member
         results.addAll(addHasMembersToWhereGroupIsMember(this.getMemberGroupId(), groupSetIsMember, groupSetHasMembers));
@@ -299,11 +299,23 @@ public class ByHql extends HibernateDelegate implements HqlQuery {
    * @throws GrouperDAOException 
    */
   public void executeUpdate() throws GrouperDAOException {
+    this.executeUpdateInt();
+  }
+  
+  /**
+   * <pre>
+   * call hql executeUpdate, e.g. delete or update statement, and return the number of rows
+   * 
+   * </pre>
+   * @return the number of rows updated or deleted
+   * @throws GrouperDAOException 
+   */
+  public int executeUpdateInt() throws GrouperDAOException {
     GrouperContext.incrementQueryCount();
     HibernateSession hibernateSession = this.getHibernateSession();
     Session session  = hibernateSession.getSession();
     Query query = ByHql.this.attachQueryInfo(session);
-    query.executeUpdate();
+    return query.executeUpdate();
   }
   
   /** query count exec queries, used for testing */
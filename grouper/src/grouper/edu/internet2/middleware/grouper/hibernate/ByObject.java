@@ -255,6 +255,21 @@ public class ByObject extends HibernateDelegate {
    * @throws GrouperDAOException
    */
   public void saveBatch(final Collection<?> collection) throws GrouperDAOException {
+    this.saveBatch(collection, true);
+  }
+
+  /**
+   * <pre>
+   * call hibernate method "save" on a collection of objects in batch.  All the pre save
+   * hooks run, then the objects are inserted with one flush, then the post save hooks run
+   * 
+   * </pre>
+   * @param collection of objects to save
+   * @param clearSession true to clear the hibernate session after the flush.  Dont clear
+   * if the caller (or the post save hooks) still work with objects in the session
+   * @throws GrouperDAOException
+   */
+  public void saveBatch(final Collection<?> collection, boolean clearSession) throws GrouperDAOException {
     try {
       HibernateSession hibernateSession = this.getHibernateSession();
       Session session = hibernateSession.getSession();
@@ -276,7 +291,9 @@ public class ByObject extends HibernateDelegate {
       }
 
       session.flush();
-      session.clear();
+      if (clearSession) {
+        session.clear();
+      }
       
       for (Object object : collection) {
         if (!this.isIgnoreHooks() && object instanceof HibGrouperLifecycle) {
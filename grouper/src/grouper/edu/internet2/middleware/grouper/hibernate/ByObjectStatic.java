@@ -527,6 +527,20 @@ public class ByObjectStatic extends ByQueryBase {
    * @throws GrouperDAOException
    */
   public void saveBatch(final Collection<?> collection) throws GrouperDAOException {
+    this.saveBatch(collection, true);
+  }
+  
+  /**
+   * <pre>
+   * call hibernate method "save" on a collection of objects in batch
+   * 
+   * </pre>
+   * @param collection of objects
+   * @param clearSession true to clear the hibernate session after the flush.  Dont clear
+   * if the caller (or the post save hooks) still work with objects in the session
+   * @throws GrouperDAOException
+   */
+  public void saveBatch(final Collection<?> collection, final boolean clearSession) throws GrouperDAOException {
     try {
       GrouperTransactionType grouperTransactionTypeToUse = 
         (GrouperTransactionType)ObjectUtils.defaultIfNull(this.grouperTransactionType, 
@@ -545,7 +559,7 @@ public class ByObjectStatic extends ByQueryBase {
               
               ByObject byObject = hibernateSession.byObject();
               ByObjectStatic.this.copyFieldsTo(byObject);
-              byObject.saveBatch(collection);
+              byObject.saveBatch(collection, clearSession);
               return null;
             }
         
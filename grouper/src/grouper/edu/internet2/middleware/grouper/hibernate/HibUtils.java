@@ -29,8 +29,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -124,13 +127,30 @@ public class HibUtils {
     if (StringUtils.isBlank(cacheRegion) && (queryOptions == null || StringUtils.isBlank(queryOptions.getSecondLevelCacheRegion()))) {
       return null;
     }
+    String result = null;
     //if no options, but has cacheable
     if (queryOptions == null || StringUtils.isBlank(queryOptions.getSecondLevelCacheRegion())) {
-      return cacheRegion;
+      result = cacheRegion;
+    } else {
+      //this one trumps all if not null
+      result = queryOptions.getSecondLevelCacheRegion();
     }
-    //this one trumps all if not null
-    return queryOptions.getSecondLevelCacheRegion();
-    
+    if (!queryCacheRegions.containsKey(result)) {
+      queryCacheRegions.put(result, Boolean.TRUE);
+    }
+    return result;
+  }
+
+  /** query cache regions which queries used so far in this JVM, the value is not used */
+  private static final Map<String, Boolean> queryCacheRegions = new ConcurrentHashMap<String, Boolean>();
+
+  /**
+   * query cache regions which queries used so far in this JVM, so they can be evicted by name
+   * (e.g. the regions of a DAO are the DAO class name, or start with the DAO class name and a dot)
+   * @return the region names
+   */
+  public static Set<String> queryCacheRegions() {
+    return new LinkedHashSet<String>(queryCacheRegions.keySet());
   }
 
   /**
@@ -118,6 +118,7 @@ public class GrouperAttributeAssignValueRulesConfigHook extends AttributeAssignV
             for (AttributeAssign attributeAssign : GrouperUtil.nonNull(attributeAssignDeletes)) {
               if (StringUtils.equals(ruleAttributeDefName.getId(), attributeAssign.getAttributeDefNameId())) {
                 //this means we are deleting a rule type, so dont worry about validating stuff
+                RuleEngine.ruleChanged(attributeAssign.getId());
                 return null;
               }
             }
@@ -147,8 +148,8 @@ public class GrouperAttributeAssignValueRulesConfigHook extends AttributeAssignV
               return null;
             }
             
-            //we want the rules to refresh since something changed
-            RuleEngine.clearRuleEngineCache();
+            //we want the rule to refresh since something changed
+            RuleEngine.ruleChanged(attributeAssign.getOwnerAttributeAssignId());
                   
             //this is a rule attribute, lets validate
             RuleDefinition ruleDefinition = new RuleDefinition(attributeAssign.getOwnerAttributeAssignId());
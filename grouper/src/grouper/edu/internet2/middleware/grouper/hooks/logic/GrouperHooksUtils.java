@@ -479,7 +479,7 @@ public class GrouperHooksUtils {
           executeHook(hookMethod, hook, hooksBeanThread, hooksContextThread, vetoType, false);
 
         }
-      });
+      }, hook.getClass().getName());
       return;
     }
     
@@ -20,11 +20,18 @@
 package edu.internet2.middleware.grouper.hooks.logic;
 
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 
 import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.exception.SessionException;
 import edu.internet2.middleware.grouper.hooks.beans.GrouperContextType;
 import edu.internet2.middleware.grouper.hooks.beans.GrouperContextTypeBuiltIn;
@@ -35,13 +42,118 @@ import edu.internet2.middleware.subject.Subject;
 
 
 /**
- * class to facilitate asynchronous hooks
+ * class to facilitate asynchronous hooks.  the hooks run in a bounded pool of threads
+ * with a bounded queue, see hooks.asynchronous.* in grouper.properties
  */
 public class HookAsynchronous {
 
   /** logger */
   private static final Log LOG = GrouperUtil.getLog(HookAsynchronous.class);
   
+  /** threads which run the asynchronous hooks, lazy loaded */
+  private static ThreadPoolExecutor executorService = null;
+  
+  /** seconds to wait for queued hooks on shutdown */
+  private static int shutdownWaitSeconds = 30;
+  
+  /** if the JVM shutdown hook is registered */
+  private static boolean shutdownHookRegistered = false;
+  
+  /** true in a thread which is running an asynchronous hook */
+  private static ThreadLocal<Boolean> hookThread = new ThreadLocal<Boolean>();
+  
+  /**
+   * pool of threads which run the asynchronous hooks
+   * @return the executor service
+   */
+  private static synchronized ThreadPoolExecutor executorService() {
+    if (executorService == null) {
+      int threadPoolSize = GrouperConfig.retrieveConfig().propertyValueInt("hooks.asynchronous.threadPoolSize", 20);
+      int queueSize = GrouperConfig.retrieveConfig().propertyValueInt("hooks.asynchronous.queueSize", 10000);
+      String rejectPolicy = GrouperConfig.retrieveConfig().propertyValueString("hooks.asynchronous.rejectPolicy", "block");
+      shutdownWaitSeconds = GrouperConfig.retrieveConfig().propertyValueInt("hooks.asynchronous.shutdownWaitSeconds", 30);
+      int blockTimeoutSeconds = GrouperConfig.retrieveConfig().propertyValueInt("hooks.asynchronous.blockTimeoutSeconds", 60);
+      
+      boolean callerRuns = StringUtils.equalsIgnoreCase("callerRuns", rejectPolicy);
+      if (!callerRuns && !StringUtils.equalsIgnoreCase("block", rejectPolicy)) {
+        throw new RuntimeException("Invalid hooks.asynchronous.rejectPolicy: '" + rejectPolicy + "', expecting block or callerRuns");
+      }
+      
+      executorService = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 60, TimeUnit.SECONDS, 
+          new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+        
+        /** make threads which dont keep the JVM up, the shutdown hook waits for the queue */
+        private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        
+        public Thread newThread(Runnable runnable) {
+          Thread thread = this.threadFactory.newThread(runnable);
+          thread.setDaemon(true);
+          return thread;
+        }
+      }, new HookRejectedExecutionHandler(callerRuns, blockTimeoutSeconds));
+      
+      //dont keep idle threads around
+      executorService.allowCoreThreadTimeOut(true);
+      
+      if (!shutdownHookRegistered) {
+        shutdownHookRegistered = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+          public void run() {
+            shutdown();
+          }
+        }));
+      }
+    }
+    return executorService;
+  }
+  
+  /**
+   * stop taking asynchronous hooks, and wait for the ones in the queue to finish (up to 
+   * hooks.asynchronous.shutdownWaitSeconds).  this is called when the JVM shuts down.  if hooks are 
+   * submitted after this, a new pool is started
+   * @return true if all hooks finished, false if not
+   */
+  public static boolean shutdown() {
+    ThreadPoolExecutor theExecutorService = null;
+    synchronized (HookAsynchronous.class) {
+      theExecutorService = executorService;
+      executorService = null;
+    }
+    if (theExecutorService == null) {
+      return true;
+    }
+    theExecutorService.shutdown();
+    try {
+      if (theExecutorService.awaitTermination(shutdownWaitSeconds, TimeUnit.SECONDS)) {
+        return true;
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+    LOG.error("Asynchronous hooks did not finish in " + shutdownWaitSeconds + " seconds, " 
+        + theExecutorService.getQueue().size() + " hooks did not start");
+    return false;
+  }
+  
+  /**
+   * number of asynchronous hooks waiting for a thread
+   * @return the queue depth
+   */
+  public static int queueDepth() {
+    ThreadPoolExecutor theExecutorService = executorService;
+    return theExecutorService == null ? 0 : theExecutorService.getQueue().size();
+  }
+  
+  /**
+   * number of asynchronous hooks running
+   * @return the number
+   */
+  public static int activeCount() {
+    ThreadPoolExecutor theExecutorService = executorService;
+    return theExecutorService == null ? 0 : theExecutorService.getActiveCount();
+  }
+  
   /**
    * @param hooksBean
    * @param hookId 
@@ -52,13 +164,27 @@ public class HookAsynchronous {
   }
 
   /**
-   * use this to make an asynchronous hook implementation
+   * use this to make an asynchronous hook implementation.  the metrics are kept for the class
+   * of the handler (or the class it is an inner class of)
    * @param hooksContext
    * @param hooksBean
    * @param hookAsynchronousHandler 
    */
   public static void callbackAsynchronous(HooksContext hooksContext, final HooksBean hooksBean, 
       final HookAsynchronousHandler hookAsynchronousHandler) {
+    callbackAsynchronous(hooksContext, hooksBean, hookAsynchronousHandler, 
+        StringUtils.substringBefore(hookAsynchronousHandler.getClass().getName(), "$"));
+  }
+  
+  /**
+   * use this to make an asynchronous hook implementation
+   * @param hooksContext
+   * @param hooksBean
+   * @param hookAsynchronousHandler 
+   * @param hookClassName class of the hook for the metrics
+   */
+  public static void callbackAsynchronous(HooksContext hooksContext, final HooksBean hooksBean, 
+      final HookAsynchronousHandler hookAsynchronousHandler, String hookClassName) {
     
     final Map<String, Object> threadSafeAttributes = hooksContext._internal_threadSafeAttributes(); 
     
@@ -71,77 +197,205 @@ public class HookAsynchronous {
 
     final GrouperContextType grouperContextType = GrouperContextTypeBuiltIn._internal_getThreadLocalGrouperContextType();
     
-    Thread thread = new Thread(new Runnable() {
+    HookRunnable hookRunnable = new HookRunnable(threadSafeAttributes, grouperSessionSubject, hookId, 
+        hooksBeanCloned, grouperContextType, hookAsynchronousHandler, 
+        HookAsynchronousMetrics.retrieveMetrics(hookClassName));
+    
+    hookRunnable.metrics.recordSubmitted();
+    executorService().execute(hookRunnable);
+  }
+  
+  /**
+   * if the current thread is running an asynchronous hook
+   * @return true if so
+   */
+  static boolean isHookThread() {
+    return Boolean.TRUE.equals(hookThread.get());
+  }
+  
+  /**
+   * when the queue is full, either wait for room in the queue, or run the hook in a new thread
+   * and wait for it (so the caller is slowed down without changing the threadlocals of the caller).
+   * if waiting for room in the queue times out, or if the caller is itself an asynchronous hook 
+   * (which would wait for the threads it is using), then the hook runs in a new thread and the caller waits
+   */
+  private static class HookRejectedExecutionHandler implements RejectedExecutionHandler {
+
+    /** true to run in the caller, false to block */
+    private boolean callerRuns;
+    
+    /** seconds to wait for room in the queue when blocking */
+    private int blockTimeoutSeconds;
+    
+    /**
+     * @param theCallerRuns
+     * @param theBlockTimeoutSeconds
+     */
+    private HookRejectedExecutionHandler(boolean theCallerRuns, int theBlockTimeoutSeconds) {
+      this.callerRuns = theCallerRuns;
+      this.blockTimeoutSeconds = theBlockTimeoutSeconds;
+    }
+
+    /**
+     * @see java.util.concurrent.RejectedExecutionHandler#rejectedExecution(java.lang.Runnable, java.util.concurrent.ThreadPoolExecutor)
+     */
+    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor threadPoolExecutor) {
+      
+      ((HookRunnable)runnable).metrics.recordRejected();
+      
+      if (!this.callerRuns && !threadPoolExecutor.isShutdown() && !isHookThread()) {
+        try {
+          if (threadPoolExecutor.getQueue().offer(runnable, this.blockTimeoutSeconds, TimeUnit.SECONDS)) {
+            //if it was shut down while waiting, the threads might be gone, so take it back and run it below
+            if (!threadPoolExecutor.isShutdown() || !threadPoolExecutor.remove(runnable)) {
+              return;
+            }
+          } else {
+            LOG.warn("Asynchronous hook queue was full for " + this.blockTimeoutSeconds 
+                + " seconds, running the hook and waiting for it");
+          }
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          //run it below so it isnt lost
+        }
+      }
+      
+      Thread thread = new Thread(runnable);
+      thread.start();
+      try {
+        thread.join();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+  
+  /**
+   * runs one asynchronous hook in a pool thread
+   */
+  private static class HookRunnable implements Runnable {
+
+    /** thread safe attributes of the hooks context */
+    private Map<String, Object> threadSafeAttributes;
+    
+    /** subject of the grouper session of the caller */
+    private Subject grouperSessionSubject;
+    
+    /** hook id */
+    private String hookId;
+    
+    /** cloned hooks bean */
+    private HooksBean hooksBeanCloned;
+    
+    /** threadlocal context type of the caller */
+    private GrouperContextType grouperContextType;
+    
+    /** handler to call */
+    private HookAsynchronousHandler hookAsynchronousHandler;
+    
+    /** metrics of the hook class */
+    private HookAsynchronousMetrics metrics;
+    
+    /** when this was submitted */
+    private long submittedMillis = System.currentTimeMillis();
+    
+    /**
+     * @param theThreadSafeAttributes
+     * @param theGrouperSessionSubject
+     * @param theHookId
+     * @param theHooksBeanCloned
+     * @param theGrouperContextType
+     * @param theHookAsynchronousHandler
+     * @param theMetrics
+     */
+    private HookRunnable(Map<String, Object> theThreadSafeAttributes, Subject theGrouperSessionSubject,
+        String theHookId, HooksBean theHooksBeanCloned, GrouperContextType theGrouperContextType,
+        HookAsynchronousHandler theHookAsynchronousHandler, HookAsynchronousMetrics theMetrics) {
+      this.threadSafeAttributes = theThreadSafeAttributes;
+      this.grouperSessionSubject = theGrouperSessionSubject;
+      this.hookId = theHookId;
+      this.hooksBeanCloned = theHooksBeanCloned;
+      this.grouperContextType = theGrouperContextType;
+      this.hookAsynchronousHandler = theHookAsynchronousHandler;
+      this.metrics = theMetrics;
+    }
 
-      //run in new thread
-      public void run() {
+    //run in pool thread
+    public void run() {
+      
+      HooksContext threadHooksContext = null;
+      
+      String debugLogString = null;
+      long start = System.currentTimeMillis();
+      this.metrics.recordStarted(start - this.submittedMillis);
+      boolean error = false;
+      hookThread.set(Boolean.TRUE);
+      
+      if (LOG.isDebugEnabled()) {
+        debugLogString = hookLogString(this.hookId, this.hooksBeanCloned);
+        LOG.debug("START: (async) " + debugLogString);
+      }
+      
+
+      try {
+        
+        if (this.grouperContextType != null) {
+          //if there is a threadlocal, set that
+          GrouperContextTypeBuiltIn.setThreadLocalContext(this.grouperContextType);
         
+        }
         
-        HooksContext threadHooksContext = null;
+        threadHooksContext = new HooksContext(true, this.threadSafeAttributes, this.grouperSessionSubject, this.hookId);
+      
+        this.hookAsynchronousHandler.callback(threadHooksContext, this.hooksBeanCloned);
         
-        String debugLogString = null;
-        long start = System.currentTimeMillis();
         if (LOG.isDebugEnabled()) {
-          debugLogString = hookLogString(hookId, hooksBeanCloned);
-          LOG.debug("START: (async) " + debugLogString);
+          LOG.debug("END (async) (normal): " + debugLogString + " (" + (System.currentTimeMillis() - start) + "ms)");
         }
-        
 
-        try {
-          
-          if (grouperContextType != null) {
-            //if there is a threadlocal, set that
-            GrouperContextTypeBuiltIn.setDefaultContext(grouperContextType);
-          
-          }
-          
-          threadHooksContext = new HooksContext(true, threadSafeAttributes, grouperSessionSubject, hookId);
+      } catch (HookVeto hv) {
+        error = true;
+        LOG.error("Cant veto an asynchronous hook! " + hv.getMessage(), hv);
         
-          hookAsynchronousHandler.callback(threadHooksContext, hooksBeanCloned);
-          
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("END (async) (normal): " + debugLogString + " (" + (System.currentTimeMillis() - start) + "ms)");
-          }
-
-        } catch (HookVeto hv) {
-          LOG.error("Cant veto an asynchronous hook! " + hv.getMessage(), hv);
-          
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("END (async) (veto): " + debugLogString + " (" + (System.currentTimeMillis() - start) + "ms)" 
-                + ", veto key: " + hv.getReasonKey() + ", veto message: " + StringUtils.abbreviate(hv.getReason(), 50) );
-          }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("END (async) (veto): " + debugLogString + " (" + (System.currentTimeMillis() - start) + "ms)" 
+              + ", veto key: " + hv.getReasonKey() + ", veto message: " + StringUtils.abbreviate(hv.getReason(), 50) );
+        }
 
-        } catch (Exception e) {
-          LOG.error("Problem in asynchronous hook! " + e.getMessage(), e);
+      } catch (Exception e) {
+        error = true;
+        LOG.error("Problem in asynchronous hook! " + e.getMessage(), e);
 
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("END (async) (exception): " + debugLogString + " (" + (System.currentTimeMillis() - start) + "ms)" + ", exception: " + e.getMessage(), e);
-          }
-        } finally {
-          //stop session if started and still seems like the same one
-          if (threadHooksContext != null && threadHooksContext._internal_isAsynchronousGrouperSessionStarted()) {
-            GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-            if (grouperSession != null) {
-              Subject subject = grouperSession.getSubject();
-              if (subject != null) {
-                if (StringUtils.equals(subject.getId(), threadHooksContext._internal_getAsynchronousGrouperSessionSubject().getId())) {
-                  try {
-                    grouperSession.stop();
-                  } catch (SessionException se) {
-                    LOG.error("Cant stop session: " + subject.getId(), se);
-                  }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("END (async) (exception): " + debugLogString + " (" + (System.currentTimeMillis() - start) + "ms)" + ", exception: " + e.getMessage(), e);
+        }
+      } finally {
+        //stop session if started and still seems like the same one
+        if (threadHooksContext != null && threadHooksContext._internal_isAsynchronousGrouperSessionStarted()) {
+          GrouperSession grouperSession = GrouperSession.staticGrouperSession(false);
+          if (grouperSession != null) {
+            Subject subject = grouperSession.getSubject();
+            if (subject != null) {
+              if (StringUtils.equals(subject.getId(), threadHooksContext._internal_getAsynchronousGrouperSessionSubject().getId())) {
+                try {
+                  grouperSession.stop();
+                } catch (SessionException se) {
+                  LOG.error("Cant stop session: " + subject.getId(), se);
                 }
               }
             }
           }
         }
         
+        //threads are reused, dont leave anything for the next hook
+        GrouperContextTypeBuiltIn.setThreadLocalContext(null);
+        GrouperSession.clearGrouperSession();
+        GrouperSession.clearGrouperSessions();
+        HooksContext.clearThreadLocal();
+        hookThread.remove();
         
+        this.metrics.recordCompleted(System.currentTimeMillis() - start, error);
       }
-      
-    });
-    
-    thread.start();
+    }
   }
-  
 }
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.hooks.logic;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * <pre>
+ * counts of asynchronous hooks by hook class: how many are waiting in the queue, how many
+ * could not be queued (the reject policy applied), and how long they waited and ran, e.g.
+ *
+ * HookAsynchronousMetrics.retrieveMetrics().values()
+ *
+ * edu.school.MembershipHooks: queued: 0, submitted: 1234, rejected: 0, errors: 1, avg wait millis: 2, avg run millis: 45, max run millis: 900
+ * </pre>
+ */
+public class HookAsynchronousMetrics {
+
+  /** metrics by hook class name */
+  private static Map<String, HookAsynchronousMetrics> metricsMap = new ConcurrentHashMap<String, HookAsynchronousMetrics>();
+
+  /** hook class name */
+  private String hookClassName;
+
+  /** number of hooks submitted and not started yet */
+  private AtomicLong queued = new AtomicLong();
+
+  /** total number of hooks submitted */
+  private AtomicLong submitted = new AtomicLong();
+
+  /** number of hooks which did not fit in the queue */
+  private AtomicLong rejected = new AtomicLong();
+
+  /** number of hooks which finished */
+  private AtomicLong completed = new AtomicLong();
+
+  /** number of hooks which threw an exception */
+  private AtomicLong errors = new AtomicLong();
+
+  /** total millis the hooks waited to start */
+  private AtomicLong totalWaitMillis = new AtomicLong();
+
+  /** total millis the hooks ran */
+  private AtomicLong totalRunMillis = new AtomicLong();
+
+  /** max millis a hook ran */
+  private AtomicLong maxRunMillis = new AtomicLong();
+
+  /**
+   * @param theHookClassName
+   */
+  private HookAsynchronousMetrics(String theHookClassName) {
+    this.hookClassName = theHookClassName;
+  }
+
+  /**
+   * get or create the metrics of a hook class
+   * @param hookClassName
+   * @return the metrics
+   */
+  public static HookAsynchronousMetrics retrieveMetrics(String hookClassName) {
+    HookAsynchronousMetrics hookAsynchronousMetrics = metricsMap.get(hookClassName);
+    if (hookAsynchronousMetrics == null) {
+      synchronized (HookAsynchronousMetrics.class) {
+        hookAsynchronousMetrics = metricsMap.get(hookClassName);
+        if (hookAsynchronousMetrics == null) {
+          hookAsynchronousMetrics = new HookAsynchronousMetrics(hookClassName);
+          metricsMap.put(hookClassName, hookAsynchronousMetrics);
+        }
+      }
+    }
+    return hookAsynchronousMetrics;
+  }
+
+  /**
+   * metrics of all hook classes which have been called, by hook class name
+   * @return the metrics
+   */
+  public static Map<String, HookAsynchronousMetrics> retrieveMetrics() {
+    return new TreeMap<String, HookAsynchronousMetrics>(metricsMap);
+  }
+
+  /**
+   * clear all metrics, e.g. for testing
+   */
+  public static void clearMetrics() {
+    metricsMap.clear();
+  }
+
+  /**
+   * record that a hook was submitted to the pool
+   */
+  void recordSubmitted() {
+    this.submitted.incrementAndGet();
+    this.queued.incrementAndGet();
+  }
+
+  /**
+   * record that a hook did not fit in the queue
+   */
+  void recordRejected() {
+    this.rejected.incrementAndGet();
+  }
+
+  /**
+   * record that a hook started
+   * @param waitMillis how long it waited to start
+   */
+  void recordStarted(long waitMillis) {
+    this.queued.decrementAndGet();
+    this.totalWaitMillis.addAndGet(waitMillis);
+  }
+
+  /**
+   * record that a hook finished
+   * @param runMillis how long it ran
+   * @param error true if it threw an exception
+   */
+  void recordCompleted(long runMillis, boolean error) {
+    this.completed.incrementAndGet();
+    if (error) {
+      this.errors.incrementAndGet();
+    }
+    this.totalRunMillis.addAndGet(runMillis);
+    long currentMax = this.maxRunMillis.get();
+    while (runMillis > currentMax && !this.maxRunMillis.compareAndSet(currentMax, runMillis)) {
+      currentMax = this.maxRunMillis.get();
+    }
+  }
+
+  /**
+   * hook class name
+   * @return the hook class name
+   */
+  public String getHookClassName() {
+    return this.hookClassName;
+  }
+
+  /**
+   * number of hooks submitted and not started yet
+   * @return the number
+   */
+  public long getQueued() {
+    return this.queued.get();
+  }
+
+  /**
+   * total number of hooks submitted
+   * @return the number
+   */
+  public long getSubmitted() {
+    return this.submitted.get();
+  }
+
+  /**
+   * number of hooks which did not fit in the queue
+   * @return the number
+   */
+  public long getRejected() {
+    return this.rejected.get();
+  }
+
+  /**
+   * number of hooks which finished
+   * @return the number
+   */
+  public long getCompleted() {
+    return this.completed.get();
+  }
+
+  /**
+   * number of hooks which threw an exception
+   * @return the number
+   */
+  public long getErrors() {
+    return this.errors.get();
+  }
+
+  /**
+   * average millis the hooks waited to start
+   * @return the average
+   */
+  public long getAverageWaitMillis() {
+    long started = this.submitted.get() - this.queued.get();
+    return started <= 0 ? 0 : this.totalWaitMillis.get() / started;
+  }
+
+  /**
+   * average millis the hooks ran
+   * @return the average
+   */
+  public long getAverageRunMillis() {
+    long theCompleted = this.completed.get();
+    return theCompleted == 0 ? 0 : this.totalRunMillis.get() / theCompleted;
+  }
+
+  /**
+   * max millis a hook ran
+   * @return the max
+   */
+  public long getMaxRunMillis() {
+    return this.maxRunMillis.get();
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return this.hookClassName + ": queued: " + this.getQueued() + ", submitted: " + this.getSubmitted()
+      + ", rejected: " + this.getRejected() + ", errors: " + this.getErrors()
+      + ", avg wait millis: " + this.getAverageWaitMillis() + ", avg run millis: " + this.getAverageRunMillis()
+      + ", max run millis: " + this.getMaxRunMillis();
+  }
+}
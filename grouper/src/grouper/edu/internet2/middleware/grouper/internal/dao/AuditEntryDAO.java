@@ -19,6 +19,7 @@
  */
 package edu.internet2.middleware.grouper.internal.dao;
 
+import java.util.Collection;
 import java.util.Set;
 
 import edu.internet2.middleware.grouper.audit.AuditEntry;
@@ -47,6 +48,12 @@ public interface AuditEntryDAO extends GrouperDAO {
    */
   public void saveOrUpdate(AuditEntry auditEntry);
   
+  /** 
+   * insert a batch of new audit entry objects 
+   * @param auditEntries 
+   */
+  public void saveBatch(Collection<AuditEntry> auditEntries);
+  
   /**
    * 
    * @param id
@@ -19,8 +19,8 @@
  */
 package edu.internet2.middleware.grouper.internal.dao;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 
 import edu.internet2.middleware.grouper.changeLog.ChangeLogEntry;
 
@@ -41,7 +41,7 @@ public interface ChangeLogEntryDAO extends GrouperDAO {
    * @param changeLogEntries
    * @param isTempBatch
    */
-  public void saveBatch(Set<ChangeLogEntry> changeLogEntries, boolean isTempBatch);
+  public void saveBatch(Collection<ChangeLogEntry> changeLogEntries, boolean isTempBatch);
   
   /** 
    * update a change log entry object 
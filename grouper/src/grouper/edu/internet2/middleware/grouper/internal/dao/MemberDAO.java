@@ -273,6 +273,18 @@ public interface MemberDAO extends GrouperDAO {
   public abstract Set<Member> findBySubjectsInGroup(GrouperSession grouperSession,
       Set<Subject> subjects, Group group, Field field, MembershipType membershipType);
 
+  /**
+   * convert a collection of subjects to the members which are in a group, this does not
+   * check security
+   * @param subjects to convert to members
+   * @param group that subjects must be in
+   * @param field that they must be in in the group (null will default to eh members list
+   * @param membershipType that they must be in in the group or null for any
+   * @return the members in the group
+   */
+  public abstract Set<Member> findBySubjectsInGroup(Collection<Subject> subjects, 
+      Group group, Field field, MembershipType membershipType);
+
   /**
    * find members by subjects and create if not exist possibly
    * @param subjects
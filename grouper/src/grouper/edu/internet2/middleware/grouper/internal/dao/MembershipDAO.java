@@ -316,6 +316,24 @@ TODO update for 1.5
       Field f, String type, Set<Source> sources, QueryOptions queryOptions, boolean enabledOnly,
       SortStringEnum memberSortStringEnum, SearchStringEnum memberSearchStringEnum, String memberSearchStringValue) throws GrouperDAOException;
   
+  /**
+   * get a page of the members of an owner and field, sorted by member id, which are after a member id.
+   * Pass in the last member id of the previous page to get the next page, so large lists of members
+   * can be read without loading them all in memory.  No security check is done.
+   * @param ownerId
+   * @param f
+   * @param type membership type or null for all
+   * @param sources or null for all
+   * @param enabledOnly
+   * @param afterMemberId member id to start after, or null to start at the beginning
+   * @param pageSize max number of members to return
+   * @return the members sorted by member id, empty if no more
+   * @throws GrouperDAOException
+   */
+  public List<Member> findAllMembersByOwnerAndFieldAndTypeAfterMemberId(String ownerId,
+      Field f, String type, Set<Source> sources, boolean enabledOnly, String afterMemberId, 
+      int pageSize) throws GrouperDAOException;
+  
   /**
    * note, dont change this signature, Arnaud is using it
    * @param ownerStemId
@@ -648,6 +666,15 @@ TODO update for 1.5
       MembershipType membershipType,
       Field field, Boolean enabled);
 
+  /**
+   * find the subjectId and sourceId of the enabled immediate and effective members of a group field,
+   * in one query instead of a hasMember call per subject.  note: this does not check security
+   * @param ownerGroupId to limit memberships to
+   * @param field list field, or null for the members list
+   * @return a set of arrays of subjectId and sourceId
+   */
+  public Set<Object[]> findSubjectIdsAndSourceIdsByGroupOwnerAndField(String ownerGroupId, Field field);
+
   /**
    * @param memberUUID 
    * @param f 
@@ -682,6 +709,17 @@ TODO update for 1.5
   Set<Membership> findAllImmediateByMemberAndField(String memberUUID, Field f, boolean enabledOnly) 
     throws  GrouperDAOException;
 
+  /**
+   * find the immediate memberships of a batch of members in some fields, e.g. for USDU
+   * @param memberIds 
+   * @param fields 
+   * @param enabledOnly 
+   * @return set
+   * @throws GrouperDAOException 
+   */
+  Set<Membership> findAllImmediateByMemberIdsAndFields(Collection<String> memberIds, Collection<Field> fields, boolean enabledOnly) 
+    throws  GrouperDAOException;
+
   /**
    * @param memberUUID 
    * @param f 
@@ -809,6 +847,19 @@ TODO update for 1.5
    */
   public void delete(Set<Membership> mships);
   
+  /**
+   * Save a batch of immediate memberships with one flush.  The pre save hooks of all
+   * memberships run before the insert, and the post save hooks after it
+   * @param mships
+   */
+  public void saveBatch(Collection<Membership> mships);
+  
+  /**
+   * Delete a batch of immediate memberships, and evict the caches once for the batch
+   * @param mships
+   */
+  public void deleteBatch(Collection<Membership> mships);
+  
   /**
    * find all memberships that have this member or have this creator
    * @param member
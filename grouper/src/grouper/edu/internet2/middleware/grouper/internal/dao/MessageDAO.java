@@ -44,6 +44,41 @@ public interface MessageDAO extends GrouperDAO {
    */
   public List<GrouperMessageHibernate> findByQueue(String queue, int pageSize);
 
+  /**
+   * find messages in a queue which can be received: in queue, or attempted and the attempt expired.
+   * ordered by sent time
+   * @param queue
+   * @param nowMillis
+   * @param pageSize
+   * @return the messages
+   */
+  public List<GrouperMessageHibernate> findByQueueToReceive(String queue, long nowMillis, int pageSize);
+
+  /**
+   * claim messages to be received by setting the state to GET_ATTEMPTED, if they are still in queue
+   * or the attempt expired.  if another receiver claimed some of them first, those are not returned
+   * @param messageIds
+   * @param nowMillis
+   * @param attemptTimeExpiresMillis
+   * @return the ids which were claimed
+   */
+  public Set<String> claimToReceive(List<String> messageIds, long nowMillis, long attemptTimeExpiresMillis);
+
+  /**
+   * mark messages in a queue as processed
+   * @param queue
+   * @param messageIds
+   * @param nowMillis
+   * @return the number of messages marked
+   */
+  public int markAsProcessed(String queue, List<String> messageIds, long nowMillis);
+
+  /**
+   * insert new messages in batch
+   * @param messages
+   */
+  public void saveBatch(List<GrouperMessageHibernate> messages);
+
   /**
    * @param id
    * @param exceptionIfNotFound 
@@ -20,6 +20,7 @@
 package edu.internet2.middleware.grouper.internal.dao;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.Set;
 
 import edu.internet2.middleware.grouper.Member;
@@ -92,4 +93,16 @@ public interface PITMembershipViewDAO extends GrouperDAO {
    */
   public Set<PITMembershipView> findAllByPITOwnerAndPITMemberAndPITField(String ownerId, String memberId, String fieldId, 
       Timestamp pointInTimeFrom, Timestamp pointInTimeTo, QueryOptions queryOptions);
+
+  /**
+   * Get which of the members have memberships by owner and field.  Only active pit members are checked.
+   * @param ownerId
+   * @param memberSourceIds ids of the members (not the pit members)
+   * @param fieldId
+   * @param pointInTimeFrom 
+   * @param pointInTimeTo 
+   * @return the ids of the members (not the pit members) which have memberships
+   */
+  public Set<String> findMemberSourceIdsByPITOwnerAndPITField(String ownerId, Collection<String> memberSourceIds, 
+      String fieldId, Timestamp pointInTimeFrom, Timestamp pointInTimeTo);
 }
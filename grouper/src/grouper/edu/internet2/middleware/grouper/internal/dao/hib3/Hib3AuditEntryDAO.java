@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 package edu.internet2.middleware.grouper.internal.dao.hib3;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Set;
 
@@ -47,6 +48,16 @@ public class Hib3AuditEntryDAO extends Hib3DAO implements AuditEntryDAO {
     HibernateSession.byObjectStatic().saveOrUpdate(auditEntry);
   }
 
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.AuditEntryDAO#saveBatch(java.util.Collection)
+   */
+  public void saveBatch(Collection<AuditEntry> auditEntries) {
+    for (AuditEntry auditEntry : auditEntries) {
+      auditEntry.truncate();
+    }
+    HibernateSession.byObjectStatic().saveBatch(auditEntries, false);
+  }
+
   /**
    * reset the audit types
    * @param hibernateSession
@@ -14,8 +14,8 @@
  * limitations under the License.
  */
 package edu.internet2.middleware.grouper.internal.dao.hib3;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 
 import edu.internet2.middleware.grouper.changeLog.ChangeLogEntry;
 import edu.internet2.middleware.grouper.hibernate.HibernateSession;
@@ -51,9 +51,9 @@ public class Hib3ChangeLogEntryDAO extends Hib3DAO implements ChangeLogEntryDAO
   }
 
   /**
-   * @see edu.internet2.middleware.grouper.internal.dao.ChangeLogEntryDAO#saveBatch(java.util.Set, boolean)
+   * @see edu.internet2.middleware.grouper.internal.dao.ChangeLogEntryDAO#saveBatch(java.util.Collection, boolean)
    */
-  public void saveBatch(Set<ChangeLogEntry> changeLogEntries, boolean isTempBatch) {
+  public void saveBatch(Collection<ChangeLogEntry> changeLogEntries, boolean isTempBatch) {
     if (isTempBatch) {
       HibernateSession.byObjectStatic().setEntityName(
           ChangeLogEntry.CHANGE_LOG_ENTRY_TEMP_ENTITY_NAME).saveBatch(changeLogEntries);
@@ -32,6 +32,7 @@
 
 package edu.internet2.middleware.grouper.internal.dao.hib3;
 import java.io.File;
+import java.io.Serializable;
 import java.util.Properties;
 
 import org.apache.commons.io.IOUtils;
@@ -357,6 +358,15 @@ public abstract class Hib3DAO {
   public static void evictQueries(String cacheRegion) {
     FACTORY.getCache().evictQueryRegion(cacheRegion);
   }
+
+  /**
+   * evict one instance of a persistent class from the second level cache
+   * @param persistentClass
+   * @param id
+   */
+  public static void evictEntity(Class<?> persistentClass, Serializable id) {
+    FACTORY.getCache().evictEntity(persistentClass, id);
+  }
   
 } 
 
@@ -659,6 +659,27 @@ public class Hib3MemberDAO extends Hib3DAO implements MemberDAO {
       field = Group.getDefaultList();
     }
 
+    if (GrouperUtil.length(subjects) == 0) {
+      return new TreeSet<Member>();
+    }
+    
+    //check security once
+    if (!PrivilegeHelper.canViewMembers(grouperSession, group, field)) {
+      throw new InsufficientPrivilegeException("subject " + grouperSession.getSubject() + " cannot read group: " + group);
+    }
+
+    return this.findBySubjectsInGroup(subjects, group, field, membershipType);
+  }
+
+  /**
+   * @see MemberDAO#findBySubjectsInGroup(Collection, Group, Field, MembershipType)
+   */
+  public Set<Member> findBySubjectsInGroup(Collection<Subject> subjects, 
+      Group group, Field field, MembershipType membershipType) {
+    if (field == null) {
+      field = Group.getDefaultList();
+    }
+
     Set<Member> result = new TreeSet<Member>();
     
     if (GrouperUtil.length(subjects) == 0) {
@@ -673,11 +694,6 @@ public class Hib3MemberDAO extends Hib3DAO implements MemberDAO {
       throw new RuntimeException("Can only call this method with a list field: " + field);
     }
     
-    //check security once
-    if (!PrivilegeHelper.canViewMembers(grouperSession, group, field)) {
-      throw new InsufficientPrivilegeException("subject " + grouperSession.getSubject() + " cannot read group: " + group);
-    }
-
     for (int i=0;i<numberOfBatches;i++) {
 
       List<Subject> subjectBatch = GrouperUtil.batchList(subjectsList, MEMBER_SUBJECT_BATCH_SIZE, i);
@@ -1263,6 +1263,48 @@ public class Hib3MembershipDAO extends Hib3DAO implements MembershipDAO {
 
   } 
   
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.MembershipDAO#findAllMembersByOwnerAndFieldAndTypeAfterMemberId(java.lang.String, edu.internet2.middleware.grouper.Field, java.lang.String, java.util.Set, boolean, java.lang.String, int)
+   */
+  public List<Member> findAllMembersByOwnerAndFieldAndTypeAfterMemberId(String ownerId,
+      Field f, String type, Set<Source> sources, boolean enabledOnly, String afterMemberId, 
+      int pageSize) throws GrouperDAOException {
+
+    ByHqlStatic byHqlStatic = HibernateSession.byHqlStatic();
+    
+    StringBuilder sql = new StringBuilder("select distinct m "
+            + "from Member m, MembershipEntry ms where "
+            + "ms.ownerId = :owner "
+            + "and ms.fieldId = :fieldId ");
+    if(type != null) {
+      MembershipType membershipType = MembershipType.valueOfIgnoreCase(type, true);
+      sql.append("and ms.type  " + membershipType.queryClause());
+    }
+
+    sql.append(" and ms.memberUuid = m.uuid  ");
+    if (enabledOnly) {
+      sql.append(" and ms.enabledDb = 'T'");
+    }
+    if (sources != null && sources.size() > 0) {
+      sql.append(" and m.subjectSourceIdDb in ").append(HibUtils.convertSourcesToSqlInString(sources));
+    }
+    if (afterMemberId != null) {
+      sql.append(" and m.uuid > :afterMemberId ");
+      byHqlStatic.setString("afterMemberId", afterMemberId);
+    }
+    
+    //keyset paging on the member id, so each page is one indexed query
+    QueryOptions queryOptions = new QueryOptions().paging(pageSize, 1, false).sortAsc("m.uuid");
+    
+    return byHqlStatic
+      .createQuery(sql.toString())
+      .setCacheable(false)
+      .setCacheRegion(KLASS).options(queryOptions)
+      .setString("owner", ownerId)
+      .setString( "fieldId", f.getUuid() )
+      .list(Member.class);
+  }
+  
   /**
    * note, dont change this signature, Arnaud is using it
    * @param ownerStemId 
@@ -1877,6 +1919,53 @@ public class Hib3MembershipDAO extends Hib3DAO implements MembershipDAO {
     return _getMembershipsFromMembershipAndMemberQuery(mships);
   } 
 
+  /**
+   * @see MembershipDAO#findAllImmediateByMemberIdsAndFields(Collection, Collection, boolean)
+   */
+  public Set<Membership> findAllImmediateByMemberIdsAndFields(Collection<String> memberIds, Collection<Field> fields, boolean enabledOnly) 
+    throws  GrouperDAOException {
+
+    Set<Membership> memberships = new LinkedHashSet<Membership>();
+
+    if (GrouperUtil.length(memberIds) == 0 || GrouperUtil.length(fields) == 0) {
+      return memberships;
+    }
+
+    List<String> fieldIds = new ArrayList<String>();
+    for (Field field : fields) {
+      fieldIds.add(field.getUuid());
+    }
+
+    List<String> memberIdsList = GrouperUtil.listFromCollection(memberIds);
+    
+    //lets page through these
+    int pages = GrouperUtil.batchNumberOfBatches(memberIdsList, batchSize);
+    
+    for (int i=0; i<pages; i++) {
+      List<String> currentMemberIdList = GrouperUtil.batchList(memberIdsList, batchSize, i);
+      
+      ByHqlStatic byHqlStatic = HibernateSession.byHqlStatic();
+      StringBuilder query = new StringBuilder("select ms, m from MembershipEntry as ms, Member as m where ms.memberUuid = m.uuid "
+          + " and ms.type = :type and ms.immediateFieldId = ms.fieldId and ms.fieldId in (");
+      byHqlStatic.setString("type", MembershipType.IMMEDIATE.getTypeString());
+      byHqlStatic.setCollectionInClause(query, fieldIds);
+      query.append(") and ms.memberUuid in (");
+      byHqlStatic.setCollectionInClause(query, currentMemberIdList);
+      query.append(")");
+      
+      if (enabledOnly) {
+        query.append(" and ms.enabledDb = 'T'");
+      }
+      
+      Set<Object[]> mships = byHqlStatic.createQuery(query.toString())
+        .setCacheable(false)
+        .setCacheRegion(KLASS)
+        .listSet(Object[].class);
+      memberships.addAll(_getMembershipsFromMembershipAndMemberQuery(mships));
+    }
+    return memberships;
+  }
+
   /**
    * @param memberUUID 
    * @param fieldType
@@ -2095,6 +2184,31 @@ public class Hib3MembershipDAO extends Hib3DAO implements MembershipDAO {
     }
   }
   
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.MembershipDAO#saveBatch(java.util.Collection)
+   */
+  public void saveBatch(Collection<Membership> mships) {
+    if (GrouperUtil.length(mships) == 0) {
+      return;
+    }
+    //post save hooks work with the memberships and group sets in the session, so dont clear it
+    HibernateSession.byObjectStatic().setEntityName("ImmediateMembershipEntry").saveBatch(mships, false);
+    Hib3DAO.evictEntity("MembershipEntry");
+    Hib3DAO.evictQueries(KLASS);
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.MembershipDAO#deleteBatch(java.util.Collection)
+   */
+  public void deleteBatch(Collection<Membership> mships) {
+    if (GrouperUtil.length(mships) == 0) {
+      return;
+    }
+    HibernateSession.byObjectStatic().setEntityName("ImmediateMembershipEntry").delete(mships);
+    Hib3DAO.evictEntity("MembershipEntry");
+    Hib3DAO.evictQueries(KLASS);
+  }
+  
   /**
    * @see edu.internet2.middleware.grouper.internal.dao.MembershipDAO#update(java.util.Set)
    */
@@ -2674,6 +2788,24 @@ public class Hib3MembershipDAO extends Hib3DAO implements MembershipDAO {
         .executeUpdate();
   }
 
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.MembershipDAO#findSubjectIdsAndSourceIdsByGroupOwnerAndField(java.lang.String, edu.internet2.middleware.grouper.Field)
+   */
+  public Set<Object[]> findSubjectIdsAndSourceIdsByGroupOwnerAndField(String ownerGroupId, Field field) {
+    
+    if (field == null) {
+      field = Group.getDefaultList();
+    }
+
+    return HibernateSession.byHqlStatic().createQuery(
+        "select distinct m.subjectIdDb, m.subjectSourceIdDb "
+        + " from Member m, MembershipEntry ms "
+        + " where ms.ownerGroupId = :ownerGroupId and ms.memberUuid = m.uuid "
+        + " and ms.enabledDb = 'T' and ms.fieldId = :fieldId")
+        .setString("ownerGroupId", ownerGroupId)
+        .setString("fieldId", field.getUuid()).listSet(Object[].class);
+  }
+
   /**
    * @see edu.internet2.middleware.grouper.internal.dao.MembershipDAO#findSourceIdsByGroupOwnerOptions(java.lang.String, edu.internet2.middleware.grouper.membership.MembershipType, edu.internet2.middleware.grouper.Field, java.lang.Boolean)
    */
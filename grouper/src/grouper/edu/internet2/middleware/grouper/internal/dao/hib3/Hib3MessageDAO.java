@@ -15,12 +15,20 @@
  */
 package edu.internet2.middleware.grouper.internal.dao.hib3;
 
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
 
+import edu.internet2.middleware.grouper.hibernate.AuditControl;
+import edu.internet2.middleware.grouper.hibernate.ByHql;
+import edu.internet2.middleware.grouper.hibernate.GrouperRollbackType;
+import edu.internet2.middleware.grouper.hibernate.GrouperTransactionType;
+import edu.internet2.middleware.grouper.hibernate.HibernateHandler;
+import edu.internet2.middleware.grouper.hibernate.HibernateHandlerBean;
 import edu.internet2.middleware.grouper.hibernate.HibernateSession;
+import edu.internet2.middleware.grouper.internal.dao.GrouperDAOException;
 import edu.internet2.middleware.grouper.internal.dao.MessageDAO;
 import edu.internet2.middleware.grouper.internal.dao.QueryOptions;
 import edu.internet2.middleware.grouper.messaging.GrouperMessageHibernate;
@@ -87,6 +95,148 @@ public class Hib3MessageDAO extends Hib3DAO implements MessageDAO {
     return messages;
   }
 
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.MessageDAO#findByQueueToReceive(String, long, int)
+   */
+  public List<GrouperMessageHibernate> findByQueueToReceive(String queue, long nowMillis, int pageSize) {
+    List<GrouperMessageHibernate> messages = HibernateSession.byHqlStatic()
+      .createQuery("from GrouperMessageHibernate gmh "
+          + " where gmh.queueName = :theQueueName and (gmh.state = 'IN_QUEUE' "
+          + " or (gmh.state = 'GET_ATTEMPTED' and gmh.attemptTimeExpiresMillis < :theNowMillis)) "
+          + " order by gmh.sentTimeMicros, gmh.id ")
+      .setString("theQueueName", queue).setLong("theNowMillis", nowMillis)
+      .options(QueryOptions.create(null, null, 1, pageSize))
+      .list(GrouperMessageHibernate.class);
+    return messages;
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.MessageDAO#claimToReceive(List, long, long)
+   */
+  public Set<String> claimToReceive(List<String> messageIds, final long nowMillis, final long attemptTimeExpiresMillis) {
+    
+    Set<String> result = new LinkedHashSet<String>();
+    
+    int numberOfBatches = GrouperUtil.batchNumberOfBatches(messageIds, 100);
+    
+    for (int i=0;i<numberOfBatches;i++) {
+      
+      final List<String> messageIdsBatch = GrouperUtil.batchList(messageIds, 100, i);
+      
+      //usually no other receiver has these, so claim them all in one update
+      boolean claimedAll = (Boolean)HibernateSession.callbackHibernateSession(
+          GrouperTransactionType.READ_WRITE_NEW, AuditControl.WILL_NOT_AUDIT, new HibernateHandler() {
+            
+            public Object callback(HibernateHandlerBean hibernateHandlerBean) throws GrouperDAOException {
+              HibernateSession hibernateSession = hibernateHandlerBean.getHibernateSession();
+              
+              int count = claimToReceiveHelper(hibernateSession, messageIdsBatch, nowMillis, attemptTimeExpiresMillis);
+              if (count == messageIdsBatch.size()) {
+                return true;
+              }
+              //another receiver got some of them first, we dont know which, so undo and claim one by one
+              hibernateSession.rollback(GrouperRollbackType.ROLLBACK_NOW);
+              return false;
+            }
+          });
+
+      if (claimedAll) {
+        result.addAll(messageIdsBatch);
+        continue;
+      }
+
+      @SuppressWarnings("unchecked")
+      Set<String> claimedIds = (Set<String>)HibernateSession.callbackHibernateSession(
+          GrouperTransactionType.READ_WRITE_NEW, AuditControl.WILL_NOT_AUDIT, new HibernateHandler() {
+            
+            public Object callback(HibernateHandlerBean hibernateHandlerBean) throws GrouperDAOException {
+              HibernateSession hibernateSession = hibernateHandlerBean.getHibernateSession();
+              Set<String> theClaimedIds = new LinkedHashSet<String>();
+              for (String messageId : messageIdsBatch) {
+                if (claimToReceiveHelper(hibernateSession, GrouperUtil.toList(messageId), 
+                    nowMillis, attemptTimeExpiresMillis) == 1) {
+                  theClaimedIds.add(messageId);
+                }
+              }
+              return theClaimedIds;
+            }
+          });
+      
+      result.addAll(claimedIds);
+    }
+    return result;
+  }
+
+  /**
+   * update the messages to claimed if they are still available
+   * @param hibernateSession
+   * @param messageIds
+   * @param nowMillis
+   * @param attemptTimeExpiresMillis
+   * @return the number of messages claimed
+   */
+  private static int claimToReceiveHelper(HibernateSession hibernateSession, List<String> messageIds, 
+      long nowMillis, long attemptTimeExpiresMillis) {
+    
+    ByHql byHql = hibernateSession.byHql();
+    StringBuilder query = new StringBuilder("update GrouperMessageHibernate "
+        + " set state = 'GET_ATTEMPTED', getAttemptTimeMillis = :theNowMillis, "
+        + " attemptTimeExpiresMillis = :theAttemptTimeExpiresMillis, "
+        + " getAttemptCount = coalesce(getAttemptCount, 0) + 1, "
+        + " hibernateVersionNumber = hibernateVersionNumber + 1 "
+        + " where id in (");
+    byHql.setCollectionInClause(query, messageIds);
+    query.append(") and (state = 'IN_QUEUE' or (state = 'GET_ATTEMPTED' and attemptTimeExpiresMillis < :theNowMillis))");
+    
+    return byHql.createQuery(query.toString()).setLong("theNowMillis", nowMillis)
+      .setLong("theAttemptTimeExpiresMillis", attemptTimeExpiresMillis).executeUpdateInt();
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.MessageDAO#markAsProcessed(String, List, long)
+   */
+  public int markAsProcessed(final String queue, final List<String> messageIds, final long nowMillis) {
+
+    if (GrouperUtil.length(messageIds) == 0) {
+      return 0;
+    }
+    
+    return (Integer)HibernateSession.callbackHibernateSession(
+        GrouperTransactionType.READ_WRITE_OR_USE_EXISTING, AuditControl.WILL_NOT_AUDIT, new HibernateHandler() {
+          
+          public Object callback(HibernateHandlerBean hibernateHandlerBean) throws GrouperDAOException {
+            HibernateSession hibernateSession = hibernateHandlerBean.getHibernateSession();
+            
+            int count = 0;
+            int numberOfBatches = GrouperUtil.batchNumberOfBatches(messageIds, 100);
+            
+            for (int i=0;i<numberOfBatches;i++) {
+              
+              List<String> messageIdsBatch = GrouperUtil.batchList(messageIds, 100, i);
+              
+              ByHql byHql = hibernateSession.byHql();
+              StringBuilder query = new StringBuilder("update GrouperMessageHibernate "
+                  + " set state = 'PROCESSED', getTimeMillis = :theNowMillis, attemptTimeExpiresMillis = null, "
+                  + " hibernateVersionNumber = hibernateVersionNumber + 1 "
+                  + " where queueName = :theQueueName and id in (");
+              byHql.setCollectionInClause(query, messageIdsBatch);
+              query.append(")");
+              
+              count += byHql.createQuery(query.toString()).setLong("theNowMillis", nowMillis)
+                .setString("theQueueName", queue).executeUpdateInt();
+            }
+            return count;
+          }
+        });
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.MessageDAO#saveBatch(List)
+   */
+  public void saveBatch(List<GrouperMessageHibernate> messages) {
+    HibernateSession.byObjectStatic().saveBatch(messages);
+  }
+
   /**
    * @see edu.internet2.middleware.grouper.internal.dao.MessageDAO#saveOrUpdate(GrouperMessageHibernate)
    */
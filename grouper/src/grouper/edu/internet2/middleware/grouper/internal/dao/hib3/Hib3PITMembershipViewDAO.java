@@ -18,9 +18,11 @@ package edu.internet2.middleware.grouper.internal.dao.hib3;
 import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import edu.internet2.middleware.grouper.Member;
+import edu.internet2.middleware.grouper.hibernate.ByHqlStatic;
 import edu.internet2.middleware.grouper.hibernate.HibUtils;
 import edu.internet2.middleware.grouper.hibernate.HibernateSession;
 import edu.internet2.middleware.grouper.internal.dao.PITMembershipViewDAO;
@@ -29,6 +31,7 @@ import edu.internet2.middleware.grouper.pit.PITGroupSet;
 import edu.internet2.middleware.grouper.pit.PITMember;
 import edu.internet2.middleware.grouper.pit.PITMembership;
 import edu.internet2.middleware.grouper.pit.PITMembershipView;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
 import edu.internet2.middleware.subject.Source;
 
 /**
@@ -248,5 +251,55 @@ public class Hib3PITMembershipViewDAO extends Hib3DAO implements PITMembershipVi
       .setString("fieldId", fieldId)
       .listSet(PITMembershipView.class);
   }
+
+  /**
+   * @see edu.internet2.middleware.grouper.internal.dao.PITMembershipViewDAO#findMemberSourceIdsByPITOwnerAndPITField(java.lang.String, java.util.Collection, java.lang.String, java.sql.Timestamp, java.sql.Timestamp)
+   */
+  public Set<String> findMemberSourceIdsByPITOwnerAndPITField(String ownerId, Collection<String> memberSourceIds, 
+      String fieldId, Timestamp pointInTimeFrom, Timestamp pointInTimeTo) {
+
+    Set<String> results = new LinkedHashSet<String>();
+
+    List<String> memberSourceIdsList = GrouperUtil.listFromCollection(memberSourceIds);
+    int numberOfBatches = GrouperUtil.batchNumberOfBatches(memberSourceIdsList, 100);
+
+    for (int i = 0; i < numberOfBatches; i++) {
+
+      List<String> currentBatch = GrouperUtil.batchList(memberSourceIdsList, 100, i);
+      
+      ByHqlStatic byHqlStatic = HibernateSession.byHqlStatic();
+
+      StringBuilder sql = new StringBuilder("select distinct pitMember.sourceId "
+          + "from PITMembershipView ms, PITMember pitMember where "
+          + "ms.ownerId = :ownerId "
+          + "and ms.fieldId = :fieldId "
+          + "and ms.memberId = pitMember.id "
+          + "and pitMember.activeDb = 'T' "
+          + "and pitMember.sourceId in (");
+      sql.append(HibUtils.convertToInClause(currentBatch, byHqlStatic));
+      sql.append(")");
+      
+      if (pointInTimeFrom != null) {
+        Long endDateAfter = pointInTimeFrom.getTime() * 1000;
+        sql.append(" and (ms.membershipEndTimeDb is null or ms.membershipEndTimeDb > '" + endDateAfter + "')");
+        sql.append(" and (ms.groupSetEndTimeDb is null or ms.groupSetEndTimeDb > '" + endDateAfter + "')");
+      }
+      
+      if (pointInTimeTo != null) {
+        Long startDateBefore = pointInTimeTo.getTime() * 1000;
+        sql.append(" and ms.membershipStartTimeDb < '" + startDateBefore + "'");
+        sql.append(" and ms.groupSetStartTimeDb < '" + startDateBefore + "'");
+      }
+      
+      results.addAll(byHqlStatic
+        .createQuery(sql.toString())
+        .setCacheable(false)
+        .setString("ownerId", ownerId) 
+        .setString("fieldId", fieldId)
+        .listSet(String.class));
+    }
+    
+    return results;
+  }
 }
 
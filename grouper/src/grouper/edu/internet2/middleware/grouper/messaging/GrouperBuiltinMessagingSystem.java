@@ -4,8 +4,10 @@
  */
 package edu.internet2.middleware.grouper.messaging;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -16,6 +18,9 @@ import org.apache.commons.lang.StringUtils;
 import edu.emory.mathcs.backport.java.util.Collections;
 import edu.internet2.middleware.grouper.GroupFinder;
 import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.exception.GrouperSessionException;
+import edu.internet2.middleware.grouper.exception.InsufficientPrivilegeException;
+import edu.internet2.middleware.grouper.misc.GrouperSessionHandler;
 import edu.internet2.middleware.grouper.Member;
 import edu.internet2.middleware.grouper.Stem;
 import edu.internet2.middleware.grouper.Stem.Scope;
@@ -26,12 +31,15 @@ import edu.internet2.middleware.grouper.attr.AttributeDefNameSave;
 import edu.internet2.middleware.grouper.attr.finder.AttributeDefFinder;
 import edu.internet2.middleware.grouper.attr.finder.AttributeDefNameFinder;
 import edu.internet2.middleware.grouper.cache.GrouperCache;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.internal.dao.QueryOptions;
 import edu.internet2.middleware.grouper.internal.util.GrouperUuid;
 import edu.internet2.middleware.grouper.misc.GrouperCheckConfig;
+import edu.internet2.middleware.grouper.misc.GrouperDAOFactory;
 import edu.internet2.middleware.grouper.permissions.PermissionAllowed;
 import edu.internet2.middleware.grouper.permissions.PermissionFinder;
 import edu.internet2.middleware.grouper.permissions.role.Role;
+import edu.internet2.middleware.grouper.privs.PrivilegeHelper;
 import edu.internet2.middleware.grouper.session.GrouperSessionResult;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
 import edu.internet2.middleware.grouperClient.messaging.GrouperMessage;
@@ -680,6 +688,34 @@ public class GrouperBuiltinMessagingSystem implements GrouperMessagingSystem {
         .addPermissionName(queueAttributeDefName).addSubject(subject).addRole(messagingRole).hasPermission();
   }
 
+  /**
+   * make sure the subject of the current session is allowed to receive from the queue, 
+   * wheel or root can receive from any queue
+   * @param queueName
+   * @throws InsufficientPrivilegeException if not allowed
+   */
+  private static void assertAllowedToReceiveFromQueue(final String queueName) {
+    
+    final Subject subject = GrouperSession.staticGrouperSession(true).getSubject();
+    
+    if (PrivilegeHelper.isWheelOrRoot(subject)) {
+      return;
+    }
+    
+    //the permission lookup reads the messaging role and attribute defs, which the subject might not be able to read
+    boolean allowed = (Boolean)GrouperSession.internal_callbackRootGrouperSession(new GrouperSessionHandler() {
+      
+      public Object callback(GrouperSession grouperSession) throws GrouperSessionException {
+        return allowedToReceiveFromQueue(queueName, subject);
+      }
+    });
+    
+    if (!allowed) {
+      throw new InsufficientPrivilegeException("Subject " + GrouperUtil.subjectToString(subject) 
+          + " is not allowed to receive from queue '" + queueName + "'");
+    }
+  }
+
   /**
    * 
    * @param topicName
@@ -816,6 +852,7 @@ public class GrouperBuiltinMessagingSystem implements GrouperMessagingSystem {
     
     GrouperSession grouperSession = GrouperSession.staticGrouperSession(true);
     Member fromMember = grouperSession.getMember();
+    List<GrouperMessageHibernate> grouperMessageHibernates = new ArrayList<GrouperMessageHibernate>();
     for (GrouperMessage grouperMessage : GrouperUtil.nonNull(grouperMessageSendParam.getGrouperMessages())) {
       GrouperMessageHibernate grouperMessageHibernate = new GrouperMessageHibernate();
       if (!StringUtils.isBlank(grouperMessage.getFromMemberId())) {
@@ -830,7 +867,15 @@ public class GrouperBuiltinMessagingSystem implements GrouperMessagingSystem {
       grouperMessageHibernate.setQueueName(queueOrTopic);
       grouperMessageHibernate.setSentTimeMicros(messageId());
       grouperMessageHibernate.setState(GrouperBuiltinMessageState.IN_QUEUE.name());
-      grouperMessageHibernate.saveOrUpdate();
+      grouperMessageHibernates.add(grouperMessageHibernate);
+    }
+    
+    //insert with jdbc batches, a batch at a time so the hibernate session doesnt get big
+    int batchSize = GrouperConfig.retrieveConfig().propertyValueInt("grouper.builtin.messaging.sendBatchSize", 200);
+    int numberOfBatches = GrouperUtil.batchNumberOfBatches(grouperMessageHibernates, batchSize);
+    for (int i=0;i<numberOfBatches;i++) {
+      List<GrouperMessageHibernate> grouperMessageHibernatesBatch = GrouperUtil.batchList(grouperMessageHibernates, batchSize, i);
+      GrouperDAOFactory.getFactory().getMessage().saveBatch(grouperMessageHibernatesBatch);
     }
     return new GrouperMessageSendResult();
   }
@@ -839,14 +884,112 @@ public class GrouperBuiltinMessagingSystem implements GrouperMessagingSystem {
    * @see edu.internet2.middleware.grouperClient.messaging.GrouperMessagingSystem#markAsProcessed(edu.internet2.middleware.grouperClient.messaging.GrouperMessageProcessedParam)
    */
   public GrouperMessageProcessedResult markAsProcessed(GrouperMessageProcessedParam grouperMessageProcessedParam) {
-    return null;
+    
+    String queueName = grouperMessageProcessedParam.getGrouperMessageQueueParam() == null ? null 
+        : grouperMessageProcessedParam.getGrouperMessageQueueParam().getQueueOrTopic();
+    if (StringUtils.isBlank(queueName)) {
+      throw new RuntimeException("queue is required to mark messages as processed");
+    }
+    
+    assertAllowedToReceiveFromQueue(queueName);
+    
+    List<String> messageIds = new ArrayList<String>();
+    for (GrouperMessage grouperMessage : GrouperUtil.nonNull(grouperMessageProcessedParam.getGrouperMessages())) {
+      if (StringUtils.isBlank(grouperMessage.getId())) {
+        throw new RuntimeException("id is required in a message to mark it as processed");
+      }
+      messageIds.add(grouperMessage.getId());
+    }
+    
+    //all the messages are marked with one update per batch of ids
+    GrouperDAOFactory.getFactory().getMessage().markAsProcessed(queueName, messageIds, System.currentTimeMillis());
+    
+    return new GrouperMessageProcessedResult();
   }
 
   /**
+   * <pre>
+   * receive the oldest messages in the queue.  messages are claimed by an update of the state
+   * to GET_ATTEMPTED, so multiple receivers of the queue (threads or JVMs) dont get the same 
+   * messages.  if the messages are not marked as processed before the attempt expires, they can
+   * be received again.  if there are no messages, poll until the long poll millis are up
+   * </pre>
    * @see edu.internet2.middleware.grouperClient.messaging.GrouperMessagingSystem#receive(GrouperMessageReceiveParam)
    */
   public GrouperMessageReceiveResult receive(GrouperMessageReceiveParam grouperMessageReceiveParam) {
-    return null;
+
+    String queueName = grouperMessageReceiveParam.getGrouperMessageQueueParam() == null ? null 
+        : grouperMessageReceiveParam.getGrouperMessageQueueParam().getQueueOrTopic();
+    if (StringUtils.isBlank(queueName)) {
+      throw new RuntimeException("queue is required to receive messages");
+    }
+    
+    assertAllowedToReceiveFromQueue(queueName);
+
+    GrouperConfig grouperConfig = GrouperConfig.retrieveConfig();
+    
+    int pageSize = grouperMessageReceiveParam.getMaxMessagesToReceiveAtOnce() != null 
+        ? grouperMessageReceiveParam.getMaxMessagesToReceiveAtOnce() 
+        : grouperConfig.propertyValueInt("grouper.builtin.messaging.defaultPageSize", 100);
+    pageSize = Math.max(1, Math.min(pageSize, grouperConfig.propertyValueInt("grouper.builtin.messaging.maxPageSize", 1000)));
+
+    int longPollMillis = grouperMessageReceiveParam.getLongPollMilis() != null 
+        ? grouperMessageReceiveParam.getLongPollMilis() : 0;
+    longPollMillis = Math.max(0, Math.min(longPollMillis, 
+        grouperConfig.propertyValueInt("grouper.builtin.messaging.maxLongPollMillis", 20000)));
+
+    int pollSleepMillis = grouperConfig.propertyValueInt("grouper.builtin.messaging.longPollSleepMillis", 500);
+    int attemptTimeExpiresMillis = grouperConfig.propertyValueInt("grouper.builtin.messaging.attemptTimeExpiresMillis", 300000);
+    
+    GrouperMessageReceiveResult grouperMessageReceiveResult = new GrouperMessageReceiveResult();
+    List<GrouperMessage> grouperMessages = new ArrayList<GrouperMessage>();
+    grouperMessageReceiveResult.setGrouperMessages(grouperMessages);
+    
+    long startMillis = System.currentTimeMillis();
+
+    while (true) {
+      
+      long nowMillis = System.currentTimeMillis();
+      
+      List<GrouperMessageHibernate> grouperMessageHibernates = GrouperDAOFactory.getFactory().getMessage()
+          .findByQueueToReceive(queueName, nowMillis, pageSize);
+      
+      if (GrouperUtil.length(grouperMessageHibernates) > 0) {
+        
+        List<String> messageIds = new ArrayList<String>();
+        for (GrouperMessageHibernate grouperMessageHibernate : grouperMessageHibernates) {
+          messageIds.add(grouperMessageHibernate.getId());
+        }
+        
+        Set<String> claimedIds = GrouperDAOFactory.getFactory().getMessage()
+            .claimToReceive(messageIds, nowMillis, nowMillis + attemptTimeExpiresMillis);
+        
+        for (GrouperMessageHibernate grouperMessageHibernate : grouperMessageHibernates) {
+          if (claimedIds.contains(grouperMessageHibernate.getId())) {
+            grouperMessageHibernate.setState(GrouperBuiltinMessageState.GET_ATTEMPTED.name());
+            grouperMessageHibernate.setGetAttemptTimeMillis(nowMillis);
+            grouperMessageHibernate.setAttemptTimeExpiresMillis(nowMillis + attemptTimeExpiresMillis);
+            grouperMessageHibernate.setGetAttemptCount(GrouperUtil.intValue(grouperMessageHibernate.getGetAttemptCount(), 0) + 1);
+            grouperMessages.add(grouperMessageHibernate);
+          }
+        }
+        
+        if (grouperMessages.size() > 0) {
+          break;
+        }
+        
+        //other receivers claimed all of these, there might be more behind them
+        continue;
+      }
+
+      long remainingMillis = longPollMillis - (System.currentTimeMillis() - startMillis);
+      if (remainingMillis <= 0) {
+        break;
+      }
+      GrouperUtil.sleep(Math.min(pollSleepMillis, remainingMillis));
+    }
+    
+    return grouperMessageReceiveResult;
   }
 
 }
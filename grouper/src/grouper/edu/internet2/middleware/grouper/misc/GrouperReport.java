@@ -53,6 +53,9 @@ public class GrouperReport {
   
   /** whether to find bad memberships */
   private boolean findBadMemberships = false;
+  
+  /** if not null, progress of long running parts is reported here */
+  private Hib3GrouperLoaderLog hib3GrouperLoaderLog = null;
 
   /**
    * logger 
@@ -87,6 +90,16 @@ public class GrouperReport {
     return this;
   }
 
+  /**
+   * Loader log to report progress of long running parts (e.g. finding unresolvable subjects) to
+   * @param theHib3GrouperLoaderLog
+   * @return GrouperReport
+   */
+  public GrouperReport hib3GrouperLoaderLog(Hib3GrouperLoaderLog theHib3GrouperLoaderLog) {
+    this.hib3GrouperLoaderLog = theHib3GrouperLoaderLog;
+    return this;
+  }
+
   /**
    * format with commas
    * @param theLong
@@ -156,7 +169,7 @@ public class GrouperReport {
       String unresolvableResults = "Not configured to compute this today";
       Set<Member> usduMembers = new HashSet<Member>();
       if (findUnresolvables) {
-        usduMembers = GrouperUtil.nonNull(USDU.getUnresolvableMembers(grouperSession, null));
+        usduMembers = GrouperUtil.nonNull(USDU.getUnresolvableMembers(grouperSession, null, this.hib3GrouperLoaderLog));
         unresolvableResults = formatCommas(Long.valueOf(usduMembers.size()));
       }
       result.append("unresolvable subjects: ").append(unresolvableResults).append("\n");
@@ -35,6 +35,7 @@ import edu.internet2.middleware.grouper.StemFinder;
 import edu.internet2.middleware.grouper.SubjectFinder;
 import edu.internet2.middleware.grouper.app.loader.GrouperLoaderConfig;
 import edu.internet2.middleware.grouper.app.loader.db.Hib3GrouperDdl;
+import edu.internet2.middleware.grouper.cache.GrouperCacheInvalidation;
 import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.ddl.GrouperDdlUtils;
 import edu.internet2.middleware.grouper.exception.GrouperSessionException;
@@ -286,6 +287,9 @@ public class GrouperStartup {
 
       verifyUtf8andTransactions();
       
+      //evict from caches when other JVMs make changes
+      GrouperCacheInvalidation.startPollingThreadIfEnabled();
+      
       finishedStartupSuccessfully = true;
       
       return true;
@@ -16,9 +16,12 @@
 package edu.internet2.middleware.grouper.pit;
 
 import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
@@ -303,6 +306,65 @@ public class PITGroup extends GrouperPIT implements Hib3GrouperVersioned {
     
     return false;
   }
+
+  /**
+   * Check which of the subjects are members of this group at a point in time or time range.
+   * This is like calling hasMember() for each subject, but checks the subjects with one
+   * query per batch of subjects
+   * @param subjects
+   * @param fieldSourceId
+   * @param pointInTimeFrom
+   * @param pointInTimeTo
+   * @return the subjects which are members, this is a subset of the subjects passed in
+   */
+  public Set<Subject> hasMembers(Collection<Subject> subjects, String fieldSourceId, 
+      Timestamp pointInTimeFrom, Timestamp pointInTimeTo) {
+    
+    if (fieldSourceId == null) {
+      throw new IllegalArgumentException("fieldSourceId required.");
+    }
+
+    Set<Subject> result = new LinkedHashSet<Subject>();
+    
+    if (GrouperUtil.length(subjects) == 0) {
+      return result;
+    }
+
+    //subjects without a member cant be a member, unless GrouperAll is
+    Set<Member> members = MemberFinder.findBySubjects(subjects, false);
+    Member all = MemberFinder.internal_findAllMember();
+    
+    Set<String> memberIds = new HashSet<String>();
+    for (Member member : members) {
+      memberIds.add(member.getUuid());
+    }
+    memberIds.add(all.getUuid());
+    
+    PITField pitField = GrouperDAOFactory.getFactory().getPITField().findBySourceIdActive(fieldSourceId, true);
+
+    Set<String> memberIdsWithMembership = GrouperDAOFactory.getFactory().getPITMembershipView()
+      .findMemberSourceIdsByPITOwnerAndPITField(this.getId(), memberIds, pitField.getId(), pointInTimeFrom, pointInTimeTo);
+    
+    if (memberIdsWithMembership.contains(all.getUuid())) {
+      result.addAll(subjects);
+      return result;
+    }
+    
+    //multikey is the sourceId to the subjectId
+    Set<MultiKey> memberSubjects = new HashSet<MultiKey>();
+    for (Member member : members) {
+      if (memberIdsWithMembership.contains(member.getUuid())) {
+        memberSubjects.add(new MultiKey(member.getSubjectSourceId(), member.getSubjectId()));
+      }
+    }
+
+    for (Subject subject : subjects) {
+      if (memberSubjects.contains(new MultiKey(subject.getSourceId(), subject.getId()))) {
+        result.add(subject);
+      }
+    }
+    return result;
+  }
   
   /**
    * @see java.lang.Object#equals(java.lang.Object)
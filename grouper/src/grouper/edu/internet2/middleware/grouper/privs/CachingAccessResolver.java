@@ -136,11 +136,9 @@ public class CachingAccessResolver extends AccessResolverDecorator {
       UnableToPerformException {
     // TODO 20070816 add caching
     super.getDecoratedResolver().grantPrivilege(group, subject, privilege, uuid);
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).flush();
-    //there is a problem where if this action happens in root session, the
-    //normal session doesnt get flushed
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAccessResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictOwnerSubject(CACHE_HASPRIV, group.getUuid(), subject)) {
+      this.flushHasPrivilegeCache();
+    }
     this.putInHasPrivilegeCache(group, subject, privilege, Boolean.TRUE);
     //System.out.println(this.toString() + ", Add to cache: " + true + ", " + group.getName() + ", " + subject.getId() + ", " + privilege.getName());
   }
@@ -193,8 +191,8 @@ public class CachingAccessResolver extends AccessResolverDecorator {
    */
   private void putInHasPrivilegeCache(String groupUuid, Subject subj, Privilege priv,
       Boolean rv) {
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).put(
-        new Element(new MultiKey(groupUuid, subj.getSourceId(), subj.getId(), priv), rv));
+    PrivilegeCacheEviction.put(CACHE_HASPRIV,
+        new MultiKey(groupUuid, subj.getSourceId(), subj.getId(), priv), rv);
   }
 
   /**
@@ -206,11 +204,9 @@ public class CachingAccessResolver extends AccessResolverDecorator {
       UnableToPerformException {
     // TODO 20070816 add caching
     super.getDecoratedResolver().revokePrivilege(group, privilege);
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).flush();
-    //there is a problem where if this action happens in root session, the
-    //normal session doesnt get flushed
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAccessResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictOwner(CACHE_HASPRIV, group.getUuid())) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
@@ -222,11 +218,9 @@ public class CachingAccessResolver extends AccessResolverDecorator {
       UnableToPerformException {
     // TODO 20070816 add caching
     super.getDecoratedResolver().revokePrivilege(group, subject, privilege);
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).flush();
-    //there is a problem where if this action happens in root session, the
-    //normal session doesnt get flushed
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAccessResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictOwnerSubject(CACHE_HASPRIV, group.getUuid(), subject)) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
@@ -235,9 +229,9 @@ public class CachingAccessResolver extends AccessResolverDecorator {
   public void privilegeCopy(Group g1, Group g2, Privilege priv)
       throws IllegalArgumentException, UnableToPerformException {
     super.getDecoratedResolver().privilegeCopy(g1, g2, priv);
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).flush();
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAccessResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictOwner(CACHE_HASPRIV, g2.getUuid())) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
@@ -246,16 +240,28 @@ public class CachingAccessResolver extends AccessResolverDecorator {
   public void privilegeCopy(Subject subj1, Subject subj2, Privilege priv)
       throws IllegalArgumentException, UnableToPerformException {
     super.getDecoratedResolver().privilegeCopy(subj1, subj2, priv);
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).flush();
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAccessResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictSubject(CACHE_HASPRIV, subj2)) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
    * @see edu.internet2.middleware.grouper.privs.AccessResolver#flushCache()
    */
   public void flushCache() {
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).flush();
+    PrivilegeCacheEviction.flush(CACHE_HASPRIV);
+  }
+
+  /**
+   * flush the whole hasPrivilege cache, e.g. when privileges of a group change which
+   * affect all of its members
+   */
+  private void flushHasPrivilegeCache() {
+    PrivilegeCacheEviction.flush(CACHE_HASPRIV);
+    //there is a problem where if this action happens in root session, the
+    //normal session doesnt get flushed
+    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
+    grouperSession.getAccessResolver().flushCache();
   }
 
   /**
@@ -335,9 +341,9 @@ public class CachingAccessResolver extends AccessResolverDecorator {
    */
   public void revokeAllPrivilegesForSubject(Subject subject) {
     super.getDecoratedResolver().revokeAllPrivilegesForSubject(subject);
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).flush();
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAccessResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictSubject(CACHE_HASPRIV, subject)) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
@@ -177,11 +177,9 @@ public class CachingAttrDefResolver extends AttributeDefResolverDecorator {
       UnableToPerformException {
     // TODO 20070816 add caching
     super.getDecoratedResolver().grantPrivilege(attributeDef, subject, privilege, uuid);
-    this.flushCache();
-    //there is a problem where if this action happens in root session, the
-    //normal session doesnt get flushed
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAttributeDefResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictOwnerSubject(CACHE_HASPRIV, attributeDef.getId(), subject)) {
+      this.flushHasPrivilegeCache();
+    }
     this.putInHasPrivilegeCache(attributeDef, subject, privilege, Boolean.TRUE);
   }
 
@@ -230,8 +228,8 @@ public class CachingAttrDefResolver extends AttributeDefResolverDecorator {
    */
   private void putInHasPrivilegeCache(String attributeDefId, Subject subj, Privilege priv,
       Boolean rv) {
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).put(
-        new Element(new MultiKey(attributeDefId, subj.getSourceId(), subj.getId(), priv), rv));
+    PrivilegeCacheEviction.put(CACHE_HASPRIV,
+        new MultiKey(attributeDefId, subj.getSourceId(), subj.getId(), priv), rv);
   }
 
   /**
@@ -242,11 +240,9 @@ public class CachingAttrDefResolver extends AttributeDefResolverDecorator {
       throws IllegalArgumentException,
       UnableToPerformException {
     super.getDecoratedResolver().revokePrivilege(attributeDef, privilege);
-    this.flushCache();
-    //there is a problem where if this action happens in root session, the
-    //normal session doesnt get flushed
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAttributeDefResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictOwner(CACHE_HASPRIV, attributeDef.getId())) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
@@ -258,11 +254,9 @@ public class CachingAttrDefResolver extends AttributeDefResolverDecorator {
       UnableToPerformException {
     // TODO 20070816 add caching
     super.getDecoratedResolver().revokePrivilege(attributeDef, subject, privilege);
-    this.flushCache();
-    //there is a problem where if this action happens in root session, the
-    //normal session doesnt get flushed
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAttributeDefResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictOwnerSubject(CACHE_HASPRIV, attributeDef.getId(), subject)) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
@@ -272,9 +266,9 @@ public class CachingAttrDefResolver extends AttributeDefResolverDecorator {
   public void privilegeCopy(AttributeDef attributeDef1, AttributeDef attributeDef2, Privilege priv)
       throws IllegalArgumentException, UnableToPerformException {
     super.getDecoratedResolver().privilegeCopy(attributeDef1, attributeDef2, priv);
-    this.flushCache();
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAttributeDefResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictOwner(CACHE_HASPRIV, attributeDef2.getId())) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
@@ -284,9 +278,9 @@ public class CachingAttrDefResolver extends AttributeDefResolverDecorator {
   public void privilegeCopy(Subject subj1, Subject subj2, Privilege priv)
       throws IllegalArgumentException, UnableToPerformException {
     super.getDecoratedResolver().privilegeCopy(subj1, subj2, priv);
-    this.flushCache();
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAttributeDefResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictSubject(CACHE_HASPRIV, subj2)) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
@@ -294,7 +288,19 @@ public class CachingAttrDefResolver extends AttributeDefResolverDecorator {
    * @see edu.internet2.middleware.grouper.privs.AttributeDefResolverDecorator#flushCache()
    */
   public void flushCache() {
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).flush();
+    PrivilegeCacheEviction.flush(CACHE_HASPRIV);
+  }
+
+  /**
+   * flush the whole hasPrivilege cache, e.g. when privileges of a group change which
+   * affect all of its members
+   */
+  private void flushHasPrivilegeCache() {
+    this.flushCache();
+    //there is a problem where if this action happens in root session, the
+    //normal session doesnt get flushed
+    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
+    grouperSession.getAttributeDefResolver().flushCache();
   }
 
   /**
@@ -385,9 +391,9 @@ public class CachingAttrDefResolver extends AttributeDefResolverDecorator {
    */
   public void revokeAllPrivilegesForSubject(Subject subject) {
     super.getDecoratedResolver().revokeAllPrivilegesForSubject(subject);
-    this.flushCache();
-    GrouperSession grouperSession = GrouperSession.staticGrouperSession();
-    grouperSession.getAttributeDefResolver().flushCache();
+    if (!PrivilegeCacheEviction.evictSubject(CACHE_HASPRIV, subject)) {
+      this.flushHasPrivilegeCache();
+    }
   }
 
   /**
@@ -423,9 +429,9 @@ public class CachingAttrDefResolver extends AttributeDefResolverDecorator {
   private void putInHasPrivilegeCache(PermissionEntry permissionEntry, Subject subj, Privilege priv, Boolean rv) {
 
     //we care about the def id, and the roleId
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).put(
-        new Element(new MultiKey(
-            permissionEntry.getAttributeDefId(), permissionEntry.getRoleId(), subj.getSourceId(), subj.getId(), priv), rv));
+    PrivilegeCacheEviction.put(CACHE_HASPRIV,
+        new MultiKey(
+            permissionEntry.getAttributeDefId(), permissionEntry.getRoleId(), subj.getSourceId(), subj.getId(), priv), rv);
     
   }
 
@@ -57,7 +57,7 @@ public class CachingNamingResolver extends NamingResolverDecorator {
    * @see edu.internet2.middleware.grouper.privs.NamingResolver#flushCache()
    */
   public void flushCache() {
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).flush();
+    PrivilegeCacheEviction.flush(CACHE_HASPRIV);
   }
 
   // TODO 20070816 DRY caching w/ subject caching
@@ -119,7 +119,9 @@ public class CachingNamingResolver extends NamingResolverDecorator {
       UnableToPerformException {
     // TODO 20070816 add caching
     super.getDecoratedResolver().grantPrivilege(stem, subject, privilege, uuid);
-    this.flushCache();
+    if (!PrivilegeCacheEviction.evictOwnerSubject(CACHE_HASPRIV, stem.getUuid(), subject)) {
+      this.flushCache();
+    }
     this.putInHasPrivilegeCache(stem, subject, privilege, Boolean.TRUE);
   }
 
@@ -146,8 +148,8 @@ public class CachingNamingResolver extends NamingResolverDecorator {
    * @since   1.2.1
    */
   private void putInHasPrivilegeCache(Stem ns, Subject subj, Privilege priv, Boolean rv) {
-    EhcacheController.ehcacheController().getCache(CACHE_HASPRIV).put(
-        new Element(new MultiKey(ns.getUuid(), subj.getSourceId(), subj.getId(), priv), rv));
+    PrivilegeCacheEviction.put(CACHE_HASPRIV,
+        new MultiKey(ns.getUuid(), subj.getSourceId(), subj.getId(), priv), rv);
   }
 
   /**
@@ -159,7 +161,9 @@ public class CachingNamingResolver extends NamingResolverDecorator {
       UnableToPerformException {
     // TODO 20070816 add caching
     super.getDecoratedResolver().revokePrivilege(stem, privilege);
-    this.flushCache();
+    if (!PrivilegeCacheEviction.evictOwner(CACHE_HASPRIV, stem.getUuid())) {
+      this.flushCache();
+    }
   }
 
   /**
@@ -171,7 +175,9 @@ public class CachingNamingResolver extends NamingResolverDecorator {
       UnableToPerformException {
     // TODO 20070816 add caching
     super.getDecoratedResolver().revokePrivilege(stem, subject, privilege);
-    this.flushCache();
+    if (!PrivilegeCacheEviction.evictOwnerSubject(CACHE_HASPRIV, stem.getUuid(), subject)) {
+      this.flushCache();
+    }
   }
 
   /**
@@ -180,7 +186,9 @@ public class CachingNamingResolver extends NamingResolverDecorator {
   public void privilegeCopy(Stem stem1, Stem stem2, Privilege priv)
       throws IllegalArgumentException, UnableToPerformException {
     super.getDecoratedResolver().privilegeCopy(stem1, stem2, priv);
-    this.flushCache();
+    if (!PrivilegeCacheEviction.evictOwner(CACHE_HASPRIV, stem2.getUuid())) {
+      this.flushCache();
+    }
   }
 
   /**
@@ -189,7 +197,9 @@ public class CachingNamingResolver extends NamingResolverDecorator {
   public void privilegeCopy(Subject subj1, Subject subj2, Privilege priv)
       throws IllegalArgumentException, UnableToPerformException {
     super.getDecoratedResolver().privilegeCopy(subj1, subj2, priv);
-    this.flushCache();
+    if (!PrivilegeCacheEviction.evictSubject(CACHE_HASPRIV, subj2)) {
+      this.flushCache();
+    }
   }
 
   /**
@@ -221,7 +231,9 @@ public class CachingNamingResolver extends NamingResolverDecorator {
    */
   public void revokeAllPrivilegesForSubject(Subject subject) {
     super.getDecoratedResolver().revokeAllPrivilegesForSubject(subject);
-    this.flushCache();
+    if (!PrivilegeCacheEviction.evictSubject(CACHE_HASPRIV, subject)) {
+      this.flushCache();
+    }
   }
   
   /**
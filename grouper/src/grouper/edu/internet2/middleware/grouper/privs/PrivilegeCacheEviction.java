@@ -0,0 +1,388 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.privs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+import org.apache.commons.lang.StringUtils;
+
+import edu.internet2.middleware.grouper.GrouperSourceAdapter;
+import edu.internet2.middleware.grouper.SubjectFinder;
+import edu.internet2.middleware.grouper.cache.EhcacheController;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
+import edu.internet2.middleware.grouper.subj.SubjectHelper;
+import edu.internet2.middleware.subject.Subject;
+
+
+/**
+ * <pre>
+ * evict entries from the hasPrivilege caches of the caching resolvers when privileges change.
+ * The keys of those caches are MultiKeys which start with the owner id (group, stem, or attributeDef)
+ * and end with the subject source id, subject id, and privilege.  When a privilege is granted or revoked
+ * only the entries of the owner and subject are evicted.  If the subject is a group, then the privileges of all
+ * its members change, so nothing is evicted and the caller flushes the whole cache.  If the subject is GrouperAll, all entries of the owner are evicted.
+ * The keys are indexed by owner and by subject when they are put (so put and flush these caches through this class),
+ * so evicting does not scan the cache.
+ *
+ * set security.privilegeCache.fineGrainedInvalidation = false in grouper.properties to always flush the whole cache
+ * </pre>
+ */
+public class PrivilegeCacheEviction {
+
+  /**
+   * if only the entries of the owner and subject should be evicted
+   * @return true if fine grained
+   */
+  public static boolean fineGrainedInvalidation() {
+    return GrouperConfig.retrieveConfig().propertyValueBoolean("security.privilegeCache.fineGrainedInvalidation", true);
+  }
+
+  /**
+   * if privileges of this subject affect other subjects, i.e. it is a group and the members inherit the privileges
+   * @param subject
+   * @return true if a group
+   */
+  public static boolean subjectIsGroup(Subject subject) {
+    return subject != null && StringUtils.equals(GrouperSourceAdapter.groupSourceId(), subject.getSourceId());
+  }
+
+  /**
+   * if the subject is GrouperAll, i.e. the privilege applies to everyone
+   * @param subject
+   * @return true if all
+   */
+  public static boolean subjectIsAll(Subject subject) {
+    return subject != null && SubjectHelper.eq(SubjectFinder.findAllSubject(), subject);
+  }
+
+  /**
+   * a privilege of a subject on an owner changed
+   * @param cacheName
+   * @param ownerId
+   * @param subject or null if all subjects of the owner are affected
+   * @return false if nothing was evicted and the caller needs to flush the whole cache
+   */
+  public static boolean evictOwnerSubject(String cacheName, String ownerId, Subject subject) {
+    if (!fineGrainedInvalidation() || subjectIsGroup(subject)) {
+      return false;
+    }
+    if (subject == null) {
+      evict(cacheName, ownerId, null, null);
+      return true;
+    }
+    return evictOwnerSubject(cacheName, ownerId, subject.getSourceId(), subject.getId());
+  }
+
+  /**
+   * a privilege of a subject on an owner changed, e.g. from a change log entry
+   * @param cacheName
+   * @param ownerId
+   * @param sourceId
+   * @param subjectId
+   * @return false if nothing was evicted and the caller needs to flush the whole cache
+   */
+  public static boolean evictOwnerSubject(String cacheName, String ownerId, String sourceId, String subjectId) {
+    if (!fineGrainedInvalidation() || StringUtils.equals(GrouperSourceAdapter.groupSourceId(), sourceId)) {
+      return false;
+    }
+    Subject allSubject = SubjectFinder.findAllSubject();
+    if (StringUtils.equals(allSubject.getSourceId(), sourceId) && StringUtils.equals(allSubject.getId(), subjectId)) {
+      evict(cacheName, ownerId, null, null);
+    } else {
+      evict(cacheName, ownerId, sourceId, subjectId);
+    }
+    return true;
+  }
+
+  /**
+   * the privileges of an owner changed for some or all subjects
+   * @param cacheName
+   * @param ownerId
+   * @return false if nothing was evicted and the caller needs to flush the whole cache
+   */
+  public static boolean evictOwner(String cacheName, String ownerId) {
+    return evictOwnerSubject(cacheName, ownerId, null);
+  }
+
+  /**
+   * the privileges of a subject changed on some or all owners
+   * @param cacheName
+   * @param subject
+   * @return false if nothing was evicted and the caller needs to flush the whole cache
+   */
+  public static boolean evictSubject(String cacheName, Subject subject) {
+    if (!fineGrainedInvalidation() || subjectIsGroup(subject) || subjectIsAll(subject)) {
+      return false;
+    }
+    evict(cacheName, null, subject.getSourceId(), subject.getId());
+    return true;
+  }
+
+  /**
+   * the privileges of a subject changed on some or all owners, e.g. from a membership change log entry
+   * since the subject gets or loses the privileges of the group
+   * @param cacheName
+   * @param sourceId
+   * @param subjectId
+   * @return false if nothing was evicted and the caller needs to flush the whole cache
+   */
+  public static boolean evictSubject(String cacheName, String sourceId, String subjectId) {
+    if (!fineGrainedInvalidation() || StringUtils.isBlank(sourceId) || StringUtils.isBlank(subjectId)
+        || StringUtils.equals(GrouperSourceAdapter.groupSourceId(), sourceId)) {
+      return false;
+    }
+    Subject allSubject = SubjectFinder.findAllSubject();
+    if (StringUtils.equals(allSubject.getSourceId(), sourceId) && StringUtils.equals(allSubject.getId(), subjectId)) {
+      return false;
+    }
+    evict(cacheName, null, sourceId, subjectId);
+    return true;
+  }
+
+  /** index of the keys of each privilege cache, by cache name */
+  private static ConcurrentMap<String, PrivilegeCacheIndex> privilegeCacheIndexes = 
+    new ConcurrentHashMap<String, PrivilegeCacheIndex>();
+  
+  /**
+   * get or create the index of a privilege cache
+   * @param cacheName
+   * @return the index
+   */
+  private static PrivilegeCacheIndex privilegeCacheIndex(String cacheName) {
+    Cache cache = EhcacheController.ehcacheController().getCache(cacheName);
+    PrivilegeCacheIndex privilegeCacheIndex = privilegeCacheIndexes.get(cacheName);
+    //if the cache was recreated, the keys in the index are gone
+    if (privilegeCacheIndex == null || privilegeCacheIndex.cache != cache) {
+      synchronized (PrivilegeCacheEviction.class) {
+        privilegeCacheIndex = privilegeCacheIndexes.get(cacheName);
+        if (privilegeCacheIndex == null || privilegeCacheIndex.cache != cache) {
+          cache.flush();
+          privilegeCacheIndex = new PrivilegeCacheIndex(cache);
+          privilegeCacheIndexes.put(cacheName, privilegeCacheIndex);
+        }
+      }
+    }
+    return privilegeCacheIndex;
+  }
+  
+  /**
+   * put an entry in a privilege cache.  the key starts with the owner id and ends with the 
+   * subject source id, subject id, and privilege
+   * @param cacheName
+   * @param multiKey
+   * @param value
+   */
+  public static void put(String cacheName, MultiKey multiKey, Object value) {
+    PrivilegeCacheIndex privilegeCacheIndex = privilegeCacheIndex(cacheName);
+    
+    //keys which ehcache expired or evicted are still in the index, start over if there are too many
+    if (privilegeCacheIndex.keyCount.get() >= privilegeCacheIndex.maxKeys) {
+      privilegeCacheIndex.flush();
+    }
+    
+    privilegeCacheIndex.readWriteLock.readLock().lock();
+    try {
+      privilegeCacheIndex.index(multiKey);
+      privilegeCacheIndex.cache.put(new Element(multiKey, value));
+    } finally {
+      privilegeCacheIndex.readWriteLock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * flush a privilege cache and its index
+   * @param cacheName
+   */
+  public static void flush(String cacheName) {
+    privilegeCacheIndex(cacheName).flush();
+  }
+  
+  /**
+   * remove the keys which match
+   * @param cacheName
+   * @param ownerId null for any owner
+   * @param sourceId null for any subject
+   * @param subjectId null for any subject
+   */
+  private static void evict(String cacheName, String ownerId, String sourceId, String subjectId) {
+    privilegeCacheIndex(cacheName).evict(ownerId, sourceId == null ? null : new MultiKey(sourceId, subjectId));
+  }
+  
+  /**
+   * keys of a privilege cache by owner id and by subject.  keys are added and the entry put in the cache 
+   * under the read lock, and evicted or flushed under the write lock, so an entry is not put in the 
+   * cache without its key in the index.  keys of entries which ehcache expires or evicts stay in the index
+   * until they are evicted here or the index is flushed
+   */
+  private static class PrivilegeCacheIndex {
+    
+    /** the cache */
+    private final Cache cache;
+    
+    /** when there are this many keys in the index, flush */
+    private final int maxKeys;
+    
+    /** number of keys in the index */
+    private final AtomicInteger keyCount = new AtomicInteger();
+    
+    /** keys by owner id */
+    private final ConcurrentMap<String, Set<MultiKey>> keysByOwnerId = new ConcurrentHashMap<String, Set<MultiKey>>();
+    
+    /** keys by multikey of subject source id and subject id */
+    private final ConcurrentMap<MultiKey, Set<MultiKey>> keysBySubject = new ConcurrentHashMap<MultiKey, Set<MultiKey>>();
+    
+    /** read lock to put, write lock to evict or flush */
+    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    
+    /**
+     * @param theCache
+     */
+    private PrivilegeCacheIndex(Cache theCache) {
+      this.cache = theCache;
+      int maxElementsInMemory = theCache.getCacheConfiguration().getMaxElementsInMemory();
+      this.maxKeys = maxElementsInMemory > 0 ? Math.max(1000, 2 * maxElementsInMemory) : 100000;
+    }
+
+    /**
+     * get or create the set of keys
+     * @param <K>
+     * @param keysMap
+     * @param key
+     * @return the set
+     */
+    private static <K> Set<MultiKey> keys(ConcurrentMap<K, Set<MultiKey>> keysMap, K key) {
+      Set<MultiKey> keys = keysMap.get(key);
+      if (keys == null) {
+        keys = Collections.newSetFromMap(new ConcurrentHashMap<MultiKey, Boolean>());
+        Set<MultiKey> existingKeys = keysMap.putIfAbsent(key, keys);
+        if (existingKeys != null) {
+          keys = existingKeys;
+        }
+      }
+      return keys;
+    }
+    
+    /**
+     * subject part of a key, the source id and subject id before the privilege at the end
+     * @param multiKey
+     * @return the subject multikey
+     */
+    private static MultiKey subjectKey(MultiKey multiKey) {
+      int size = multiKey.size();
+      return new MultiKey(multiKey.getKey(size - 3), multiKey.getKey(size - 2));
+    }
+    
+    /**
+     * add a key to the index, call this in the read lock
+     * @param multiKey
+     */
+    private void index(MultiKey multiKey) {
+      if (multiKey.size() < 4) {
+        throw new RuntimeException("Privilege cache key needs an owner, subject, and privilege: " + multiKey);
+      }
+      if (keys(this.keysByOwnerId, (String)multiKey.getKey(0)).add(multiKey)) {
+        this.keyCount.incrementAndGet();
+      }
+      keys(this.keysBySubject, subjectKey(multiKey)).add(multiKey);
+    }
+    
+    /**
+     * remove the entries of an owner and/or subject from the cache and the index
+     * @param ownerId null for any owner
+     * @param subjectKey null for any subject
+     */
+    private void evict(String ownerId, MultiKey subjectKey) {
+      this.readWriteLock.writeLock().lock();
+      try {
+        Collection<MultiKey> multiKeys = null;
+        if (subjectKey == null) {
+          multiKeys = this.keysByOwnerId.get(ownerId);
+        } else if (ownerId == null) {
+          multiKeys = this.keysBySubject.get(subjectKey);
+        } else {
+          //look at the smaller set
+          Set<MultiKey> ownerKeys = this.keysByOwnerId.get(ownerId);
+          Set<MultiKey> subjectKeys = this.keysBySubject.get(subjectKey);
+          if (ownerKeys != null && subjectKeys != null) {
+            multiKeys = new ArrayList<MultiKey>();
+            boolean ownerSmaller = ownerKeys.size() < subjectKeys.size();
+            for (MultiKey multiKey : ownerSmaller ? ownerKeys : subjectKeys) {
+              if (ownerSmaller ? subjectKey.equals(subjectKey(multiKey)) : ownerId.equals(multiKey.getKey(0))) {
+                multiKeys.add(multiKey);
+              }
+            }
+          }
+        }
+        if (multiKeys == null) {
+          return;
+        }
+        for (MultiKey multiKey : new ArrayList<MultiKey>(multiKeys)) {
+          this.cache.remove(multiKey);
+          this.unindex(multiKey);
+        }
+      } finally {
+        this.readWriteLock.writeLock().unlock();
+      }
+    }
+    
+    /**
+     * remove a key from the index, call this in the write lock
+     * @param multiKey
+     */
+    private void unindex(MultiKey multiKey) {
+      String ownerId = (String)multiKey.getKey(0);
+      Set<MultiKey> ownerKeys = this.keysByOwnerId.get(ownerId);
+      if (ownerKeys != null && ownerKeys.remove(multiKey)) {
+        this.keyCount.decrementAndGet();
+        if (ownerKeys.isEmpty()) {
+          this.keysByOwnerId.remove(ownerId);
+        }
+      }
+      MultiKey subjectKey = subjectKey(multiKey);
+      Set<MultiKey> subjectKeys = this.keysBySubject.get(subjectKey);
+      if (subjectKeys != null && subjectKeys.remove(multiKey) && subjectKeys.isEmpty()) {
+        this.keysBySubject.remove(subjectKey);
+      }
+    }
+    
+    /**
+     * flush the cache and the index
+     */
+    private void flush() {
+      this.readWriteLock.writeLock().lock();
+      try {
+        this.cache.flush();
+        this.keysByOwnerId.clear();
+        this.keysBySubject.clear();
+        this.keyCount.set(0);
+      } finally {
+        this.readWriteLock.writeLock().unlock();
+      }
+    }
+  }
+}
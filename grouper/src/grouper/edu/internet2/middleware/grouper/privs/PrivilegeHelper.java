@@ -56,7 +56,6 @@ import edu.internet2.middleware.grouper.SubjectFinder;
 import edu.internet2.middleware.grouper.attr.AttributeDef;
 import edu.internet2.middleware.grouper.attr.assign.AttributeAssign;
 import edu.internet2.middleware.grouper.attr.assign.AttributeAssignType;
-import edu.internet2.middleware.grouper.cache.EhcacheController;
 import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.exception.AttributeDefNotFoundException;
 import edu.internet2.middleware.grouper.exception.GroupNotFoundException;
@@ -107,9 +106,9 @@ public class PrivilegeHelper {
    */
   public static void flushCache() {
     WheelCache.flush();
-    EhcacheController.ehcacheController().getCache(CachingAccessResolver.CACHE_HASPRIV).flush();
-    EhcacheController.ehcacheController().getCache(CachingNamingResolver.CACHE_HASPRIV).flush();
-    EhcacheController.ehcacheController().getCache(CachingAttrDefResolver.CACHE_HASPRIV).flush();
+    PrivilegeCacheEviction.flush(CachingAccessResolver.CACHE_HASPRIV);
+    PrivilegeCacheEviction.flush(CachingNamingResolver.CACHE_HASPRIV);
+    PrivilegeCacheEviction.flush(CachingAttrDefResolver.CACHE_HASPRIV);
   }
   
   /**
@@ -21,6 +21,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.transaction.Synchronization;
 
 import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.commons.lang.StringUtils;
@@ -34,10 +42,12 @@ import edu.internet2.middleware.grouper.GrouperSession;
 import edu.internet2.middleware.grouper.Stem;
 import edu.internet2.middleware.grouper.attr.AttributeDefName;
 import edu.internet2.middleware.grouper.attr.assign.AttributeAssign;
+import edu.internet2.middleware.grouper.attr.value.AttributeAssignValue;
 import edu.internet2.middleware.grouper.attr.value.AttributeAssignValueContainer;
 import edu.internet2.middleware.grouper.cache.GrouperCache;
 import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.exception.GrouperSessionException;
+import edu.internet2.middleware.grouper.hibernate.HibernateSession;
 import edu.internet2.middleware.grouper.hooks.examples.GrouperAttributeAssignValueRulesConfigHook;
 import edu.internet2.middleware.grouper.internal.dao.QueryOptions;
 import edu.internet2.middleware.grouper.misc.GrouperCheckConfig;
@@ -59,13 +69,45 @@ public class RuleEngine {
    */
   static long ruleFirings = 0;
   
-  /** cached rule definitions */
-  static GrouperCache<Boolean, RuleEngine> ruleEngineCache = 
-    new GrouperCache<Boolean, RuleEngine>(RuleEngine.class.getName() + ".ruleEngine", 100, false, 5*60, 5*60, false);
+  /** 
+   * current rule definitions.  this is not changed once it is used, when rules change a new engine
+   * is made and replaces this one, so callers never wait for a refresh
+   */
+  private static volatile RuleEngine currentRuleEngine = null;
+  
+  /** ids of attribute assigns or values of rules which changed since the current engine was made */
+  private static Map<String, Boolean> changedAttributeAssignIds = new ConcurrentHashMap<String, Boolean>();
+  
+  /** true if a thread is refreshing the engine */
+  private static AtomicBoolean refreshing = new AtomicBoolean(false);
+  
+  /** incremented each time a rule change is committed */
+  private static AtomicLong ruleChangeSequence = new AtomicLong();
+  
+  /** the rule change sequence of the last change which is in the current engine */
+  private static AtomicLong refreshedRuleChangeSequence = new AtomicLong();
+  
+  /** the rule change sequence of the last change this thread committed, so it can see its own change */
+  private static ThreadLocal<Long> threadLocalRuleChangeSequence = new ThreadLocal<Long>();
+  
+  /** notified when a refresh is done */
+  private static final Object refreshMonitor = new Object();
+  
+  /** millis since 1970 that all rules were last loaded */
+  private static volatile long lastFullRefreshMillis = -1;
+  
+  /** thread which reloads all rules in the background */
+  private static ExecutorService refreshExecutorService = null;
   
   /** rule definitions */
   private Set<RuleDefinition> ruleDefinitions = new HashSet<RuleDefinition>();
   
+  /** 
+   * rule type attribute assign id by the id of the type assign, the attribute assigns on it, 
+   * and the values, so changes can be found in the engine
+   */
+  private Map<String, String> typeAssignIdByRelatedId = new HashMap<String, String>();
+  
   /**
    * rule definitions
    * @return the ruleDefinitions
@@ -192,50 +234,376 @@ public class RuleEngine {
   }
 
   /**
-   * 
+   * <pre>
+   * all the rule definitions, cached.  rules which changed are reloaded and swapped in by a background 
+   * thread while callers keep using the current engine.  every rules.engine.fullRefreshSeconds all rules
+   * are reloaded in the background in case changes were missed.  a thread which changed a rule waits
+   * (up to rules.engine.refreshWaitMillis) for its own change to be in the engine
+   * </pre>
    * @return all the rule definitions, cached
    */
   public static RuleEngine ruleEngine() {
-    RuleEngine ruleEngine = ruleEngineCache.get(Boolean.TRUE);
+    RuleEngine ruleEngine = currentRuleEngine;
     
     if (ruleEngine == null) {
     
+      //there is nothing to use yet, so wait for the first load
       synchronized (RuleEngine.class) {
-        ruleEngine = ruleEngineCache.get(Boolean.TRUE);
+        ruleEngine = currentRuleEngine;
         if (ruleEngine == null) {
           
+          changedAttributeAssignIds.clear();
+          long theRuleChangeSequence = ruleChangeSequence.get();
           GrouperSession grouperSession = GrouperSession.staticGrouperSession().internal_getRootSession();
-          ruleEngine = (RuleEngine)GrouperSession.callbackGrouperSession(grouperSession, new GrouperSessionHandler() {
+          ruleEngine = loadAllRules(grouperSession, null);
+          lastFullRefreshMillis = System.currentTimeMillis();
+          currentRuleEngine = ruleEngine;
+          refreshedRuleChangeSequence(theRuleChangeSequence);
+        }
+      }
+      threadLocalRuleChangeSequence.remove();
+      return ruleEngine;
+    }
+    
+    boolean fullRefreshDue = System.currentTimeMillis() - lastFullRefreshMillis 
+      > GrouperConfig.retrieveConfig().propertyValueInt("rules.engine.fullRefreshSeconds", 300) * 1000L;
+    
+    if (fullRefreshDue || changedAttributeAssignIds.size() > 0) {
+      refreshInBackground(fullRefreshDue);
+    }
+    
+    //if this thread changed a rule, it should see the change
+    Long theRuleChangeSequence = threadLocalRuleChangeSequence.get();
+    if (theRuleChangeSequence != null) {
+      threadLocalRuleChangeSequence.remove();
+      waitForRefresh(theRuleChangeSequence);
+      RuleEngine refreshedRuleEngine = currentRuleEngine;
+      if (refreshedRuleEngine != null) {
+        ruleEngine = refreshedRuleEngine;
+      }
+    }
+    
+    return ruleEngine;
+    
+  }
+
+  /**
+   * reload the changed rules, or all rules, in the background if not already refreshing
+   * @param fullRefresh true to reload all rules
+   */
+  private static void refreshInBackground(final boolean fullRefresh) {
+    
+    //only one thread refreshes at once
+    if (!refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    
+    if (fullRefresh) {
+      lastFullRefreshMillis = System.currentTimeMillis();
+    }
+
+    boolean refreshingInBackground = false;
+    try {
+      refreshExecutorService().execute(new Runnable() {
+  
+        public void run() {
+          GrouperSession grouperSession = null;
+          try {
+            grouperSession = GrouperSession.startRootSession(false);
             
-            public Object callback(GrouperSession grouperSession) throws GrouperSessionException {
-              Map<AttributeAssign, Set<AttributeAssignValueContainer>> attributeAssignValueContainers 
-                = allRulesAttributeAssignValueContainers(null);
+            //changes committed from now on might not be in the new engine
+            long theRuleChangeSequence = ruleChangeSequence.get();
             
-              RuleEngine newEngine = new RuleEngine();
-              Set<RuleDefinition> newDefinitions = newEngine.getRuleDefinitions();
+            if (fullRefresh) {
               
-              for (Set<AttributeAssignValueContainer> attributeAssignValueContainersSet : 
-                  GrouperUtil.nonNull(attributeAssignValueContainers).values()) {
-                RuleDefinition ruleDefinition = new RuleDefinition(attributeAssignValueContainersSet);
-                
-                //dont validate, already validated
-                newDefinitions.add(ruleDefinition);
-                
+              for (String changedAttributeAssignId : new HashSet<String>(changedAttributeAssignIds.keySet())) {
+                changedAttributeAssignIds.remove(changedAttributeAssignId);
               }
               
-              newEngine.indexData();
-              ruleEngineCache.put(Boolean.TRUE, newEngine);
-              return newEngine;
+              RuleEngine newEngine = loadAllRules(grouperSession, new QueryOptions().secondLevelCache(false));
+              
+              //dont replace if cleared in the meantime
+              if (currentRuleEngine != null) {
+                currentRuleEngine = newEngine;
+                refreshedRuleChangeSequence(theRuleChangeSequence);
+              }
+            } else {
+              RuleEngine oldEngine = currentRuleEngine;
+              if (oldEngine != null && refreshChangedRules(oldEngine, grouperSession) != null) {
+                refreshedRuleChangeSequence(theRuleChangeSequence);
+              }
             }
-          });
-          
+          } catch (RuntimeException re) {
+            LOG.error("Error reloading rules", re);
+          } finally {
+            GrouperSession.stopQuietly(grouperSession);
+            refreshing.set(false);
+            synchronized (refreshMonitor) {
+              refreshMonitor.notifyAll();
+            }
+          }
+        }
+      });
+      refreshingInBackground = true;
+    } finally {
+      if (!refreshingInBackground) {
+        refreshing.set(false);
+      }
+    }
+  }
+  
+  /**
+   * note that the rule changes up to this sequence are in the current engine
+   * @param theRuleChangeSequence
+   */
+  private static void refreshedRuleChangeSequence(long theRuleChangeSequence) {
+    while (true) {
+      long current = refreshedRuleChangeSequence.get();
+      if (current >= theRuleChangeSequence 
+          || refreshedRuleChangeSequence.compareAndSet(current, theRuleChangeSequence)) {
+        return;
+      }
+    }
+  }
+  
+  /**
+   * wait for the rule changes up to this sequence to be in the current engine.  Only a thread which
+   * changed a rule waits, so it sees its own change
+   * @param theRuleChangeSequence
+   */
+  private static void waitForRefresh(long theRuleChangeSequence) {
+    long waitMillis = GrouperConfig.retrieveConfig().propertyValueInt("rules.engine.refreshWaitMillis", 10000);
+    long endNanos = System.nanoTime() + waitMillis * 1000000L;
+    synchronized (refreshMonitor) {
+      while (refreshedRuleChangeSequence.get() < theRuleChangeSequence) {
+        long remainingMillis = (endNanos - System.nanoTime()) / 1000000L;
+        if (remainingMillis <= 0) {
+          LOG.warn("Rule changes are not in the rules engine yet, using the current rules");
+          return;
+        }
+        
+        //in case the refresh was done before the change, or failed
+        refreshInBackground(false);
+        try {
+          refreshMonitor.wait(Math.min(remainingMillis, 100));
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
         }
       }
+    }
+  }
+
+  /**
+   * thread which reloads all rules in the background
+   * @return the executor service
+   */
+  private static synchronized ExecutorService refreshExecutorService() {
+    if (refreshExecutorService == null) {
+      refreshExecutorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        
+        /** make threads which dont keep the JVM up */
+        private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        
+        public Thread newThread(Runnable runnable) {
+          Thread thread = this.threadFactory.newThread(runnable);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return refreshExecutorService;
+  }
+
+  /**
+   * load all rules into a new engine
+   * @param grouperSession
+   * @param queryOptions 
+   * @return the engine
+   */
+  private static RuleEngine loadAllRules(GrouperSession grouperSession, final QueryOptions queryOptions) {
+    return (RuleEngine)GrouperSession.callbackGrouperSession(grouperSession, new GrouperSessionHandler() {
       
+      public Object callback(GrouperSession grouperSession) throws GrouperSessionException {
+        Map<AttributeAssign, Set<AttributeAssignValueContainer>> attributeAssignValueContainers 
+          = allRulesAttributeAssignValueContainers(queryOptions);
+      
+        RuleEngine newEngine = new RuleEngine();
+        
+        for (Set<AttributeAssignValueContainer> attributeAssignValueContainersSet : 
+            GrouperUtil.nonNull(attributeAssignValueContainers).values()) {
+          
+          //dont validate, already validated
+          newEngine.addRuleDefinition(attributeAssignValueContainersSet);
+          
+        }
+        
+        newEngine.indexData();
+        return newEngine;
+      }
+    });
+  }
+
+  /**
+   * make a new engine from the current one, with the rules which changed reloaded from the database
+   * @param oldEngine
+   * @param grouperSession
+   * @return the new engine, or null if there was an error
+   */
+  private static RuleEngine refreshChangedRules(final RuleEngine oldEngine, GrouperSession grouperSession) {
+    
+    final Set<String> changedIds = new HashSet<String>(changedAttributeAssignIds.keySet());
+    for (String changedId : changedIds) {
+      changedAttributeAssignIds.remove(changedId);
     }
     
-    return ruleEngine;
+    //another refresh already got them
+    if (changedIds.size() == 0) {
+      return oldEngine;
+    }
+    
+    RuleEngine newEngine = null;
+    
+    try {
+      newEngine = (RuleEngine)GrouperSession.callbackGrouperSession(grouperSession, new GrouperSessionHandler() {
+        
+        public Object callback(GrouperSession grouperSession) throws GrouperSessionException {
+          
+          Set<String> typeAssignIds = new HashSet<String>();
+          for (String changedId : changedIds) {
+            typeAssignIds.add(oldEngine.typeAssignIdOfChangedId(changedId));
+          }
+          
+          RuleEngine theNewEngine = new RuleEngine();
+          
+          //keep the rules which didnt change
+          for (RuleDefinition ruleDefinition : oldEngine.getRuleDefinitions()) {
+            if (!typeAssignIds.contains(ruleDefinition.getAttributeAssignType().getId())) {
+              theNewEngine.getRuleDefinitions().add(ruleDefinition);
+            }
+          }
+          for (Map.Entry<String, String> entry : oldEngine.typeAssignIdByRelatedId.entrySet()) {
+            if (!typeAssignIds.contains(entry.getValue())) {
+              theNewEngine.typeAssignIdByRelatedId.put(entry.getKey(), entry.getValue());
+            }
+          }
+          
+          //reload the ones which did, if they are still rules
+          String ruleAttributeDefNameId = RuleUtils.ruleAttributeDefName().getId();
+          for (String typeAssignId : typeAssignIds) {
+            Set<AttributeAssignValueContainer> attributeAssignValueContainers = GrouperDAOFactory.getFactory()
+              .getAttributeAssign().findByAssignTypeId(typeAssignId);
+            if (GrouperUtil.length(attributeAssignValueContainers) > 0 && StringUtils.equals(ruleAttributeDefNameId, 
+                attributeAssignValueContainers.iterator().next().getAttributeTypeAssign().getAttributeDefNameId())) {
+              theNewEngine.addRuleDefinition(attributeAssignValueContainers);
+            }
+          }
+          
+          theNewEngine.indexData();
+          return theNewEngine;
+        }
+      });
+    } catch (RuntimeException re) {
+      //try again next time
+      for (String changedId : changedIds) {
+        changedAttributeAssignIds.put(changedId, Boolean.TRUE);
+      }
+      LOG.error("Error refreshing rules: " + changedIds, re);
+      return null;
+    }
+    
+    //dont replace if cleared in the meantime
+    if (currentRuleEngine != null) {
+      currentRuleEngine = newEngine;
+    }
+    return newEngine;
+  }
+
+  /**
+   * note that a rule changed so it is reloaded the next time the engine is used
+   * @param attributeAssignId id of the rule type attribute assign, an attribute assign on it, 
+   * or an attribute assign value
+   */
+  public static void ruleChanged(final String attributeAssignId) {
+    if (StringUtils.isBlank(attributeAssignId)) {
+      return;
+    }
+    
+    //the refresh is in another thread, so it cant see the change until it is committed
+    HibernateSession hibernateSession = HibernateSession._internal_hibernateSession();
+    if (hibernateSession != null && hibernateSession.isTransactionActive()) {
+      hibernateSession.getSession().getTransaction().registerSynchronization(new Synchronization() {
+
+        public void beforeCompletion() {
+        }
+
+        public void afterCompletion(int status) {
+          //if rolled back, refreshing it doesnt hurt
+          ruleChangeCommitted(attributeAssignId);
+        }
+      });
+    } else {
+      ruleChangeCommitted(attributeAssignId);
+    }
+  }
+
+  /**
+   * note that a committed rule changed so it is reloaded in the background, and so this thread
+   * sees the change the next time it uses the engine
+   * @param attributeAssignId
+   */
+  private static void ruleChangeCommitted(String attributeAssignId) {
+    //add the id before incrementing, so a refresh which sees the sequence sees the id
+    changedAttributeAssignIds.put(attributeAssignId, Boolean.TRUE);
+    threadLocalRuleChangeSequence.set(ruleChangeSequence.incrementAndGet());
+    if (currentRuleEngine != null) {
+      refreshInBackground(false);
+    }
+  }
+
+  /**
+   * find the rule type attribute assign id of a changed id
+   * @param changedId id of the rule type attribute assign, an attribute assign on it, or an attribute assign value
+   * @return the type attribute assign id, or the changed id if it cant be found
+   */
+  private String typeAssignIdOfChangedId(String changedId) {
+    String typeAssignId = this.typeAssignIdByRelatedId.get(changedId);
+    if (typeAssignId != null) {
+      return typeAssignId;
+    }
+    
+    //not in the engine yet, see what it is assigned to
+    AttributeAssign attributeAssign = GrouperDAOFactory.getFactory().getAttributeAssign().findById(changedId, false, false);
+    if (attributeAssign == null) {
+      AttributeAssignValue attributeAssignValue = GrouperDAOFactory.getFactory().getAttributeAssignValue().findById(changedId, false);
+      if (attributeAssignValue != null) {
+        attributeAssign = GrouperDAOFactory.getFactory().getAttributeAssign().findById(
+            attributeAssignValue.getAttributeAssignId(), false, false);
+      }
+    }
     
+    //deleted
+    if (attributeAssign == null) {
+      return changedId;
+    }
+    
+    return StringUtils.defaultIfEmpty(attributeAssign.getOwnerAttributeAssignId(), attributeAssign.getId());
+  }
+
+  /**
+   * add a rule definition to this engine, before it is indexed
+   * @param attributeAssignValueContainers
+   */
+  private void addRuleDefinition(Set<AttributeAssignValueContainer> attributeAssignValueContainers) {
+    RuleDefinition ruleDefinition = new RuleDefinition(attributeAssignValueContainers);
+    this.ruleDefinitions.add(ruleDefinition);
+    
+    String typeAssignId = ruleDefinition.getAttributeAssignType().getId();
+    this.typeAssignIdByRelatedId.put(typeAssignId, typeAssignId);
+    for (AttributeAssignValueContainer attributeAssignValueContainer : attributeAssignValueContainers) {
+      this.typeAssignIdByRelatedId.put(attributeAssignValueContainer.getAttributeValueAssign().getId(), typeAssignId);
+      this.typeAssignIdByRelatedId.put(attributeAssignValueContainer.getAttributeAssignValue().getId(), typeAssignId);
+    }
   }
 
   /** map of checks to sets of relevant rules */
@@ -582,10 +950,13 @@ public class RuleEngine {
   }
   
   /**
-   * clear this for testing
+   * clear this for testing, the next call waits for all rules to load
    */
   public static void clearRuleEngineCache() {
-    ruleEngineCache.clear();
+    synchronized (RuleEngine.class) {
+      currentRuleEngine = null;
+      changedAttributeAssignIds.clear();
+    }
   }
   
   /**
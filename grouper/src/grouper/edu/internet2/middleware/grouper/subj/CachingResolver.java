@@ -33,11 +33,13 @@
 package edu.internet2.middleware.grouper.subj;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.commons.lang.StringUtils;
@@ -45,7 +47,10 @@ import org.apache.commons.logging.Log;
 
 import edu.internet2.middleware.grouper.GrouperSession;
 import edu.internet2.middleware.grouper.GrouperSourceAdapter;
+import edu.internet2.middleware.grouper.SubjectFinder;
 import edu.internet2.middleware.grouper.cache.GrouperCache;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
+import edu.internet2.middleware.grouper.externalSubjects.ExternalSubject;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
 import edu.internet2.middleware.subject.SearchPageResult;
 import edu.internet2.middleware.subject.Source;
@@ -91,6 +96,24 @@ public class CachingResolver extends SubjectResolverDecorator {
    */
   static GrouperCache<MultiKey, Subject> findByIdOrIdentifierCache = new GrouperCache<MultiKey, Subject>(CachingResolver.class.getName() + ".FindByIdOrIdentifier", 5000, false, 30, 120, false);
 
+  /**
+   * cache of id or identifier, to the multikeys (session subject, lookup type, source, etc) of lookups
+   * which did not find a subject, so departed subjects dont go back to the source each time.  this is 
+   * keyed by id or identifier so when a member with that subject id or identifier is added or changed 
+   * in the change log, or when a group, member, or external subject is created in this JVM, the entry 
+   * is removed directly
+   */
+  static GrouperCache<String, Set<MultiKey>> notFoundCache = new GrouperCache<String, Set<MultiKey>>(CachingResolver.class.getName() + ".NotFound", 10000, false, 120, 120, false);
+
+  /** lookup type in the not found cache for find by id */
+  private static final String NOT_FOUND_ID = "id";
+
+  /** lookup type in the not found cache for find by identifier */
+  private static final String NOT_FOUND_IDENTIFIER = "identifier";
+
+  /** lookup type in the not found cache for find by id or identifier */
+  private static final String NOT_FOUND_ID_OR_IDENTIFIER = "idOrIdentifier";
+
   /** logger */
   private static final Log LOG = GrouperUtil.getLog(CachingResolver.class);
 
@@ -101,6 +124,137 @@ public class CachingResolver extends SubjectResolverDecorator {
     findCache.clear();
     findAllCache.clear();
     findByIdentifierCache.clear();
+    notFoundCache.clear();
+  }
+
+  /**
+   * if subjects which are not found should be cached
+   * @return true if enabled
+   */
+  private static boolean notFoundCacheEnabled() {
+    return GrouperConfig.retrieveConfig().propertyValueBoolean("subjects.notFoundCache.enabled", false);
+  }
+
+  /**
+   * subjects in sources which grouper manages itself (groups, entities, external subjects, internal 
+   * subjects) are often looked up right before they are created, so lookups in those sources are not
+   * remembered as not found
+   * @param source or null for all sources
+   * @return true if a lookup in the source can be remembered as not found
+   */
+  private static boolean notFoundCacheSource(String source) {
+    if (source == null) {
+      return true;
+    }
+    if (StringUtils.equals(source, SubjectFinder.internal_getGSA().getId())
+        || StringUtils.equals(source, ExternalSubject.sourceId())
+        || StringUtils.equals(source, InternalSourceAdapter.ID)) {
+      return false;
+    }
+    Source entitySourceAdapter = SubjectFinder.internal_getEntitySourceAdapter(false);
+    return entitySourceAdapter == null || !StringUtils.equals(source, entitySourceAdapter.getId());
+  }
+
+  /**
+   * lookup in the set of the id or identifier in the not found cache
+   * @param lookupType
+   * @param source
+   * @return the key or null if not caching
+   */
+  private static MultiKey notFoundMultiKey(String lookupType, String source) {
+    GrouperSession staticGrouperSession = GrouperSourceAdapter.internal_getSessionOrRootForSubjectFinder();
+    if (staticGrouperSession == null || !notFoundCacheEnabled() || !notFoundCacheSource(source)) {
+      return null;
+    }
+    Subject grouperSessionSubject = staticGrouperSession.getSubject();
+    return new MultiKey(new Object[]{grouperSessionSubject.getSourceId(), 
+        grouperSessionSubject.getId(), lookupType, source, GrouperSourceAdapter.searchForGroupsWithReadPrivilege()});
+  }
+
+  /**
+   * see if a subject was recently not found
+   * @param lookupType
+   * @param idOrIdentifier
+   * @param source
+   * @return true if in the not found cache
+   */
+  private boolean inNotFoundCache(String lookupType, String idOrIdentifier, String source) {
+    MultiKey multiKey = notFoundMultiKey(lookupType, source);
+    if (multiKey == null || idOrIdentifier == null) {
+      return false;
+    }
+    Set<MultiKey> multiKeys = notFoundCache.get(idOrIdentifier);
+    return multiKeys != null && multiKeys.contains(multiKey);
+  }
+
+  /**
+   * remember that a subject was not found
+   * @param lookupType
+   * @param idOrIdentifier
+   * @param source
+   */
+  private void putInNotFoundCache(String lookupType, String idOrIdentifier, String source) {
+    MultiKey multiKey = notFoundMultiKey(lookupType, source);
+    if (multiKey == null || idOrIdentifier == null) {
+      return;
+    }
+    //note, the entry expires from when the first lookup of the id or identifier was not found.
+    //if two threads add the first lookup at once, one might be lost, which is just a cache miss later
+    Set<MultiKey> multiKeys = notFoundCache.get(idOrIdentifier);
+    if (multiKeys == null) {
+      multiKeys = Collections.newSetFromMap(new ConcurrentHashMap<MultiKey, Boolean>());
+      multiKeys.add(multiKey);
+      notFoundCache.put(idOrIdentifier, multiKeys);
+    } else {
+      multiKeys.add(multiKey);
+    }
+  }
+
+  /**
+   * remember which of a batch of ids or identifiers were not found
+   * @param lookupType
+   * @param idsOrIdentifiers which were looked up
+   * @param found keyed by id or identifier
+   * @param source
+   */
+  private void putInNotFoundCache(String lookupType, Collection<String> idsOrIdentifiers, 
+      Map<String, Subject> found, String source) {
+    for (String idOrIdentifier : idsOrIdentifiers) {
+      if (!found.containsKey(idOrIdentifier)) {
+        this.putInNotFoundCache(lookupType, idOrIdentifier, source);
+      }
+    }
+  }
+
+  /**
+   * throw not found if the subject was recently not found
+   * @param lookupType
+   * @param idOrIdentifier
+   * @param source
+   * @throws SubjectNotFoundException
+   */
+  private void assertNotInNotFoundCache(String lookupType, String idOrIdentifier, String source) 
+      throws SubjectNotFoundException {
+    if (this.inNotFoundCache(lookupType, idOrIdentifier, source)) {
+      throw new SubjectNotFoundException(idOrIdentifier, "Subject not found (cached): " + idOrIdentifier 
+          + (source == null ? "" : (", source: " + source)));
+    }
+  }
+
+  /**
+   * a member, group, or external subject was added or changed, so subjects with these ids or 
+   * identifiers should be looked up again
+   * @param idsOrIdentifiers
+   */
+  public static void evictFromNotFoundCache(Collection<String> idsOrIdentifiers) {
+    if (GrouperUtil.length(idsOrIdentifiers) == 0) {
+      return;
+    }
+    for (String idOrIdentifier : idsOrIdentifiers) {
+      if (idOrIdentifier != null) {
+        notFoundCache.remove(idOrIdentifier);
+      }
+    }
   }
 
   /**
@@ -122,7 +276,13 @@ public class CachingResolver extends SubjectResolverDecorator {
   {
     Subject subj = this.getFromFindCache(id, null);
     if (subj == null) {
-      subj = super.getDecoratedResolver().find(id);
+      this.assertNotInNotFoundCache(NOT_FOUND_ID, id, null);
+      try {
+        subj = super.getDecoratedResolver().find(id);
+      } catch (SubjectNotFoundException snfe) {
+        this.putInNotFoundCache(NOT_FOUND_ID, id, null);
+        throw snfe;
+      }
       this.putInFindCache(subj);
     }
     return subj;
@@ -140,7 +300,13 @@ public class CachingResolver extends SubjectResolverDecorator {
   {
     Subject subj = this.getFromFindCache(id, source);
     if (subj == null) {
-      subj = super.getDecoratedResolver().find(id, source);
+      this.assertNotInNotFoundCache(NOT_FOUND_ID, id, source);
+      try {
+        subj = super.getDecoratedResolver().find(id, source);
+      } catch (SubjectNotFoundException snfe) {
+        this.putInNotFoundCache(NOT_FOUND_ID, id, source);
+        throw snfe;
+      }
       this.putInFindCache(subj);
     }
     return subj;
@@ -188,7 +354,13 @@ public class CachingResolver extends SubjectResolverDecorator {
   {
     Subject subj = this.getFromFindByIdentifierCache(id, null);
     if (subj == null) {
-      subj = super.getDecoratedResolver().findByIdentifier(id);
+      this.assertNotInNotFoundCache(NOT_FOUND_IDENTIFIER, id, null);
+      try {
+        subj = super.getDecoratedResolver().findByIdentifier(id);
+      } catch (SubjectNotFoundException snfe) {
+        this.putInNotFoundCache(NOT_FOUND_IDENTIFIER, id, null);
+        throw snfe;
+      }
       this.putInFindByIdentifierCache(id, subj);
     }
     return subj;
@@ -206,7 +378,13 @@ public class CachingResolver extends SubjectResolverDecorator {
   {
     Subject subj = this.getFromFindByIdentifierCache(id, source);
     if (subj == null) {
-      subj = super.getDecoratedResolver().findByIdentifier(id, source);
+      this.assertNotInNotFoundCache(NOT_FOUND_IDENTIFIER, id, source);
+      try {
+        subj = super.getDecoratedResolver().findByIdentifier(id, source);
+      } catch (SubjectNotFoundException snfe) {
+        this.putInNotFoundCache(NOT_FOUND_IDENTIFIER, id, source);
+        throw snfe;
+      }
       this.putInFindByIdentifierCache(id, subj);
     }
     return subj;
@@ -374,7 +552,13 @@ public class CachingResolver extends SubjectResolverDecorator {
       SubjectNotFoundException, SubjectNotUniqueException {
     Subject subj = this.getFromFindByIdOrIdentifierCache(id, null);
     if (subj == null) {
-      subj = super.getDecoratedResolver().findByIdOrIdentifier(id);
+      this.assertNotInNotFoundCache(NOT_FOUND_ID_OR_IDENTIFIER, id, null);
+      try {
+        subj = super.getDecoratedResolver().findByIdOrIdentifier(id);
+      } catch (SubjectNotFoundException snfe) {
+        this.putInNotFoundCache(NOT_FOUND_ID_OR_IDENTIFIER, id, null);
+        throw snfe;
+      }
       this.putInFindByIdOrIdentifierCache(id, subj);
     }
     return subj;
@@ -388,7 +572,13 @@ public class CachingResolver extends SubjectResolverDecorator {
       SubjectNotFoundException, SubjectNotUniqueException {
     Subject subj = this.getFromFindByIdOrIdentifierCache(id, source);
     if (subj == null) {
-      subj = super.getDecoratedResolver().findByIdOrIdentifier(id, source);
+      this.assertNotInNotFoundCache(NOT_FOUND_ID_OR_IDENTIFIER, id, source);
+      try {
+        subj = super.getDecoratedResolver().findByIdOrIdentifier(id, source);
+      } catch (SubjectNotFoundException snfe) {
+        this.putInNotFoundCache(NOT_FOUND_ID_OR_IDENTIFIER, id, source);
+        throw snfe;
+      }
       this.putInFindByIdOrIdentifierCache(id, subj);
     }
     return subj;
@@ -605,6 +795,10 @@ public class CachingResolver extends SubjectResolverDecorator {
    * @since   2.0.2
    */
   private void putInFindPageCache(String stemName, String query, Set<Source> sources, SearchPageResult searchPageResult) {
+    //dont cache if a source didnt finish in time, the next search might get it
+    if (searchPageResult != null && searchPageResult.isIncomplete()) {
+      return;
+    }
     GrouperSession staticGrouperSession = GrouperSourceAdapter.internal_getSessionOrRootForSubjectFinder();
     if (staticGrouperSession == null) {
       return;
@@ -750,6 +944,10 @@ public class CachingResolver extends SubjectResolverDecorator {
    * @since   2.0.2
    */
   private void putInFindPageCache(String stemName, String query, String source, SearchPageResult searchPageResult) {
+    //dont cache if a source didnt finish in time, the next search might get it
+    if (searchPageResult != null && searchPageResult.isIncomplete()) {
+      return;
+    }
     GrouperSession staticGrouperSession = GrouperSourceAdapter.internal_getSessionOrRootForSubjectFinder();
     if (staticGrouperSession == null) {
       return;
@@ -798,8 +996,10 @@ public class CachingResolver extends SubjectResolverDecorator {
     for (String identifier : identifiers) {
       Subject subject = this.getFromFindByIdentifierCache(identifier, null);
       if (subject == null) {
-        //if not found, batch these up
-        identifiersNotFoundInCache.add(identifier);
+        //if not found, batch these up, unless it was recently not found
+        if (!this.inNotFoundCache(NOT_FOUND_IDENTIFIER, identifier, null)) {
+          identifiersNotFoundInCache.add(identifier);
+        }
       } else {
         result.put(identifier, subject);
       }
@@ -809,6 +1009,8 @@ public class CachingResolver extends SubjectResolverDecorator {
     if (GrouperUtil.length(identifiersNotFoundInCache) > 0) {
       
       Map<String, Subject> nonCachedResult = super.getDecoratedResolver().findByIdentifiers(identifiersNotFoundInCache);
+
+      this.putInNotFoundCache(NOT_FOUND_IDENTIFIER, identifiersNotFoundInCache, nonCachedResult, null);
       
       for (String identifier : nonCachedResult.keySet()) {
 
@@ -837,8 +1039,10 @@ public class CachingResolver extends SubjectResolverDecorator {
     for (String identifier : identifiers) {
       Subject subject = this.getFromFindByIdentifierCache(identifier, source);
       if (subject == null) {
-        //if not found, batch these up
-        identifiersNotFoundInCache.add(identifier);
+        //if not found, batch these up, unless it was recently not found
+        if (!this.inNotFoundCache(NOT_FOUND_IDENTIFIER, identifier, source)) {
+          identifiersNotFoundInCache.add(identifier);
+        }
       } else {
         result.put(identifier, subject);
       }
@@ -848,6 +1052,8 @@ public class CachingResolver extends SubjectResolverDecorator {
     if (GrouperUtil.length(identifiersNotFoundInCache) > 0) {
       
       Map<String, Subject> nonCachedResult = super.getDecoratedResolver().findByIdentifiers(identifiersNotFoundInCache, source);
+
+      this.putInNotFoundCache(NOT_FOUND_IDENTIFIER, identifiersNotFoundInCache, nonCachedResult, source);
       
       for (String identifier : nonCachedResult.keySet()) {
 
@@ -876,8 +1082,10 @@ public class CachingResolver extends SubjectResolverDecorator {
     for (String id : ids) {
       Subject subject = this.getFromFindCache(id, null);
       if (subject == null) {
-        //if not found, batch these up
-        idsNotFoundInCache.add(id);
+        //if not found, batch these up, unless it was recently not found
+        if (!this.inNotFoundCache(NOT_FOUND_ID, id, null)) {
+          idsNotFoundInCache.add(id);
+        }
       } else {
         result.put(id, subject);
       }
@@ -888,6 +1096,8 @@ public class CachingResolver extends SubjectResolverDecorator {
 
       Map<String, Subject> nonCachedResult = super.getDecoratedResolver().findByIds(idsNotFoundInCache);
 
+      this.putInNotFoundCache(NOT_FOUND_ID, idsNotFoundInCache, nonCachedResult, null);
+
       for (Subject subject : nonCachedResult.values()) {
 
         //put each of these in the cache
@@ -916,8 +1126,10 @@ public class CachingResolver extends SubjectResolverDecorator {
     for (String id : ids) {
       Subject subject = this.getFromFindCache(id, source);
       if (subject == null) {
-        //if not found, batch these up
-        idsNotFoundInCache.add(id);
+        //if not found, batch these up, unless it was recently not found
+        if (!this.inNotFoundCache(NOT_FOUND_ID, id, source)) {
+          idsNotFoundInCache.add(id);
+        }
       } else {
         result.put(id, subject);
       }
@@ -928,6 +1140,8 @@ public class CachingResolver extends SubjectResolverDecorator {
 
       Map<String, Subject> nonCachedResult = super.getDecoratedResolver().findByIds(idsNotFoundInCache, source);
 
+      this.putInNotFoundCache(NOT_FOUND_ID, idsNotFoundInCache, nonCachedResult, source);
+
       for (Subject subject : nonCachedResult.values()) {
 
         //put each of these in the cache
@@ -958,8 +1172,10 @@ public class CachingResolver extends SubjectResolverDecorator {
     for (String idOrIdentifier : idsOrIdentifiers) {
       Subject subject = this.getFromFindByIdOrIdentifierCache(idOrIdentifier, null);
       if (subject == null) {
-        //if not found, batch these up
-        idsOrIdentifiersNotFoundInCache.add(idOrIdentifier);
+        //if not found, batch these up, unless it was recently not found
+        if (!this.inNotFoundCache(NOT_FOUND_ID_OR_IDENTIFIER, idOrIdentifier, null)) {
+          idsOrIdentifiersNotFoundInCache.add(idOrIdentifier);
+        }
       } else {
         result.put(idOrIdentifier, subject);
       }
@@ -970,6 +1186,8 @@ public class CachingResolver extends SubjectResolverDecorator {
 
       Map<String, Subject> nonCachedResult = super.getDecoratedResolver().findByIdsOrIdentifiers(idsOrIdentifiersNotFoundInCache);
 
+      this.putInNotFoundCache(NOT_FOUND_ID_OR_IDENTIFIER, idsOrIdentifiersNotFoundInCache, nonCachedResult, null);
+
       for (String idOrIdentifier : nonCachedResult.keySet()) {
 
         //put each of these in the cache
@@ -999,8 +1217,10 @@ public class CachingResolver extends SubjectResolverDecorator {
     for (String idOrIdentifier : idsOrIdentifiers) {
       Subject subject = this.getFromFindByIdOrIdentifierCache(idOrIdentifier, source);
       if (subject == null) {
-        //if not found, batch these up
-        idsOrIdentifiersNotFoundInCache.add(idOrIdentifier);
+        //if not found, batch these up, unless it was recently not found
+        if (!this.inNotFoundCache(NOT_FOUND_ID_OR_IDENTIFIER, idOrIdentifier, source)) {
+          idsOrIdentifiersNotFoundInCache.add(idOrIdentifier);
+        }
       } else {
         result.put(idOrIdentifier, subject);
       }
@@ -1011,6 +1231,8 @@ public class CachingResolver extends SubjectResolverDecorator {
 
       Map<String, Subject> nonCachedResult = super.getDecoratedResolver().findByIdsOrIdentifiers(idsOrIdentifiersNotFoundInCache, source);
 
+      this.putInNotFoundCache(NOT_FOUND_ID_OR_IDENTIFIER, idsOrIdentifiersNotFoundInCache, nonCachedResult, source);
+
       for (String idOrIdentifier : nonCachedResult.keySet()) {
 
         //put each of these in the cache
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.subj;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * <pre>
+ * counts how long the calls to a subject source take, in buckets of millis, and how many searches
+ * of the source timed out.  use this to tune the subjects.allPage.timeoutMillis settings, e.g.
+ *
+ * SourceLatencyHistogram.retrieveHistogram("jdbc").toString()
+ *
+ * jdbc: count: 1234, avg millis: 45, timeouts: 2, &lt;10ms: 200, &lt;50ms: 900, &lt;100ms: 100, ...
+ * </pre>
+ */
+public class SourceLatencyHistogram {
+
+  /** upper bound (exclusive) of each bucket in millis, the last bucket is everything else */
+  private static final long[] BUCKET_UPPER_BOUNDS_MILLIS = new long[]{10, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+  /** histogram by source id */
+  private static Map<String, SourceLatencyHistogram> histograms = new ConcurrentHashMap<String, SourceLatencyHistogram>();
+
+  /** source id */
+  private String sourceId;
+
+  /** count of calls in each bucket */
+  private AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_UPPER_BOUNDS_MILLIS.length + 1);
+
+  /** total number of calls */
+  private AtomicLong count = new AtomicLong();
+
+  /** total millis of all calls */
+  private AtomicLong totalMillis = new AtomicLong();
+
+  /** number of searches which timed out */
+  private AtomicLong timeouts = new AtomicLong();
+
+  /**
+   * @param theSourceId
+   */
+  private SourceLatencyHistogram(String theSourceId) {
+    this.sourceId = theSourceId;
+  }
+
+  /**
+   * get or create the histogram of a source
+   * @param sourceId
+   * @return the histogram
+   */
+  public static SourceLatencyHistogram retrieveHistogram(String sourceId) {
+    SourceLatencyHistogram sourceLatencyHistogram = histograms.get(sourceId);
+    if (sourceLatencyHistogram == null) {
+      synchronized (SourceLatencyHistogram.class) {
+        sourceLatencyHistogram = histograms.get(sourceId);
+        if (sourceLatencyHistogram == null) {
+          sourceLatencyHistogram = new SourceLatencyHistogram(sourceId);
+          histograms.put(sourceId, sourceLatencyHistogram);
+        }
+      }
+    }
+    return sourceLatencyHistogram;
+  }
+
+  /**
+   * histograms of all sources which have been called, by source id
+   * @return the histograms
+   */
+  public static Map<String, SourceLatencyHistogram> retrieveHistograms() {
+    return new TreeMap<String, SourceLatencyHistogram>(histograms);
+  }
+
+  /**
+   * clear all histograms, e.g. for testing
+   */
+  public static void clearHistograms() {
+    histograms.clear();
+  }
+
+  /**
+   * record how long a call to the source took
+   * @param millis
+   */
+  public void record(long millis) {
+    int bucket = 0;
+    while (bucket < BUCKET_UPPER_BOUNDS_MILLIS.length && millis >= BUCKET_UPPER_BOUNDS_MILLIS[bucket]) {
+      bucket++;
+    }
+    this.bucketCounts.incrementAndGet(bucket);
+    this.count.incrementAndGet();
+    this.totalMillis.addAndGet(millis);
+  }
+
+  /**
+   * record that a search of the source did not finish in time
+   */
+  public void recordTimeout() {
+    this.timeouts.incrementAndGet();
+  }
+
+  /**
+   * upper bound (exclusive) of each bucket in millis, there is one more bucket than this for everything else
+   * @return the bounds
+   */
+  public static long[] getBucketUpperBoundsMillis() {
+    return BUCKET_UPPER_BOUNDS_MILLIS.clone();
+  }
+
+  /**
+   * count of calls in each bucket
+   * @return the counts
+   */
+  public long[] getBucketCounts() {
+    long[] result = new long[this.bucketCounts.length()];
+    for (int i=0;i<result.length;i++) {
+      result[i] = this.bucketCounts.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * total number of calls
+   * @return the count
+   */
+  public long getCount() {
+    return this.count.get();
+  }
+
+  /**
+   * average millis of the calls
+   * @return the average
+   */
+  public long getAverageMillis() {
+    long theCount = this.count.get();
+    return theCount == 0 ? 0 : this.totalMillis.get() / theCount;
+  }
+
+  /**
+   * number of searches which did not finish in time
+   * @return the timeouts
+   */
+  public long getTimeouts() {
+    return this.timeouts.get();
+  }
+
+  /**
+   * source id
+   * @return the source id
+   */
+  public String getSourceId() {
+    return this.sourceId;
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(this.sourceId).append(": count: ").append(this.getCount())
+      .append(", avg millis: ").append(this.getAverageMillis()).append(", timeouts: ").append(this.getTimeouts());
+    long[] counts = this.getBucketCounts();
+    for (int i=0;i<counts.length;i++) {
+      if (i < BUCKET_UPPER_BOUNDS_MILLIS.length) {
+        result.append(", <").append(BUCKET_UPPER_BOUNDS_MILLIS[i]);
+      } else {
+        result.append(", >=").append(BUCKET_UPPER_BOUNDS_MILLIS[BUCKET_UPPER_BOUNDS_MILLIS.length-1]);
+      }
+      result.append("ms: ").append(counts[i]);
+    }
+    return result.toString();
+  }
+}
@@ -40,9 +40,18 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -156,22 +165,38 @@ public class SourcesXmlResolver implements SubjectResolver {
       return this.logLabel;
     }
     
+    /** source id if this searches one source, so the latency is recorded and it can time out */
+    private String sourceId;
+    
+    /**
+     * source id if this searches one source, so the latency is recorded and it can time out
+     * @return the source id
+     */
+    public String getSourceId() {
+      return this.sourceId;
+    }
+    
     /**
      * @see java.util.concurrent.Callable#call()
      */
     public final T call() throws Exception {
       
       long subStartNanos = -1;
-      if (LOG.isDebugEnabled()) {
+      if (LOG.isDebugEnabled() || this.sourceId != null) {
         subStartNanos = System.nanoTime();
       }
       try {
         return this.callLogic();
       } finally {
-        if (LOG.isDebugEnabled()) {
+        if (LOG.isDebugEnabled() || this.sourceId != null) {
           long nanos = System.nanoTime() - subStartNanos;
           long millis = nanos / 1000000;
-          LOG.debug(this.getLogLabel() + ", time in millis: " + millis);
+          if (this.sourceId != null) {
+            SourceLatencyHistogram.retrieveHistogram(this.sourceId).record(millis);
+          }
+          if (LOG.isDebugEnabled()) {
+            LOG.debug(this.getLogLabel() + ", time in millis: " + millis);
+          }
         }
       }
       
@@ -200,6 +225,113 @@ public class SourcesXmlResolver implements SubjectResolver {
     public LogLabelCallable(String theLogLabel) {
       this.logLabel = theLogLabel;
     }
+
+    /**
+     * 
+     * @param theLogLabel
+     * @param theSourceId source id if this searches one source
+     */
+    public LogLabelCallable(String theLogLabel, String theSourceId) {
+      this.logLabel = theLogLabel;
+      this.sourceId = theSourceId;
+    }
+  }
+  
+  /** threads which search the sources, lazy loaded */
+  private static ExecutorService sourceExecutorService = null;
+  
+  /**
+   * dedicated pool of threads which search the sources, so a slow source does not tie up other work.
+   * the queue is bounded, if it is full the callable is rejected and should be run in the calling thread
+   * @return the executor service
+   */
+  private static synchronized ExecutorService sourceExecutorService() {
+    if (sourceExecutorService == null) {
+      int threadPoolSize = GrouperConfig.retrieveConfig().propertyValueInt("subjects.sourceThreadPoolSize", 20);
+      int queueSize = GrouperConfig.retrieveConfig().propertyValueInt("subjects.sourceThreadPoolQueueSize", 100);
+      sourceExecutorService = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+        
+        /** make threads which dont keep the JVM up */
+        private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        
+        public Thread newThread(Runnable runnable) {
+          Thread thread = this.threadFactory.newThread(runnable);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return sourceExecutorService;
+  }
+  
+  /**
+   * shut down the pool of threads which search the sources, the next search will make a new one
+   * with the current config (e.g. for testing)
+   */
+  static synchronized void sourceExecutorServiceShutdown() {
+    if (sourceExecutorService != null) {
+      sourceExecutorService.shutdownNow();
+      sourceExecutorService = null;
+    }
+  }
+  
+  /**
+   * future of a callable which keeps track of when it starts running, so the timeout of a source
+   * does not count the time the callable waits in the queue
+   * @param <T>
+   */
+  private static class SourceFutureTask<T> extends FutureTask<T> {
+
+    /** counted down when the callable starts running */
+    private final CountDownLatch startedLatch = new CountDownLatch(1);
+    
+    /** when the callable started running */
+    private volatile long startNanos = -1;
+    
+    /**
+     * @param callable
+     */
+    public SourceFutureTask(Callable<T> callable) {
+      super(callable);
+    }
+
+    /**
+     * @see java.util.concurrent.FutureTask#run()
+     */
+    @Override
+    public void run() {
+      this.startNanos = System.nanoTime();
+      this.startedLatch.countDown();
+      super.run();
+    }
+
+    /**
+     * wait for the callable to start running
+     * @param timeoutNanos
+     * @return true if started
+     * @throws InterruptedException
+     */
+    public boolean awaitStarted(long timeoutNanos) throws InterruptedException {
+      return this.startedLatch.await(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * @return when the callable started running, or -1 if not started
+     */
+    public long getStartNanos() {
+      return this.startNanos;
+    }
+  }
+  
+  /**
+   * how long to wait for a source to search before leaving it out of the results
+   * @param sourceId
+   * @return the millis, or 0 or less to wait until it is done
+   */
+  private static int searchTimeoutMillis(String sourceId) {
+    int timeoutMillis = GrouperConfig.retrieveConfig().propertyValueInt("subjects.allPage.timeoutMillis", 10000);
+    return GrouperConfig.retrieveConfig().propertyValueInt("subjects.allPage.timeoutMillis." + sourceId, timeoutMillis);
   }
   
   /**
@@ -210,6 +342,23 @@ public class SourcesXmlResolver implements SubjectResolver {
    * @return the results of each
    */
   private static <T> List<T> executeCallables(List<LogLabelCallable<T>> callables, boolean useThreads) {
+    return executeCallables(callables, useThreads, null);
+  }
+  
+  /**
+   * execute callables either in threads or not
+   * @param <T>
+   * @param callables
+   * @param useThreads
+   * @param incompleteResult if not null, and using threads, then callables of a source which dont finish
+   * in the timeout of the source after they start running (or dont start running in the timeout) are 
+   * cancelled, their result is null, and the source is added as incomplete to this result.  Callables
+   * with a timeout which dont fit in the queue of the pool (e.g. sources are hung) arent run at all, 
+   * and are incomplete the same way
+   * @return the results of each
+   */
+  static <T> List<T> executeCallables(List<LogLabelCallable<T>> callables, boolean useThreads, 
+      SearchPageResult incompleteResult) {
     
     //if threadlocal says not to, dont
     if (!SubjectFinder.isUseThreadsBasedOnThreadLocal()) {
@@ -237,13 +386,26 @@ public class SourcesXmlResolver implements SubjectResolver {
         }
         
       } else {
-        List<Future<T>> futures = new ArrayList<Future<T>>();
+        List<SourceFutureTask<T>> futures = new ArrayList<SourceFutureTask<T>>();
+        
+        //how long to wait for each callable once it starts, or -1 to wait until done
+        List<Long> timeoutNanosList = new ArrayList<Long>();
   
         final GrouperSession GROUPER_SESSION = GrouperSession.staticGrouperSession();
         
-        for (Callable<T> callable : callables) {
+        for (LogLabelCallable<T> callable : callables) {
+          
+          long timeoutNanos = -1;
+          if (incompleteResult != null && callable.getSourceId() != null) {
+            int timeoutMillis = searchTimeoutMillis(callable.getSourceId());
+            if (timeoutMillis > 0) {
+              timeoutNanos = timeoutMillis * 1000000L;
+            }
+          }
+          timeoutNanosList.add(timeoutNanos);
+          
           final Callable<T> CALLABLE = callable;
-          Future<T> future = GrouperUtil.retrieveExecutorService().submit(new Callable<T>() {
+          SourceFutureTask<T> future = new SourceFutureTask<T>(new Callable<T>() {
   
             public T call() throws Exception {
               
@@ -259,14 +421,54 @@ public class SourcesXmlResolver implements SubjectResolver {
               }
             }
           });
+          try {
+            sourceExecutorService().execute(future);
+          } catch (RejectedExecutionException rejectedExecutionException) {
+            if (timeoutNanos != -1) {
+              //the queue is full, e.g. sources are hung and holding the threads, dont search this
+              //source since it cant be timed out in this thread, it is incomplete
+              future = null;
+            } else {
+              //the caller will wait until it is done anyways, so run it in this thread which already 
+              //has the grouper session
+              future = new SourceFutureTask<T>(CALLABLE);
+              future.run();
+            }
+          }
           futures.add(future);
           
         }
         
         //wait for each and add results
-        for (Future<T> future : futures) {
-      try {
-            results.add(future.get());
+        for (int i=0;i<futures.size();i++) {
+          SourceFutureTask<T> future = futures.get(i);
+          long timeoutNanos = timeoutNanosList.get(i);
+          if (future == null) {
+            incompleteResult.addIncompleteSourceId(callables.get(i).getSourceId());
+            LOG.warn("Source search threads are busy, source not searched, results are incomplete: " 
+                + callables.get(i).getLogLabel());
+            results.add(null);
+            continue;
+          }
+          try {
+            if (timeoutNanos == -1) {
+              results.add(future.get());
+            } else {
+              //the timeout starts when the callable starts running, but dont wait longer than the timeout
+              //for it to start.  note, if it is already done, this returns the result even if the timeout is passed
+              long remainingNanos = 0;
+              if (future.awaitStarted(timeoutNanos)) {
+                remainingNanos = Math.max(0, future.getStartNanos() + timeoutNanos - System.nanoTime());
+              }
+              results.add(future.get(remainingNanos, TimeUnit.NANOSECONDS));
+            }
+          } catch (TimeoutException timeoutException) {
+            future.cancel(true);
+            String sourceId = callables.get(i).getSourceId();
+            SourceLatencyHistogram.retrieveHistogram(sourceId).recordTimeout();
+            incompleteResult.addIncompleteSourceId(sourceId);
+            LOG.warn("Source did not finish in time, results are incomplete: " + callables.get(i).getLogLabel());
+            results.add(null);
           } catch (ExecutionException executionException) {
             //the underlying exception is here... might be runtime
             Throwable throwable = executionException.getCause();
@@ -662,9 +864,9 @@ public class SourcesXmlResolver implements SubjectResolver {
    */
   private boolean needsThreads(Set<Source> sources, boolean isSearchPage) {
     
-    //default to false since threading doesnt really help
+    //default to threads for searches so a slow source doesnt hold up the others, but not for id or identifier
     boolean useThreadsFromConfig = GrouperConfig.retrieveConfig().propertyValueBoolean(
-        isSearchPage ? "subjects.allPage.useThreadForkJoin" : "subjects.idOrIdentifier.useThreadForkJoin", false);
+        isSearchPage ? "subjects.allPage.useThreadForkJoin" : "subjects.idOrIdentifier.useThreadForkJoin", isSearchPage);
     
     if (!useThreadsFromConfig) {
       return false;
@@ -801,12 +1003,12 @@ public class SourcesXmlResolver implements SubjectResolver {
     
     List<LogLabelCallable<Set<Subject>>> callables = new ArrayList<LogLabelCallable<Set<Subject>>>();
     
-    boolean needsThreads = needsThreads(sources, false);
+    boolean needsThreads = needsThreads(sources, true);
     
     //get all the jobs ready to go
     for ( Source sa : sources ) {
       final Source SOURCE = sa;
-      callables.add(new LogLabelCallable<Set<Subject>>("findAll on source: " + sa.getId() + ", '" + query + "'") {
+      callables.add(new LogLabelCallable<Set<Subject>>("findAll on source: " + sa.getId() + ", '" + query + "'", sa.getId()) {
 
         public Set<Subject> callLogic() throws Exception {
           try {
@@ -874,6 +1076,9 @@ public class SourcesXmlResolver implements SubjectResolver {
 
     Set<Subject> subjectsMatchIdentifier = Collections.synchronizedSet(new HashSet<Subject>());
 
+    //sources which didnt finish in time
+    Set<String> incompleteSourceIds = new LinkedHashSet<String>();
+
     if (GrouperConfig.retrieveConfig().propertyValueBoolean("grouperQuerySubjectsMultipleQueriesCommaSeparated", true)) {
       
       Set<String> queries = GrouperUtil.splitTrimToSet(query, ",");
@@ -884,6 +1089,7 @@ public class SourcesXmlResolver implements SubjectResolver {
         SearchPageResult searchPageResult = findPageHelperNonMultiple(individualQuery, sources, stemName, subjectsMatchIdentifier);
         subjects.addAll(GrouperUtil.nonNull(searchPageResult.getResults()));
         tooManyResults = tooManyResults || searchPageResult.isTooManyResults();
+        incompleteSourceIds.addAll(searchPageResult.getIncompleteSourceIds());
       }
   
       //take out dupes
@@ -893,6 +1099,7 @@ public class SourcesXmlResolver implements SubjectResolver {
       SearchPageResult searchPageResult = findPageHelperNonMultiple(query, sources, stemName, subjectsMatchIdentifier);
       subjects = searchPageResult.getResults();
       tooManyResults = searchPageResult.isTooManyResults();
+      incompleteSourceIds.addAll(searchPageResult.getIncompleteSourceIds());
   
     }
     
@@ -903,7 +1110,11 @@ public class SourcesXmlResolver implements SubjectResolver {
       subjects = SubjectHelper.sortSetForSearch(subjects, query, subjectsMatchIdentifier);
     }
     
-    return new SearchPageResult(tooManyResults, subjects);
+    SearchPageResult searchPageResult = new SearchPageResult(tooManyResults, subjects);
+    for (String incompleteSourceId : incompleteSourceIds) {
+      searchPageResult.addIncompleteSourceId(incompleteSourceId);
+    }
+    return searchPageResult;
   }  
   /**
    * @param query 
@@ -926,12 +1137,12 @@ public class SourcesXmlResolver implements SubjectResolver {
     
     List<LogLabelCallable<SearchPageResult>> callables = new ArrayList<LogLabelCallable<SearchPageResult>>();
     
-    boolean needsThreads = needsThreads(sources, false);
+    boolean needsThreads = needsThreads(sources, true);
         
     //get all the jobs ready to go
     for ( Source sa : sources ) {
       final Source SOURCE = sa;
-      callables.add(new LogLabelCallable<SearchPageResult>("findPage on source: " + sa.getId() + ", '" + query + "'") {
+      callables.add(new LogLabelCallable<SearchPageResult>("findPage on source: " + sa.getId() + ", '" + query + "'", sa.getId()) {
 
         public SearchPageResult callLogic() throws Exception {
           try {
@@ -970,10 +1181,14 @@ public class SourcesXmlResolver implements SubjectResolver {
       });
     }    
     
-    //run the jobs
-    List<SearchPageResult> subjectResults = executeCallables(callables, needsThreads);
+    //run the jobs, sources which dont finish in time are incomplete
+    List<SearchPageResult> subjectResults = executeCallables(callables, needsThreads, searchPageResult);
     
     for (SearchPageResult searchPage : subjectResults) {
+      //source timed out or had an error
+      if (searchPage == null) {
+        continue;
+      }
       subjects.addAll( GrouperUtil.nonNull(searchPage.getResults()) );
       if (searchPage.isTooManyResults()) {
         searchPageResult.setTooManyResults(true);
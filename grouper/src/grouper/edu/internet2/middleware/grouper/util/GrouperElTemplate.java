@@ -0,0 +1,349 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.JexlException;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
+import edu.internet2.middleware.grouper.exception.ExpressionLanguageMissingVariableException;
+
+
+/**
+ * <pre>
+ * a string with ${ expression language } scripts in it, parsed once into the literal text and
+ * the compiled jexl expressions between the literals.  templates are cached by template string,
+ * so evaluating the same template in a loop (e.g. loader group names, rules) does not parse again.
+ *
+ * GrouperElTemplate.retrieveTemplate("school:${subjectId}:group", false, false).evaluate(variableMap, false);
+ * </pre>
+ */
+public class GrouperElTemplate {
+
+  /** logger */
+  private static final Log LOG = GrouperUtil.getLog(GrouperElTemplate.class);
+
+  /** matching ${ exp }   (non-greedy) */
+  private static final Pattern SCRIPT_PATTERN = Pattern.compile("\\$\\{(.*?)\\}");
+
+  /** templates by template string, silent, and lenient */
+  private static Map<MultiKey, GrouperElTemplate> templateCache = new ConcurrentHashMap<MultiKey, GrouperElTemplate>();
+
+  /** utility methods for the expressions, they are static so one instance is shared */
+  private static final GrouperUtilElSafe GROUPER_UTIL_EL_SAFE = new GrouperUtilElSafe();
+
+  /** true or false for if we know if this is a class or not */
+  private static Map<String, Boolean> jexlKnowsIfClass = new ConcurrentHashMap<String, Boolean>();
+
+  /** class object for this string */
+  private static Map<String, Class<?>> jexlClass = new ConcurrentHashMap<String, Class<?>>();
+
+  /** pattern to see if class or not */
+  private static Pattern jexlClassPattern = Pattern.compile("^[a-zA-Z0-9_.]*\\.[A-Z][a-zA-Z0-9_]*$");
+
+  /** the template string */
+  private String template;
+
+  /** text before each script, and the text after the last script (one more than the scripts) */
+  private String[] literals;
+
+  /** each script inside the curlies */
+  private String[] scripts;
+
+  /** compiled script for each script */
+  private Expression[] expressions;
+
+  /** if undefined variables are null */
+  private boolean lenient;
+
+  /**
+   * get a template from cache or parse it
+   * @param template
+   * @param silent if silent mode, swallow exceptions (warn), and dont warn when variable not found
+   * @param lenient false if undefined variables should throw an exception.  if lenient is true
+   * then undefined variables are null
+   * @return the template
+   */
+  public static GrouperElTemplate retrieveTemplate(String template, boolean silent, boolean lenient) {
+    MultiKey multiKey = new MultiKey(template, silent, lenient);
+    GrouperElTemplate grouperElTemplate = templateCache.get(multiKey);
+    if (grouperElTemplate == null) {
+      grouperElTemplate = new GrouperElTemplate(template, GrouperUtil.jexlEngine(silent, lenient), lenient);
+
+      //templates are usually from config so there arent many, but dont let it grow forever
+      if (templateCache.size() >= GrouperConfig.retrieveConfig().propertyValueInt("jexl.cacheSize", 1024)) {
+        templateCache.clear();
+      }
+      templateCache.put(multiKey, grouperElTemplate);
+    }
+    return grouperElTemplate;
+  }
+
+  /**
+   * clear the cache of templates, e.g. for testing
+   */
+  public static void clearTemplateCache() {
+    templateCache.clear();
+  }
+
+  /**
+   * parse the template
+   * @param theTemplate
+   * @param jexlEngine
+   * @param theLenient
+   */
+  private GrouperElTemplate(String theTemplate, JexlEngine jexlEngine, boolean theLenient) {
+    this.template = theTemplate;
+    this.lenient = theLenient;
+
+    List<String> literalList = new ArrayList<String>();
+    List<String> scriptList = new ArrayList<String>();
+    List<Expression> expressionList = new ArrayList<Expression>();
+
+    int index = 0;
+
+    Matcher matcher = SCRIPT_PATTERN.matcher(theTemplate);
+
+    //loop through and find each script
+    while(matcher.find()) {
+      literalList.add(theTemplate.substring(index, matcher.start()));
+
+      //here is the script inside the curlies
+      String script = matcher.group(1);
+
+      index = matcher.end();
+
+      if (script.contains("{")) {
+        //we need to match up some curlies here...
+        int scriptStart = matcher.start(1);
+        int openCurlyCount = 0;
+        for (int i=scriptStart; i<theTemplate.length();i++) {
+          char curChar = theTemplate.charAt(i);
+          if (curChar == '{') {
+            openCurlyCount++;
+          }
+          if (curChar == '}') {
+            openCurlyCount--;
+            //negative 1 since we need to get to the close of the parent one...
+            if (openCurlyCount <= -1) {
+              script = theTemplate.substring(scriptStart, i);
+              index = i+1;
+              break;
+            }
+          }
+        }
+      }
+
+      scriptList.add(script);
+      expressionList.add(jexlEngine.createExpression(script));
+    }
+
+    literalList.add(theTemplate.substring(index, theTemplate.length()));
+
+    this.literals = literalList.toArray(new String[literalList.size()]);
+    this.scripts = scriptList.toArray(new String[scriptList.size()]);
+    this.expressions = expressionList.toArray(new Expression[expressionList.size()]);
+  }
+
+  /**
+   * evaluate the template
+   * @param variableMap variables for the scripts, this is not changed
+   * @param allowStaticClasses if true allow static classes not registered with context
+   * @return the string
+   */
+  public String evaluate(Map<String, Object> variableMap, boolean allowStaticClasses) {
+
+    //no scripts
+    if (this.expressions.length == 0) {
+      return this.literals[0];
+    }
+
+    JexlContext jc = new GrouperElContext(variableMap, allowStaticClasses);
+
+    StringBuilder result = new StringBuilder();
+
+    for (int i=0;i<this.expressions.length;i++) {
+
+      result.append(this.literals[i]);
+
+      String script = this.scripts[i];
+
+      //this is the result of the evaluation
+      Object o = null;
+
+      try {
+        o = this.expressions[i].evaluate(jc);
+      } catch (JexlException je) {
+        //exception-scrape to see if missing variable
+        if (!this.lenient && StringUtils.trimToEmpty(je.getMessage()).contains("undefined variable")) {
+          //clean up the message a little bit
+          // e.g. edu.internet2.middleware.grouper.util.GrouperUtil.substituteExpressionLanguage@8846![0,6]: 'amount < 50000 && amount2 < 23;' undefined variable amount
+          String message = je.getMessage();
+          Pattern exceptionPattern = Pattern.compile("^.*undefined variable (.*)");
+          Matcher exceptionMatcher = exceptionPattern.matcher(message);
+          if (exceptionMatcher.matches()) {
+            message = "variable '" + exceptionMatcher.group(1) + "' is not defined in script: '" + script + "'";
+          }
+          throw new ExpressionLanguageMissingVariableException(message, je);
+        }
+        throw je;
+      }
+
+      //we dont want "null" in the result I think...
+      if (o == null && this.lenient) {
+        o = "";
+      }
+
+      if (o == null) {
+        LOG.warn("expression returned null: " + script + ", in pattern: '" + this.template + "', available variables are: "
+            + GrouperUtil.toStringForLog(GrouperUtil.nonNull(variableMap).keySet()));
+      }
+
+      if (o instanceof RuntimeException) {
+        throw (RuntimeException)o;
+      }
+
+      result.append(o);
+    }
+
+    result.append(this.literals[this.literals.length-1]);
+    return result.toString();
+  }
+
+  /**
+   * the template string
+   * @return the template
+   */
+  public String getTemplate() {
+    return this.template;
+  }
+
+  /**
+   * retrieve class if class
+   * @param name
+   * @return class
+   */
+  private static Object retrieveClass(String name) {
+    if (GrouperUtil.isBlank(name)) {
+      return null;
+    }
+
+    //see if fully qualified class
+
+    Boolean knowsIfClass = jexlKnowsIfClass.get(name);
+
+    //see if knows answer
+    if (knowsIfClass != null) {
+      //return class or null
+      return jexlClass.get(name);
+    }
+
+    //see if valid class
+    if (jexlClassPattern.matcher(name).matches()) {
+
+      jexlKnowsIfClass.put(name, true);
+      //try to load
+      try {
+        Class<?> theClass = Class.forName(name);
+        jexlClass.put(name, theClass);
+        return theClass;
+      } catch (Exception e) {
+        LOG.info("Cant load what looks like class: " + name, e);
+        //this is ok I guess, dont rethrow, not sure it is a class
+      }
+    }
+    return null;
+
+  }
+
+  /**
+   * context for one evaluation which reads the variable map of the caller instead of copying it.
+   * variables assigned in scripts are kept here so the map of the caller is not changed
+   */
+  private static class GrouperElContext implements JexlContext {
+
+    /** variables of the caller */
+    private Map<String, Object> variableMap;
+
+    /** variables assigned in the scripts, lazy loaded */
+    private Map<String, Object> assignedMap = null;
+
+    /** if static classes not registered with context are allowed */
+    private boolean allowStaticClasses;
+
+    /**
+     * @param theVariableMap
+     * @param theAllowStaticClasses
+     */
+    private GrouperElContext(Map<String, Object> theVariableMap, boolean theAllowStaticClasses) {
+      this.variableMap = GrouperUtil.nonNull(theVariableMap);
+      this.allowStaticClasses = theAllowStaticClasses;
+    }
+
+    /**
+     * @see org.apache.commons.jexl2.JexlContext#get(java.lang.String)
+     */
+    public Object get(String name) {
+      Object object = null;
+      if (this.assignedMap != null && this.assignedMap.containsKey(name)) {
+        object = this.assignedMap.get(name);
+      } else if (StringUtils.equals("grouperUtil", name)) {
+        //allow utility methods
+        object = GROUPER_UTIL_EL_SAFE;
+      } else {
+        object = this.variableMap.get(name);
+      }
+      if (object == null && this.allowStaticClasses) {
+        return retrieveClass(name);
+      }
+      return object;
+    }
+
+    /**
+     * @see org.apache.commons.jexl2.JexlContext#set(java.lang.String, java.lang.Object)
+     */
+    public void set(String name, Object value) {
+      if (this.assignedMap == null) {
+        this.assignedMap = new HashMap<String, Object>();
+      }
+      this.assignedMap.put(name, value);
+    }
+
+    /**
+     * @see org.apache.commons.jexl2.JexlContext#has(java.lang.String)
+     */
+    public boolean has(String name) {
+      if ((this.assignedMap != null && this.assignedMap.containsKey(name))
+          || StringUtils.equals("grouperUtil", name) || this.variableMap.containsKey(name)) {
+        return true;
+      }
+      return this.allowStaticClasses && retrieveClass(name) != null;
+    }
+  }
+}
@@ -93,11 +93,7 @@ import net.sf.json.util.PropertyFilter;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.collections.keyvalue.MultiKey;
-import org.apache.commons.jexl2.Expression;
-import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.jexl2.JexlException;
-import org.apache.commons.jexl2.MapContext;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.lang.exception.Nestable;
@@ -8923,90 +8919,27 @@ public class GrouperUtil {
       return sw.getBuffer().toString();
   }
 
-  /** true or false for if we know if this is a class or not */
-  private static Map<String, Boolean> jexlKnowsIfClass = new HashMap<String, Boolean>();
-
-  /** class object for this string */
-  private static Map<String, Class<?>> jexlClass = new HashMap<String, Class<?>>();
-
-  /** pattern to see if class or not */
-  private static Pattern jexlClassPattern = Pattern.compile("^[a-zA-Z0-9_.]*\\.[A-Z][a-zA-Z0-9_]*$");
-
   /**
-   *
+   * jexl engine for a type of setting, with its expression cache sized from the config
+   * @param silent
+   * @param lenient
+   * @return the engine
    */
-  private static class GrouperMapContext extends MapContext {
-
-    /**
-     * retrieve class if class
-     * @param name
-     * @return class
-     */
-    private static Object retrieveClass(String name) {
-      if (isBlank(name)) {
-        return null;
-      }
-
-      //see if fully qualified class
-
-      Boolean knowsIfClass = jexlKnowsIfClass.get(name);
-
-      //see if knows answer
-      if (knowsIfClass != null) {
-        //return class or null
-        return jexlClass.get(name);
-      }
-
-      //see if valid class
-      if (jexlClassPattern.matcher(name).matches()) {
-
-        jexlKnowsIfClass.put(name, true);
-        //try to load
-        try {
-          Class<?> theClass = Class.forName(name);
-          jexlClass.put(name, theClass);
-          return theClass;
-        } catch (Exception e) {
-          LOG.info("Cant load what looks like class: " + name, e);
-          //this is ok I guess, dont rethrow, not sure it is a class
+  static JexlEngine jexlEngine(boolean silent, boolean lenient) {
+    if (!jexlEnginesInitialized) {
+      synchronized (GrouperUtil.class) {
+        if (!jexlEnginesInitialized) {
+          
+          int cacheSize = GrouperConfig.retrieveConfig().propertyValueInt("jexl.cacheSize");
+          for (JexlEngine jexlEngine : jexlEngines.values()) {
+            jexlEngine.setCache(cacheSize);
+          }
+          
+          jexlEnginesInitialized = true;
         }
       }
-      return null;
-
-    }
-
-    /**
-     * @see org.apache.commons.jexl2.MapContext#get(java.lang.String)
-     */
-    @Override
-    public Object get(String name) {
-
-      //see if registered
-      Object object = super.get(name);
-
-      if (object != null) {
-        return object;
-      }
-      return retrieveClass(name);
     }
-
-    /**
-     * @see org.apache.commons.jexl2.MapContext#has(java.lang.String)
-     */
-    @Override
-    public boolean has(String name) {
-      boolean superHas = super.has(name);
-      if (superHas) {
-        return true;
-      }
-
-      return retrieveClass(name) != null;
-
-    }
-
-
-
-
+    return jexlEngines.get(new MultiKey(silent, lenient));
   }
 
   /**
@@ -9064,121 +8997,15 @@ public class GrouperUtil {
   public static String substituteExpressionLanguage(String stringToParse,
       Map<String, Object> variableMap, boolean allowStaticClasses, boolean silent, boolean lenient) {
     
-    if (!jexlEnginesInitialized) {
-      synchronized (GrouperUtil.class) {
-        if (!jexlEnginesInitialized) {
-          
-          int cacheSize = GrouperConfig.retrieveConfig().propertyValueInt("jexl.cacheSize");
-          for (JexlEngine jexlEngine : jexlEngines.values()) {
-            jexlEngine.setCache(cacheSize);
-          }
-          
-          jexlEnginesInitialized = true;
-        }
-      }
-    }
-    
     if (isBlank(stringToParse)) {
       return stringToParse;
     }
     String overallResult = null;
     Exception exception = null;
     try {
-      JexlContext jc = allowStaticClasses ? new GrouperMapContext() : new MapContext();
-
-
-
-      int index = 0;
-
-      for (String key: variableMap.keySet()) {
-        jc.set(key, variableMap.get(key));
-      }
-
-      //allow utility methods
-      jc.set("grouperUtil", new GrouperUtilElSafe());
-      //if you add another one here, add it in the logs below
-
-      // matching ${ exp }   (non-greedy)
-      Pattern pattern = Pattern.compile("\\$\\{(.*?)\\}");
-      Matcher matcher = pattern.matcher(stringToParse);
-
-      StringBuilder result = new StringBuilder();
-
-      //loop through and find each script
-      while(matcher.find()) {
-        result.append(stringToParse.substring(index, matcher.start()));
-
-        //here is the script inside the curlies
-        String script = matcher.group(1);
-
-        index = matcher.end();
-
-        if (script.contains("{")) {
-          //we need to match up some curlies here...
-          int scriptStart = matcher.start(1);
-          int openCurlyCount = 0;
-          for (int i=scriptStart; i<stringToParse.length();i++) {
-            char curChar = stringToParse.charAt(i);
-            if (curChar == '{') {
-              openCurlyCount++;
-            }
-            if (curChar == '}') {
-              openCurlyCount--;
-              //negative 1 since we need to get to the close of the parent one...
-              if (openCurlyCount <= -1) {
-                script = stringToParse.substring(scriptStart, i);
-                index = i+1;
-                break;
-              }
-            }
-          }
-        }
-
-        Expression e = jexlEngines.get(new MultiKey(silent, lenient)).createExpression(script);
-
-        //this is the result of the evaluation
-        Object o = null;
-
-        try {
-          o = e.evaluate(jc);
-        } catch (JexlException je) {
-          //exception-scrape to see if missing variable
-          if (!lenient && StringUtils.trimToEmpty(je.getMessage()).contains("undefined variable")) {
-            //clean up the message a little bit
-            // e.g. edu.internet2.middleware.grouper.util.GrouperUtil.substituteExpressionLanguage@8846![0,6]: 'amount < 50000 && amount2 < 23;' undefined variable amount
-            String message = je.getMessage();
-            //Pattern exceptionPattern = Pattern.compile("^" + GrouperUtil.class.getName() + "\\.substituteExpressionLanguage.*?]: '(.*)");
-            Pattern exceptionPattern = Pattern.compile("^.*undefined variable (.*)");
-            Matcher exceptionMatcher = exceptionPattern.matcher(message);
-            if (exceptionMatcher.matches()) {
-              //message = "'" + exceptionMatcher.group(1);
-              message = "variable '" + exceptionMatcher.group(1) + "' is not defined in script: '" + script + "'";
-            }
-            throw new ExpressionLanguageMissingVariableException(message, je);
-          }
-          throw je;
-        }
-
-        //we dont want "null" in the result I think...
-        if (o == null && lenient) {
-          o = "";
-        }
-        
-        if (o == null) {
-          LOG.warn("expression returned null: " + script + ", in pattern: '" + stringToParse + "', available variables are: "
-              + toStringForLog(variableMap.keySet()));
-        }
-
-        if (o instanceof RuntimeException) {
-          throw (RuntimeException)o;
-        }
-
-        result.append(o);
-
-      }
-
-      result.append(stringToParse.substring(index, stringToParse.length()));
-      overallResult = result.toString();
+      //parsed and compiled once per template string
+      overallResult = GrouperElTemplate.retrieveTemplate(stringToParse, silent, lenient)
+        .evaluate(variableMap, allowStaticClasses);
       return overallResult;
 
     } catch (HookVeto hv) {
@@ -43,6 +43,7 @@ import edu.internet2.middleware.grouper.app.AllAppTests;
 import edu.internet2.middleware.grouper.attr.AllAttributeTests;
 import edu.internet2.middleware.grouper.audit.AllAuditTests;
 import edu.internet2.middleware.grouper.audit.GrouperEngineBuiltin;
+import edu.internet2.middleware.grouper.cache.AllCacheTests;
 import edu.internet2.middleware.grouper.cfg.AllConfigTests;
 import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.changeLog.AllChangeLogTests;
@@ -204,6 +205,7 @@ public class AllTests extends GrouperTest {
     suite.addTest(AllAppTests.suite());
     suite.addTest(AllAttributeTests.suite());
     suite.addTest(AllAuditTests.suite());
+    suite.addTest(AllCacheTests.suite());
     suite.addTest(AllChangeLogTests.suite());
     suite.addTest(AllClientTests.suite());
     suite.addTest(AllConfigTests.suite());
@@ -1475,7 +1475,128 @@ public class GrouperLoaderTest extends GrouperTest {
     assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ0));
     assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ1));
     assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ1));
-  
+
+  }
+
+  /**
+   * test the loader with and groups, retrieving the and group members at once and one by one
+   * @throws Exception
+   */
+  public void testLoaderAndGroups() throws Exception {
+
+    List<TestgrouperLoader> testDataList = new ArrayList<TestgrouperLoader>();
+
+    testDataList.add(new TestgrouperLoader(SubjectTestHelper.SUBJ0_ID, null, null));
+    testDataList.add(new TestgrouperLoader(SubjectTestHelper.SUBJ1_ID, null, null));
+    testDataList.add(new TestgrouperLoader(SubjectTestHelper.SUBJ2_ID, null, null));
+    testDataList.add(new TestgrouperLoader(SubjectTestHelper.SUBJ3_ID, null, null));
+
+    HibernateSession.byObjectStatic().saveOrUpdate(testDataList);
+
+    //subj0 is immediate, subj2 is effective, subj3 is in only one of the and groups
+    Group andGroup = new GroupSave(this.grouperSession).assignName("loader:andGroup")
+        .assignCreateParentStemsIfNotExist(true).save();
+    Group andGroup2 = new GroupSave(this.grouperSession).assignName("loader:andGroup2")
+        .assignCreateParentStemsIfNotExist(true).save();
+    Group subGroup = new GroupSave(this.grouperSession).assignName("loader:andSubGroup")
+        .assignCreateParentStemsIfNotExist(true).save();
+    andGroup.addMember(SubjectTestHelper.SUBJ0);
+    andGroup.addMember(SubjectTestHelper.SUBJ3);
+    subGroup.addMember(SubjectTestHelper.SUBJ2);
+    andGroup.addMember(subGroup.toSubject());
+    andGroup2.addMember(SubjectTestHelper.SUBJ0);
+    andGroup2.addMember(SubjectTestHelper.SUBJ2);
+
+    //lets add a group which will load these
+    Group loaderGroup = Group.saveGroup(this.grouperSession, null, null,
+        "loader:owner",null, null, null, true);
+    loaderGroup.addType(GroupTypeFinder.find("grouperLoader", true));
+    loaderGroup.setAttribute(GrouperLoader.GROUPER_LOADER_QUERY,
+        "select col1 as SUBJECT_ID from testgrouper_loader");
+    loaderGroup.setAttribute(GrouperLoader.GROUPER_LOADER_AND_GROUPS,
+        "loader:andGroup, loader:andGroup2");
+
+    runLoaderJobWithAndGroups(loaderGroup, "loader:andGroup, loader:andGroup2");
+
+    assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ0));
+    assertFalse(loaderGroup.hasMember(SubjectTestHelper.SUBJ1));
+    assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ2));
+    assertFalse(loaderGroup.hasMember(SubjectTestHelper.SUBJ3));
+
+    //now the old way, one hasMember per subject per and group
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("loader.andGroups.retrieveAllMembersAtOnce", "false");
+    andGroup2.deleteMember(SubjectTestHelper.SUBJ2);
+
+    runLoaderJobWithAndGroups(loaderGroup, "loader:andGroup, loader:andGroup2");
+
+    assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ0));
+    assertFalse(loaderGroup.hasMember(SubjectTestHelper.SUBJ1));
+    assertFalse(loaderGroup.hasMember(SubjectTestHelper.SUBJ2));
+    assertFalse(loaderGroup.hasMember(SubjectTestHelper.SUBJ3));
+
+  }
+
+  /**
+   * test the loader with and groups where an and group has GrouperAll as a member, i.e. it doesnt filter
+   * @throws Exception
+   */
+  public void testLoaderAndGroupsGrouperAll() throws Exception {
+
+    List<TestgrouperLoader> testDataList = new ArrayList<TestgrouperLoader>();
+
+    testDataList.add(new TestgrouperLoader(SubjectTestHelper.SUBJ0_ID, null, null));
+    testDataList.add(new TestgrouperLoader(SubjectTestHelper.SUBJ1_ID, null, null));
+    testDataList.add(new TestgrouperLoader(SubjectTestHelper.SUBJ2_ID, null, null));
+
+    HibernateSession.byObjectStatic().saveOrUpdate(testDataList);
+
+    Group andGroup = new GroupSave(this.grouperSession).assignName("loader:andGroup")
+        .assignCreateParentStemsIfNotExist(true).save();
+    Group andGroup2 = new GroupSave(this.grouperSession).assignName("loader:andGroup2")
+        .assignCreateParentStemsIfNotExist(true).save();
+    andGroup.addMember(SubjectFinder.findAllSubject());
+    andGroup2.addMember(SubjectTestHelper.SUBJ0);
+    andGroup2.addMember(SubjectTestHelper.SUBJ2);
+
+    Group loaderGroup = Group.saveGroup(this.grouperSession, null, null,
+        "loader:owner",null, null, null, true);
+    loaderGroup.addType(GroupTypeFinder.find("grouperLoader", true));
+    loaderGroup.setAttribute(GrouperLoader.GROUPER_LOADER_QUERY,
+        "select col1 as SUBJECT_ID from testgrouper_loader");
+    loaderGroup.setAttribute(GrouperLoader.GROUPER_LOADER_AND_GROUPS,
+        "loader:andGroup, loader:andGroup2");
+
+    //the GrouperAll group lets everyone through, the other and group still filters
+    runLoaderJobWithAndGroups(loaderGroup, "loader:andGroup, loader:andGroup2");
+
+    assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ0));
+    assertFalse(loaderGroup.hasMember(SubjectTestHelper.SUBJ1));
+    assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ2));
+
+    //if all the and groups have GrouperAll then nobody is filtered
+    andGroup2.addMember(SubjectFinder.findAllSubject());
+
+    runLoaderJobWithAndGroups(loaderGroup, "loader:andGroup, loader:andGroup2");
+
+    assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ0));
+    assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ1));
+    assertTrue(loaderGroup.hasMember(SubjectTestHelper.SUBJ2));
+
+  }
+
+  /**
+   * run the loader job for a group the way the scheduler does, i.e. with the and groups in the log
+   * @param loaderGroup
+   * @param andGroupNames
+   */
+  private void runLoaderJobWithAndGroups(Group loaderGroup, String andGroupNames) {
+    Hib3GrouperLoaderLog hib3GrouperLoaderLog = new Hib3GrouperLoaderLog();
+    hib3GrouperLoaderLog.setJobScheduleType("MANUAL_FROM_GSH");
+    hib3GrouperLoaderLog.setJobName(GrouperLoaderType.SQL_SIMPLE.name() + "__" + loaderGroup.getName() + "__" + loaderGroup.getUuid());
+    hib3GrouperLoaderLog.setJobType(GrouperLoaderType.SQL_SIMPLE.name());
+    hib3GrouperLoaderLog.setAndGroupNames(andGroupNames);
+    GrouperLoaderJob.runJob(hib3GrouperLoaderLog, loaderGroup, this.grouperSession);
+    assertEquals(hib3GrouperLoaderLog.getJobMessage(), GrouperLoaderStatus.SUCCESS.name(), hib3GrouperLoaderLog.getStatus());
   }
 
   /**
@@ -83,4 +83,19 @@ public class Hib3GrouploaderLogTest extends TestCase {
     HibernateSession.byObjectStatic().delete(hib3GrouploaderLog);
   }
   
+  /**
+   * 
+   */
+  public void testMillisPhases() {
+    Hib3GrouperLoaderLog hib3GrouploaderLog = new Hib3GrouperLoaderLog();
+    assertNull(hib3GrouploaderLog.millisPhasesToString());
+    
+    hib3GrouploaderLog.addMillisPhase("retrieveCurrentMembers", 12);
+    hib3GrouploaderLog.addMillisPhase("compareToCurrentMembers", 3);
+    hib3GrouploaderLog.addMillisPhase("retrieveCurrentMembers", 5);
+    
+    assertEquals(17, hib3GrouploaderLog.getMillisPhases().get("retrieveCurrentMembers").intValue());
+    assertEquals("retrieveCurrentMembers: 17ms, compareToCurrentMembers: 3ms", hib3GrouploaderLog.millisPhasesToString());
+  }
+  
 }
@@ -306,4 +306,55 @@ public class TestUSDU extends GrouperTest {
       GrouperConfig.retrieveConfig().propertiesOverrideMap().put("usdu.failsafe.maxUnresolvableSubjects", "200");
     }
   }
+
+  /**
+   * check the members in small batches in threads
+   */
+  public void testBatches() {
+
+    try {
+      GrouperConfig.retrieveConfig().propertiesOverrideMap().put("usdu.batchSize", "1");
+      GrouperConfig.retrieveConfig().propertiesOverrideMap().put("usdu.numberOfThreads", "2");
+
+      LOG.info("testBatches");
+
+      R r = R.populateRegistry(1, 2, 3);
+
+      Group gA = r.getGroup("a", "a");
+      Group gB = r.getGroup("a", "b");
+
+      Subject subjA = SubjectFinder.findById("a", true);
+      Subject subjB = SubjectFinder.findById("b", true);
+      Subject subjC = SubjectFinder.findById("c", true);
+
+      gA.addMember(subjA);
+      gA.addMember(subjB);
+      gA.addMember(subjC);
+      gB.addMember(subjB);
+      gB.grantPriv(subjA, AccessPrivilege.UPDATE);
+
+      deleteSubject(subjA);
+      deleteSubject(subjB);
+
+      Set<Member> unresolvables = USDU.getUnresolvableMembers(r.getSession(), null);
+
+      assertEquals(2, unresolvables.size());
+
+      USDU.resolveMembers(unresolvables, true);
+
+      assertFalse(gA.hasMember(subjA));
+      assertFalse(gA.hasMember(subjB));
+      assertTrue(gA.hasMember(subjC));
+      assertFalse(gB.hasMember(subjB));
+      assertFalse(gB.hasUpdate(subjA));
+
+      assertEquals(0, USDU.getUnresolvableMembers(r.getSession(), null).size());
+
+    } catch (Exception e) {
+      T.e(e);
+    } finally {
+      GrouperConfig.retrieveConfig().propertiesOverrideMap().put("usdu.batchSize", "1000");
+      GrouperConfig.retrieveConfig().propertiesOverrideMap().put("usdu.numberOfThreads", "5");
+    }
+  }
 }
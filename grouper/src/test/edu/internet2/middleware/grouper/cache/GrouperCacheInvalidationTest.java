@@ -0,0 +1,206 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.cache;
+
+import java.util.List;
+import java.util.Set;
+
+import junit.textui.TestRunner;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+
+import edu.internet2.middleware.grouper.Group;
+import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.Stem;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
+import edu.internet2.middleware.grouper.changeLog.ChangeLogTempToEntity;
+import edu.internet2.middleware.grouper.helper.GrouperTest;
+import edu.internet2.middleware.grouper.helper.SessionHelper;
+import edu.internet2.middleware.grouper.helper.StemHelper;
+import edu.internet2.middleware.grouper.helper.SubjectTestHelper;
+import edu.internet2.middleware.grouper.privs.AccessPrivilege;
+import edu.internet2.middleware.grouper.privs.CachingAccessResolver;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+import edu.internet2.middleware.subject.Subject;
+
+
+/**
+ *
+ */
+public class GrouperCacheInvalidationTest extends GrouperTest {
+
+  /**
+   *
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new GrouperCacheInvalidationTest("testApplyFromChangeLog"));
+  }
+
+  /**
+   *
+   * @param name
+   */
+  public GrouperCacheInvalidationTest(String name) {
+    super(name);
+  }
+
+  /**
+   * key in the access hasPrivilege cache
+   * @param group
+   * @param subject
+   * @return the key
+   */
+  private static MultiKey adminKey(Group group, Subject subject) {
+    return new MultiKey(group.getUuid(), subject.getSourceId(), subject.getId(), AccessPrivilege.ADMIN);
+  }
+
+  /**
+   * events from the change log evict the owner and subject from the caches of this JVM
+   */
+  public void testApplyFromChangeLog() {
+
+    //so the keys of the caches are indexed
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("cache.invalidation.enabled", "true");
+
+    GrouperSession grouperSession = SessionHelper.getRootSession();
+    Stem root = StemHelper.findRootStem(grouperSession);
+    Stem edu = StemHelper.addChildStem(root, "edu", "education");
+    Group group = edu.addChildGroup("invalidation", "invalidation");
+    Group otherGroup = edu.addChildGroup("otherInvalidation", "otherInvalidation");
+    ChangeLogTempToEntity.convertRecords();
+
+    GrouperCacheInvalidationDatabaseTransport transport = new GrouperCacheInvalidationDatabaseTransport();
+    //starts at the end of the change log
+    assertEquals(0, transport.receive().size());
+
+    group.grantPriv(SubjectTestHelper.SUBJ1, AccessPrivilege.UPDATE);
+    ChangeLogTempToEntity.convertRecords();
+
+    //as if another JVM cached these
+    Cache privilegeCache = EhcacheController.ehcacheController().getCache(CachingAccessResolver.CACHE_HASPRIV);
+    privilegeCache.put(new Element(adminKey(group, SubjectTestHelper.SUBJ0), Boolean.FALSE));
+    privilegeCache.put(new Element(adminKey(group, SubjectTestHelper.SUBJ1), Boolean.FALSE));
+    GrouperCache<MultiKey, String> grouperCache = new GrouperCache<MultiKey, String>(
+        GrouperCacheInvalidationTest.class.getName() + ".cache", 100, false, 120, 120, false);
+    grouperCache.put(new MultiKey("a", group.getId()), "a");
+    grouperCache.put(new MultiKey("b", group.getName()), "b");
+    grouperCache.put(new MultiKey("c", otherGroup.getId()), "c");
+
+    List<GrouperCacheInvalidationEvent> events = transport.receive();
+    boolean foundPrivilege = false;
+    for (GrouperCacheInvalidationEvent event : events) {
+      if ("privilege".equals(event.getCategory()) && group.getId().equals(event.getOwnerId())
+          && SubjectTestHelper.SUBJ1.getId().equals(event.getSubjectId())) {
+        foundPrivilege = true;
+      }
+    }
+    assertTrue(foundPrivilege);
+
+    GrouperCacheInvalidation.apply(events);
+
+    //only the subject of the privilege is evicted
+    assertNotNull(privilegeCache.get(adminKey(group, SubjectTestHelper.SUBJ0)));
+    assertNull(privilegeCache.get(adminKey(group, SubjectTestHelper.SUBJ1)));
+    assertEquals(3, grouperCache.keySet().size());
+
+    //the group changed, evict keys with its id or name
+    group.setDescription("new description");
+    group.store();
+    ChangeLogTempToEntity.convertRecords();
+    GrouperCacheInvalidation.apply(transport.receive());
+
+    assertNull(privilegeCache.get(adminKey(group, SubjectTestHelper.SUBJ0)));
+    assertNull(grouperCache.get(new MultiKey("a", group.getId())));
+    assertNull(grouperCache.get(new MultiKey("b", group.getName())));
+    assertEquals("c", grouperCache.get(new MultiKey("c", otherGroup.getId())));
+
+    //nothing new
+    assertEquals(0, transport.receive().size());
+  }
+
+  /**
+   * the key index follows the keys which are put and removed, so eviction doesnt scan the cache
+   */
+  public void testKeyIndex() {
+
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("cache.invalidation.enabled", "true");
+
+    String cacheName = GrouperCacheInvalidationTest.class.getName() + ".keyIndex";
+    GrouperCache<Object, String> grouperCache = new GrouperCache<Object, String>(
+        cacheName, 100, false, 120, 120, false);
+    GrouperCacheKeyIndex grouperCacheKeyIndex = GrouperCacheKeyIndex.keyIndex(
+        EhcacheController.ehcacheController().getCache(cacheName), false);
+    assertNotNull(grouperCacheKeyIndex);
+
+    grouperCache.put(new MultiKey("a", "id1"), "a");
+    grouperCache.put(new MultiKey("b", "id1"), "b");
+    grouperCache.put("id2", "c");
+
+    Set<String> identifiers = GrouperUtil.toSet("id1");
+    assertEquals(2, grouperCacheKeyIndex.keys(identifiers).size());
+    assertEquals(3, grouperCacheKeyIndex.keys(GrouperUtil.toSet("id1", "id2")).size());
+
+    grouperCache.remove(new MultiKey("a", "id1"));
+    assertEquals(1, grouperCacheKeyIndex.keys(identifiers).size());
+
+    grouperCache.clear();
+    assertEquals(0, grouperCacheKeyIndex.keys(GrouperUtil.toSet("id1", "id2")).size());
+  }
+
+  /**
+   * membership events evict the privileges of the subject on any owner, since it might get them through the group
+   */
+  public void testApplyMembership() {
+
+    GrouperSession grouperSession = SessionHelper.getRootSession();
+    Stem root = StemHelper.findRootStem(grouperSession);
+    Stem edu = StemHelper.addChildStem(root, "edu", "education");
+    Group group = edu.addChildGroup("invalidation", "invalidation");
+    Group otherGroup = edu.addChildGroup("otherInvalidation", "otherInvalidation");
+    Group parentGroup = edu.addChildGroup("parentInvalidation", "parentInvalidation");
+    otherGroup.grantPriv(group.toSubject(), AccessPrivilege.ADMIN);
+    ChangeLogTempToEntity.convertRecords();
+
+    GrouperCacheInvalidationDatabaseTransport transport = new GrouperCacheInvalidationDatabaseTransport();
+    assertEquals(0, transport.receive().size());
+
+    group.addMember(SubjectTestHelper.SUBJ0);
+    ChangeLogTempToEntity.convertRecords();
+
+    //as if another JVM cached these (this JVM flushed its cache when the member was added)
+    Cache privilegeCache = EhcacheController.ehcacheController().getCache(CachingAccessResolver.CACHE_HASPRIV);
+    privilegeCache.put(new Element(adminKey(otherGroup, SubjectTestHelper.SUBJ0), Boolean.FALSE));
+    privilegeCache.put(new Element(adminKey(otherGroup, SubjectTestHelper.SUBJ1), Boolean.FALSE));
+
+    GrouperCacheInvalidation.apply(transport.receive());
+
+    //subj0 is now an admin of the other group through the group
+    assertNull(privilegeCache.get(adminKey(otherGroup, SubjectTestHelper.SUBJ0)));
+    assertNotNull(privilegeCache.get(adminKey(otherGroup, SubjectTestHelper.SUBJ1)));
+
+    //if the member is a group, the privileges of all its members change
+    parentGroup.addMember(group.toSubject());
+    ChangeLogTempToEntity.convertRecords();
+    privilegeCache.put(new Element(adminKey(otherGroup, SubjectTestHelper.SUBJ1), Boolean.FALSE));
+    GrouperCacheInvalidation.apply(transport.receive());
+
+    assertNull(privilegeCache.get(adminKey(otherGroup, SubjectTestHelper.SUBJ1)));
+  }
+}
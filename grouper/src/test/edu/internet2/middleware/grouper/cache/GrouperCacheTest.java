@@ -0,0 +1,146 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.textui.TestRunner;
+
+import edu.internet2.middleware.grouper.helper.GrouperTest;
+import edu.internet2.middleware.grouper.util.GrouperCallable;
+import edu.internet2.middleware.grouper.util.GrouperFuture;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+
+
+/**
+ *
+ */
+public class GrouperCacheTest extends GrouperTest {
+
+  /**
+   *
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new GrouperCacheTest("testCacheStats"));
+  }
+
+  /**
+   *
+   * @param name
+   */
+  public GrouperCacheTest(String name) {
+    super(name);
+  }
+
+  /**
+   * hits, misses, and removals are counted, values doesnt count as hits
+   */
+  public void testCacheStats() {
+    GrouperCache<String, String> grouperCache = new GrouperCache<String, String>(
+        GrouperCacheTest.class.getName() + ".stats", 100, false, 120, 120, false);
+
+    grouperCache.put("a", "aValue");
+    grouperCache.put("b", "bValue");
+    grouperCache.put("c", "cValue");
+
+    assertEquals("aValue", grouperCache.get("a"));
+    assertNull(grouperCache.get("z"));
+    assertTrue(grouperCache.containsKey("b"));
+
+    assertEquals(new HashSet<String>(GrouperUtil.toSet("aValue", "bValue", "cValue")), 
+        new HashSet<String>(grouperCache.values()));
+
+    GrouperCacheStats cacheStats = grouperCache.getCacheStats();
+    assertEquals(2, cacheStats.getHits());
+    assertEquals(1, cacheStats.getMisses());
+    assertEquals(0, cacheStats.getRemovals());
+    assertEquals(3, cacheStats.getSize());
+
+    assertEquals("cValue", grouperCache.remove("c"));
+    assertNull(grouperCache.remove("c"));
+    grouperCache.clear();
+
+    cacheStats = grouperCache.getCacheStats();
+    assertEquals(2, cacheStats.getHits());
+    assertEquals(1, cacheStats.getMisses());
+    assertEquals(3, cacheStats.getRemovals());
+    assertEquals(0, cacheStats.getEvictions());
+    assertEquals(0, cacheStats.getSize());
+  }
+
+  /**
+   * elements ehcache evicts since the cache is full, or expires, are counted as evictions
+   * @throws Exception 
+   */
+  public void testCacheStatsEvictions() throws Exception {
+    GrouperCache<String, String> grouperCache = new GrouperCache<String, String>(
+        GrouperCacheTest.class.getName() + ".evictions", 2, false, 1, 1, false);
+
+    grouperCache.put("a", "aValue");
+    grouperCache.put("b", "bValue");
+    grouperCache.put("c", "cValue");
+
+    GrouperCacheStats cacheStats = grouperCache.getCacheStats();
+    assertEquals(1, cacheStats.getEvictions());
+    assertEquals(0, cacheStats.getRemovals());
+    assertEquals(2, cacheStats.getSize());
+
+    //expired elements are noticed when accessed
+    Thread.sleep(2100);
+    assertNull(grouperCache.get("c"));
+
+    cacheStats = grouperCache.getCacheStats();
+    assertEquals(2, cacheStats.getEvictions());
+    assertEquals(0, cacheStats.getRemovals());
+  }
+
+  /**
+   * many threads using the cache at once
+   */
+  @SuppressWarnings("unchecked")
+  public void testConcurrent() {
+    final GrouperCache<Integer, Integer> grouperCache = new GrouperCache<Integer, Integer>(
+        GrouperCacheTest.class.getName() + ".concurrent", 1000, false, 120, 120, false);
+
+    List<GrouperFuture<Void>> futures = new ArrayList<GrouperFuture<Void>>();
+    for (int thread=0;thread<8;thread++) {
+      futures.add(GrouperUtil.executorServiceSubmit(GrouperUtil.retrieveExecutorService(), new GrouperCallable<Void>("cacheTest") {
+
+        @Override
+        public Void callLogic() {
+          for (int i=0;i<1000;i++) {
+            Integer key = i % 100;
+            if (grouperCache.get(key) == null) {
+              grouperCache.put(key, key);
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    for (GrouperFuture<Void> future : futures) {
+      future.get();
+    }
+
+    CacheStats cacheStats = grouperCache.getCacheStats();
+    assertEquals(8000, cacheStats.getHits() + cacheStats.getMisses());
+    assertEquals(100, cacheStats.getSize());
+    assertEquals(100, grouperCache.values().size());
+  }
+}
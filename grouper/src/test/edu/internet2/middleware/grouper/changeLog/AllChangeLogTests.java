@@ -39,6 +39,8 @@ public class AllChangeLogTests {
     suite.addTestSuite(ChangeLogTypeTest.class);
     suite.addTestSuite(ChangeLogIdTest.class);
     suite.addTestSuite(ChangeLogTest.class);
+    suite.addTestSuite(ChangeLogEntryReadAheadTest.class);
+    suite.addTestSuite(ChangeLogHelperTest.class);
     //$JUnit-END$
     return suite;
   }
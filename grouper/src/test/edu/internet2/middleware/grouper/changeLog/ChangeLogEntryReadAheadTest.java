@@ -0,0 +1,112 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.changeLog;
+
+import java.util.List;
+
+import junit.textui.TestRunner;
+
+import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.Stem;
+import edu.internet2.middleware.grouper.app.loader.GrouperLoaderConfig;
+import edu.internet2.middleware.grouper.helper.GrouperTest;
+import edu.internet2.middleware.grouper.helper.SessionHelper;
+import edu.internet2.middleware.grouper.helper.StemHelper;
+import edu.internet2.middleware.grouper.misc.GrouperDAOFactory;
+
+
+/**
+ *
+ */
+public class ChangeLogEntryReadAheadTest extends GrouperTest {
+
+  /**
+   *
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new ChangeLogEntryReadAheadTest("testRetrieveBatch"));
+  }
+
+  /**
+   *
+   * @param name
+   */
+  public ChangeLogEntryReadAheadTest(String name) {
+    super(name);
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.helper.GrouperTest#setUp()
+   */
+  @Override
+  protected void setUp() {
+    super.setUp();
+    ChangeLogEntryReadAhead.instance().clear();
+  }
+
+  /**
+   * consumers in the buffer, ahead of it, and behind it should get the same entries as the database
+   */
+  public void testRetrieveBatch() {
+
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("changeLog.readAhead.bufferSize", "20");
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("changeLog.readAhead.fetchSize", "8");
+
+    GrouperSession grouperSession = SessionHelper.getRootSession();
+    Stem root = StemHelper.findRootStem(grouperSession);
+    Stem edu = StemHelper.addChildStem(root, "edu", "education");
+    for (int i=0;i<30;i++) {
+      edu.addChildGroup("readAhead" + i, "readAhead" + i);
+    }
+    ChangeLogTempToEntity.convertRecords();
+
+    List<ChangeLogEntry> allEntries = GrouperDAOFactory.getFactory().getChangeLogEntry().retrieveBatch(-1, 100000);
+    assertTrue(allEntries.size() >= 30);
+
+    //walk through all entries like a consumer
+    long lastSequence = allEntries.get(0).getSequenceNumber() - 1;
+    int index = 0;
+    while (true) {
+      List<ChangeLogEntry> batch = ChangeLogEntryReadAhead.retrieveBatch(lastSequence, 5);
+      if (batch.size() == 0) {
+        break;
+      }
+      for (ChangeLogEntry changeLogEntry : batch) {
+        assertEquals(allEntries.get(index++).getSequenceNumber(), changeLogEntry.getSequenceNumber());
+      }
+      lastSequence = batch.get(batch.size()-1).getSequenceNumber();
+    }
+    assertEquals(allEntries.size(), index);
+    assertTrue(ChangeLogEntryReadAhead.instance().getBufferHitCount() > 0);
+
+    //a consumer at the start has fallen behind the buffer, reads from the database
+    long behindCount = ChangeLogEntryReadAhead.instance().getBufferBehindCount();
+    List<ChangeLogEntry> batch = ChangeLogEntryReadAhead.retrieveBatch(allEntries.get(0).getSequenceNumber(), 5);
+    assertEquals(behindCount + 1, ChangeLogEntryReadAhead.instance().getBufferBehindCount());
+    assertEquals(5, batch.size());
+    for (int i=0;i<5;i++) {
+      assertEquals(allEntries.get(i+1).getSequenceNumber(), batch.get(i).getSequenceNumber());
+    }
+
+    //disabled goes to the database
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("changeLog.readAhead.bufferSize", "0");
+    long fetchCount = ChangeLogEntryReadAhead.instance().getFetchCount();
+    batch = ChangeLogEntryReadAhead.retrieveBatch(allEntries.get(allEntries.size()-3).getSequenceNumber(), 5);
+    assertEquals(2, batch.size());
+    assertEquals(fetchCount, ChangeLogEntryReadAhead.instance().getFetchCount());
+  }
+}
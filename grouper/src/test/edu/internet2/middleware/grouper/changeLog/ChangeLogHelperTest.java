@@ -0,0 +1,235 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.changeLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.textui.TestRunner;
+
+import edu.internet2.middleware.grouper.Group;
+import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.Stem;
+import edu.internet2.middleware.grouper.app.loader.GrouperLoaderConfig;
+import edu.internet2.middleware.grouper.app.loader.GrouperLoaderStatus;
+import edu.internet2.middleware.grouper.app.loader.db.Hib3GrouperLoaderLog;
+import edu.internet2.middleware.grouper.helper.GrouperTest;
+import edu.internet2.middleware.grouper.helper.SessionHelper;
+import edu.internet2.middleware.grouper.helper.StemHelper;
+import edu.internet2.middleware.grouper.helper.SubjectTestHelper;
+import edu.internet2.middleware.grouper.misc.GrouperDAOFactory;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+
+
+/**
+ *
+ */
+public class ChangeLogHelperTest extends GrouperTest {
+
+  /**
+   *
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new ChangeLogHelperTest("testProcessRecordsBatchSize"));
+  }
+
+  /**
+   *
+   * @param name
+   */
+  public ChangeLogHelperTest(String name) {
+    super(name);
+  }
+
+  /**
+   * consumer which keeps track of the batches it gets
+   */
+  private static class BatchSizeConsumer extends ChangeLogConsumerBase {
+
+    /** sequence numbers processed */
+    private List<Long> sequenceNumbers = new ArrayList<Long>();
+
+    /** size of each batch */
+    private List<Integer> batchSizes = new ArrayList<Integer>();
+
+    /**
+     * @see edu.internet2.middleware.grouper.changeLog.ChangeLogConsumerBase#processChangeLogEntries(java.util.List, edu.internet2.middleware.grouper.changeLog.ChangeLogProcessorMetadata)
+     */
+    @Override
+    public long processChangeLogEntries(List<ChangeLogEntry> changeLogEntryList,
+        ChangeLogProcessorMetadata changeLogProcessorMetadata) {
+      this.batchSizes.add(changeLogEntryList.size());
+      long currentId = -1;
+      for (ChangeLogEntry changeLogEntry : changeLogEntryList) {
+        currentId = changeLogEntry.getSequenceNumber();
+        this.sequenceNumbers.add(currentId);
+      }
+      return currentId;
+    }
+  }
+
+  /**
+   * process with a configured batch size, prefetch, and checkpoints
+   */
+  public void testProcessRecordsBatchSize() {
+
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("changeLog.consumer.helperTest.batchSize", "7");
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("changeLog.helper.checkpointEveryBatches", "2");
+
+    ChangeLogTempToEntity.convertRecords();
+
+    ChangeLogConsumer changeLogConsumer = new ChangeLogConsumer();
+    changeLogConsumer.setName("helperTest");
+    changeLogConsumer.setLastSequenceProcessed(GrouperUtil.defaultIfNull(ChangeLogEntry.maxSequenceNumber(false), 0l));
+    GrouperDAOFactory.getFactory().getChangeLogConsumer().saveOrUpdate(changeLogConsumer);
+
+    GrouperSession grouperSession = SessionHelper.getRootSession();
+    Stem root = StemHelper.findRootStem(grouperSession);
+    Stem edu = StemHelper.addChildStem(root, "edu", "education");
+    for (int i=0;i<20;i++) {
+      edu.addChildGroup("helper" + i, "helper" + i);
+    }
+    ChangeLogTempToEntity.convertRecords();
+
+    List<ChangeLogEntry> allEntries = GrouperDAOFactory.getFactory().getChangeLogEntry()
+      .retrieveBatch(changeLogConsumer.getLastSequenceProcessed(), 100000);
+    assertTrue(allEntries.size() > 14);
+
+    BatchSizeConsumer batchSizeConsumer = new BatchSizeConsumer();
+    Hib3GrouperLoaderLog hib3GrouperLoaderLog = new Hib3GrouperLoaderLog();
+    ChangeLogHelper.processRecords("helperTest", hib3GrouperLoaderLog, batchSizeConsumer);
+
+    assertEquals(GrouperLoaderStatus.SUCCESS.name(), hib3GrouperLoaderLog.getStatus());
+    assertEquals(allEntries.size(), hib3GrouperLoaderLog.getTotalCount().intValue());
+    assertEquals(allEntries.size(), batchSizeConsumer.sequenceNumbers.size());
+    for (int i=0;i<allEntries.size();i++) {
+      assertEquals(allEntries.get(i).getSequenceNumber(), batchSizeConsumer.sequenceNumbers.get(i));
+    }
+    for (int i=0;i<batchSizeConsumer.batchSizes.size()-1;i++) {
+      assertEquals(7, batchSizeConsumer.batchSizes.get(i).intValue());
+    }
+
+    changeLogConsumer = GrouperDAOFactory.getFactory().getChangeLogConsumer().findByName("helperTest", true);
+    assertEquals(allEntries.get(allEntries.size()-1).getSequenceNumber(), changeLogConsumer.getLastSequenceProcessed());
+  }
+
+  /**
+   * thread safe consumer which stops at the entries of one group
+   */
+  private static class LaneConsumer extends ChangeLogConsumerBase {
+
+    /** sequence numbers processed by group id */
+    private Map<String, List<Long>> sequenceNumbersByGroupId = new HashMap<String, List<Long>>();
+
+    /** group id to stop at */
+    private String failGroupId = null;
+
+    /**
+     * @see edu.internet2.middleware.grouper.changeLog.ChangeLogConsumerBase#processChangeLogEntries(java.util.List, edu.internet2.middleware.grouper.changeLog.ChangeLogProcessorMetadata)
+     */
+    @Override
+    public long processChangeLogEntries(List<ChangeLogEntry> changeLogEntryList,
+        ChangeLogProcessorMetadata changeLogProcessorMetadata) {
+      long currentId = -1;
+      for (ChangeLogEntry changeLogEntry : changeLogEntryList) {
+        String groupId = ChangeLogConsumerLanes.laneKey(changeLogEntry, new HashMap<String, Set<String>>());
+        if (groupId != null && groupId.equals(this.failGroupId)) {
+          return currentId;
+        }
+        currentId = changeLogEntry.getSequenceNumber();
+        synchronized (this) {
+          List<Long> sequenceNumbers = this.sequenceNumbersByGroupId.get(groupId);
+          if (sequenceNumbers == null) {
+            sequenceNumbers = new ArrayList<Long>();
+            this.sequenceNumbersByGroupId.put(groupId, sequenceNumbers);
+          }
+          sequenceNumbers.add(currentId);
+        }
+      }
+      return currentId;
+    }
+  }
+
+  /**
+   * process in parallel lanes by group id
+   */
+  public void testProcessRecordsParallelLanes() {
+
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("changeLog.consumer.laneTest.parallelLanes", "4");
+
+    ChangeLogTempToEntity.convertRecords();
+
+    ChangeLogConsumer changeLogConsumer = new ChangeLogConsumer();
+    changeLogConsumer.setName("laneTest");
+    changeLogConsumer.setLastSequenceProcessed(GrouperUtil.defaultIfNull(ChangeLogEntry.maxSequenceNumber(false), 0l));
+    GrouperDAOFactory.getFactory().getChangeLogConsumer().saveOrUpdate(changeLogConsumer);
+
+    GrouperSession grouperSession = SessionHelper.getRootSession();
+    Stem root = StemHelper.findRootStem(grouperSession);
+    Stem edu = StemHelper.addChildStem(root, "edu", "education");
+    List<Group> groups = new ArrayList<Group>();
+    for (int i=0;i<10;i++) {
+      Group group = edu.addChildGroup("lane" + i, "lane" + i);
+      group.addMember(SubjectTestHelper.SUBJ0);
+      group.addMember(SubjectTestHelper.SUBJ1);
+      groups.add(group);
+    }
+    ChangeLogTempToEntity.convertRecords();
+
+    List<ChangeLogEntry> allEntries = GrouperDAOFactory.getFactory().getChangeLogEntry()
+      .retrieveBatch(changeLogConsumer.getLastSequenceProcessed(), 100000);
+
+    //stop at group 5
+    LaneConsumer laneConsumer = new LaneConsumer();
+    laneConsumer.failGroupId = groups.get(5).getId();
+    Hib3GrouperLoaderLog hib3GrouperLoaderLog = new Hib3GrouperLoaderLog();
+    ChangeLogHelper.processRecords("laneTest", hib3GrouperLoaderLog, laneConsumer);
+    assertEquals(GrouperLoaderStatus.ERROR.name(), hib3GrouperLoaderLog.getStatus());
+
+    //processed up to the entry before the first one of group 5
+    long expectedLastSequence = -1;
+    for (ChangeLogEntry changeLogEntry : allEntries) {
+      if (laneConsumer.failGroupId.equals(ChangeLogConsumerLanes.laneKey(changeLogEntry, new HashMap<String, Set<String>>()))) {
+        break;
+      }
+      expectedLastSequence = changeLogEntry.getSequenceNumber();
+    }
+    changeLogConsumer = GrouperDAOFactory.getFactory().getChangeLogConsumer().findByName("laneTest", true);
+    assertEquals(expectedLastSequence, changeLogConsumer.getLastSequenceProcessed().longValue());
+
+    //now all the way through
+    laneConsumer = new LaneConsumer();
+    hib3GrouperLoaderLog = new Hib3GrouperLoaderLog();
+    ChangeLogHelper.processRecords("laneTest", hib3GrouperLoaderLog, laneConsumer);
+    assertEquals(GrouperLoaderStatus.SUCCESS.name(), hib3GrouperLoaderLog.getStatus());
+
+    changeLogConsumer = GrouperDAOFactory.getFactory().getChangeLogConsumer().findByName("laneTest", true);
+    assertEquals(allEntries.get(allEntries.size()-1).getSequenceNumber(), changeLogConsumer.getLastSequenceProcessed());
+
+    //each group from group 5 on was processed again, in order: group add then the two memberships
+    for (Group group : groups.subList(5, groups.size())) {
+      List<Long> sequenceNumbers = laneConsumer.sequenceNumbersByGroupId.get(group.getId());
+      assertTrue(sequenceNumbers.size() >= 3);
+      for (int i=1;i<sequenceNumbers.size();i++) {
+        assertTrue(sequenceNumbers.get(i-1) < sequenceNumbers.get(i));
+      }
+    }
+  }
+}
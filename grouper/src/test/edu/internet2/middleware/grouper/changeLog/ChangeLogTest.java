@@ -129,6 +129,42 @@ public class ChangeLogTest extends GrouperTest {
 
   }
   
+  /**
+   * convert temp records in batches of a few entries per transaction
+   */
+  public void testConvertRecordsBatch() {
+
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("changeLog.changeLogTempToChangeLog.entriesPerTransaction", "3");
+
+    //move the temp objects to the regular change log table and delete them
+    ChangeLogTempToEntity.convertRecords();
+    HibernateSession.byHqlStatic().createQuery("delete from ChangeLogEntryEntity").executeUpdate();
+
+    for (int i=0;i<8;i++) {
+      edu.addChildGroup("batchGroup" + i, "batchGroup" + i);
+    }
+
+    int tempCount = HibernateSession.bySqlStatic().select(int.class, "select count(1) from grouper_change_log_entry_temp");
+    assertTrue(tempCount >= 8);
+
+    assertEquals(tempCount, ChangeLogTempToEntity.convertRecords());
+
+    assertEquals(0, (int)HibernateSession.bySqlStatic().select(int.class, "select count(1) from grouper_change_log_entry_temp"));
+    assertEquals(tempCount, (int)HibernateSession.bySqlStatic().select(int.class, "select count(1) from grouper_change_log_entry"));
+
+    List<ChangeLogEntry> changeLogEntries = HibernateSession.byHqlStatic()
+      .createQuery("from ChangeLogEntryEntity where changeLogTypeId = :theId order by sequenceNumber")
+      .setString("theId", ChangeLogTypeBuiltin.GROUP_ADD.getChangeLogType().getId())
+      .list(ChangeLogEntry.class);
+
+    assertEquals(8, changeLogEntries.size());
+    for (int i=0;i<8;i++) {
+      assertEquals("edu:batchGroup" + i, changeLogEntries.get(i).retrieveValueForLabel(ChangeLogLabels.GROUP_ADD.name));
+      assertNotNull(GrouperDAOFactory.getFactory().getPITGroup().findBySourceIdActive(
+          changeLogEntries.get(i).retrieveValueForLabel(ChangeLogLabels.GROUP_ADD.id), false));
+    }
+  }
+
   /**
    * 
    */
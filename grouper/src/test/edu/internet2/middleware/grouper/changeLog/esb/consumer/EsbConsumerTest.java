@@ -18,12 +18,21 @@
  */
 package edu.internet2.middleware.grouper.changeLog.esb.consumer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import junit.textui.TestRunner;
 
 import org.apache.commons.lang.StringUtils;
 
 import edu.internet2.middleware.grouper.GrouperSession;
 import edu.internet2.middleware.grouper.SubjectFinder;
+import edu.internet2.middleware.grouper.app.loader.GrouperLoaderConfig;
+import edu.internet2.middleware.grouper.changeLog.ChangeLogEntry;
+import edu.internet2.middleware.grouper.changeLog.ChangeLogLabels;
+import edu.internet2.middleware.grouper.changeLog.ChangeLogProcessorMetadata;
+import edu.internet2.middleware.grouper.changeLog.ChangeLogTypeBuiltin;
+import edu.internet2.middleware.grouper.esb.listener.EsbListenerBase;
 import edu.internet2.middleware.grouper.helper.GrouperTest;
 import edu.internet2.middleware.grouper.helper.SubjectTestHelper;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
@@ -92,6 +101,82 @@ public class EsbConsumerTest extends GrouperTest {
     
   }
   
+  /**
+   * publisher which keeps the messages instead of sending them
+   */
+  public static class EsbConsumerTestPublisher extends EsbListenerBase {
+
+    /** messages which were sent */
+    static List<String> messages = new ArrayList<String>();
+    
+    /** index of the message which should fail, or -1 */
+    static int failMessageIndex = -1;
+    
+    /**
+     * @see EsbListenerBase#dispatchEvent(String, String)
+     */
+    @Override
+    public boolean dispatchEvent(String eventJsonString, String consumerName) {
+      if (messages.size() == failMessageIndex) {
+        failMessageIndex = -1;
+        return false;
+      }
+      messages.add(eventJsonString);
+      return true;
+    }
+
+    /**
+     * @see EsbListenerBase#disconnect()
+     */
+    @Override
+    public void disconnect() {
+    }
+  }
+  
+  /**
+   * 
+   */
+  public void testEventsPerMessage() {
+    
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("changeLog.consumer.esbBatchTest.publisher.class", 
+        EsbConsumerTestPublisher.class.getName());
+    GrouperLoaderConfig.retrieveConfig().propertiesOverrideMap().put("changeLog.consumer.esbBatchTest.publisher.eventsPerMessage", "2");
+
+    List<ChangeLogEntry> changeLogEntryList = new ArrayList<ChangeLogEntry>();
+    for (int i=1;i<=5;i++) {
+      ChangeLogEntry changeLogEntry = new ChangeLogEntry(true, ChangeLogTypeBuiltin.GROUP_ADD, 
+          ChangeLogLabels.GROUP_ADD.id.name(), "id" + i, ChangeLogLabels.GROUP_ADD.name.name(), "a:b" + i);
+      changeLogEntry.setSequenceNumber((long)i);
+      changeLogEntryList.add(changeLogEntry);
+    }
+    
+    ChangeLogProcessorMetadata changeLogProcessorMetadata = new ChangeLogProcessorMetadata();
+    changeLogProcessorMetadata.setConsumerName("esbBatchTest");
+    
+    EsbConsumerTestPublisher.messages.clear();
+    EsbConsumerTestPublisher.failMessageIndex = -1;
+    
+    assertEquals(5, new EsbConsumer().processChangeLogEntries(changeLogEntryList, changeLogProcessorMetadata));
+    assertFalse(changeLogProcessorMetadata.isHadProblem());
+    
+    //2, 2, and 1
+    assertEquals(3, EsbConsumerTestPublisher.messages.size());
+    assertTrue(EsbConsumerTestPublisher.messages.get(0), EsbConsumerTestPublisher.messages.get(0).contains("a:b1"));
+    assertTrue(EsbConsumerTestPublisher.messages.get(0), EsbConsumerTestPublisher.messages.get(0).contains("a:b2"));
+    assertTrue(EsbConsumerTestPublisher.messages.get(2), EsbConsumerTestPublisher.messages.get(2).contains("a:b5"));
+
+    //the second message fails, retry from the first event in it
+    EsbConsumerTestPublisher.messages.clear();
+    EsbConsumerTestPublisher.failMessageIndex = 1;
+    changeLogProcessorMetadata = new ChangeLogProcessorMetadata();
+    changeLogProcessorMetadata.setConsumerName("esbBatchTest");
+
+    assertEquals(2, new EsbConsumer().processChangeLogEntries(changeLogEntryList, changeLogProcessorMetadata));
+    assertTrue(changeLogProcessorMetadata.isHadProblem());
+    assertEquals(3, changeLogProcessorMetadata.getRecordExceptionSequence());
+    assertEquals(1, EsbConsumerTestPublisher.messages.size());
+  }
+  
   /**
    * 
    */
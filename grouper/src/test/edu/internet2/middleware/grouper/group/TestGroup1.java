@@ -31,6 +31,8 @@
 */
 
 package edu.internet2.middleware.grouper.group;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 
@@ -59,6 +61,7 @@ import edu.internet2.middleware.grouper.MembershipFinder;
 import edu.internet2.middleware.grouper.Stem;
 import edu.internet2.middleware.grouper.StemFinder;
 import edu.internet2.middleware.grouper.SubjectFinder;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.cfg.GrouperHibernateConfig;
 import edu.internet2.middleware.grouper.exception.CompositeNotFoundException;
 import edu.internet2.middleware.grouper.exception.GrantPrivilegeException;
@@ -79,6 +82,7 @@ import edu.internet2.middleware.grouper.hibernate.GrouperTransaction;
 import edu.internet2.middleware.grouper.hibernate.GrouperTransactionHandler;
 import edu.internet2.middleware.grouper.hibernate.GrouperTransactionType;
 import edu.internet2.middleware.grouper.internal.dao.GrouperDAOException;
+import edu.internet2.middleware.grouper.membership.MembershipType;
 import edu.internet2.middleware.grouper.misc.CompositeType;
 import edu.internet2.middleware.grouper.misc.E;
 import edu.internet2.middleware.grouper.misc.SaveMode;
@@ -147,6 +151,165 @@ public class TestGroup1 extends GrouperTest {
     }
   } // public void testReplaceMembers()
 
+  /**
+   * 
+   */
+  public void testAddDeleteMembers() {
+    
+    //make more than one batch
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("groups.bulkMembership.batchSize", "2");
+    
+    R registry = R.populateRegistry(1, 2, 0);
+    Group group = registry.getGroup("a", "a");
+    Group parent = registry.getGroup("a", "b");
+    
+    parent.addMember(group.toSubject());
+    group.addMember(SubjectTestHelper.SUBJ0);
+
+    //already a member is skipped
+    assertEquals(3, group.addMembers(GrouperUtil.toList(SubjectTestHelper.SUBJ0, SubjectTestHelper.SUBJ1, 
+        SubjectTestHelper.SUBJ2, SubjectTestHelper.SUBJ3)));
+    assertEquals(4, group.getImmediateMembers().size());
+    
+    //effective memberships through the group set
+    assertTrue(parent.hasEffectiveMember(SubjectTestHelper.SUBJ3));
+    
+    assertEquals(0, group.addMembers(GrouperUtil.toList(SubjectTestHelper.SUBJ1)));
+
+    //not a member is skipped
+    assertEquals(2, group.deleteMembers(GrouperUtil.toList(SubjectTestHelper.SUBJ1, 
+        SubjectTestHelper.SUBJ3, SubjectTestHelper.SUBJ4)));
+    assertEquals(2, group.getImmediateMembers().size());
+    
+    assertTrue(group.hasMember(SubjectTestHelper.SUBJ0));
+    assertTrue(group.hasMember(SubjectTestHelper.SUBJ2));
+    assertFalse(parent.hasMember(SubjectTestHelper.SUBJ3));
+
+    registry.rs.stop();
+  }
+
+  /**
+   * group sets and composites are done once per batch
+   */
+  public void testAddMembersGroupsAndComposite() {
+    
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("groups.bulkMembership.batchSize", "3");
+    
+    R registry = R.populateRegistry(1, 6, 0);
+    Group group = registry.getGroup("a", "a");
+    Group parent = registry.getGroup("a", "b");
+    Group memberGroup1 = registry.getGroup("a", "c");
+    Group memberGroup2 = registry.getGroup("a", "d");
+    Group composite = registry.getGroup("a", "e");
+    Group otherFactor = registry.getGroup("a", "f");
+    
+    parent.addMember(group.toSubject());
+    composite.addCompositeMember(CompositeType.UNION, group, otherFactor);
+    memberGroup1.addMember(SubjectTestHelper.SUBJ1);
+    memberGroup2.addMember(SubjectTestHelper.SUBJ2);
+    
+    assertEquals(4, group.addMembers(GrouperUtil.toList(memberGroup1.toSubject(), SubjectTestHelper.SUBJ0, 
+        memberGroup2.toSubject(), SubjectTestHelper.SUBJ3)));
+    assertEquals(4, group.getImmediateMembers().size());
+    
+    //effective memberships through the group sets of the member groups
+    assertTrue(group.hasEffectiveMember(SubjectTestHelper.SUBJ1));
+    assertTrue(group.hasEffectiveMember(SubjectTestHelper.SUBJ2));
+    assertTrue(parent.hasEffectiveMember(SubjectTestHelper.SUBJ1));
+    assertTrue(parent.hasEffectiveMember(SubjectTestHelper.SUBJ2));
+    assertTrue(parent.hasEffectiveMember(memberGroup2.toSubject()));
+    
+    //composite has the members and the members of the member groups
+    assertTrue(composite.hasMember(SubjectTestHelper.SUBJ0));
+    assertTrue(composite.hasMember(SubjectTestHelper.SUBJ1));
+    assertTrue(composite.hasMember(SubjectTestHelper.SUBJ2));
+    assertTrue(composite.hasMember(SubjectTestHelper.SUBJ3));
+
+    registry.rs.stop();
+  }
+
+  /**
+   * 
+   */
+  public void testAddDeleteMembersOptinOptout() {
+    
+    R registry = R.populateRegistry(1, 1, 0);
+    Group group = registry.getGroup("a", "a");
+    
+    group.grantPriv(SubjectTestHelper.SUBJ5, AccessPrivilege.VIEW, false);
+    group.grantPriv(SubjectTestHelper.SUBJ5, AccessPrivilege.OPTIN, false);
+    group.grantPriv(SubjectTestHelper.SUBJ5, AccessPrivilege.OPTOUT, false);
+    
+    GrouperSession grouperSession = GrouperSession.start(SubjectTestHelper.SUBJ5);
+    
+    try {
+      //can only opt in itself
+      try {
+        group.addMembers(GrouperUtil.toList(SubjectTestHelper.SUBJ5, SubjectTestHelper.SUBJ6));
+        fail("Shouldnt be able to add someone else");
+      } catch (InsufficientPrivilegeException ipe) {
+        //good
+      }
+      assertEquals(0, group.getImmediateMembers().size());
+      
+      assertEquals(1, group.addMembers(GrouperUtil.toList(SubjectTestHelper.SUBJ5)));
+      assertTrue(group.hasImmediateMember(SubjectTestHelper.SUBJ5));
+      
+      assertEquals(1, group.deleteMembers(GrouperUtil.toList(SubjectTestHelper.SUBJ5)));
+      assertFalse(group.hasImmediateMember(SubjectTestHelper.SUBJ5));
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+    
+    //without optin it is not allowed
+    group.revokePriv(SubjectTestHelper.SUBJ5, AccessPrivilege.OPTIN);
+    grouperSession = GrouperSession.start(SubjectTestHelper.SUBJ5);
+    try {
+      group.addMembers(GrouperUtil.toList(SubjectTestHelper.SUBJ5));
+      fail("Shouldnt be able to opt in");
+    } catch (InsufficientPrivilegeException ipe) {
+      //good
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+
+    registry.rs.stop();
+  }
+
+  /**
+   * 
+   */
+  public void testHasMembers() {
+    
+    R registry = R.populateRegistry(1, 2, 0);
+    Group group = registry.getGroup("a", "a");
+    Group parent = registry.getGroup("a", "b");
+    
+    parent.addMember(group.toSubject());
+    parent.addMember(SubjectTestHelper.SUBJ1);
+    group.addMember(SubjectTestHelper.SUBJ0);
+
+    List<Subject> subjects = GrouperUtil.toList(SubjectTestHelper.SUBJ2, SubjectTestHelper.SUBJ1, 
+        SubjectTestHelper.SUBJ0);
+    
+    //in order of the subjects passed in
+    assertEquals(GrouperUtil.toList(SubjectTestHelper.SUBJ1, SubjectTestHelper.SUBJ0), 
+        new ArrayList<Subject>(parent.hasMembers(subjects, null, null)));
+    
+    assertEquals(GrouperUtil.toList(SubjectTestHelper.SUBJ1), 
+        new ArrayList<Subject>(parent.hasMembers(subjects, Group.getDefaultList(), MembershipType.IMMEDIATE)));
+    
+    assertEquals(GrouperUtil.toList(SubjectTestHelper.SUBJ0), 
+        new ArrayList<Subject>(parent.hasMembers(subjects, Group.getDefaultList(), MembershipType.EFFECTIVE)));
+    
+    //everyone is a member if GrouperAll is
+    group.addMember(SubjectFinder.findAllSubject());
+    assertEquals(3, group.hasMembers(subjects, null, null).size());
+    assertEquals(0, group.hasMembers(subjects, null, MembershipType.NONIMMEDIATE).size());
+
+    registry.rs.stop();
+  }
+
   
   public void testDeleteGroupMemberWithNonGroupMember() {
     LOG.info("testDeleteGroupMemberWithNonGroupMember");
@@ -64,6 +64,7 @@ public class AllHooksTests {
     suite.addTestSuite(GroupTypeHooksTest.class);
     suite.addTestSuite(LifecycleHooksTest.class);
     suite.addTestSuite(AttributeDefNameHooksTest.class);
+    suite.addTestSuite(HookAsynchronousTest.class);
     //$JUnit-END$
     suite.addTest(AllHooksExamplesTests.suite());
     return suite;
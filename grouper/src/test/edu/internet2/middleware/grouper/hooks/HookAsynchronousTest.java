@@ -0,0 +1,271 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.hooks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.textui.TestRunner;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
+import edu.internet2.middleware.grouper.helper.GrouperTest;
+import edu.internet2.middleware.grouper.hooks.beans.HooksBean;
+import edu.internet2.middleware.grouper.hooks.beans.HooksContext;
+import edu.internet2.middleware.grouper.hooks.beans.HooksGroupBean;
+import edu.internet2.middleware.grouper.hooks.logic.HookAsynchronous;
+import edu.internet2.middleware.grouper.hooks.logic.HookAsynchronousHandler;
+import edu.internet2.middleware.grouper.hooks.logic.HookAsynchronousMetrics;
+
+
+/**
+ * test the pool, queue and reject policies of asynchronous hooks
+ */
+public class HookAsynchronousTest extends GrouperTest {
+
+  /**
+   * 
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new HookAsynchronousTest("testHookSubmitsHook"));
+  }
+
+  /**
+   * 
+   * @param name
+   */
+  public HookAsynchronousTest(String name) {
+    super(name);
+  }
+
+  /** name of the hook class in the metrics */
+  private static final String HOOK_CLASS_NAME = HookAsynchronousTest.class.getName();
+  
+  /** number of hooks which ran */
+  private AtomicInteger hookCount = new AtomicInteger();
+  
+  /**
+   * @see edu.internet2.middleware.grouper.helper.GrouperTest#setUp()
+   */
+  @Override
+  protected void setUp() {
+    super.setUp();
+    //start a new pool with the config of the test
+    HookAsynchronous.shutdown();
+    HookAsynchronousMetrics.clearMetrics();
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("hooks.asynchronous.threadPoolSize", "1");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("hooks.asynchronous.queueSize", "2");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("hooks.asynchronous.rejectPolicy", "block");
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.helper.GrouperTest#tearDown()
+   */
+  @Override
+  protected void tearDown() {
+    HookAsynchronous.shutdown();
+    HookAsynchronousMetrics.clearMetrics();
+    super.tearDown();
+  }
+
+  /**
+   * submit a hook
+   * @param hookAsynchronousHandler
+   */
+  private static void submit(HookAsynchronousHandler hookAsynchronousHandler) {
+    HookAsynchronous.callbackAsynchronous(new HooksContext(), new HooksGroupBean(), 
+        hookAsynchronousHandler, HOOK_CLASS_NAME);
+  }
+  
+  /**
+   * hook which waits for the latch and then counts
+   * @param latch
+   * @return the handler
+   */
+  private HookAsynchronousHandler waitingHook(final CountDownLatch latch) {
+    return new HookAsynchronousHandler() {
+      
+      public void callback(HooksContext hooksContext, HooksBean hooksBean) {
+        try {
+          latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+          throw new RuntimeException(ie);
+        }
+        HookAsynchronousTest.this.hookCount.incrementAndGet();
+      }
+    };
+  }
+  
+  /**
+   * hook which counts
+   * @return the handler
+   */
+  private HookAsynchronousHandler countingHook() {
+    return new HookAsynchronousHandler() {
+      
+      public void callback(HooksContext hooksContext, HooksBean hooksBean) {
+        HookAsynchronousTest.this.hookCount.incrementAndGet();
+      }
+    };
+  }
+  
+  /**
+   * the queue is bounded, and with the callerRuns policy the caller waits for a hook which doesnt fit
+   */
+  public void testCallerRuns() {
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("hooks.asynchronous.rejectPolicy", "callerRuns");
+
+    CountDownLatch latch = new CountDownLatch(1);
+    
+    //one runs, two wait in the queue
+    for (int i=0;i<3;i++) {
+      submit(waitingHook(latch));
+    }
+    HookAsynchronousMetrics hookAsynchronousMetrics = HookAsynchronousMetrics.retrieveMetrics(HOOK_CLASS_NAME);
+    
+    assertEquals(2, HookAsynchronous.queueDepth());
+    assertEquals(0, hookAsynchronousMetrics.getRejected());
+    
+    //this one doesnt fit, so it is run before this returns
+    submit(countingHook());
+    assertEquals(1, this.hookCount.get());
+    assertEquals(1, hookAsynchronousMetrics.getRejected());
+    assertEquals(2, HookAsynchronous.queueDepth());
+    
+    latch.countDown();
+    assertTrue(HookAsynchronous.shutdown());
+    assertEquals(4, this.hookCount.get());
+    assertEquals(4, hookAsynchronousMetrics.getCompleted());
+  }
+
+  /**
+   * with the block policy, the caller waits for room in the queue
+   */
+  public void testBlock() {
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("hooks.asynchronous.blockTimeoutSeconds", "30");
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    
+    for (int i=0;i<3;i++) {
+      submit(waitingHook(latch));
+    }
+
+    //let the hooks finish in a while
+    new Thread(new Runnable() {
+      
+      public void run() {
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException ie) {
+          throw new RuntimeException(ie);
+        }
+        latch.countDown();
+      }
+    }).start();
+    
+    long startNanos = System.nanoTime();
+    submit(countingHook());
+    long millis = (System.nanoTime() - startNanos) / 1000000;
+    
+    //it waited for room in the queue, and then went in the queue
+    assertTrue(Long.toString(millis), millis >= 300 && millis < 20000);
+    assertEquals(1, HookAsynchronousMetrics.retrieveMetrics(HOOK_CLASS_NAME).getRejected());
+
+    assertTrue(HookAsynchronous.shutdown());
+    assertEquals(4, this.hookCount.get());
+  }
+
+  /**
+   * with the block policy, the caller doesnt wait longer than the timeout for room in the queue,
+   * and then it waits for the hook to run
+   */
+  public void testBlockTimeout() {
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("hooks.asynchronous.blockTimeoutSeconds", "1");
+
+    CountDownLatch latch = new CountDownLatch(1);
+    
+    for (int i=0;i<3;i++) {
+      submit(waitingHook(latch));
+    }
+
+    long startNanos = System.nanoTime();
+    submit(countingHook());
+    long millis = (System.nanoTime() - startNanos) / 1000000;
+    
+    assertTrue(Long.toString(millis), millis >= 900 && millis < 20000);
+    assertEquals(1, this.hookCount.get());
+    
+    latch.countDown();
+    assertTrue(HookAsynchronous.shutdown());
+    assertEquals(4, this.hookCount.get());
+  }
+
+  /**
+   * a hook which submits hooks to a full queue doesnt wait for the thread it is using
+   */
+  public void testHookSubmitsHook() {
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("hooks.asynchronous.queueSize", "1");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("hooks.asynchronous.blockTimeoutSeconds", "60");
+
+    final AtomicInteger countInHook = new AtomicInteger(-1);
+    
+    long startNanos = System.nanoTime();
+    submit(new HookAsynchronousHandler() {
+      
+      public void callback(HooksContext hooksContext, HooksBean hooksBean) {
+        //the first one fills the queue, the second runs before this returns
+        submit(countingHook());
+        submit(countingHook());
+        countInHook.set(HookAsynchronousTest.this.hookCount.get());
+        HookAsynchronousTest.this.hookCount.incrementAndGet();
+      }
+    });
+    
+    assertTrue(HookAsynchronous.shutdown());
+    long millis = (System.nanoTime() - startNanos) / 1000000;
+    
+    assertTrue(Long.toString(millis), millis < 30000);
+    assertEquals(1, countInHook.get());
+    assertEquals(3, this.hookCount.get());
+  }
+
+  /**
+   * shutting down runs the hooks in the queue
+   */
+  public void testShutdownDrain() {
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("hooks.asynchronous.queueSize", "10");
+
+    for (int i=0;i<5;i++) {
+      submit(new HookAsynchronousHandler() {
+        
+        public void callback(HooksContext hooksContext, HooksBean hooksBean) {
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException ie) {
+            throw new RuntimeException(ie);
+          }
+          HookAsynchronousTest.this.hookCount.incrementAndGet();
+        }
+      });
+    }
+    assertTrue(HookAsynchronous.queueDepth() > 0);
+    
+    assertTrue(HookAsynchronous.shutdown());
+    assertEquals(5, this.hookCount.get());
+    assertEquals(0, HookAsynchronous.queueDepth());
+    assertEquals(5, HookAsynchronousMetrics.retrieveMetrics(HOOK_CLASS_NAME).getCompleted());
+  }
+}
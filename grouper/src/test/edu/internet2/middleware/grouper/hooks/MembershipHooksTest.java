@@ -36,6 +36,7 @@ import edu.internet2.middleware.grouper.hibernate.GrouperTransactionHandler;
 import edu.internet2.middleware.grouper.hooks.beans.GrouperContextTypeBuiltIn;
 import edu.internet2.middleware.grouper.hooks.beans.HooksContext;
 import edu.internet2.middleware.grouper.hooks.logic.GrouperHookType;
+import edu.internet2.middleware.grouper.hooks.logic.HookAsynchronousMetrics;
 import edu.internet2.middleware.grouper.hooks.logic.HookVeto;
 import edu.internet2.middleware.grouper.hooks.logic.VetoTypeGrouper;
 import edu.internet2.middleware.grouper.internal.dao.GrouperDAOException;
@@ -223,6 +224,16 @@ public class MembershipHooksTest extends GrouperTest {
     if (MembershipHooksImplAsync.problem != null) {
       throw MembershipHooksImplAsync.problem;
     }
+    
+    HookAsynchronousMetrics hookAsynchronousMetrics = HookAsynchronousMetrics.retrieveMetrics(MembershipHooksImplAsync.class.getName());
+    assertTrue(hookAsynchronousMetrics.toString(), hookAsynchronousMetrics.getCompleted() >= 1);
+    assertEquals(hookAsynchronousMetrics.toString(), 0, hookAsynchronousMetrics.getQueued());
+    assertEquals(hookAsynchronousMetrics.toString(), 0, hookAsynchronousMetrics.getErrors());
+    
+    //the pool thread doesnt change the context of the caller or the default context
+    assertEquals(GrouperContextTypeBuiltIn.GROUPER_WS, GrouperContextTypeBuiltIn.currentGrouperContext());
+    GrouperContextTypeBuiltIn.setThreadLocalContext(null);
+    assertEquals(GrouperContextTypeBuiltIn.GROUPER_UI, GrouperContextTypeBuiltIn.currentGrouperContext());
   }
 
   /**
@@ -19,6 +19,8 @@
  */
 package edu.internet2.middleware.grouper.internal.dao.hib3;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import junit.textui.TestRunner;
@@ -111,4 +113,41 @@ public class Hib3MembershipDAOTest extends GrouperTest {
     }
   }
   
+  /**
+   * 
+   */
+  public void testFindAllMembersAfterMemberId() {
+    GrouperSession grouperSession = SessionHelper.getRootSession();
+    Stem root = StemHelper.findRootStem(grouperSession);
+    Stem edu = StemHelper.addChildStem(root, "edu", "education");
+    Group i2 = StemHelper.addChildGroup(edu, "i2", "internet2");
+
+    i2.addMember(SubjectTestHelper.SUBJ0);
+    i2.addMember(SubjectTestHelper.SUBJ1);
+    i2.addMember(SubjectTestHelper.SUBJ2);
+    i2.addMember(SubjectTestHelper.SUBJ3);
+    i2.addMember(SubjectTestHelper.SUBJ4);
+
+    //page through 2 at a time
+    Set<String> memberIds = new HashSet<String>();
+    String afterMemberId = null;
+    int pages = 0;
+    while (true) {
+      List<Member> members = new Hib3MembershipDAO().findAllMembersByOwnerAndFieldAndTypeAfterMemberId(
+          i2.getUuid(), Group.getDefaultList(), null, null, true, afterMemberId, 2);
+      if (members.size() == 0) {
+        break;
+      }
+      pages++;
+      for (Member member : members) {
+        assertTrue(afterMemberId == null || member.getUuid().compareTo(afterMemberId) > 0);
+        assertTrue(memberIds.add(member.getUuid()));
+      }
+      afterMemberId = members.get(members.size()-1).getUuid();
+    }
+    
+    assertEquals(3, pages);
+    assertEquals(i2.getMembers().size(), memberIds.size());
+  }
+  
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.messaging;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouperClient.messaging.GrouperMessage;
+import edu.internet2.middleware.grouperClient.messaging.GrouperMessageProcessedParam;
+import edu.internet2.middleware.grouperClient.messaging.GrouperMessageReceiveParam;
+import edu.internet2.middleware.grouperClient.messaging.GrouperMessageSendParam;
+
+
+/**
+ * run this against the test database (e.g. hsqldb) to see how many messages a second the builtin
+ * messaging system can send, and receive and mark as processed with multiple receivers.
+ * note, this should NOT extend GrouperTest!
+ */
+public class GrouperBuiltinMessagingSystemBenchmark {
+
+  /**
+   * @param args
+   */
+  public static void main(String[] args) {
+
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+
+    try {
+      //warm up
+      runTest("benchmarkQueue", 1000, 100, 1);
+
+      runTest("benchmarkQueue", 10000, 100, 1);
+      runTest("benchmarkQueue", 10000, 100, 5);
+      runTest("benchmarkQueue", 10000, 1000, 5);
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+  }
+
+  /**
+   * send messages and receive them with a number of threads
+   * @param queue
+   * @param numberOfMessages
+   * @param pageSize
+   * @param numberOfReceivers
+   */
+  private static void runTest(final String queue, int numberOfMessages, final int pageSize, int numberOfReceivers) {
+
+    long startNanos = System.nanoTime();
+
+    GrouperMessageSendParam grouperMessageSendParam = new GrouperMessageSendParam().assignQueueOrTopic(queue);
+    for (int i=0;i<numberOfMessages;i++) {
+      grouperMessageSendParam.addMessageBody("{\"someField\": \"someValue" + i + "\"}");
+    }
+    new GrouperBuiltinMessagingSystem().send(grouperMessageSendParam);
+
+    long sendMillis = (System.nanoTime() - startNanos) / 1000000;
+    System.out.println("Sent " + numberOfMessages + " messages in " + sendMillis + "ms, "
+        + (numberOfMessages * 1000L / Math.max(1, sendMillis)) + " per second");
+
+    startNanos = System.nanoTime();
+
+    final AtomicInteger receivedCount = new AtomicInteger();
+
+    Thread[] threads = new Thread[numberOfReceivers];
+    for (int i=0;i<numberOfReceivers;i++) {
+      threads[i] = new Thread(new Runnable() {
+
+        public void run() {
+          GrouperBuiltinMessagingSystem grouperBuiltinMessagingSystem = new GrouperBuiltinMessagingSystem();
+          while (true) {
+            Collection<GrouperMessage> grouperMessages = grouperBuiltinMessagingSystem.receive(
+                new GrouperMessageReceiveParam().assignQueueOrTopic(queue)
+                .assignMaxMessagesToReceiveAtOnce(pageSize)).getGrouperMessages();
+            if (grouperMessages.size() == 0) {
+              break;
+            }
+            grouperBuiltinMessagingSystem.markAsProcessed(new GrouperMessageProcessedParam()
+                .assignQueueOrTopic(queue).assignGrouperMessages(grouperMessages));
+            receivedCount.addAndGet(grouperMessages.size());
+          }
+        }
+      });
+      threads[i].start();
+    }
+
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException ie) {
+        throw new RuntimeException(ie);
+      }
+    }
+
+    long receiveMillis = (System.nanoTime() - startNanos) / 1000000;
+    System.out.println("Received and processed " + receivedCount.get() + " messages with " + numberOfReceivers
+        + " receivers and page size " + pageSize + " in " + receiveMillis + "ms, "
+        + (receivedCount.get() * 1000L / Math.max(1, receiveMillis)) + " per second");
+  }
+
+}
@@ -4,10 +4,22 @@
  */
 package edu.internet2.middleware.grouper.messaging;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
 import junit.textui.TestRunner;
+import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
+import edu.internet2.middleware.grouper.exception.InsufficientPrivilegeException;
 import edu.internet2.middleware.grouper.helper.GrouperTest;
 import edu.internet2.middleware.grouper.helper.SubjectTestHelper;
+import edu.internet2.middleware.grouper.misc.GrouperDAOFactory;
 import edu.internet2.middleware.grouper.util.GrouperUtil;
+import edu.internet2.middleware.grouperClient.messaging.GrouperMessage;
+import edu.internet2.middleware.grouperClient.messaging.GrouperMessageProcessedParam;
+import edu.internet2.middleware.grouperClient.messaging.GrouperMessageReceiveParam;
 import edu.internet2.middleware.grouperClient.messaging.GrouperMessageSendParam;
 import edu.internet2.middleware.grouperClient.messaging.GrouperMessagingEngine;
 
@@ -22,7 +34,7 @@ public class GrouperBuiltinMessagingSystemTest extends GrouperTest {
    * @param args
    */
   public static void main(String[] args) {
-    TestRunner.run(new GrouperBuiltinMessagingSystemTest("testMessageSecurity"));
+    TestRunner.run(new GrouperBuiltinMessagingSystemTest("testReceive"));
   }
   
   
@@ -115,4 +127,233 @@ public class GrouperBuiltinMessagingSystemTest extends GrouperTest {
     
   }
 
+  /**
+   * send messages to a queue
+   * @param queue
+   * @param prefix
+   * @param count
+   */
+  private static void sendMessages(String queue, String prefix, int count) {
+    GrouperMessageSendParam grouperMessageSendParam = new GrouperMessageSendParam().assignQueueOrTopic(queue);
+    for (int i=0;i<count;i++) {
+      grouperMessageSendParam.addMessageBody(prefix + i);
+    }
+    new GrouperBuiltinMessagingSystem().send(grouperMessageSendParam);
+  }
+
+  /**
+   * receive messages from a queue
+   * @param queue
+   * @param maxMessages
+   * @param longPollMillis
+   * @return the messages
+   */
+  private static List<GrouperMessage> receiveMessages(String queue, int maxMessages, int longPollMillis) {
+    return new ArrayList<GrouperMessage>(new GrouperBuiltinMessagingSystem().receive(
+        new GrouperMessageReceiveParam().assignQueueOrTopic(queue).assignMaxMessagesToReceiveAtOnce(maxMessages)
+        .assignLongPollMillis(longPollMillis)).getGrouperMessages());
+  }
+
+  /**
+   * 
+   */
+  public void testReceive() {
+    
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+    
+    try {
+      sendMessages("abc", "message", 25);
+  
+      //received in order they were sent, a page at a time
+      List<GrouperMessage> grouperMessages = receiveMessages("abc", 10, 0);
+      assertEquals(10, grouperMessages.size());
+      for (int i=0;i<10;i++) {
+        assertEquals("message" + i, grouperMessages.get(i).getMessageBody());
+      }
+      
+      //the first page is claimed so it is not received again
+      List<GrouperMessage> grouperMessages2 = receiveMessages("abc", 10, 0);
+      assertEquals(10, grouperMessages2.size());
+      assertEquals("message10", grouperMessages2.get(0).getMessageBody());
+
+      new GrouperBuiltinMessagingSystem().markAsProcessed(new GrouperMessageProcessedParam()
+          .assignQueueOrTopic("abc").assignGrouperMessages(grouperMessages));
+      
+      GrouperMessageHibernate grouperMessageHibernate = GrouperDAOFactory.getFactory().getMessage()
+          .findById(grouperMessages.get(0).getId(), true);
+      assertEquals(GrouperBuiltinMessagingSystem.GrouperBuiltinMessageState.PROCESSED.name(), grouperMessageHibernate.getState());
+      assertNotNull(grouperMessageHibernate.getGetTimeMillis());
+      assertNull(grouperMessageHibernate.getAttemptTimeExpiresMillis());
+      
+      grouperMessageHibernate = GrouperDAOFactory.getFactory().getMessage()
+          .findById(grouperMessages2.get(0).getId(), true);
+      assertEquals(GrouperBuiltinMessagingSystem.GrouperBuiltinMessageState.GET_ATTEMPTED.name(), grouperMessageHibernate.getState());
+      assertEquals(1, grouperMessageHibernate.getGetAttemptCount().intValue());
+      
+      assertEquals(5, receiveMessages("abc", 10, 0).size());
+      
+      //nothing left, long poll and give up
+      long startMillis = System.currentTimeMillis();
+      assertEquals(0, receiveMessages("abc", 10, 600).size());
+      assertTrue(System.currentTimeMillis() - startMillis >= 600);
+
+      //other queues are separate
+      assertEquals(0, receiveMessages("def", 10, 0).size());
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+  }
+
+  /**
+   * 
+   */
+  public void testReceiveNotAllowed() {
+    
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+    GrouperBuiltinMessagingSystem.createQueue("abc");
+    sendMessages("abc", "message", 3);
+    GrouperSession.stopQuietly(grouperSession);
+    
+    //SUBJ0 doesnt have the receive action on the queue
+    grouperSession = GrouperSession.start(SubjectTestHelper.SUBJ0);
+    try {
+      receiveMessages("abc", 10, 0);
+      fail("SUBJ0 is not allowed to receive");
+    } catch (InsufficientPrivilegeException ipe) {
+      //good
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+    
+    //nothing was claimed by SUBJ0
+    grouperSession = GrouperSession.startRootSession();
+    List<GrouperMessage> grouperMessages = receiveMessages("abc", 10, 0);
+    assertEquals(3, grouperMessages.size());
+    GrouperSession.stopQuietly(grouperSession);
+    
+    grouperSession = GrouperSession.start(SubjectTestHelper.SUBJ0);
+    try {
+      new GrouperBuiltinMessagingSystem().markAsProcessed(new GrouperMessageProcessedParam()
+          .assignQueueOrTopic("abc").assignGrouperMessages(grouperMessages));
+      fail("SUBJ0 is not allowed to mark as processed");
+    } catch (InsufficientPrivilegeException ipe) {
+      //good
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+    
+    GrouperMessageHibernate grouperMessageHibernate = GrouperDAOFactory.getFactory().getMessage()
+        .findById(grouperMessages.get(0).getId(), true);
+    assertEquals(GrouperBuiltinMessagingSystem.GrouperBuiltinMessageState.GET_ATTEMPTED.name(), grouperMessageHibernate.getState());
+    
+    grouperSession = GrouperSession.startRootSession();
+    GrouperBuiltinMessagingSystem.allowReceiveFromQueue("abc", SubjectTestHelper.SUBJ0);
+    GrouperSession.stopQuietly(grouperSession);
+
+    //once allowed, SUBJ0 can mark them as processed
+    grouperSession = GrouperSession.start(SubjectTestHelper.SUBJ0);
+    try {
+      new GrouperBuiltinMessagingSystem().markAsProcessed(new GrouperMessageProcessedParam()
+          .assignQueueOrTopic("abc").assignGrouperMessages(grouperMessages));
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+
+    grouperMessageHibernate = GrouperDAOFactory.getFactory().getMessage()
+        .findById(grouperMessages.get(0).getId(), true);
+    assertEquals(GrouperBuiltinMessagingSystem.GrouperBuiltinMessageState.PROCESSED.name(), grouperMessageHibernate.getState());
+  }
+
+  /**
+   * 
+   */
+  public void testReceiveAttemptExpires() {
+    
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("grouper.builtin.messaging.attemptTimeExpiresMillis", "1");
+    
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+    
+    try {
+      sendMessages("abc", "message", 3);
+      
+      assertEquals(3, receiveMessages("abc", 10, 0).size());
+      
+      GrouperUtil.sleep(100);
+      
+      //not marked as processed so they come back
+      List<GrouperMessage> grouperMessages = receiveMessages("abc", 10, 0);
+      assertEquals(3, grouperMessages.size());
+      assertEquals(2, ((GrouperMessageHibernate)grouperMessages.get(0)).getGetAttemptCount().intValue());
+      
+      new GrouperBuiltinMessagingSystem().markAsProcessed(new GrouperMessageProcessedParam()
+          .assignQueueOrTopic("abc").assignGrouperMessages(grouperMessages));
+
+      GrouperUtil.sleep(100);
+
+      assertEquals(0, receiveMessages("abc", 10, 0).size());
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+  }
+
+  /**
+   * 
+   */
+  public void testReceiveConcurrent() {
+    
+    final int NUM_OF_THREADS = 5;
+    final int NUM_OF_MESSAGES = 300;
+    
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+    
+    try {
+      sendMessages("abc", "message", NUM_OF_MESSAGES);
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+    
+    final List<String> receivedIds = Collections.synchronizedList(new ArrayList<String>());
+    final List<Throwable> throwables = Collections.synchronizedList(new ArrayList<Throwable>());
+    
+    Thread[] threads = new Thread[NUM_OF_THREADS];
+    
+    for (int i=0;i<NUM_OF_THREADS;i++) {
+      
+      threads[i] = new Thread(new Runnable() {
+
+        public void run() {
+          try {
+            while (true) {
+              List<GrouperMessage> grouperMessages = receiveMessages("abc", 20, 0);
+              if (grouperMessages.size() == 0) {
+                break;
+              }
+              for (GrouperMessage grouperMessage : grouperMessages) {
+                receivedIds.add(grouperMessage.getId());
+              }
+              new GrouperBuiltinMessagingSystem().markAsProcessed(new GrouperMessageProcessedParam()
+                  .assignQueueOrTopic("abc").assignGrouperMessages(grouperMessages));
+            }
+          } catch (Throwable t) {
+            throwables.add(t);
+          }
+        }
+      });
+      threads[i].start();
+    }
+    
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException ie) {
+        throw new RuntimeException(ie);
+      }
+    }
+    
+    assertEquals(GrouperUtil.toStringForLog(throwables), 0, throwables.size());
+    
+    //each message received once
+    assertEquals(NUM_OF_MESSAGES, receivedIds.size());
+    assertEquals(NUM_OF_MESSAGES, new HashSet<String>(receivedIds).size());
+  }
 }
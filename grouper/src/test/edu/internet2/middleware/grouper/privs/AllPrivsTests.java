@@ -54,6 +54,7 @@ public class AllPrivsTests {
     suite.addTestSuite(TestPrivUPDATE.class);
     suite.addTestSuite(TestAccessPrivilege.class);
     suite.addTestSuite(TestNamingPrivilege.class);
+    suite.addTestSuite(PrivilegeCacheEvictionTest.class);
     //$JUnit-END$
     return suite;
   }
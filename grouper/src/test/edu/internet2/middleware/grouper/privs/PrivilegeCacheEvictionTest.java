@@ -0,0 +1,149 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.privs;
+
+import net.sf.ehcache.Cache;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+
+import junit.textui.TestRunner;
+import edu.internet2.middleware.grouper.GrouperSourceAdapter;
+import edu.internet2.middleware.grouper.SubjectFinder;
+import edu.internet2.middleware.grouper.cache.EhcacheController;
+import edu.internet2.middleware.grouper.helper.GrouperTest;
+import edu.internet2.middleware.subject.Subject;
+
+
+/**
+ * test evicting entries of an owner or subject from the privilege caches
+ */
+public class PrivilegeCacheEvictionTest extends GrouperTest {
+
+  /**
+   * 
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new PrivilegeCacheEvictionTest("testEvict"));
+  }
+
+  /**
+   * 
+   * @param name
+   */
+  public PrivilegeCacheEvictionTest(String name) {
+    super(name);
+  }
+
+  /** cache to test with */
+  private static final String CACHE_NAME = CachingAccessResolver.CACHE_HASPRIV;
+  
+  /**
+   * key in the cache
+   * @param ownerId
+   * @param subjectId
+   * @return the key
+   */
+  private static MultiKey key(String ownerId, String subjectId) {
+    return new MultiKey(ownerId, "jdbc", subjectId, AccessPrivilege.READ);
+  }
+  
+  /**
+   * put a key in the cache
+   * @param ownerId
+   * @param subjectId
+   */
+  private static void put(String ownerId, String subjectId) {
+    PrivilegeCacheEviction.put(CACHE_NAME, key(ownerId, subjectId), Boolean.TRUE);
+  }
+  
+  /**
+   * @param ownerId
+   * @param subjectId
+   * @return true if in the cache
+   */
+  private static boolean inCache(String ownerId, String subjectId) {
+    Cache cache = EhcacheController.ehcacheController().getCache(CACHE_NAME);
+    return cache.get(key(ownerId, subjectId)) != null;
+  }
+  
+  /**
+   * 
+   */
+  public void testEvict() {
+    PrivilegeCacheEviction.flush(CACHE_NAME);
+    
+    put("owner1", "subject1");
+    put("owner1", "subject2");
+    put("owner2", "subject1");
+    put("owner2", "subject2");
+    
+    //one owner and subject
+    assertTrue(PrivilegeCacheEviction.evictOwnerSubject(CACHE_NAME, "owner1", "jdbc", "subject1"));
+    assertFalse(inCache("owner1", "subject1"));
+    assertTrue(inCache("owner1", "subject2"));
+    assertTrue(inCache("owner2", "subject1"));
+    assertTrue(inCache("owner2", "subject2"));
+    
+    //one subject on all owners
+    assertTrue(PrivilegeCacheEviction.evictSubject(CACHE_NAME, "jdbc", "subject2"));
+    assertFalse(inCache("owner1", "subject2"));
+    assertFalse(inCache("owner2", "subject2"));
+    assertTrue(inCache("owner2", "subject1"));
+    
+    //all subjects of one owner
+    put("owner1", "subject1");
+    assertTrue(PrivilegeCacheEviction.evictOwner(CACHE_NAME, "owner2"));
+    assertFalse(inCache("owner2", "subject1"));
+    assertTrue(inCache("owner1", "subject1"));
+    
+    //evicted keys can be cached and evicted again
+    put("owner2", "subject1");
+    assertTrue(inCache("owner2", "subject1"));
+    assertTrue(PrivilegeCacheEviction.evictSubject(CACHE_NAME, "jdbc", "subject1"));
+    assertFalse(inCache("owner2", "subject1"));
+    assertFalse(inCache("owner1", "subject1"));
+  }
+
+  /**
+   * 
+   */
+  public void testEvictGroupAndAll() {
+    PrivilegeCacheEviction.flush(CACHE_NAME);
+    
+    put("owner1", "subject1");
+    put("owner1", "subject2");
+    put("owner2", "subject1");
+    
+    //privileges of members of a group change, so the caller flushes the cache
+    assertFalse(PrivilegeCacheEviction.evictOwnerSubject(CACHE_NAME, "owner1", 
+        GrouperSourceAdapter.groupSourceId(), "someGroupId"));
+    assertFalse(PrivilegeCacheEviction.evictSubject(CACHE_NAME, 
+        GrouperSourceAdapter.groupSourceId(), "someGroupId"));
+    assertTrue(inCache("owner1", "subject1"));
+    
+    //GrouperAll affects all subjects of the owner
+    Subject allSubject = SubjectFinder.findAllSubject();
+    assertTrue(PrivilegeCacheEviction.evictOwnerSubject(CACHE_NAME, "owner1", 
+        allSubject.getSourceId(), allSubject.getId()));
+    assertFalse(inCache("owner1", "subject1"));
+    assertFalse(inCache("owner1", "subject2"));
+    assertTrue(inCache("owner2", "subject1"));
+    
+    PrivilegeCacheEviction.flush(CACHE_NAME);
+    assertFalse(inCache("owner2", "subject1"));
+  }
+}
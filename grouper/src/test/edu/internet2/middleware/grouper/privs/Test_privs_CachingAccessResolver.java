@@ -31,6 +31,10 @@
 */
 
 package edu.internet2.middleware.grouper.privs;
+import net.sf.ehcache.Cache;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+
 import junit.textui.TestRunner;
 import edu.internet2.middleware.grouper.Group;
 import edu.internet2.middleware.grouper.GrouperAccessAdapter;
@@ -41,7 +45,9 @@ import edu.internet2.middleware.grouper.cache.EhcacheController;
 import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.exception.GrouperException;
 import edu.internet2.middleware.grouper.helper.GrouperTest;
+import edu.internet2.middleware.grouper.helper.SubjectTestHelper;
 import edu.internet2.middleware.grouper.internal.util.Realize;
+import edu.internet2.middleware.subject.Subject;
 
 
 /**
@@ -196,11 +202,57 @@ public class Test_privs_CachingAccessResolver extends GrouperTest {
    * @since   1.2.1
    */
   public void test_hasPrivilege_cacheSize() {
+    //grants during setUp only evict their own entries, so start empty
+    resolver.flushCache();
     resolver.hasPrivilege( this.g, SubjectFinder.findAllSubject(), AccessPrivilege.ADMIN );
     //2007/12/03: Gary Brown
 	//hasPrivilege calls getPrivileges which caches all 8 ACCESS privs
 	assertEquals( 8, resolver.getStats(CachingAccessResolver.CACHE_HASPRIV).getSize() );
   }
 
+  /**
+   * 
+   * @param group
+   * @param subject
+   * @return if the admin privilege is cached
+   */
+  private boolean adminCached(Group group, Subject subject) {
+    Cache cache = EhcacheController.ehcacheController().getCache(CachingAccessResolver.CACHE_HASPRIV);
+    return cache.get(new MultiKey(group.getUuid(), subject.getSourceId(), subject.getId(), AccessPrivilege.ADMIN)) != null;
+  }
+
+  /**
+   * granting and revoking only evicts the owner and subject, unless the subject is a group
+   */
+  public void test_grantPrivilege_evictsOwnerSubject() {
+    Group g2 = this.g.getParentStem().addChildGroup("top_group2", "top_group2");
+
+    resolver.hasPrivilege( this.g, SubjectTestHelper.SUBJ0, AccessPrivilege.ADMIN );
+    resolver.hasPrivilege( this.g, SubjectTestHelper.SUBJ1, AccessPrivilege.ADMIN );
+    resolver.hasPrivilege( g2, SubjectTestHelper.SUBJ1, AccessPrivilege.ADMIN );
+    assertTrue(adminCached(this.g, SubjectTestHelper.SUBJ0));
+    assertTrue(adminCached(this.g, SubjectTestHelper.SUBJ1));
+    assertTrue(adminCached(g2, SubjectTestHelper.SUBJ1));
+
+    //only subj1 on the group is evicted, and the granted privilege is cached
+    resolver.grantPrivilege( this.g, SubjectTestHelper.SUBJ1, AccessPrivilege.UPDATE, null );
+    assertTrue(adminCached(this.g, SubjectTestHelper.SUBJ0));
+    assertFalse(adminCached(this.g, SubjectTestHelper.SUBJ1));
+    assertTrue(adminCached(g2, SubjectTestHelper.SUBJ1));
+    assertTrue(resolver.hasPrivilege( this.g, SubjectTestHelper.SUBJ1, AccessPrivilege.UPDATE ));
+
+    //revoking from all subjects of the group evicts the group
+    resolver.hasPrivilege( this.g, SubjectTestHelper.SUBJ1, AccessPrivilege.ADMIN );
+    resolver.revokePrivilege( this.g, AccessPrivilege.UPDATE );
+    assertFalse(adminCached(this.g, SubjectTestHelper.SUBJ0));
+    assertFalse(adminCached(this.g, SubjectTestHelper.SUBJ1));
+    assertTrue(adminCached(g2, SubjectTestHelper.SUBJ1));
+    assertFalse(resolver.hasPrivilege( this.g, SubjectTestHelper.SUBJ1, AccessPrivilege.UPDATE ));
+
+    //a group subject affects its members, flush everything
+    resolver.grantPrivilege( this.g, g2.toSubject(), AccessPrivilege.UPDATE, null );
+    assertFalse(adminCached(g2, SubjectTestHelper.SUBJ1));
+  }
+
 }
 
@@ -1543,6 +1543,114 @@ public class RuleTest extends GrouperTest {
     
   }
 
+  /**
+   * 
+   */
+  public void testRuleEngineRefreshChangedRules() {
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+    Group groupA = new GroupSave(grouperSession).assignName("stem:a").assignCreateParentStemsIfNotExist(true).save();
+    Group groupB = new GroupSave(grouperSession).assignName("stem:b").assignCreateParentStemsIfNotExist(true).save();
+    
+    RuleEngine.clearRuleEngineCache();
+    
+    RuleEngine ruleEngine = RuleEngine.ruleEngine();
+    assertEquals(0, ruleEngine.getRuleDefinitions().size());
+    
+    //nothing changed, same engine
+    assertSame(ruleEngine, RuleEngine.ruleEngine());
+    
+    //add a rule on stem:a saying if you are out of stem:b, then remove from stem:a
+    AttributeAssign attributeAssign = groupA
+      .getAttributeDelegate().addAttribute(RuleUtils.ruleAttributeDefName()).getAttributeAssign();
+    
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleActAsSubjectSourceIdName(), "g:isa");
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleActAsSubjectIdName(), "GrouperSystem");
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleCheckOwnerNameName(), "stem:b");
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleCheckTypeName(), 
+        RuleCheckType.membershipRemove.name());
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleIfConditionEnumName(), 
+        RuleIfConditionEnum.thisGroupHasImmediateEnabledMembership.name());
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleThenElName(), 
+        "${ruleElUtils.removeMemberFromGroupId(ownerGroupId, memberId)}");
+    
+    //the changed rule is loaded into a new engine without clearing the cache, the old engine isnt changed
+    RuleEngine ruleEngine2 = RuleEngine.ruleEngine();
+    assertNotSame(ruleEngine, ruleEngine2);
+    assertEquals(0, ruleEngine.getRuleDefinitions().size());
+    assertEquals(1, ruleEngine2.getRuleDefinitions().size());
+    assertEquals("stem:b", ruleEngine2.getRuleDefinitions().iterator().next().getCheck().getCheckOwnerName());
+    
+    long initialFirings = RuleEngine.ruleFirings;
+    
+    groupB.addMember(SubjectTestHelper.SUBJ0);
+    groupA.addMember(SubjectTestHelper.SUBJ0);
+    groupB.deleteMember(SubjectTestHelper.SUBJ0);
+    
+    //should come out of groupA
+    assertFalse(groupA.hasMember(SubjectTestHelper.SUBJ0));
+    assertEquals(initialFirings+1, RuleEngine.ruleFirings);
+    
+    //remove the rule
+    groupA.getAttributeDelegate().removeAttribute(RuleUtils.ruleAttributeDefName());
+    
+    assertEquals(0, RuleEngine.ruleEngine().getRuleDefinitions().size());
+  }
+
+  /**
+   * a thread which didnt change a rule gets the changed rule once the background refresh is done
+   * @throws Exception 
+   */
+  public void testRuleEngineRefreshInBackground() throws Exception {
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+    Group groupA = new GroupSave(grouperSession).assignName("stem:a").assignCreateParentStemsIfNotExist(true).save();
+    
+    RuleEngine.clearRuleEngineCache();
+    
+    assertEquals(0, RuleEngine.ruleEngine().getRuleDefinitions().size());
+    
+    AttributeAssign attributeAssign = groupA
+      .getAttributeDelegate().addAttribute(RuleUtils.ruleAttributeDefName()).getAttributeAssign();
+    
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleActAsSubjectSourceIdName(), "g:isa");
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleActAsSubjectIdName(), "GrouperSystem");
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleCheckOwnerNameName(), "stem:b");
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleCheckTypeName(), 
+        RuleCheckType.membershipRemove.name());
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleIfConditionEnumName(), 
+        RuleIfConditionEnum.thisGroupHasImmediateEnabledMembership.name());
+    attributeAssign.getAttributeValueDelegate().assignValue(
+        RuleUtils.ruleThenElName(), 
+        "${ruleElUtils.removeMemberFromGroupId(ownerGroupId, memberId)}");
+    
+    final int[] ruleDefinitionCount = new int[]{-1};
+    long startMillis = System.currentTimeMillis();
+    while (ruleDefinitionCount[0] != 1 && System.currentTimeMillis() - startMillis < 10000) {
+      Thread thread = new Thread(new Runnable() {
+        
+        public void run() {
+          ruleDefinitionCount[0] = RuleEngine.ruleEngine().getRuleDefinitions().size();
+        }
+      });
+      thread.start();
+      thread.join();
+      if (ruleDefinitionCount[0] != 1) {
+        Thread.sleep(50);
+      }
+    }
+    assertEquals(1, ruleDefinitionCount[0]);
+  }
+
   /**
    * 
    */
@@ -1579,7 +1687,7 @@ public class RuleTest extends GrouperTest {
         RuleUtils.ruleThenElName(), 
         "${ruleElUtils.removeMemberFromGroupId(ownerGroupId, memberId)}");
     
-    RuleEngine.ruleEngineCache.clear();
+    RuleEngine.clearRuleEngineCache();
     
     //count rule firings
     long initialFirings = RuleEngine.ruleFirings;
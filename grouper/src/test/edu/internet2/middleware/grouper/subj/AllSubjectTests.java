@@ -40,6 +40,8 @@ public class AllSubjectTests {
     suite.addTestSuite(TestSubjectFinder.class);
     suite.addTestSuite(TestSubject.class);
     suite.addTestSuite(TestInternalSourceAdapter.class);
+    suite.addTestSuite(SourceLatencyHistogramTest.class);
+    suite.addTestSuite(SourcesXmlResolverTest.class);
     //$JUnit-END$
     return suite;
   }
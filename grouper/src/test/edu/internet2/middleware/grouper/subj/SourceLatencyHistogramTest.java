@@ -0,0 +1,91 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.subj;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+
+
+/**
+ * test the latency histogram of subject sources
+ */
+public class SourceLatencyHistogramTest extends TestCase {
+
+  /**
+   *
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new SourceLatencyHistogramTest("testRecord"));
+  }
+
+  /**
+   *
+   * @param name
+   */
+  public SourceLatencyHistogramTest(String name) {
+    super(name);
+  }
+
+  /**
+   * @see junit.framework.TestCase#setUp()
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    SourceLatencyHistogram.clearHistograms();
+  }
+
+  /**
+   * @see junit.framework.TestCase#tearDown()
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    SourceLatencyHistogram.clearHistograms();
+    super.tearDown();
+  }
+
+  /**
+   *
+   */
+  public void testRecord() {
+    SourceLatencyHistogram histogram = SourceLatencyHistogram.retrieveHistogram("jdbc");
+    assertSame(histogram, SourceLatencyHistogram.retrieveHistogram("jdbc"));
+
+    histogram.record(5);
+    histogram.record(10);
+    histogram.record(45);
+    histogram.record(60000);
+    histogram.recordTimeout();
+
+    long[] counts = histogram.getBucketCounts();
+    assertEquals(SourceLatencyHistogram.getBucketUpperBoundsMillis().length + 1, counts.length);
+
+    //<10
+    assertEquals(1, counts[0]);
+    //<50
+    assertEquals(2, counts[1]);
+    //everything else
+    assertEquals(1, counts[counts.length-1]);
+
+    assertEquals(4, histogram.getCount());
+    assertEquals((5 + 10 + 45 + 60000) / 4, histogram.getAverageMillis());
+    assertEquals(1, histogram.getTimeouts());
+
+    assertEquals(1, SourceLatencyHistogram.retrieveHistograms().size());
+    assertTrue(histogram.toString(), histogram.toString().startsWith("jdbc: count: 4"));
+  }
+}
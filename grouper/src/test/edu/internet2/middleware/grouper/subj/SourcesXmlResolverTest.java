@@ -0,0 +1,192 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.subj;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.textui.TestRunner;
+import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.cfg.GrouperConfig;
+import edu.internet2.middleware.grouper.helper.GrouperTest;
+import edu.internet2.middleware.grouper.subj.SourcesXmlResolver.LogLabelCallable;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
+import edu.internet2.middleware.subject.SearchPageResult;
+
+
+/**
+ * test the threads and timeouts when searching sources
+ */
+public class SourcesXmlResolverTest extends GrouperTest {
+
+  /**
+   * 
+   * @param args
+   */
+  public static void main(String[] args) {
+    TestRunner.run(new SourcesXmlResolverTest("testExecuteCallablesTimeout"));
+  }
+
+  /**
+   * 
+   * @param name
+   */
+  public SourcesXmlResolverTest(String name) {
+    super(name);
+  }
+
+  /** */
+  private GrouperSession grouperSession = null;
+  
+  /**
+   * @see edu.internet2.middleware.grouper.helper.GrouperTest#setUp()
+   */
+  @Override
+  protected void setUp() {
+    super.setUp();
+    SourcesXmlResolver.sourceExecutorServiceShutdown();
+    SourceLatencyHistogram.clearHistograms();
+    this.grouperSession = GrouperSession.startRootSession();
+  }
+
+  /**
+   * @see edu.internet2.middleware.grouper.helper.GrouperTest#tearDown()
+   */
+  @Override
+  protected void tearDown() {
+    GrouperSession.stopQuietly(this.grouperSession);
+    SourcesXmlResolver.sourceExecutorServiceShutdown();
+    SourceLatencyHistogram.clearHistograms();
+    super.tearDown();
+  }
+
+  /**
+   * callable which sleeps and returns the name of the thread it ran in
+   * @param sourceId
+   * @param sleepMillis
+   * @return the callable
+   */
+  private static LogLabelCallable<String> sleepCallable(String sourceId, final long sleepMillis) {
+    return new LogLabelCallable<String>("sleep " + sourceId, sourceId) {
+
+      public String callLogic() throws Exception {
+        Thread.sleep(sleepMillis);
+        return Thread.currentThread().getName();
+      }
+    };
+  }
+  
+  /**
+   * a slow source is cut off at its timeout and the result is incomplete
+   */
+  public void testExecuteCallablesTimeout() {
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.allPage.timeoutMillis", "-1");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.allPage.timeoutMillis.slowSource", "200");
+    
+    List<LogLabelCallable<String>> callables = new ArrayList<LogLabelCallable<String>>();
+    callables.add(sleepCallable("slowSource", 10000));
+    callables.add(sleepCallable("fastSource", 500));
+    
+    SearchPageResult searchPageResult = new SearchPageResult();
+    long startNanos = System.nanoTime();
+    List<String> results = SourcesXmlResolver.executeCallables(callables, true, searchPageResult);
+    long millis = (System.nanoTime() - startNanos) / 1000000;
+    
+    assertTrue(Long.toString(millis), millis < 5000);
+    assertEquals(2, results.size());
+    assertNull(results.get(0));
+    assertNotNull(results.get(1));
+    assertTrue(searchPageResult.isIncomplete());
+    assertEquals(GrouperUtil.toSet("slowSource"), searchPageResult.getIncompleteSourceIds());
+    assertEquals(1, SourceLatencyHistogram.retrieveHistogram("slowSource").getTimeouts());
+  }
+
+  /**
+   * callables waiting in the queue of a busy pool are not timed out before they start
+   */
+  public void testExecuteCallablesQueued() {
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.sourceThreadPoolSize", "1");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.sourceThreadPoolQueueSize", "10");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.allPage.timeoutMillis", "1000");
+    
+    List<LogLabelCallable<String>> callables = new ArrayList<LogLabelCallable<String>>();
+    for (int i=0;i<4;i++) {
+      callables.add(sleepCallable("source" + i, 400));
+    }
+    
+    SearchPageResult searchPageResult = new SearchPageResult();
+    List<String> results = SourcesXmlResolver.executeCallables(callables, true, searchPageResult);
+    
+    //these take 1600ms in one thread, but each only runs for 400ms
+    assertEquals(4, results.size());
+    for (String result : results) {
+      assertNotNull(result);
+      assertFalse(Thread.currentThread().getName().equals(result));
+    }
+    assertFalse(searchPageResult.isIncomplete());
+  }
+
+  /**
+   * if the queue is full, a callable with a timeout isnt run, and the result is incomplete
+   */
+  public void testExecuteCallablesSaturated() {
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.sourceThreadPoolSize", "1");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.sourceThreadPoolQueueSize", "1");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.allPage.timeoutMillis", "5000");
+    
+    List<LogLabelCallable<String>> callables = new ArrayList<LogLabelCallable<String>>();
+    for (int i=0;i<3;i++) {
+      callables.add(sleepCallable("source" + i, 300));
+    }
+    
+    SearchPageResult searchPageResult = new SearchPageResult();
+    List<String> results = SourcesXmlResolver.executeCallables(callables, true, searchPageResult);
+    
+    //one runs in the pool thread, one waits in the queue, and the last one isnt run
+    assertEquals(3, results.size());
+    assertNotNull(results.get(0));
+    assertNotNull(results.get(1));
+    assertNull(results.get(2));
+    assertEquals(GrouperUtil.toSet("source2"), searchPageResult.getIncompleteSourceIds());
+  }
+
+  /**
+   * if the queue is full, a callable without a timeout runs in the calling thread
+   */
+  public void testExecuteCallablesSaturatedNoTimeout() {
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.sourceThreadPoolSize", "1");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.sourceThreadPoolQueueSize", "1");
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.allPage.timeoutMillis", "-1");
+    
+    List<LogLabelCallable<String>> callables = new ArrayList<LogLabelCallable<String>>();
+    for (int i=0;i<3;i++) {
+      callables.add(sleepCallable("source" + i, 300));
+    }
+    
+    SearchPageResult searchPageResult = new SearchPageResult();
+    List<String> results = SourcesXmlResolver.executeCallables(callables, true, searchPageResult);
+    
+    //one runs in the pool thread, one waits in the queue, and the last one runs here
+    assertEquals(3, results.size());
+    assertFalse(Thread.currentThread().getName().equals(results.get(0)));
+    assertFalse(Thread.currentThread().getName().equals(results.get(1)));
+    assertEquals(Thread.currentThread().getName(), results.get(2));
+    assertFalse(searchPageResult.isIncomplete());
+    
+    //the grouper session of this thread is still there
+    assertSame(this.grouperSession, GrouperSession.staticGrouperSession());
+  }
+}
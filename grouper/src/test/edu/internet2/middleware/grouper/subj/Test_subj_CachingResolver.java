@@ -32,12 +32,15 @@
 
 package edu.internet2.middleware.grouper.subj;
 import junit.textui.TestRunner;
+import edu.internet2.middleware.grouper.GroupSave;
+import edu.internet2.middleware.grouper.GrouperSession;
 import edu.internet2.middleware.grouper.SubjectFinder;
 import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.helper.GrouperTest;
 import edu.internet2.middleware.grouper.privs.CachingAccessResolver;
 import edu.internet2.middleware.grouper.privs.CachingNamingResolver;
 import edu.internet2.middleware.grouper.privs.Test_privs_CachingAccessResolver;
+import edu.internet2.middleware.grouper.util.GrouperUtil;
 import edu.internet2.middleware.subject.SubjectNotFoundException;
 import edu.internet2.middleware.subject.SubjectNotUniqueException;
 
@@ -90,6 +93,7 @@ public class Test_subj_CachingResolver extends GrouperTest {
     CachingResolver.findAllCache.clear();
     CachingResolver.findByIdentifierCache.clear();
     CachingResolver.findCache.clear();
+    CachingResolver.notFoundCache.clear();
   }
 
   /**
@@ -292,5 +296,66 @@ public class Test_subj_CachingResolver extends GrouperTest {
     assertEquals( 2, CachingResolver.findByIdOrIdentifierCache.getStats().getObjectCount());
   }
 
+  /**
+   * 
+   */
+  public void test_find_Id_notFoundCache() {
+
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.notFoundCache.enabled", "true");
+
+    assertNull(SubjectFinder.findById(BAD_ID, false));
+    assertEquals( 1, CachingResolver.notFoundCache.getStats().getObjectCount());
+
+    long before = CachingResolver.notFoundCache.getCacheStats().getHits();
+    assertNull(SubjectFinder.findById(BAD_ID, false));
+    assertEquals( before + 1, CachingResolver.notFoundCache.getCacheStats().getHits());
+
+    //the batch lookups remember them separately, under the same id
+    assertEquals( 1, SubjectFinder.findByIdsOrIdentifiers(GrouperUtil.toSet(BAD_ID, GOOD_ID)).size());
+    assertEquals( 1, CachingResolver.notFoundCache.getStats().getObjectCount());
+    assertEquals( 2, CachingResolver.notFoundCache.get(BAD_ID).size());
+
+    //adding or changing a member with that id evicts it
+    CachingResolver.evictFromNotFoundCache(GrouperUtil.toSet(BAD_ID));
+    assertEquals( 0, CachingResolver.notFoundCache.getStats().getObjectCount());
+  }
+
+  /**
+   * the not found cache is off unless configured
+   */
+  public void test_find_Id_notFoundCacheDisabled() {
+
+    assertNull(SubjectFinder.findById(BAD_ID, false));
+    assertEquals( 0, CachingResolver.notFoundCache.getStats().getObjectCount());
+  }
+
+  /**
+   * a group created right after it was looked up as a subject is found, and lookups in 
+   * the group source are not remembered
+   */
+  public void test_find_IdOrIdentifier_notFoundCacheGroupCreated() {
+
+    GrouperConfig.retrieveConfig().propertiesOverrideMap().put("subjects.notFoundCache.enabled", "true");
+
+    String groupName = "test:notFoundCacheGroup";
+
+    assertNull(SubjectFinder.findByIdOrIdentifierAndSource(groupName, 
+        SubjectFinder.internal_getGSA().getId(), false));
+    assertEquals( 0, CachingResolver.notFoundCache.getStats().getObjectCount());
+
+    assertNull(SubjectFinder.findByIdOrIdentifier(groupName, false));
+    assertEquals( 1, CachingResolver.notFoundCache.getStats().getObjectCount());
+
+    GrouperSession grouperSession = GrouperSession.startRootSession();
+    try {
+      new GroupSave(grouperSession).assignName(groupName).assignCreateParentStemsIfNotExist(true).save();
+    } finally {
+      GrouperSession.stopQuietly(grouperSession);
+    }
+
+    assertEquals( 0, CachingResolver.notFoundCache.getStats().getObjectCount());
+    assertNotNull(SubjectFinder.findByIdOrIdentifier(groupName, false));
+  }
+
 }
 
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2014 Internet2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.internet2.middleware.grouper.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * run this to compare substituting a loader style template with the cached compiled template
+ * vs parsing the template each time.  note, this should NOT extend TestCase
+ */
+public class GrouperElTemplateBenchmark {
+
+  /**
+   * @param args
+   */
+  public static void main(String[] args) {
+
+    String template = "school:courses:${subjectAttributes['dept']}:${grouperUtil.toLowerCase(groupAttribute)}";
+
+    Map<String, Object> subjectAttributes = new HashMap<String, Object>();
+    subjectAttributes.put("dept", "math");
+
+    Map<String, Object> variableMap = new HashMap<String, Object>();
+    variableMap.put("subjectAttributes", subjectAttributes);
+    variableMap.put("groupAttribute", "MATH101");
+
+    //warm up both
+    runTest(template, variableMap, 1000, false);
+    runTest(template, variableMap, 1000, true);
+
+    for (int i=0;i<3;i++) {
+      runTest(template, variableMap, 10000, false);
+      runTest(template, variableMap, 10000, true);
+    }
+  }
+
+  /**
+   * substitute the template a number of times
+   * @param template
+   * @param variableMap
+   * @param times
+   * @param cached true to use the cached template, false to parse it each time
+   */
+  private static void runTest(String template, Map<String, Object> variableMap, int times, boolean cached) {
+
+    long startNanos = System.nanoTime();
+    int length = 0;
+
+    for (int i=0;i<times;i++) {
+      if (!cached) {
+        GrouperElTemplate.clearTemplateCache();
+      }
+      length += GrouperUtil.substituteExpressionLanguage(template, variableMap).length();
+    }
+
+    long micros = (System.nanoTime() - startNanos) / 1000;
+    System.out.println(times + " substitutions with " + (cached ? "cached" : "parsed") + " template took "
+        + (micros/1000) + "ms, " + (micros / times) + "micros each (" + length + " chars)");
+  }
+
+}
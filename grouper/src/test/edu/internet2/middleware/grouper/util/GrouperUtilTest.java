@@ -22,6 +22,7 @@ package edu.internet2.middleware.grouper.util;
 import edu.internet2.middleware.grouper.Group;
 import edu.internet2.middleware.grouper.cfg.GrouperConfig;
 import edu.internet2.middleware.grouper.exception.AttributeNotFoundException;
+import edu.internet2.middleware.grouper.exception.ExpressionLanguageMissingVariableException;
 import edu.internet2.middleware.grouper.externalSubjects.ExternalSubject;
 import edu.internet2.middleware.grouper.helper.GrouperTest;
 import edu.internet2.middleware.grouper.helper.SessionHelper;
@@ -808,6 +809,41 @@ public class GrouperUtilTest extends GrouperTest {
     
   }
 
+  /**
+   * 
+   */
+  public void testSubstituteExpressionLanguageTemplate() {
+    
+    String template = "school:${subjectId}:${grouperUtil.toLowerCase(dept)}:${x = 5; x + 1}";
+    
+    GrouperElTemplate grouperElTemplate = GrouperElTemplate.retrieveTemplate(template, false, false);
+    assertSame(grouperElTemplate, GrouperElTemplate.retrieveTemplate(template, false, false));
+    assertNotSame(grouperElTemplate, GrouperElTemplate.retrieveTemplate(template, true, false));
+    
+    Map<String, Object> substituteMap = new HashMap<String, Object>();
+    substituteMap.put("subjectId", "12345");
+    substituteMap.put("dept", "MATH");
+    
+    assertEquals("school:12345:math:6", GrouperUtil.substituteExpressionLanguage(template, substituteMap));
+    
+    //variables assigned in the script dont change the map of the caller
+    assertEquals(2, substituteMap.size());
+    
+    substituteMap.put("subjectId", "23456");
+    substituteMap.put("dept", "ENGL");
+    assertEquals("school:23456:engl:6", GrouperUtil.substituteExpressionLanguage(template, substituteMap));
+    
+    //no scripts
+    assertEquals("school:all", GrouperUtil.substituteExpressionLanguage("school:all", substituteMap));
+    
+    try {
+      GrouperUtil.substituteExpressionLanguage("${notThere}", substituteMap, false, false, false);
+      fail("Shouldnt get here");
+    } catch (ExpressionLanguageMissingVariableException emve) {
+      //good
+    }
+  }
+
   /**
    * some method to call
    * @param arg1
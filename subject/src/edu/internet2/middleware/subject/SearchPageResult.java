@@ -19,6 +19,7 @@
  */
 package edu.internet2.middleware.subject;
 
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 
@@ -92,6 +93,33 @@ public class SearchPageResult {
     this.results = results1;
   }
   
+  /** ids of sources which did not finish searching in time, so their results are not included */
+  private Set<String> incompleteSourceIds = new LinkedHashSet<String>();
+  
+  /**
+   * ids of sources which did not finish searching in time, so their results are not included
+   * @return the source ids, never null
+   */
+  public Set<String> getIncompleteSourceIds() {
+    return this.incompleteSourceIds;
+  }
+  
+  /**
+   * add the id of a source which did not finish searching in time
+   * @param sourceId
+   */
+  public void addIncompleteSourceId(String sourceId) {
+    this.incompleteSourceIds.add(sourceId);
+  }
+  
+  /**
+   * if some sources did not finish searching in time, so the results might be missing subjects
+   * @return true if incomplete
+   */
+  public boolean isIncomplete() {
+    return this.incompleteSourceIds.size() > 0;
+  }
+  
   
   
 }
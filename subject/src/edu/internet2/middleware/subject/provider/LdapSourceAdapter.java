@@ -41,11 +41,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -118,6 +122,18 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
     /** if there is a limit to the number of results */
     private Integer maxPage;
 
+    /** if we should batch up ids and identifiers into one search with an OR filter */
+    private boolean useOrFilterForIdAndIdentifier = false;
+
+    /** number of ids or identifiers in one batched search */
+    private int idAndIdentifierBatchSize = 100;
+
+    /** ldap attributes which hold identifiers, to know which identifier found a subject in a batched search */
+    private List<String> identifierAttributes = new ArrayList<String>();
+
+    /** attribute names to return for a batched identifier search, includes the identifier attributes */
+    private String[] identifierBatchAttributeNames;
+
     public LdapSourceAdapter() {
         super();
     }
@@ -150,6 +166,44 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
         int i = 0;
         for (Iterator<?> it = attributeNameSet.iterator(); it.hasNext(); allAttributeNames[3+i++]= (String) it.next());
 
+        {
+          String useOrFilterForIdAndIdentifierString = props.getProperty("useOrFilterForIdAndIdentifier");
+          if (!StringUtils.isBlank(useOrFilterForIdAndIdentifierString)) {
+            try {
+              this.useOrFilterForIdAndIdentifier = SubjectUtils.booleanValue(useOrFilterForIdAndIdentifierString);
+            } catch (Exception e) {
+              throw new SourceUnavailableException("Cant parse useOrFilterForIdAndIdentifier: " + useOrFilterForIdAndIdentifierString, e);
+            }
+          }
+        }
+
+        {
+          String idAndIdentifierBatchSizeString = props.getProperty("idAndIdentifierBatchSize");
+          if (!StringUtils.isBlank(idAndIdentifierBatchSizeString)) {
+            try {
+              this.idAndIdentifierBatchSize = Integer.parseInt(idAndIdentifierBatchSizeString);
+            } catch (NumberFormatException nfe) {
+              throw new SourceUnavailableException("Cant parse idAndIdentifierBatchSize: " + idAndIdentifierBatchSizeString, nfe);
+            }
+            if (this.idAndIdentifierBatchSize < 1) {
+              throw new SourceUnavailableException("idAndIdentifierBatchSize must be at least 1: " + idAndIdentifierBatchSizeString);
+            }
+          }
+        }
+
+        {
+          String identifierAttributesString = props.getProperty("identifierAttributes");
+          if (!StringUtils.isBlank(identifierAttributesString)) {
+            this.identifierAttributes = SubjectUtils.toList(SubjectUtils.splitTrim(identifierAttributesString, ","));
+          }
+          Set<String> identifierBatchAttributeNameSet = new LinkedHashSet<String>();
+          for (String attributeName : allAttributeNames) {
+            identifierBatchAttributeNameSet.add(attributeName);
+          }
+          identifierBatchAttributeNameSet.addAll(this.identifierAttributes);
+          this.identifierBatchAttributeNames = identifierBatchAttributeNameSet.toArray(new String[identifierBatchAttributeNameSet.size()]);
+        }
+
         initializeLdap();
   
         String throwErrorOnFindAllFailureString = this.getInitParam("throwErrorOnFindAllFailure");
@@ -306,6 +360,16 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
             
       }
 
+      // use the paged results control so large (e.g. batched) searches are not cut off by the server size limit
+      String pagedResultsSizeString = props.getProperty("pagedResultsSize");
+      if (!StringUtils.isBlank(pagedResultsSizeString)) {
+         try {
+            ldapConfig.setPagedResultsSize(Integer.parseInt(pagedResultsSizeString));
+         } catch (NumberFormatException nfe) {
+            throw new SourceUnavailableException("Cant parse pagedResultsSize: " + pagedResultsSizeString, nfe);
+         }
+      }
+
       if (cafile!=null && certfile!=null && keyfile!=null) {
          if (log.isDebugEnabled()) {
          log.debug("using the PEM socketfactory: ca=" + cafile + ", cert=" + certfile + ", key=" + keyfile);
@@ -473,6 +537,189 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
       return this.getSubjectByIdentifier(id, true);
     } 
 
+    /**
+     * @see edu.internet2.middleware.subject.provider.BaseSourceAdapter#getSubjectsByIds(java.util.Collection)
+     */
+    @Override
+    public Map<String, Subject> getSubjectsByIds(Collection<String> ids) {
+      //if not the batched one
+      if (!this.useOrFilterForIdAndIdentifier || this.multipleResults) {
+        return super.getSubjectsByIds(ids);
+      }
+      return uniqueSearchBatch(ids, "searchSubject", false);
+    }
+
+    /**
+     * @see edu.internet2.middleware.subject.provider.BaseSourceAdapter#getSubjectsByIdentifiers(java.util.Collection)
+     */
+    @Override
+    public Map<String, Subject> getSubjectsByIdentifiers(Collection<String> identifiers) {
+      //if not the batched one, need the identifier attributes to know which identifier found which subject
+      if (!this.useOrFilterForIdAndIdentifier || this.multipleResults || this.identifierAttributes.size() == 0) {
+        return super.getSubjectsByIdentifiers(identifiers);
+      }
+      return uniqueSearchBatch(identifiers, "searchSubjectByIdentifier", true);
+    }
+
+    /**
+     * search for ids or identifiers in batches, each batch is one search with the filter of
+     * each id or identifier OR'ed together.  ids or identifiers which are not found or not unique
+     * are not in the result
+     * @param idsOrIdentifiers
+     * @param searchType
+     * @param useIdentifiersInMatch true if identifiers, false if ids
+     * @return the map of id or identifier to subject
+     */
+    private Map<String, Subject> uniqueSearchBatch(Collection<String> idsOrIdentifiers, String searchType, boolean useIdentifiersInMatch) {
+
+      Map<String, Subject> results = new LinkedHashMap<String, Subject>();
+
+      if (SubjectUtils.length(idsOrIdentifiers) == 0) {
+        return results;
+      }
+
+      Search search = getSearch(searchType);
+      if (search == null) {
+        log.error("searchType: \"" + searchType + "\" not defined.");
+        return results;
+      }
+
+      String filter = search.getParam("filter");
+      if (filter == null) {
+        log.error("Search filter not found for search type:  " + searchType);
+        return results;
+      }
+
+      //same as getSubjectByIdentifier
+      boolean attributesGotten = useIdentifiersInMatch && getSearch("searchSubjectByIdentifierAttributes") == null;
+      String[] attributeNames = useIdentifiersInMatch ? this.identifierBatchAttributeNames : allAttributeNames;
+
+      List<String> idsOrIdentifiersList = SubjectUtils.listFromCollection(idsOrIdentifiers);
+
+      int numberOfBatches = SubjectUtils.batchNumberOfBatches(idsOrIdentifiersList, this.idAndIdentifierBatchSize);
+
+      for (int i=0;i<numberOfBatches;i++) {
+
+        List<String> batchIdsOrIdentifiers = SubjectUtils.batchList(idsOrIdentifiersList, this.idAndIdentifierBatchSize, i);
+
+        //lower case search value to the ids or identifiers passed in.  ldap matches are not case sensitive
+        Map<String, Set<String>> searchValueToIdsOrIdentifiers = new HashMap<String, Set<String>>();
+
+        StringBuilder batchFilter = new StringBuilder("(|");
+        for (String idOrIdentifier : batchIdsOrIdentifiers) {
+          String searchValue = idOrIdentifier;
+          if (useIdentifiersInMatch && localDomain != null) {
+            int atpos = searchValue.indexOf("@" + localDomain);
+            if (atpos > 0) {
+              searchValue = searchValue.substring(0, atpos);
+            }
+          }
+          String searchValueLower = searchValue.toLowerCase();
+          Set<String> theIdsOrIdentifiers = searchValueToIdsOrIdentifiers.get(searchValueLower);
+          if (theIdsOrIdentifiers == null) {
+            theIdsOrIdentifiers = new LinkedHashSet<String>();
+            searchValueToIdsOrIdentifiers.put(searchValueLower, theIdsOrIdentifiers);
+            batchFilter.append(StringUtils.replace(filter, "%TERM%", escapeSearchFilter(searchValue)));
+          }
+          theIdsOrIdentifiers.add(idOrIdentifier);
+        }
+        batchFilter.append(")");
+
+        if (log.isDebugEnabled()) {
+          log.debug("searchType: " + searchType + ", batch " + i + " of " + numberOfBatches 
+              + ", size: " + batchIdsOrIdentifiers.size() + ", filter: " + batchFilter);
+        }
+
+        Map<String, Subject> batchResults = new HashMap<String, Subject>();
+        Set<String> notUniqueSearchValues = new HashSet<String>();
+
+        Iterator<SearchResult> ldapResults = searchLdap(search, batchFilter.toString(), attributeNames, false);
+
+        while (ldapResults != null && ldapResults.hasNext()) {
+          SearchResult si = ldapResults.next();
+          Attributes attributes = si.getAttributes();
+
+          // Add the DN to the returned attributes.
+          attributes.put(new BasicAttribute("dn", si.getName()));
+
+          Subject subject = createSubject(attributes);
+          if (subject == null) {
+            continue;
+          }
+          if (attributesGotten) {
+            ((LdapSubject)subject).setAttributesGotten(true);
+          }
+
+          Set<String> matchedSearchValues = matchedSearchValues(subject, attributes, 
+              searchValueToIdsOrIdentifiers.keySet(), useIdentifiersInMatch);
+
+          if (matchedSearchValues.size() == 0) {
+            log.error("Why is this subject not able to be referenced by id or identifier (do you need to add " +
+                "identifierAttributes to your sources.xml???) " + SubjectUtils.subjectToString(subject));
+            continue;
+          }
+
+          for (String searchValue : matchedSearchValues) {
+            if (batchResults.containsKey(searchValue)) {
+              notUniqueSearchValues.add(searchValue);
+            } else {
+              batchResults.put(searchValue, subject);
+            }
+          }
+        }
+
+        for (String searchValue : notUniqueSearchValues) {
+          log.error("Search is not unique: " + searchType + ", " + searchValue);
+          batchResults.remove(searchValue);
+        }
+
+        for (String searchValue : batchResults.keySet()) {
+          for (String idOrIdentifier : searchValueToIdsOrIdentifiers.get(searchValue)) {
+            results.put(idOrIdentifier, batchResults.get(searchValue));
+          }
+        }
+      }
+      return results;
+    }
+
+    /**
+     * see which search values (lower case) found this subject, by id, or by the values of the identifier attributes
+     * @param subject
+     * @param attributes ldap attributes of the subject, dont use the subject attributes since that could do another search
+     * @param searchValues lower case search values
+     * @param useIdentifiersInMatch
+     * @return the search values
+     */
+    private Set<String> matchedSearchValues(Subject subject, Attributes attributes, 
+        Set<String> searchValues, boolean useIdentifiersInMatch) {
+      Set<String> result = new HashSet<String>();
+
+      String idLower = subject.getId().toLowerCase();
+      if (searchValues.contains(idLower)) {
+        result.add(idLower);
+      }
+
+      if (useIdentifiersInMatch) {
+        for (String identifierAttribute : this.identifierAttributes) {
+          Attribute attribute = attributes.get(identifierAttribute);
+          if (attribute == null) {
+            continue;
+          }
+          try {
+            for (NamingEnumeration<?> en = attribute.getAll(); en.hasMore(); ) {
+              String valueLower = en.next().toString().toLowerCase();
+              if (searchValues.contains(valueLower)) {
+                result.add(valueLower);
+              }
+            }
+          } catch (NamingException ne) {
+            throw new SourceUnavailableException("Ldap NamingException: " + ne.getMessage(), ne);
+          }
+        }
+      }
+      return result;
+    }
+
     /**
      * @see edu.internet2.middleware.subject.provider.BaseSourceAdapter#searchPage(java.lang.String)
      */
@@ -676,7 +923,6 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
         searchValue = subjectStatusResult.getStrippedQuery();
       }      
       
-        Ldap ldap = null;
         String filter = null;
         Iterator<SearchResult> results = null;
         int cp;
@@ -742,6 +988,23 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
           
         }
         
+        return searchLdap(search, filter, attributeNames, firstPageOnly);
+    }
+
+    /**
+     * run an ldap search with a pooled connection
+     * @param search
+     * @param filter
+     * @param attributeNames
+     * @param firstPageOnly
+     * @return the results
+     */
+    private Iterator<SearchResult> searchLdap(Search search, String filter, String[] attributeNames, boolean firstPageOnly) {
+        Ldap ldap = null;
+        Iterator<SearchResult> results = null;
+
+        if (!initialized) initializeLdap();
+
         try  {
             ldap =  (Ldap) ldapPool.checkOut();
 
@@ -30,6 +30,7 @@
 
 package edu.internet2.middleware.subject.provider;
 
+import java.util.Map;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -37,6 +38,7 @@ import edu.internet2.middleware.subject.SourceUnavailableException;
 import edu.internet2.middleware.subject.Subject;
 import edu.internet2.middleware.subject.SubjectNotFoundException;
 import edu.internet2.middleware.subject.SubjectNotUniqueException;
+import edu.internet2.middleware.subject.SubjectUtils;
 
 /**
  * Unit tests for JNDISourceAdapter.
@@ -102,6 +104,10 @@ public class JNDISourceAdapterTest extends TestCase {
     this.source.addAttribute("sn");
     this.source.addAttribute("department");
 
+    this.source.addInitParam("useOrFilterForIdAndIdentifier", "true");
+    this.source.addInitParam("idAndIdentifierBatchSize", "2");
+    this.source.addInitParam("identifierAttributes", "uid");
+
     try {
       this.source.init();
     } catch (SourceUnavailableException e) {
@@ -166,6 +172,22 @@ public class JNDISourceAdapterTest extends TestCase {
     assertNull(this.source.getSubjectByIdentifier("chris", false));
   }
 
+  /**
+   * A test of batched Subject id and identifier search capability.
+   */
+  public void testIdsAndIdentifiersSearch() {
+    Map<String, Subject> subjects = this.source.getSubjectsByIds(
+        SubjectUtils.toSet("SD00001", "SD00020", "chris"));
+    assertEquals("Searching ids, result size", 2, subjects.size());
+    assertEquals("SD00001", subjects.get("SD00001").getId());
+    assertEquals("SD00020", subjects.get("SD00020").getId());
+    assertFalse(subjects.containsKey("chris"));
+
+    subjects = this.source.getSubjectsByIdentifiers(SubjectUtils.toSet("comalley", "chris"));
+    assertEquals("Searching identifiers, result size", 1, subjects.size());
+    assertEquals("SD00001", subjects.get("comalley").getId());
+  }
+
   /**
    * A test of Subject search capability.
    */